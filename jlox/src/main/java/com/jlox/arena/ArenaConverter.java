@@ -0,0 +1,184 @@
+package com.jlox.arena;
+
+import com.jlox.expression.*;
+import com.jlox.scanner.Token;
+import com.jlox.statement.*;
+
+import java.util.List;
+
+/**
+ * Builds an {@link AstArena} from the node classes. Nodes are added parents first, each followed by its children in
+ * the order of its fields, so a walk of the tree reads the arrays of the arena mostly front to back. Bodies of
+ * functions that haven't been parsed yet are parsed to be converted; the annotations of the nodes aren't copied.
+ */
+public final class ArenaConverter implements StatementVisitor<Integer>, ExpressionVisitor<Integer> {
+
+    private final AstArena arena = new AstArena();
+
+    private ArenaConverter() {
+    }
+
+    /**
+     * Convert a program.
+     *
+     * @param statements the top-level statements of the program
+     * @return the arena, whose roots are the statements in order
+     */
+    public static AstArena convert(List<Statement> statements) {
+        ArenaConverter converter = new ArenaConverter();
+        converter.arena.setRoots(converter.statements(statements));
+        return converter.arena;
+    }
+
+    private int statements(List<Statement> statements) {
+        int list = arena.addList(statements.size());
+        for (int i = 0; i < statements.size(); i++) {
+            arena.setItem(list, i, add(statements.get(i)));
+        }
+        return list;
+    }
+
+    private int add(Statement statement) {
+        return statement == null ? AstArena.NONE : statement.accept(this);
+    }
+
+    private int add(Expression expression) {
+        return expression == null ? AstArena.NONE : expression.accept(this);
+    }
+
+    private int statement(int tag, Token token) {
+        return arena.addNode(tag, token == null ? -1 : arena.addToken(token));
+    }
+
+    private int expression(int tag, Token token) {
+        return arena.addNode(AstArena.EXPRESSION + tag, token == null ? -1 : arena.addToken(token));
+    }
+
+    // The node is added before its children, which are then put in its slots
+    private Integer withChildren(int node, int first, int second, int third) {
+        arena.setChildren(node, first, second, third);
+        return node;
+    }
+
+    @Override
+    public Integer visitPrintStatement(PrintStatement printstatement) {
+        int node = statement(StatementTag.PRINT_STATEMENT, null);
+        return withChildren(node, add(printstatement.expr), AstArena.NONE, AstArena.NONE);
+    }
+
+    @Override
+    public Integer visitExprStatement(ExprStatement exprstatement) {
+        int node = statement(StatementTag.EXPR_STATEMENT, null);
+        return withChildren(node, add(exprstatement.expr), AstArena.NONE, AstArena.NONE);
+    }
+
+    @Override
+    public Integer visitVarDeclare(VarDeclare vardeclare) {
+        int node = statement(StatementTag.VAR_DECLARE, vardeclare.name);
+        return withChildren(node, add(vardeclare.init), AstArena.NONE, AstArena.NONE);
+    }
+
+    @Override
+    public Integer visitVarAssign(VarAssign varassign) {
+        int node = statement(StatementTag.VAR_ASSIGN, varassign.name);
+        return withChildren(node, add(varassign.newVal), AstArena.NONE, AstArena.NONE);
+    }
+
+    @Override
+    public Integer visitBlock(Block block) {
+        int node = statement(StatementTag.BLOCK, null);
+        return withChildren(node, statements(block.stmts), AstArena.NONE, AstArena.NONE);
+    }
+
+    @Override
+    public Integer visitIfStatement(IfStatement ifstatement) {
+        int node = statement(StatementTag.IF_STATEMENT, null);
+        int condition = add(ifstatement.condition);
+        int thenBranch = add(ifstatement.thenBranch);
+        return withChildren(node, condition, thenBranch, add(ifstatement.elseBranch));
+    }
+
+    @Override
+    public Integer visitWhileStatement(WhileStatement whilestatement) {
+        int node = statement(StatementTag.WHILE_STATEMENT, null);
+        int condition = add(whilestatement.condition);
+        return withChildren(node, condition, add(whilestatement.body), AstArena.NONE);
+    }
+
+    @Override
+    public Integer visitBreakStatement(BreakStatement breakstatement) {
+        return statement(StatementTag.BREAK_STATEMENT, null);
+    }
+
+    @Override
+    public Integer visitFunDeclare(FunDeclare fundeclare) {
+        int node = statement(StatementTag.FUN_DECLARE, fundeclare.name);
+        int params = arena.addList(fundeclare.params.size());
+        for (int i = 0; i < fundeclare.params.size(); i++) {
+            arena.setItem(params, i, arena.addToken(fundeclare.params.get(i)));
+        }
+        return withChildren(node, add(fundeclare.body()), params, AstArena.NONE);
+    }
+
+    @Override
+    public Integer visitReturnStatement(ReturnStatement returnstatement) {
+        int node = statement(StatementTag.RETURN_STATEMENT, null);
+        return withChildren(node, add(returnstatement.value), AstArena.NONE, AstArena.NONE);
+    }
+
+    @Override
+    public Integer visitBinary(Binary binary) {
+        int node = expression(ExpressionTag.BINARY, binary.operator);
+        int left = add(binary.left);
+        return withChildren(node, left, add(binary.right), AstArena.NONE);
+    }
+
+    @Override
+    public Integer visitLogical(Logical logical) {
+        int node = expression(ExpressionTag.LOGICAL, logical.operator);
+        int left = add(logical.left);
+        return withChildren(node, left, add(logical.right), AstArena.NONE);
+    }
+
+    @Override
+    public Integer visitGrouping(Grouping grouping) {
+        int node = expression(ExpressionTag.GROUPING, null);
+        return withChildren(node, add(grouping.expr), AstArena.NONE, AstArena.NONE);
+    }
+
+    @Override
+    public Integer visitLiteral(Literal literal) {
+        int node = expression(ExpressionTag.LITERAL, null);
+        return withChildren(node, arena.addLiteral(literal.value), AstArena.NONE, AstArena.NONE);
+    }
+
+    @Override
+    public Integer visitUnary(Unary unary) {
+        int node = expression(ExpressionTag.UNARY, unary.operator);
+        return withChildren(node, add(unary.right), AstArena.NONE, AstArena.NONE);
+    }
+
+    @Override
+    public Integer visitTernary(Ternary ternary) {
+        int node = expression(ExpressionTag.TERNARY, null);
+        int condition = add(ternary.condition);
+        int left = add(ternary.left);
+        return withChildren(node, condition, left, add(ternary.right));
+    }
+
+    @Override
+    public Integer visitVariable(Variable variable) {
+        return expression(ExpressionTag.VARIABLE, variable.name);
+    }
+
+    @Override
+    public Integer visitCall(Call call) {
+        int node = expression(ExpressionTag.CALL, null);
+        int callee = add(call.callee);
+        int arguments = arena.addList(call.arguments.size());
+        for (int i = 0; i < call.arguments.size(); i++) {
+            arena.setItem(arguments, i, add(call.arguments.get(i)));
+        }
+        return withChildren(node, callee, arguments, AstArena.NONE);
+    }
+}
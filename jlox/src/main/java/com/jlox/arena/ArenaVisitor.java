@@ -0,0 +1,45 @@
+package com.jlox.arena;
+
+/**
+ * A pass over the nodes of an {@link AstArena}, with a method for each kind of node that takes the index of the node.
+ * {@link AstArena#accept(int, ArenaVisitor)} calls the method for the kind of a node.
+ *
+ * @param <R> the type the pass returns for each node
+ */
+public interface ArenaVisitor<R> {
+    R visitPrintStatement(int printstatement);
+
+    R visitExprStatement(int exprstatement);
+
+    R visitVarDeclare(int vardeclare);
+
+    R visitVarAssign(int varassign);
+
+    R visitBlock(int block);
+
+    R visitIfStatement(int ifstatement);
+
+    R visitWhileStatement(int whilestatement);
+
+    R visitBreakStatement(int breakstatement);
+
+    R visitFunDeclare(int fundeclare);
+
+    R visitReturnStatement(int returnstatement);
+
+    R visitBinary(int binary);
+
+    R visitLogical(int logical);
+
+    R visitGrouping(int grouping);
+
+    R visitLiteral(int literal);
+
+    R visitUnary(int unary);
+
+    R visitTernary(int ternary);
+
+    R visitVariable(int variable);
+
+    R visitCall(int call);
+}
@@ -0,0 +1,306 @@
+package com.jlox.arena;
+
+import com.jlox.expression.ExpressionTag;
+import com.jlox.scanner.Symbol;
+import com.jlox.scanner.Token;
+import com.jlox.scanner.TokenType;
+import com.jlox.statement.StatementTag;
+
+import java.util.Arrays;
+
+/**
+ * A whole program as a flat tree: every node is an index into parallel int arrays instead of an object, and tokens are
+ * indices into a token table kept the same way. Walking the tree reads through a handful of arrays filled in the order
+ * the nodes were added, parents before children, instead of following pointers around the heap.
+ *
+ * <p>Each node has a kind, up to three child slots and a token. The kind of a statement is its {@link StatementTag}
+ * and the kind of an expression is its {@link ExpressionTag} plus {@link #EXPRESSION}. Node 0 is {@link #NONE} and
+ * stands for a missing child. A variable number of children, the statements of a block, the arguments of a call or
+ * the parameters of a function, is a list: an index into a shared int array holding the count and then the items.
+ * Where each node keeps its fields:
+ *
+ * <pre>
+ * PrintStatement, ExprStatement, ReturnStatement, Grouping   first: expression
+ * VarDeclare, VarAssign                                      token: name, first: value
+ * Block                                                      first: list of statements
+ * IfStatement                                                first: condition, second: then, third: else
+ * WhileStatement                                             first: condition, second: body
+ * FunDeclare                                                 token: name, first: body, second: list of param tokens
+ * Binary, Logical                                            first: left, token: operator, second: right
+ * Unary                                                      token: operator, first: right
+ * Ternary                                                    first: condition, second: left, third: right
+ * Variable                                                   token: name
+ * Literal                                                    first: index of the value, see literal(int)
+ * Call                                                       first: callee, second: list of arguments
+ * </pre>
+ *
+ * <p>Like the annotations of the node classes, every node also has a depth and a slot for passes like the resolver to
+ * fill in, both -1 until they do. A block keeps the size of its scope in its slot.
+ */
+public final class AstArena {
+
+    public static final int NONE = 0;
+    public static final int EXPRESSION = 16;
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    private int[] kinds = new int[INITIAL_CAPACITY];
+    private int[] firsts = new int[INITIAL_CAPACITY];
+    private int[] seconds = new int[INITIAL_CAPACITY];
+    private int[] thirds = new int[INITIAL_CAPACITY];
+    private int[] tokens = new int[INITIAL_CAPACITY];
+    private int[] depths = new int[INITIAL_CAPACITY];
+    private int[] slots = new int[INITIAL_CAPACITY];
+    private int size = 1;
+
+    private int[] lists = new int[INITIAL_CAPACITY];
+    private int listsSize;
+
+    // The token table: the type and offset of each token, and the symbol of identifiers
+    private byte[] tokenTypes = new byte[INITIAL_CAPACITY];
+    private int[] tokenOffsets = new int[INITIAL_CAPACITY];
+    private Symbol[] tokenSymbols = new Symbol[INITIAL_CAPACITY];
+    private int tokenCount;
+    // Operators and keywords have the same lexeme for every token of their type
+    private final String[] lexemes = new String[TOKEN_TYPES.length];
+
+    private Object[] literals = new Object[INITIAL_CAPACITY];
+    private int literalCount;
+
+    private int roots = -1;
+
+    AstArena() {
+    }
+
+    /**
+     * Get the number of nodes, counting {@link #NONE}. Nodes are numbered from 1 up to this.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the list of top-level statements.
+     */
+    public int roots() {
+        return roots;
+    }
+
+    public int kind(int node) {
+        return kinds[node];
+    }
+
+    public boolean isExpression(int node) {
+        return kinds[node] > EXPRESSION;
+    }
+
+    public int first(int node) {
+        return firsts[node];
+    }
+
+    public int second(int node) {
+        return seconds[node];
+    }
+
+    public int third(int node) {
+        return thirds[node];
+    }
+
+    public int token(int node) {
+        return tokens[node];
+    }
+
+    public Object literal(int node) {
+        return literals[firsts[node]];
+    }
+
+    /**
+     * Get the number of items in a list.
+     */
+    public int count(int list) {
+        return lists[list];
+    }
+
+    /**
+     * Get an item of a list: a node, or a token for the parameters of a function.
+     */
+    public int item(int list, int index) {
+        return lists[list + 1 + index];
+    }
+
+    public int depth(int node) {
+        return depths[node];
+    }
+
+    public void setDepth(int node, int depth) {
+        depths[node] = depth;
+    }
+
+    public int slot(int node) {
+        return slots[node];
+    }
+
+    public void setSlot(int node, int slot) {
+        slots[node] = slot;
+    }
+
+    public TokenType tokenType(int token) {
+        return TOKEN_TYPES[tokenTypes[token]];
+    }
+
+    public int tokenOffset(int token) {
+        return tokenOffsets[token];
+    }
+
+    /**
+     * Get the name of an identifier, or null if the token isn't one.
+     */
+    public Symbol tokenSymbol(int token) {
+        return tokenSymbols[token];
+    }
+
+    public String tokenLexeme(int token) {
+        Symbol symbol = tokenSymbol(token);
+        return symbol != null ? symbol.name() : lexemes[tokenTypes[token]];
+    }
+
+    /**
+     * Call the visitor method for the kind of a node.
+     */
+    public <R> R accept(int node, ArenaVisitor<R> visitor) {
+        // Split in two so that each half is small enough for the JIT to inline into hot visitors
+        return kinds[node] < EXPRESSION ? acceptStatement(node, visitor) : acceptExpression(node, visitor);
+    }
+
+    private <R> R acceptStatement(int node, ArenaVisitor<R> visitor) {
+        switch (kinds[node]) {
+            case StatementTag.PRINT_STATEMENT:
+                return visitor.visitPrintStatement(node);
+            case StatementTag.EXPR_STATEMENT:
+                return visitor.visitExprStatement(node);
+            case StatementTag.VAR_DECLARE:
+                return visitor.visitVarDeclare(node);
+            case StatementTag.VAR_ASSIGN:
+                return visitor.visitVarAssign(node);
+            case StatementTag.BLOCK:
+                return visitor.visitBlock(node);
+            case StatementTag.IF_STATEMENT:
+                return visitor.visitIfStatement(node);
+            case StatementTag.WHILE_STATEMENT:
+                return visitor.visitWhileStatement(node);
+            case StatementTag.BREAK_STATEMENT:
+                return visitor.visitBreakStatement(node);
+            case StatementTag.FUN_DECLARE:
+                return visitor.visitFunDeclare(node);
+            case StatementTag.RETURN_STATEMENT:
+                return visitor.visitReturnStatement(node);
+            default:
+                throw new IllegalArgumentException("Node " + node + " is not a statement or an expression");
+        }
+    }
+
+    private <R> R acceptExpression(int node, ArenaVisitor<R> visitor) {
+        switch (kinds[node]) {
+            case EXPRESSION + ExpressionTag.BINARY:
+                return visitor.visitBinary(node);
+            case EXPRESSION + ExpressionTag.LOGICAL:
+                return visitor.visitLogical(node);
+            case EXPRESSION + ExpressionTag.GROUPING:
+                return visitor.visitGrouping(node);
+            case EXPRESSION + ExpressionTag.LITERAL:
+                return visitor.visitLiteral(node);
+            case EXPRESSION + ExpressionTag.UNARY:
+                return visitor.visitUnary(node);
+            case EXPRESSION + ExpressionTag.TERNARY:
+                return visitor.visitTernary(node);
+            case EXPRESSION + ExpressionTag.VARIABLE:
+                return visitor.visitVariable(node);
+            case EXPRESSION + ExpressionTag.CALL:
+                return visitor.visitCall(node);
+            default:
+                throw new IllegalArgumentException("Node " + node + " is not a statement or an expression");
+        }
+    }
+
+    /**
+     * Add a node with no children yet.
+     *
+     * @return the new node
+     */
+    int addNode(int kind, int token) {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            firsts = Arrays.copyOf(firsts, capacity);
+            seconds = Arrays.copyOf(seconds, capacity);
+            thirds = Arrays.copyOf(thirds, capacity);
+            tokens = Arrays.copyOf(tokens, capacity);
+            depths = Arrays.copyOf(depths, capacity);
+            slots = Arrays.copyOf(slots, capacity);
+        }
+        kinds[size] = kind;
+        tokens[size] = token;
+        depths[size] = -1;
+        slots[size] = -1;
+        return size++;
+    }
+
+    void setChildren(int node, int first, int second, int third) {
+        firsts[node] = first;
+        seconds[node] = second;
+        thirds[node] = third;
+    }
+
+    /**
+     * Make room for a list, to be filled in with {@link #setItem(int, int, int)}.
+     *
+     * @return the new list
+     */
+    int addList(int count) {
+        if (listsSize + count + 1 > lists.length) {
+            lists = Arrays.copyOf(lists, Math.max(lists.length * 2, listsSize + count + 1));
+        }
+        int list = listsSize;
+        lists[list] = count;
+        listsSize += count + 1;
+        return list;
+    }
+
+    void setItem(int list, int index, int item) {
+        lists[list + 1 + index] = item;
+    }
+
+    void setRoots(int list) {
+        roots = list;
+    }
+
+    int addToken(Token token) {
+        if (tokenCount == tokenTypes.length) {
+            int capacity = tokenCount * 2;
+            tokenTypes = Arrays.copyOf(tokenTypes, capacity);
+            tokenOffsets = Arrays.copyOf(tokenOffsets, capacity);
+            tokenSymbols = Arrays.copyOf(tokenSymbols, capacity);
+        }
+        tokenTypes[tokenCount] = (byte) token.type.ordinal();
+        tokenOffsets[tokenCount] = token.offset;
+        tokenSymbols[tokenCount] = token.symbol;
+        if (token.symbol == null) {
+            lexemes[token.type.ordinal()] = token.lexeme;
+        }
+        return tokenCount++;
+    }
+
+    /**
+     * Store the value of a literal.
+     *
+     * @return the index to keep in the first slot of the literal
+     */
+    int addLiteral(Object value) {
+        if (literalCount == literals.length) {
+            literals = Arrays.copyOf(literals, literalCount * 2);
+        }
+        literals[literalCount] = value;
+        return literalCount++;
+    }
+}
@@ -0,0 +1,170 @@
+package com.jlox.build;
+
+import com.jlox.error.CollectorHandler;
+import com.jlox.error.IErrorHandler;
+import com.jlox.error.LoxError;
+import com.jlox.parser.ParseStatement;
+import com.jlox.scanner.LoxScanner;
+import com.jlox.scanner.source.StringSource;
+import com.jlox.statement.Statement;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads, scans and parses many source files at once. Each file is handled start to finish by one worker of a fixed
+ * pool, with its own {@link CollectorHandler} for its errors, so files don't wait on each other and their errors
+ * don't interleave. Units come back sorted by path however the work was scheduled.
+ *
+ * <p>With a {@link ProgramCache}, a file whose text was parsed without errors before is loaded from the cache instead
+ * of being scanned and parsed, and every file parsed without errors is stored in it.
+ */
+public class BuildPipeline {
+
+    public static final String ERROR_READ = "ERR_READ";
+
+    private final int workers;
+    private final ProgramCache cache;
+
+    /**
+     * Create a pipeline with one worker per available processor.
+     */
+    public BuildPipeline() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a pipeline.
+     *
+     * @param workers the most files to work on at the same time
+     */
+    public BuildPipeline(int workers) {
+        this(workers, null);
+    }
+
+    /**
+     * Create a pipeline that keeps parsed files in a cache.
+     *
+     * @param workers the most files to work on at the same time
+     * @param cache   the cache to load files from and store them in, or null for none
+     */
+    public BuildPipeline(int workers, ProgramCache cache) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("A pipeline needs at least one worker");
+        }
+        this.workers = workers;
+        this.cache = cache;
+    }
+
+    /**
+     * Build every file. A file that can't be read gives a unit with no statements and an {@link #ERROR_READ} error, as
+     * does a file whose parse is stopped by an error, with that error.
+     *
+     * @param paths the files to build, each built once however often it is given
+     * @return a unit per file, sorted by path
+     * @throws InterruptedException if the thread is interrupted while waiting for the workers
+     */
+    public List<CompilationUnit> build(Collection<Path> paths) throws InterruptedException {
+        List<Path> sorted = new ArrayList<>(new TreeSet<>(paths));
+        List<CompilationUnit> units = new ArrayList<>(sorted.size());
+        if (sorted.isEmpty()) {
+            return units;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(workers, sorted.size()));
+        try {
+            List<Future<CompilationUnit>> futures = new ArrayList<>(sorted.size());
+            for (Path path : sorted) {
+                futures.add(pool.submit(() -> compile(path, cache)));
+            }
+            for (Future<CompilationUnit> future : futures) {
+                units.add(join(future));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return units;
+    }
+
+    /**
+     * Build every file, then pass the errors of each unit in turn to a handler.
+     *
+     * @param paths    the files to build
+     * @param reporter the handler to report to, from the calling thread only
+     * @return a unit per file, sorted by path
+     * @throws InterruptedException if the thread is interrupted while waiting for the workers
+     */
+    public List<CompilationUnit> build(Collection<Path> paths, IErrorHandler reporter) throws InterruptedException {
+        List<CompilationUnit> units = build(paths);
+        for (CompilationUnit unit : units) {
+            for (LoxError error : unit.getErrors()) {
+                reporter.error(error);
+            }
+        }
+        return units;
+    }
+
+    /**
+     * Read, scan and parse one file on the calling thread.
+     */
+    public static CompilationUnit compile(Path path) {
+        return compile(path, null);
+    }
+
+    /**
+     * Read one file on the calling thread and load it from a cache, or scan and parse it if it isn't there.
+     *
+     * @param path  the file to build
+     * @param cache the cache to load from and store in, or null for none
+     */
+    public static CompilationUnit compile(Path path, ProgramCache cache) {
+        CollectorHandler errors = new CollectorHandler();
+        String text;
+        try {
+            text = Files.readString(path, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            errors.error(String.format("Could not read %s: %s", path, e.getMessage()), ERROR_READ);
+            return new CompilationUnit(path, List.of(), errors.getErrors());
+        }
+        List<Statement> statements = cache != null ? cache.load(text) : null;
+        if (statements != null) {
+            return new CompilationUnit(path, statements, List.of());
+        }
+        try {
+            statements = new ParseStatement(errors)
+                    .parseAll(new LoxScanner(new StringSource(text), errors).scanToBuffer());
+        } catch (LoxError e) {
+            // Errors in statements end the parse, so they go to the unit like the errors the parser recovers from
+            errors.error(e);
+            statements = List.of();
+        }
+        if (cache != null && !errors.hasError()) {
+            cache.store(text, statements);
+        }
+        return new CompilationUnit(path, statements, errors.getErrors());
+    }
+
+    // Wait for a unit, passing on any unchecked exception thrown while building it
+    private static CompilationUnit join(Future<CompilationUnit> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
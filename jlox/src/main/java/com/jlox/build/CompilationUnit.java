@@ -0,0 +1,45 @@
+package com.jlox.build;
+
+import com.jlox.error.LoxError;
+import com.jlox.statement.Statement;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * A source file after it has been scanned and parsed, with the errors found in it.
+ */
+public final class CompilationUnit {
+
+    private final Path path;
+    private final List<Statement> statements;
+    private final List<LoxError> errors;
+
+    CompilationUnit(Path path, List<Statement> statements, List<LoxError> errors) {
+        this.path = path;
+        this.statements = statements;
+        this.errors = errors;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Get the top-level statements of the file, which are only complete if there were no errors.
+     */
+    public List<Statement> getStatements() {
+        return statements;
+    }
+
+    /**
+     * Get the errors reported while reading, scanning and parsing the file, in the order they were found.
+     */
+    public List<LoxError> getErrors() {
+        return errors;
+    }
+
+    public boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+}
@@ -0,0 +1,327 @@
+package com.jlox.build;
+
+import com.jlox.expression.*;
+import com.jlox.scanner.Symbol;
+import com.jlox.scanner.Token;
+import com.jlox.scanner.TokenType;
+import com.jlox.statement.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.jlox.build.LoxcWriter.*;
+
+/**
+ * Reads statements from a stream in the .loxc format written by {@link LoxcWriter}, one top-level statement at a time.
+ * Each node is built by a switch on its tag. Anything that doesn't fit the format, such as an unknown tag, an
+ * expression where a statement should be, nodes nested deeper than {@link LoxcWriter#MAX_DEPTH} or the stream ending
+ * early, is an {@link IOException}.
+ *
+ * <p>Each string of the table is decoded once. Identifiers with the same lexeme share its {@link Symbol}, which is
+ * looked up the first time the string is the lexeme of an identifier.
+ */
+public final class LoxcReader {
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+    private static final int BUFFER_SIZE = 8192;
+    // Lists are grown as they are read rather than sized from a count that could be corrupt
+    private static final int MAX_INITIAL_CAPACITY = 64;
+    private static final int BYTE_MASK = 0xFF;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private final List<String> strings = new ArrayList<>();
+    private final List<Symbol> symbols = new ArrayList<>();
+    private int lastOffset;
+    private boolean finished;
+    private int depth;
+
+    /**
+     * Start reading a stream, checking its header.
+     *
+     * @param in the stream to read from, which isn't closed
+     * @throws IOException if the stream isn't .loxc or is from another version of the format
+     */
+    public LoxcReader(InputStream in) throws IOException {
+        this.in = in;
+        for (byte b : MAGIC) {
+            if (readByte() != (b & BYTE_MASK)) {
+                throw new IOException("Not a .loxc stream");
+            }
+        }
+        int version = readVarint();
+        if (version != VERSION) {
+            throw new IOException(String.format("Unsupported .loxc version %d, expected %d", version, VERSION));
+        }
+    }
+
+    /**
+     * Read the next top-level statement.
+     *
+     * @return the statement, or null at the end of the stream
+     */
+    public Statement read() throws IOException {
+        if (finished) {
+            return null;
+        }
+        int tag = readByte();
+        if (tag == NONE) {
+            finished = true;
+            return null;
+        }
+        return readStatement(tag);
+    }
+
+    /**
+     * Read every top-level statement left in the stream.
+     */
+    public List<Statement> readAll() throws IOException {
+        List<Statement> statements = new ArrayList<>();
+        for (Statement statement = read(); statement != null; statement = read()) {
+            statements.add(statement);
+        }
+        return statements;
+    }
+
+    // A missing node isn't counted, so the depths match those of the writer
+    private Statement readStatement(int tag) throws IOException {
+        if (tag == NONE) {
+            return null;
+        }
+        enter();
+        try {
+            return statementOf(tag);
+        } finally {
+            depth--;
+        }
+    }
+
+    private Statement readStatement() throws IOException {
+        return readStatement(readByte());
+    }
+
+    private Statement statementOf(int tag) throws IOException {
+        switch (tag) {
+            case StatementTag.PRINT_STATEMENT:
+                return new PrintStatement(readExpression());
+            case StatementTag.EXPR_STATEMENT:
+                return new ExprStatement(readExpression());
+            case StatementTag.VAR_DECLARE:
+                return new VarDeclare(readToken(), readExpression());
+            case StatementTag.VAR_ASSIGN:
+                return new VarAssign(readToken(), readExpression());
+            case StatementTag.BLOCK:
+                return readBlock();
+            case StatementTag.IF_STATEMENT:
+                return new IfStatement(readExpression(), readStatement(), readStatement());
+            case StatementTag.WHILE_STATEMENT:
+                return new WhileStatement(readExpression(), readStatement());
+            case StatementTag.BREAK_STATEMENT:
+                return new BreakStatement();
+            case StatementTag.FUN_DECLARE:
+                Token name = readToken();
+                int count = readVarint();
+                List<Token> params = new ArrayList<>(Math.min(count, MAX_INITIAL_CAPACITY));
+                for (int i = 0; i < count; i++) {
+                    params.add(readToken());
+                }
+                if (readByte() != StatementTag.BLOCK) {
+                    throw new IOException("Function body is not a block");
+                }
+                return new FunDeclare(name, params, readBlock());
+            case StatementTag.RETURN_STATEMENT:
+                return new ReturnStatement(readExpression());
+            default:
+                throw new IOException("Unknown statement tag " + tag);
+        }
+    }
+
+    private Block readBlock() throws IOException {
+        int count = readVarint();
+        List<Statement> statements = new ArrayList<>(Math.min(count, MAX_INITIAL_CAPACITY));
+        for (int i = 0; i < count; i++) {
+            statements.add(readStatement());
+        }
+        return new Block(statements);
+    }
+
+    private Expression readExpression() throws IOException {
+        int tag = readByte();
+        if (tag == NONE) {
+            return null;
+        }
+        enter();
+        try {
+            return expressionOf(tag);
+        } finally {
+            depth--;
+        }
+    }
+
+    private Expression expressionOf(int tag) throws IOException {
+        switch (tag) {
+            case ExpressionTag.BINARY:
+                return new Binary(readExpression(), readToken(), readExpression());
+            case ExpressionTag.LOGICAL:
+                return new Logical(readExpression(), readToken(), readExpression());
+            case ExpressionTag.GROUPING:
+                return new Grouping(readExpression());
+            case ExpressionTag.LITERAL:
+                return new Literal(readValue());
+            case ExpressionTag.UNARY:
+                return new Unary(readToken(), readExpression());
+            case ExpressionTag.TERNARY:
+                return new Ternary(readExpression(), readExpression(), readExpression());
+            case ExpressionTag.VARIABLE:
+                return new Variable(readToken());
+            case ExpressionTag.CALL:
+                Expression callee = readExpression();
+                int count = readVarint();
+                List<Expression> arguments = new ArrayList<>(Math.min(count, MAX_INITIAL_CAPACITY));
+                for (int i = 0; i < count; i++) {
+                    arguments.add(readExpression());
+                }
+                return new Call(callee, arguments);
+            default:
+                throw new IOException("Unknown expression tag " + tag);
+        }
+    }
+
+    private void enter() throws IOException {
+        if (depth == MAX_DEPTH) {
+            throw new IOException("Nodes are nested deeper than " + MAX_DEPTH);
+        }
+        depth++;
+    }
+
+    private Token readToken() throws IOException {
+        int type = readVarint();
+        if (type >= TOKEN_TYPES.length) {
+            throw new IOException("Unknown token type " + type);
+        }
+        int index = readStringIndex();
+        int offset = lastOffset + readSignedVarint();
+        lastOffset = offset;
+        if (TOKEN_TYPES[type] == TokenType.IDENTIFIER) {
+            Symbol symbol = symbols.get(index);
+            if (symbol == null) {
+                symbol = Symbol.of(strings.get(index));
+                symbols.set(index, symbol);
+            }
+            return new Token(symbol, offset);
+        }
+        return new Token(TOKEN_TYPES[type], strings.get(index), null, offset);
+    }
+
+    private Object readValue() throws IOException {
+        int tag = readByte();
+        switch (tag) {
+            case NIL:
+                return null;
+            case FALSE:
+                return false;
+            case TRUE:
+                return true;
+            case INTEGER:
+                return readSignedVarint();
+            case DOUBLE:
+                long bits = 0;
+                for (int i = 0; i < Long.BYTES; i++) {
+                    bits = (bits << Byte.SIZE) | readByte();
+                }
+                return Double.longBitsToDouble(bits);
+            case STRING:
+                return strings.get(readStringIndex());
+            default:
+                throw new IOException("Unknown value tag " + tag);
+        }
+    }
+
+    /**
+     * Read a reference to a string, adding the string to the table if it is new.
+     *
+     * @return the index of the string
+     */
+    private int readStringIndex() throws IOException {
+        int index = readVarint();
+        if (index < strings.size()) {
+            return index;
+        }
+        if (index > strings.size()) {
+            throw new IOException("String " + index + " is not in the table");
+        }
+        int length = readVarint();
+        String string;
+        if (length <= limit - position) {
+            string = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+        } else {
+            // Copied a buffer at a time, so a corrupt length runs into the end of the stream before using much memory
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            int left = length;
+            while (left > 0) {
+                if (position == limit) {
+                    fill();
+                }
+                int chunk = Math.min(left, limit - position);
+                bytes.write(buffer, position, chunk);
+                position += chunk;
+                left -= chunk;
+            }
+            string = bytes.toString(StandardCharsets.UTF_8);
+        }
+        strings.add(string);
+        symbols.add(null);
+        return index;
+    }
+
+    private int readByte() throws IOException {
+        if (position == limit) {
+            fill();
+        }
+        return buffer[position++] & BYTE_MASK;
+    }
+
+    private void fill() throws IOException {
+        int read = in.read(buffer);
+        if (read <= 0) {
+            throw new EOFException("The .loxc stream ends early");
+        }
+        position = 0;
+        limit = read;
+    }
+
+    // Counts, tags and indices are never negative
+    private int readVarint() throws IOException {
+        int value = readUnsignedVarint();
+        if (value < 0) {
+            throw new IOException("Varint is out of range");
+        }
+        return value;
+    }
+
+    private int readSignedVarint() throws IOException {
+        int value = readUnsignedVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    // The zigzag encoding of a negative number is an unsigned value with the top bit set
+    private int readUnsignedVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += VARINT_BITS) {
+            int b = readByte();
+            value |= (b & VARINT_MASK) << shift;
+            if ((b & VARINT_MORE) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint is too long");
+    }
+}
@@ -0,0 +1,392 @@
+package com.jlox.build;
+
+import com.jlox.expression.*;
+import com.jlox.scanner.Token;
+import com.jlox.statement.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes statements to a stream in the .loxc format, one top-level statement at a time, for {@link LoxcReader} to
+ * read back.
+ *
+ * <p>A .loxc stream is the bytes "LOXC" and the format version, the top-level statements, and a 0 byte. A node is its
+ * tag from {@link StatementTag} or {@link ExpressionTag}, or 0 for a missing node such as an absent else branch,
+ * followed by its fields in the order of its constructor. Counts, tags and indices are unsigned varints: 7 bits a byte,
+ * low bits first, the high bit set on every byte but the last. A token is its type, its lexeme and its offset, written
+ * as the zigzag varint of the difference from the offset of the token written before it, which is almost always
+ * small. Strings, lexemes and string literals alike, go through a table built as the stream is written: a string is
+ * its index in the table, and an index one past the end of the table adds the string that follows, as a byte count
+ * and UTF-8 bytes. The annotations later passes add to nodes aren't written, and bodies of functions that haven't been
+ * parsed yet are parsed to be written.
+ *
+ * <p>Nodes are written and read by recursion, so nodes nested deeper than {@link #MAX_DEPTH} are refused with an
+ * {@link IOException} on both sides instead of overflowing the stack. Only generated programs nest that deep.
+ */
+public final class LoxcWriter {
+
+    // Bump whenever the encoding changes, or the tags or TokenType constants are reordered
+    public static final int VERSION = 1;
+    static final byte[] MAGIC = "LOXC".getBytes(StandardCharsets.US_ASCII);
+
+    // Tags of the values of literals
+    static final int NIL = 0;
+    static final int FALSE = 1;
+    static final int TRUE = 2;
+    static final int INTEGER = 3;
+    static final int DOUBLE = 4;
+    static final int STRING = 5;
+
+    static final int NONE = 0;
+    // Each level takes a few frames, which stays well inside the stack of any thread that writes or reads a stream
+    static final int MAX_DEPTH = 1000;
+    static final int VARINT_BITS = 7;
+    static final int VARINT_MORE = 0x80;
+    static final int VARINT_MASK = 0x7F;
+    private static final int BUFFER_SIZE = 8192;
+    private static final int BYTE_BITS = 8;
+    private static final int BYTE_MASK = 0xFF;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int count;
+    private final Map<String, Integer> strings = new HashMap<>();
+    private int lastOffset;
+    private final NodeWriter nodes = new NodeWriter();
+
+    /**
+     * Start a stream, writing its header.
+     *
+     * @param out the stream to write to, which is flushed but not closed by {@link #finish()}
+     */
+    public LoxcWriter(OutputStream out) throws IOException {
+        this.out = out;
+        out.write(MAGIC);
+        writeVarint(VERSION);
+    }
+
+    /**
+     * Write a top-level statement.
+     */
+    public void write(Statement statement) throws IOException {
+        if (statement == null) {
+            throw new IllegalArgumentException("A top-level statement can't be missing");
+        }
+        try {
+            nodes.node(statement);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Write top-level statements in order.
+     */
+    public void writeAll(List<Statement> statements) throws IOException {
+        for (Statement statement : statements) {
+            write(statement);
+        }
+    }
+
+    /**
+     * End the stream and flush everything written to the underlying stream.
+     */
+    public void finish() throws IOException {
+        writeByte(NONE);
+        out.write(buffer, 0, count);
+        count = 0;
+        out.flush();
+    }
+
+    private void writeByte(int value) throws IOException {
+        if (count == buffer.length) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+        buffer[count++] = (byte) value;
+    }
+
+    private void writeVarint(int value) throws IOException {
+        int rest = value;
+        while ((rest & ~VARINT_MASK) != 0) {
+            writeByte((rest & VARINT_MASK) | VARINT_MORE);
+            rest >>>= VARINT_BITS;
+        }
+        writeByte(rest);
+    }
+
+    // Zigzag puts small negative numbers next to small positive ones, so both make short varints
+    private void writeSignedVarint(int value) throws IOException {
+        writeVarint((value << 1) ^ (value >> (Integer.SIZE - 1)));
+    }
+
+    private void writeString(String string) throws IOException {
+        Integer index = strings.putIfAbsent(string, strings.size());
+        if (index != null) {
+            writeVarint(index);
+            return;
+        }
+        writeVarint(strings.size() - 1);
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length);
+        for (byte b : bytes) {
+            writeByte(b);
+        }
+    }
+
+    private void writeToken(Token token) throws IOException {
+        writeVarint(token.type.ordinal());
+        writeString(token.lexeme);
+        writeSignedVarint(token.offset - lastOffset);
+        lastOffset = token.offset;
+    }
+
+    private void writeValue(Object value) throws IOException {
+        if (value == null) {
+            writeByte(NIL);
+        } else if (value instanceof Boolean) {
+            writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Integer) {
+            writeByte(INTEGER);
+            writeSignedVarint((Integer) value);
+        } else if (value instanceof Double) {
+            writeByte(DOUBLE);
+            long bits = Double.doubleToRawLongBits((Double) value);
+            for (int shift = Long.SIZE - BYTE_BITS; shift >= 0; shift -= BYTE_BITS) {
+                writeByte((int) (bits >>> shift) & BYTE_MASK);
+            }
+        } else {
+            writeByte(STRING);
+            writeString((String) value);
+        }
+    }
+
+    /**
+     * Writes the nodes of a tree. The visitor methods can't throw an IOException, so it is wrapped on the way out of
+     * them and unwrapped by {@link #write(Statement)}.
+     */
+    private final class NodeWriter implements StatementVisitor<Void>, ExpressionVisitor<Void> {
+
+        private int depth;
+
+        private void node(Statement statement) {
+            if (statement == null) {
+                tag(NONE);
+                return;
+            }
+            enter();
+            try {
+                statement.accept(this);
+            } finally {
+                depth--;
+            }
+        }
+
+        private void node(Expression expression) {
+            if (expression == null) {
+                tag(NONE);
+                return;
+            }
+            enter();
+            try {
+                expression.accept(this);
+            } finally {
+                depth--;
+            }
+        }
+
+        private void enter() {
+            if (depth == MAX_DEPTH) {
+                throw new UncheckedIOException(new IOException("Nodes are nested deeper than " + MAX_DEPTH));
+            }
+            depth++;
+        }
+
+        private void statements(List<Statement> statements) {
+            size(statements.size());
+            for (Statement statement : statements) {
+                node(statement);
+            }
+        }
+
+        private void tag(int tag) {
+            try {
+                writeByte(tag);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void size(int size) {
+            try {
+                writeVarint(size);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void token(Token token) {
+            try {
+                writeToken(token);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public Void visitPrintStatement(PrintStatement printstatement) {
+            tag(StatementTag.PRINT_STATEMENT);
+            node(printstatement.expr);
+            return null;
+        }
+
+        @Override
+        public Void visitExprStatement(ExprStatement exprstatement) {
+            tag(StatementTag.EXPR_STATEMENT);
+            node(exprstatement.expr);
+            return null;
+        }
+
+        @Override
+        public Void visitVarDeclare(VarDeclare vardeclare) {
+            tag(StatementTag.VAR_DECLARE);
+            token(vardeclare.name);
+            node(vardeclare.init);
+            return null;
+        }
+
+        @Override
+        public Void visitVarAssign(VarAssign varassign) {
+            tag(StatementTag.VAR_ASSIGN);
+            token(varassign.name);
+            node(varassign.newVal);
+            return null;
+        }
+
+        @Override
+        public Void visitBlock(Block block) {
+            tag(StatementTag.BLOCK);
+            statements(block.stmts);
+            return null;
+        }
+
+        @Override
+        public Void visitIfStatement(IfStatement ifstatement) {
+            tag(StatementTag.IF_STATEMENT);
+            node(ifstatement.condition);
+            node(ifstatement.thenBranch);
+            node(ifstatement.elseBranch);
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStatement(WhileStatement whilestatement) {
+            tag(StatementTag.WHILE_STATEMENT);
+            node(whilestatement.condition);
+            node(whilestatement.body);
+            return null;
+        }
+
+        @Override
+        public Void visitBreakStatement(BreakStatement breakstatement) {
+            tag(StatementTag.BREAK_STATEMENT);
+            return null;
+        }
+
+        @Override
+        public Void visitFunDeclare(FunDeclare fundeclare) {
+            tag(StatementTag.FUN_DECLARE);
+            token(fundeclare.name);
+            size(fundeclare.params.size());
+            for (Token param : fundeclare.params) {
+                token(param);
+            }
+            node(fundeclare.body());
+            return null;
+        }
+
+        @Override
+        public Void visitReturnStatement(ReturnStatement returnstatement) {
+            tag(StatementTag.RETURN_STATEMENT);
+            node(returnstatement.value);
+            return null;
+        }
+
+        @Override
+        public Void visitBinary(Binary binary) {
+            tag(ExpressionTag.BINARY);
+            node(binary.left);
+            token(binary.operator);
+            node(binary.right);
+            return null;
+        }
+
+        @Override
+        public Void visitLogical(Logical logical) {
+            tag(ExpressionTag.LOGICAL);
+            node(logical.left);
+            token(logical.operator);
+            node(logical.right);
+            return null;
+        }
+
+        @Override
+        public Void visitGrouping(Grouping grouping) {
+            tag(ExpressionTag.GROUPING);
+            node(grouping.expr);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteral(Literal literal) {
+            tag(ExpressionTag.LITERAL);
+            try {
+                writeValue(literal.value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitUnary(Unary unary) {
+            tag(ExpressionTag.UNARY);
+            token(unary.operator);
+            node(unary.right);
+            return null;
+        }
+
+        @Override
+        public Void visitTernary(Ternary ternary) {
+            tag(ExpressionTag.TERNARY);
+            node(ternary.condition);
+            node(ternary.left);
+            node(ternary.right);
+            return null;
+        }
+
+        @Override
+        public Void visitVariable(Variable variable) {
+            tag(ExpressionTag.VARIABLE);
+            token(variable.name);
+            return null;
+        }
+
+        @Override
+        public Void visitCall(Call call) {
+            tag(ExpressionTag.CALL);
+            node(call.callee);
+            size(call.arguments.size());
+            for (Expression argument : call.arguments) {
+                node(argument);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.jlox.build;
+
+import com.jlox.statement.Statement;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps parsed programs in a directory on disk, so a source that has been parsed before can be loaded without scanning
+ * or parsing it. Each program is a file named after a SHA-256 hash of the build and the source text, so an edited
+ * source or a new build of the interpreter simply misses. The build is identified by a hash of the jar or classes
+ * directory the interpreter was loaded from, so a change to any part of it, the scanner and parser as much as the
+ * .loxc encoding, misses without anyone having to remember to bump a version.
+ *
+ * <p>A file holds a header with the version and the full hash, the statements as a .loxc stream written by
+ * {@link LoxcWriter} and a CRC32 of them. A file that is missing, from another version, truncated or corrupt is a
+ * miss, and the caller is expected to parse the source and store it again. Files are written to a temporary file
+ * first and moved into place, so readers never see half a file and several processes can share a directory.
+ */
+public class ProgramCache {
+
+    // Bump whenever the header of cached files changes, changes to the code are covered by BUILD
+    static final int VERSION = 2;
+    private static final byte[] BUILD = buildId();
+    private static final int MAGIC = 0x4C4F5841;
+    private static final String EXTENSION = ".loxc";
+    private static final int HASH_SIZE = 32;
+    private static final int HEADER_SIZE = Integer.BYTES * 3 + HASH_SIZE;
+
+    private final Path directory;
+    private final byte[] build;
+
+    /**
+     * Create a cache. The directory is made the first time a program is stored.
+     *
+     * @param directory the directory to keep programs in
+     */
+    public ProgramCache(Path directory) {
+        this(directory, BUILD);
+    }
+
+    ProgramCache(Path directory, byte[] build) {
+        this.directory = directory;
+        this.build = build.clone();
+    }
+
+    /**
+     * Load the statements of a source stored before.
+     *
+     * @param text the source text
+     * @return the statements, or null if the source isn't in the cache or its file can't be used
+     */
+    public List<Statement> load(String text) {
+        byte[] hash = hash(text);
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(pathOf(hash));
+        } catch (IOException e) {
+            return null;
+        }
+        if (bytes.length < HEADER_SIZE + Long.BYTES) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.wrap(bytes);
+        byte[] stored = new byte[HASH_SIZE];
+        if (header.getInt() != MAGIC || header.getInt() != VERSION || !Arrays.equals(hash, readHash(header, stored))
+                || header.getInt() != bytes.length - HEADER_SIZE - Long.BYTES) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE - Long.BYTES);
+        if (ByteBuffer.wrap(bytes, bytes.length - Long.BYTES, Long.BYTES).getLong() != crc.getValue()) {
+            return null;
+        }
+        try {
+            return new LoxcReader(new ByteArrayInputStream(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE - Long.BYTES))
+                    .readAll();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Store the statements of a source, replacing any stored before. The cache only saves work, so failing to write
+     * the file isn't an error.
+     *
+     * @param text       the source text
+     * @param statements the statements parsed from it, without errors
+     */
+    public void store(String text, List<Statement> statements) {
+        byte[] hash = hash(text);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            bytes.write(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).put(hash).array());
+            // The length of the statements is filled in once they are written
+            LoxcWriter writer = new LoxcWriter(bytes);
+            writer.writeAll(statements);
+            writer.finish();
+            CRC32 crc = new CRC32();
+            byte[] written = bytes.toByteArray();
+            crc.update(written, HEADER_SIZE, written.length - HEADER_SIZE);
+            ByteBuffer.wrap(written).putInt(HEADER_SIZE - Integer.BYTES, written.length - HEADER_SIZE);
+            byte[] file = Arrays.copyOf(written, written.length + Long.BYTES);
+            ByteBuffer.wrap(file).putLong(written.length, crc.getValue());
+            write(pathOf(hash), file);
+        } catch (IOException e) {
+            // Left for the next run to try again
+        }
+    }
+
+    private void write(Path path, byte[] file) throws IOException {
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, "program", ".tmp");
+        try {
+            Files.write(temporary, file);
+            try {
+                Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private Path pathOf(byte[] hash) {
+        StringBuilder name = new StringBuilder(hash.length * 2 + EXTENSION.length());
+        for (byte b : hash) {
+            name.append(String.format("%02x", b));
+        }
+        return directory.resolve(name.append(EXTENSION).toString());
+    }
+
+    private static byte[] readHash(ByteBuffer header, byte[] into) {
+        header.get(into);
+        return into;
+    }
+
+    private byte[] hash(String text) {
+        MessageDigest digest = sha256();
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(VERSION).array());
+        digest.update(build);
+        return digest.digest(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // A build whose code can't be read, say under a class loader that doesn't load from files, can't be told apart from
+    // the next one, so it gets an id of its own and only reads the files it stored itself
+    private static byte[] buildId() {
+        try {
+            CodeSource code = ProgramCache.class.getProtectionDomain().getCodeSource();
+            if (code == null || code.getLocation() == null) {
+                return randomId();
+            }
+            return hashBuild(Path.of(code.getLocation().toURI()));
+        } catch (IOException | URISyntaxException | IllegalArgumentException | SecurityException e) {
+            return randomId();
+        }
+    }
+
+    /**
+     * Hash the code of a build: a jar, or every file of a classes directory with its path.
+     */
+    static byte[] hashBuild(Path location) throws IOException {
+        MessageDigest digest = sha256();
+        if (!Files.isDirectory(location)) {
+            digest.update(Files.readAllBytes(location));
+            return digest.digest();
+        }
+        // Sorted, so the hash doesn't depend on the order the file system lists files in
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(location)) {
+            files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            digest.update(location.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+            digest.update(Files.readAllBytes(file));
+        }
+        return digest.digest();
+    }
+
+    private static byte[] randomId() {
+        byte[] id = new byte[HASH_SIZE];
+        new SecureRandom().nextBytes(id);
+        return id;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,28 +1,36 @@
 package com.jlox.error;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
- * Collects all the errors it recieves.
+ * Collects all the errors it recieves. It is safe to report to from several threads.
  */
 public class CollectorHandler implements IErrorHandler {
 
     private final ArrayList<LoxError> reportedLoxErrors = new ArrayList<>();
 
     @Override
-    public void error(String message, String code) {
+    public synchronized void error(String message, String code) {
         LoxError err = new LoxError(message, code, -1);
         reportedLoxErrors.add(err);
 
     }
 
     @Override
-    public void error(LoxError loxError) {
+    public synchronized void error(LoxError loxError) {
         reportedLoxErrors.add(loxError);
     }
 
     @Override
-    public boolean hasError() {
+    public synchronized boolean hasError() {
         return !reportedLoxErrors.isEmpty();
     }
+
+    /**
+     * Get the errors reported so far, in the order they were reported.
+     */
+    public synchronized List<LoxError> getErrors() {
+        return List.copyOf(reportedLoxErrors);
+    }
 }
@@ -6,6 +6,15 @@ public class LoxError extends RuntimeException {
     private final int offset;
 
     public LoxError(String message, String code, int offset) {
+        this(message, code, offset, true);
+    }
+
+    /**
+     * Create an error that may skip capturing a stack trace. Errors that are reported to the user and recovered from
+     * don't need one, and filling it in is the most expensive part of throwing.
+     */
+    protected LoxError(String message, String code, int offset, boolean writableStackTrace) {
+        super(null, null, false, writableStackTrace);
         this.code = code;
         this.message = message;
         this.offset = offset;
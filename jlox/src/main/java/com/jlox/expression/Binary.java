@@ -8,6 +8,7 @@ public class Binary extends Expression {
     public final Expression left;
     public final Token operator;
     public final Expression right;
+    public Object node;
 
     public Binary(Expression left, Token operator, Expression right) {
         this.left = left;
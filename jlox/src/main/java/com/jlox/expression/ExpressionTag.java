@@ -0,0 +1,16 @@
+package com.jlox.expression;
+
+
+public final class ExpressionTag {
+    public static final int BINARY = 1;
+    public static final int LOGICAL = 2;
+    public static final int GROUPING = 3;
+    public static final int LITERAL = 4;
+    public static final int UNARY = 5;
+    public static final int TERNARY = 6;
+    public static final int VARIABLE = 7;
+    public static final int CALL = 8;
+
+    private ExpressionTag() {
+    }
+}
@@ -7,6 +7,7 @@ import com.jlox.scanner.Token;
 public class Unary extends Expression {
     public final Token operator;
     public final Expression right;
+    public Object node;
 
     public Unary(Token operator, Expression right) {
         this.operator = operator;
@@ -6,6 +6,8 @@ import com.jlox.scanner.Token;
 
 public class Variable extends Expression {
     public final Token name;
+    public int depth = -1;
+    public int slot = -1;
 
     public Variable(Token name) {
         this.name = name;
@@ -0,0 +1,217 @@
+package com.jlox.interpreter;
+
+import com.jlox.arena.ArenaVisitor;
+import com.jlox.arena.AstArena;
+import com.jlox.scanner.TokenType;
+
+import java.util.ArrayList;
+
+/**
+ * Runs a program held in an {@link AstArena}, the way {@link StatementEvaluator} and {@link ExpressionEvaluator} run
+ * the node classes. Statements return their {@link Completion} and expressions their value. Variables are read by the
+ * addresses an {@link ArenaResolver} gave them, or by name when it didn't.
+ */
+public class ArenaEvaluator implements ArenaVisitor<Object> {
+
+    private final Interpreter interpreter;
+    private final AstArena arena;
+
+    public ArenaEvaluator(Interpreter interpreter, AstArena arena) {
+        this.interpreter = interpreter;
+        this.arena = arena;
+    }
+
+    /**
+     * Run the top-level statements of the program. A return outside of any function ends it.
+     */
+    public void run() {
+        executeList(arena.roots());
+    }
+
+    Completion execute(int statement) {
+        return (Completion) arena.accept(statement, this);
+    }
+
+    private Completion executeList(int list) {
+        for (int i = 0; i < arena.count(list); i++) {
+            Completion completion = execute(arena.item(list, i));
+            if (completion != Completion.NORMAL) {
+                return completion;
+            }
+        }
+        return Completion.NORMAL;
+    }
+
+    private Object evaluate(int expression) {
+        return arena.accept(expression, this);
+    }
+
+    @Override
+    public Object visitPrintStatement(int printstatement) {
+        System.out.println(evaluate(arena.first(printstatement)));
+        return Completion.NORMAL;
+    }
+
+    @Override
+    public Object visitExprStatement(int exprstatement) {
+        evaluate(arena.first(exprstatement));
+        return Completion.NORMAL;
+    }
+
+    @Override
+    public Object visitVarDeclare(int vardeclare) {
+        define(vardeclare, evaluate(arena.first(vardeclare)));
+        return Completion.NORMAL;
+    }
+
+    @Override
+    public Object visitVarAssign(int varassign) {
+        Object value = evaluate(arena.first(varassign));
+        if (arena.depth(varassign) < 0) {
+            interpreter.getScope().changeValue(arena.tokenSymbol(arena.token(varassign)), value);
+        } else {
+            interpreter.getScope().changeAt(arena.depth(varassign), arena.slot(varassign), value);
+        }
+        return Completion.NORMAL;
+    }
+
+    @Override
+    public Object visitBlock(int block) {
+        interpreter.nestScope(arena.slot(block));
+        try {
+            return executeList(arena.first(block));
+        } finally {
+            interpreter.unnestScope();
+        }
+    }
+
+    @Override
+    public Object visitIfStatement(int ifstatement) {
+        if (Boolean.TRUE.equals(evaluate(arena.first(ifstatement)))) {
+            return execute(arena.second(ifstatement));
+        } else if (arena.third(ifstatement) != AstArena.NONE) {
+            return execute(arena.third(ifstatement));
+        }
+        return Completion.NORMAL;
+    }
+
+    @Override
+    public Object visitWhileStatement(int whilestatement) {
+        int condition = arena.first(whilestatement);
+        while (condition == AstArena.NONE || Boolean.TRUE.equals(evaluate(condition))) {
+            Completion completion = execute(arena.second(whilestatement));
+            if (completion == Completion.BREAK) {
+                break;
+            } else if (completion == Completion.RETURN) {
+                return completion;
+            }
+        }
+        return Completion.NORMAL;
+    }
+
+    @Override
+    public Object visitBreakStatement(int breakstatement) {
+        return Completion.BREAK;
+    }
+
+    @Override
+    public Object visitFunDeclare(int fundeclare) {
+        define(fundeclare, new ArenaFunction(this, arena, fundeclare, interpreter.getScope()));
+        return Completion.NORMAL;
+    }
+
+    @Override
+    public Object visitReturnStatement(int returnstatement) {
+        interpreter.setReturnValue(evaluate(arena.first(returnstatement)));
+        return Completion.RETURN;
+    }
+
+    @Override
+    public Object visitBinary(int binary) {
+        Object left = evaluate(arena.first(binary));
+        Object right = evaluate(arena.second(binary));
+        int operator = arena.token(binary);
+        return Operations.binary(arena.tokenType(operator), arena.tokenLexeme(operator), left, right);
+    }
+
+    // Logical operator with short-circuiting
+    @Override
+    public Object visitLogical(int logical) {
+        Object left = evaluate(arena.first(logical));
+        boolean truthy = Operations.isTruthy(left);
+        TokenType operator = arena.tokenType(arena.token(logical));
+        if (operator == TokenType.OR ? truthy : !truthy) {
+            return left;
+        }
+        return evaluate(arena.second(logical));
+    }
+
+    @Override
+    public Object visitGrouping(int grouping) {
+        return evaluate(arena.first(grouping));
+    }
+
+    @Override
+    public Object visitLiteral(int literal) {
+        return arena.literal(literal);
+    }
+
+    @Override
+    public Object visitUnary(int unary) {
+        int operator = arena.token(unary);
+        switch (arena.tokenType(operator)) {
+            case BANG:
+                return !Operations.isTruthy(evaluate(arena.first(unary)));
+            case MINUS:
+                return Operations.negate(evaluate(arena.first(unary)));
+            default:
+                throw new RuntimeError(String.format("Unknown operator '%s'", arena.tokenLexeme(operator)));
+        }
+    }
+
+    @Override
+    public Object visitTernary(int ternary) {
+        if (Operations.isTruthy(evaluate(arena.first(ternary)))) {
+            return evaluate(arena.second(ternary));
+        }
+        return evaluate(arena.third(ternary));
+    }
+
+    @Override
+    public Object visitVariable(int variable) {
+        if (arena.depth(variable) < 0) {
+            return interpreter.getScope().getValue(arena.tokenSymbol(arena.token(variable)));
+        }
+        return interpreter.getScope().getAt(arena.depth(variable), arena.slot(variable));
+    }
+
+    @Override
+    public Object visitCall(int call) {
+        Object callee = evaluate(arena.first(call));
+        if (!(callee instanceof LoxCallable)) {
+            throw new RuntimeError(callee.toString() + "is not callable");
+        }
+        LoxCallable function = (LoxCallable) callee;
+
+        int list = arena.second(call);
+        ArrayList<Object> arguments = new ArrayList<>(arena.count(list));
+        for (int i = 0; i < arena.count(list); i++) {
+            arguments.add(evaluate(arena.item(list, i)));
+        }
+
+        if (arguments.size() != function.arity()) {
+            throw new RuntimeError(
+                    String.format("Expected %d arguments but got %d.", function.arity(), arguments.size()));
+        }
+        return function.call(interpreter, arguments);
+    }
+
+    // Globals are never resolved and are defined by name
+    private void define(int node, Object value) {
+        if (arena.slot(node) < 0) {
+            interpreter.getScope().defineVariable(arena.tokenSymbol(arena.token(node)), value);
+        } else {
+            interpreter.getScope().defineAt(arena.slot(node), value);
+        }
+    }
+}
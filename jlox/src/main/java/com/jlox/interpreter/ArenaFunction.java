@@ -0,0 +1,62 @@
+package com.jlox.interpreter;
+
+import com.jlox.arena.AstArena;
+
+import java.util.List;
+
+/**
+ * A function declared by a program held in an {@link AstArena}, run by the {@link ArenaEvaluator} that declared it.
+ */
+public class ArenaFunction implements LoxCallable {
+
+    private final ArenaEvaluator evaluator;
+    private final AstArena arena;
+    private final int declaration;
+    private final Environment closure;
+
+    ArenaFunction(ArenaEvaluator evaluator, AstArena arena, int declaration, Environment closure) {
+        this.evaluator = evaluator;
+        this.arena = arena;
+        this.declaration = declaration;
+        this.closure = closure;
+    }
+
+    @Override
+    public int arity() {
+        return arena.count(arena.second(declaration));
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        Environment previous = interpreter.getScope();
+        int body = arena.first(declaration);
+        // Parameters live in their own scope, enclosed by the scope the function was declared in
+        Environment environment;
+        if (arena.slot(body) < 0) {
+            environment = new Environment(closure);
+            int params = arena.second(declaration);
+            for (int i = 0; i < arena.count(params); i++) {
+                environment.defineVariable(arena.tokenSymbol(arena.item(params, i)), arguments.get(i));
+            }
+        } else {
+            environment = new Environment(closure, arguments.size());
+            for (int i = 0; i < arguments.size(); i++) {
+                environment.defineAt(i, arguments.get(i));
+            }
+        }
+        interpreter.setScope(environment);
+        try {
+            if (evaluator.execute(body) == Completion.RETURN) {
+                return interpreter.takeReturnValue();
+            }
+        } finally {
+            interpreter.setScope(previous);
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + arena.tokenLexeme(arena.token(declaration)) + ">";
+    }
+}
@@ -0,0 +1,217 @@
+package com.jlox.interpreter;
+
+import com.jlox.arena.ArenaVisitor;
+import com.jlox.arena.AstArena;
+import com.jlox.scanner.Symbol;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link Resolver} for programs held in an {@link AstArena}. It gives variables the same (depth, slot) addresses,
+ * stored in the depth and slot of the arena's nodes, and leaves globals at -1.
+ */
+public class ArenaResolver implements ArenaVisitor<Void> {
+
+    private final AstArena arena;
+    private final List<Map<Symbol, Integer>> scopes = new ArrayList<>();
+
+    public ArenaResolver(AstArena arena) {
+        this.arena = arena;
+    }
+
+    /**
+     * Resolve every variable in the program. Resolving the same arena more than once is allowed.
+     */
+    public void resolve() {
+        resolveList(arena.roots());
+    }
+
+    private void resolve(int node) {
+        if (node != AstArena.NONE) {
+            arena.accept(node, this);
+        }
+    }
+
+    private void resolveList(int list) {
+        for (int i = 0; i < arena.count(list); i++) {
+            resolve(arena.item(list, i));
+        }
+    }
+
+    private void beginScope() {
+        scopes.add(new HashMap<>());
+    }
+
+    private int endScope() {
+        return scopes.remove(scopes.size() - 1).size();
+    }
+
+    /**
+     * Add a variable to the innermost scope.
+     *
+     * @return the slot given to the variable or -1 if it is a global
+     */
+    private int declare(int token) {
+        if (scopes.isEmpty()) {
+            return -1;
+        }
+        Map<Symbol, Integer> scope = scopes.get(scopes.size() - 1);
+        Symbol name = arena.tokenSymbol(token);
+        if (scope.containsKey(name)) {
+            throw new ResolveLoxError(name + " has already been declared in this scope", arena.tokenOffset(token));
+        }
+        int slot = scope.size();
+        scope.put(name, slot);
+        return slot;
+    }
+
+    // Give a variable or an assignment the address of the innermost declaration of its name
+    private void address(int node) {
+        Symbol name = arena.tokenSymbol(arena.token(node));
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Integer slot = scopes.get(i).get(name);
+            if (slot != null) {
+                arena.setDepth(node, scopes.size() - 1 - i);
+                arena.setSlot(node, slot);
+                return;
+            }
+        }
+        arena.setDepth(node, -1);
+        arena.setSlot(node, -1);
+    }
+
+    @Override
+    public Void visitPrintStatement(int printstatement) {
+        resolve(arena.first(printstatement));
+        return null;
+    }
+
+    @Override
+    public Void visitExprStatement(int exprstatement) {
+        resolve(arena.first(exprstatement));
+        return null;
+    }
+
+    // As in Resolver, the initializer sees the enclosing variable of the same name
+    @Override
+    public Void visitVarDeclare(int vardeclare) {
+        resolve(arena.first(vardeclare));
+        arena.setSlot(vardeclare, declare(arena.token(vardeclare)));
+        return null;
+    }
+
+    @Override
+    public Void visitVarAssign(int varassign) {
+        resolve(arena.first(varassign));
+        address(varassign);
+        return null;
+    }
+
+    @Override
+    public Void visitBlock(int block) {
+        beginScope();
+        try {
+            resolveList(arena.first(block));
+        } finally {
+            arena.setSlot(block, endScope());
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitIfStatement(int ifstatement) {
+        resolve(arena.first(ifstatement));
+        resolve(arena.second(ifstatement));
+        resolve(arena.third(ifstatement));
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStatement(int whilestatement) {
+        resolve(arena.first(whilestatement));
+        resolve(arena.second(whilestatement));
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStatement(int breakstatement) {
+        return null;
+    }
+
+    @Override
+    public Void visitFunDeclare(int fundeclare) {
+        arena.setSlot(fundeclare, declare(arena.token(fundeclare)));
+        beginScope();
+        try {
+            int params = arena.second(fundeclare);
+            for (int i = 0; i < arena.count(params); i++) {
+                declare(arena.item(params, i));
+            }
+            resolve(arena.first(fundeclare));
+        } finally {
+            endScope();
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStatement(int returnstatement) {
+        resolve(arena.first(returnstatement));
+        return null;
+    }
+
+    @Override
+    public Void visitBinary(int binary) {
+        resolve(arena.first(binary));
+        resolve(arena.second(binary));
+        return null;
+    }
+
+    @Override
+    public Void visitLogical(int logical) {
+        resolve(arena.first(logical));
+        resolve(arena.second(logical));
+        return null;
+    }
+
+    @Override
+    public Void visitGrouping(int grouping) {
+        resolve(arena.first(grouping));
+        return null;
+    }
+
+    @Override
+    public Void visitLiteral(int literal) {
+        return null;
+    }
+
+    @Override
+    public Void visitUnary(int unary) {
+        resolve(arena.first(unary));
+        return null;
+    }
+
+    @Override
+    public Void visitTernary(int ternary) {
+        resolve(arena.first(ternary));
+        resolve(arena.second(ternary));
+        resolve(arena.third(ternary));
+        return null;
+    }
+
+    @Override
+    public Void visitVariable(int variable) {
+        address(variable);
+        return null;
+    }
+
+    @Override
+    public Void visitCall(int call) {
+        resolve(arena.first(call));
+        resolveList(arena.second(call));
+        return null;
+    }
+}
@@ -0,0 +1,172 @@
+package com.jlox.interpreter;
+
+import com.jlox.expression.Binary;
+import com.jlox.scanner.TokenType;
+
+/**
+ * The operation a {@link Binary} node performs when run by the {@link SpecializingEvaluator}, which keeps it in the
+ * node's {@link Binary#node} slot. A node starts out unspecialized; the first time it runs it rewrites itself to a
+ * specialization for the operand types it sees, such as int-int addition or double comparison. Specializations guard
+ * on those types and rewrite the node to the generic operation, for good, the first time the guard fails.
+ */
+abstract class BinaryNode {
+
+    // The generic operation, used when no specialization applies or after a guard failed
+    static final BinaryNode GENERIC = new BinaryNode() {
+        @Override
+        Object execute(Binary binary, Object left, Object right) {
+            return Operations.binary(binary.operator.type, binary.operator.lexeme, left, right);
+        }
+    };
+
+    private static final BinaryNode STRING_CONCAT = new BinaryNode() {
+        @Override
+        Object execute(Binary binary, Object left, Object right) {
+            if (left instanceof String || right instanceof String) {
+                return left.toString() + right.toString();
+            }
+            return generalize(binary, left, right);
+        }
+    };
+
+    /**
+     * Apply the operator to operands that have already been evaluated.
+     */
+    abstract Object execute(Binary binary, Object left, Object right);
+
+    /**
+     * Pick the node for the operands a binary expression sees the first time it runs.
+     */
+    static BinaryNode specialize(TokenType operator, Object left, Object right) {
+        if (operator == TokenType.PLUS && (left instanceof String || right instanceof String)) {
+            return STRING_CONCAT;
+        }
+        if (left instanceof Integer && right instanceof Integer && IntNode.handles(operator)) {
+            return new IntNode(operator);
+        }
+        if (left instanceof Double && right instanceof Double && DoubleNode.handles(operator)) {
+            return new DoubleNode(operator);
+        }
+        return GENERIC;
+    }
+
+    /**
+     * Called when a guard fails. The node is rewritten to the generic operation, which then runs.
+     */
+    static Object generalize(Binary binary, Object left, Object right) {
+        binary.node = GENERIC;
+        return GENERIC.execute(binary, left, right);
+    }
+
+    /**
+     * Applies an operator to two ints, once it has checked that both operands are ints. The operator is a final field
+     * so that the arithmetic is inlined into the node rather than reached through another call.
+     */
+    private static final class IntNode extends BinaryNode {
+        private final TokenType operator;
+
+        IntNode(TokenType operator) {
+            this.operator = operator;
+        }
+
+        // Division is left generic so that division by zero keeps its error
+        static boolean handles(TokenType operator) {
+            switch (operator) {
+                case PLUS:
+                case MINUS:
+                case STAR:
+                case LESS:
+                case LESS_EQUAL:
+                case GREATER:
+                case GREATER_EQUAL:
+                case EQUAL_EQUAL:
+                case BANG_EQUAL:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        @Override
+        Object execute(Binary binary, Object left, Object right) {
+            if (!(left instanceof Integer && right instanceof Integer)) {
+                return generalize(binary, left, right);
+            }
+            int l = (Integer) left;
+            int r = (Integer) right;
+            switch (operator) {
+                case PLUS:
+                    return l + r;
+                case MINUS:
+                    return l - r;
+                case STAR:
+                    return l * r;
+                case LESS:
+                    return l < r;
+                case LESS_EQUAL:
+                    return l <= r;
+                case GREATER:
+                    return l > r;
+                case GREATER_EQUAL:
+                    return l >= r;
+                case EQUAL_EQUAL:
+                    return l == r;
+                default:
+                    return l != r;
+            }
+        }
+    }
+
+    /**
+     * Applies an operator to two doubles, once it has checked that both operands are doubles, the same way as
+     * {@link IntNode}.
+     */
+    private static final class DoubleNode extends BinaryNode {
+        private final TokenType operator;
+
+        DoubleNode(TokenType operator) {
+            this.operator = operator;
+        }
+
+        // Double equality follows Double.equals, which the generic operation already does
+        static boolean handles(TokenType operator) {
+            switch (operator) {
+                case PLUS:
+                case MINUS:
+                case STAR:
+                case LESS:
+                case LESS_EQUAL:
+                case GREATER:
+                case GREATER_EQUAL:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        @Override
+        Object execute(Binary binary, Object left, Object right) {
+            if (!(left instanceof Double && right instanceof Double)) {
+                return generalize(binary, left, right);
+            }
+            double l = (Double) left;
+            double r = (Double) right;
+            switch (operator) {
+                case PLUS:
+                    return l + r;
+                case MINUS:
+                    return l - r;
+                case STAR:
+                    return l * r;
+                case LESS:
+                    return l < r;
+                case LESS_EQUAL:
+                    return l <= r;
+                case GREATER:
+                    return l > r;
+                default:
+                    return l >= r;
+            }
+        }
+    }
+}
@@ -1,7 +0,0 @@
-package com.jlox.interpreter;
-
-public class BreakException extends RuntimeException {
-    public BreakException() {
-        super(null, null, false, false);
-    }
-}
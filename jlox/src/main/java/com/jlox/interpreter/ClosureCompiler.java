@@ -0,0 +1,388 @@
+package com.jlox.interpreter;
+
+import com.jlox.expression.*;
+import com.jlox.scanner.Token;
+import com.jlox.scanner.TokenType;
+import com.jlox.statement.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lowers resolved statements and expressions into a tree of Java lambdas, once, before running them. Operators,
+ * literals and variable addresses are bound while compiling, so running the program never goes through the visitors
+ * again. The environment is passed down explicitly instead of being read from the {@link Interpreter}.
+ */
+public class ClosureCompiler
+        implements StatementVisitor<ClosureCompiler.Exec>, ExpressionVisitor<ClosureCompiler.Eval> {
+
+    /**
+     * A compiled expression.
+     */
+    public interface Eval {
+        Object eval(Environment env);
+    }
+
+    /**
+     * A compiled statement.
+     */
+    public interface Exec {
+        Completion exec(Environment env);
+    }
+
+    private final Interpreter interpreter;
+    private final Environment globals;
+
+    /**
+     * Create a compiler for programs that will run in the global scope of the interpreter.
+     */
+    public ClosureCompiler(Interpreter interpreter) {
+        this.interpreter = interpreter;
+        this.globals = interpreter.getGlobals();
+    }
+
+    /**
+     * Compile a program. The statements must have been resolved.
+     *
+     * @param stmts the statements to compile
+     * @return the compiled statements, in order
+     */
+    public List<Exec> compile(List<Statement> stmts) {
+        List<Exec> compiled = new ArrayList<>(stmts.size());
+        for (Statement stmt : stmts) {
+            compiled.add(compile(stmt));
+        }
+        return compiled;
+    }
+
+    private Exec compile(Statement stmt) {
+        return stmt.accept(this);
+    }
+
+    private Eval compile(Expression expr) {
+        return expr.accept(this);
+    }
+
+    /**
+     * Compile and run a program in the global scope.
+     *
+     * @param stmts the resolved statements to run
+     */
+    public void run(List<Statement> stmts) {
+        for (Exec exec : compile(stmts)) {
+            // A return outside of any function ends the program
+            if (exec.exec(globals) != Completion.NORMAL) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public Exec visitPrintStatement(PrintStatement printstatement) {
+        Eval expr = compile(printstatement.expr);
+        return env -> {
+            System.out.println(expr.eval(env));
+            return Completion.NORMAL;
+        };
+    }
+
+    @Override
+    public Exec visitExprStatement(ExprStatement exprstatement) {
+        Eval expr = compile(exprstatement.expr);
+        return env -> {
+            expr.eval(env);
+            return Completion.NORMAL;
+        };
+    }
+
+    @Override
+    public Exec visitVarDeclare(VarDeclare vardeclare) {
+        Eval init = compile(vardeclare.init);
+        return define(vardeclare.name, vardeclare.slot, init);
+    }
+
+    @Override
+    public Exec visitVarAssign(VarAssign varassign) {
+        Eval value = compile(varassign.newVal);
+        Token name = varassign.name;
+        int depth = varassign.depth;
+        int slot = varassign.slot;
+        if (depth < 0) {
+            return env -> {
+                globals.changeValue(name, value.eval(env));
+                return Completion.NORMAL;
+            };
+        }
+        return env -> {
+            env.changeAt(depth, slot, value.eval(env));
+            return Completion.NORMAL;
+        };
+    }
+
+    @Override
+    public Exec visitBlock(Block block) {
+        Exec[] stmts = compile(block.stmts).toArray(new Exec[0]);
+        int size = block.scopeSize;
+        return env -> {
+            Environment scope = new Environment(env, size);
+            for (Exec stmt : stmts) {
+                Completion completion = stmt.exec(scope);
+                if (completion != Completion.NORMAL) {
+                    return completion;
+                }
+            }
+            return Completion.NORMAL;
+        };
+    }
+
+    @Override
+    public Exec visitIfStatement(IfStatement ifstatement) {
+        Eval condition = compile(ifstatement.condition);
+        Exec thenBranch = compile(ifstatement.thenBranch);
+        if (ifstatement.elseBranch == null) {
+            return env -> Boolean.TRUE.equals(condition.eval(env)) ? thenBranch.exec(env) : Completion.NORMAL;
+        }
+        Exec elseBranch = compile(ifstatement.elseBranch);
+        return env -> Boolean.TRUE.equals(condition.eval(env)) ? thenBranch.exec(env) : elseBranch.exec(env);
+    }
+
+    @Override
+    public Exec visitWhileStatement(WhileStatement whilestatement) {
+        // A missing condition loops forever
+        Eval condition = whilestatement.condition == null ? env -> Boolean.TRUE : compile(whilestatement.condition);
+        Exec body = compile(whilestatement.body);
+        return env -> {
+            while (Boolean.TRUE.equals(condition.eval(env))) {
+                Completion completion = body.exec(env);
+                if (completion == Completion.BREAK) {
+                    break;
+                } else if (completion == Completion.RETURN) {
+                    return completion;
+                }
+            }
+            return Completion.NORMAL;
+        };
+    }
+
+    @Override
+    public Exec visitBreakStatement(BreakStatement breakstatement) {
+        return env -> Completion.BREAK;
+    }
+
+    @Override
+    public Exec visitFunDeclare(FunDeclare fundeclare) {
+        Exec body = compile(interpreter.bodyOf(fundeclare));
+        String name = fundeclare.name.lexeme;
+        int arity = fundeclare.params.size();
+        Eval function = env -> new CompiledFunction(name, arity, body, env, interpreter);
+        return define(fundeclare.name, fundeclare.slot, function);
+    }
+
+    @Override
+    public Exec visitReturnStatement(ReturnStatement returnstatement) {
+        Eval value = compile(returnstatement.value);
+        return env -> {
+            interpreter.setReturnValue(value.eval(env));
+            return Completion.RETURN;
+        };
+    }
+
+    // Globals are never resolved and are defined by name
+    private Exec define(Token name, int slot, Eval value) {
+        if (slot < 0) {
+            return env -> {
+                globals.defineVariable(name, value.eval(env));
+                return Completion.NORMAL;
+            };
+        }
+        return env -> {
+            env.defineAt(slot, value.eval(env));
+            return Completion.NORMAL;
+        };
+    }
+
+    @Override
+    public Eval visitBinary(Binary binary) {
+        Eval left = compile(binary.left);
+        Eval right = compile(binary.right);
+        TokenType type = binary.operator.type;
+        String lexeme = binary.operator.lexeme;
+        switch (type) {
+            case PLUS:
+                return env -> {
+                    Object a = left.eval(env);
+                    Object b = right.eval(env);
+                    if (a instanceof Integer && b instanceof Integer) {
+                        return (Integer) a + (Integer) b;
+                    }
+                    return Operations.binary(type, lexeme, a, b);
+                };
+            case MINUS:
+                return env -> {
+                    Object a = left.eval(env);
+                    Object b = right.eval(env);
+                    if (a instanceof Integer && b instanceof Integer) {
+                        return (Integer) a - (Integer) b;
+                    }
+                    return Operations.binary(type, lexeme, a, b);
+                };
+            case STAR:
+                return env -> {
+                    Object a = left.eval(env);
+                    Object b = right.eval(env);
+                    if (a instanceof Integer && b instanceof Integer) {
+                        return (Integer) a * (Integer) b;
+                    }
+                    return Operations.binary(type, lexeme, a, b);
+                };
+            case LESS:
+            case LESS_EQUAL:
+            case GREATER:
+            case GREATER_EQUAL:
+                return comparison(type, lexeme, left, right);
+            case COMMA:
+                return env -> {
+                    left.eval(env);
+                    return right.eval(env);
+                };
+            default:
+                return env -> Operations.binary(type, lexeme, left.eval(env), right.eval(env));
+        }
+    }
+
+    private static Eval comparison(TokenType type, String lexeme, Eval left, Eval right) {
+        switch (type) {
+            case LESS:
+                return env -> {
+                    Object a = left.eval(env);
+                    Object b = right.eval(env);
+                    if (a instanceof Integer && b instanceof Integer) {
+                        return (Integer) a < (Integer) b;
+                    }
+                    return Operations.binary(type, lexeme, a, b);
+                };
+            case LESS_EQUAL:
+                return env -> {
+                    Object a = left.eval(env);
+                    Object b = right.eval(env);
+                    if (a instanceof Integer && b instanceof Integer) {
+                        return (Integer) a <= (Integer) b;
+                    }
+                    return Operations.binary(type, lexeme, a, b);
+                };
+            case GREATER:
+                return env -> {
+                    Object a = left.eval(env);
+                    Object b = right.eval(env);
+                    if (a instanceof Integer && b instanceof Integer) {
+                        return (Integer) a > (Integer) b;
+                    }
+                    return Operations.binary(type, lexeme, a, b);
+                };
+            default:
+                return env -> {
+                    Object a = left.eval(env);
+                    Object b = right.eval(env);
+                    if (a instanceof Integer && b instanceof Integer) {
+                        return (Integer) a >= (Integer) b;
+                    }
+                    return Operations.binary(type, lexeme, a, b);
+                };
+        }
+    }
+
+    // Logical operator with short-circuiting
+    @Override
+    public Eval visitLogical(Logical logical) {
+        Eval left = compile(logical.left);
+        Eval right = compile(logical.right);
+        if (logical.operator.type == TokenType.OR) {
+            return env -> {
+                Object value = left.eval(env);
+                return Operations.isTruthy(value) ? value : right.eval(env);
+            };
+        }
+        return env -> {
+            Object value = left.eval(env);
+            return Operations.isTruthy(value) ? right.eval(env) : value;
+        };
+    }
+
+    @Override
+    public Eval visitGrouping(Grouping grouping) {
+        return compile(grouping.expr);
+    }
+
+    @Override
+    public Eval visitLiteral(Literal literal) {
+        Object value = literal.value;
+        return env -> value;
+    }
+
+    @Override
+    public Eval visitUnary(Unary unary) {
+        Eval right = compile(unary.right);
+        switch (unary.operator.type) {
+            case BANG:
+                return env -> !Operations.isTruthy(right.eval(env));
+            case MINUS:
+                return env -> Operations.negate(right.eval(env));
+            default:
+                String message = String.format("Unknown operator '%s'", unary.operator.lexeme);
+                return env -> {
+                    throw new RuntimeError(message);
+                };
+        }
+    }
+
+    @Override
+    public Eval visitTernary(Ternary ternary) {
+        Eval condition = compile(ternary.condition);
+        Eval left = compile(ternary.left);
+        Eval right = compile(ternary.right);
+        return env -> Operations.isTruthy(condition.eval(env)) ? left.eval(env) : right.eval(env);
+    }
+
+    @Override
+    public Eval visitVariable(Variable variable) {
+        Token name = variable.name;
+        int depth = variable.depth;
+        int slot = variable.slot;
+        if (depth < 0) {
+            return env -> globals.getValue(name);
+        }
+        return env -> env.getAt(depth, slot);
+    }
+
+    @Override
+    public Eval visitCall(Call call) {
+        Eval callee = compile(call.callee);
+        Eval[] arguments = new Eval[call.arguments.size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = compile(call.arguments.get(i));
+        }
+        return env -> {
+            Object function = callee.eval(env);
+            if (!(function instanceof LoxCallable)) {
+                throw new RuntimeError(function.toString() + "is not callable");
+            }
+            Object[] values = new Object[arguments.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = arguments[i].eval(env);
+            }
+            if (function instanceof CompiledFunction) {
+                return ((CompiledFunction) function).invoke(values);
+            }
+            return call((LoxCallable) function, values);
+        };
+    }
+
+    private Object call(LoxCallable function, Object[] arguments) {
+        if (arguments.length != function.arity()) {
+            throw new RuntimeError(
+                    String.format("Expected %d arguments but got %d.", function.arity(), arguments.length));
+        }
+        return function.call(interpreter, Arrays.asList(arguments));
+    }
+}
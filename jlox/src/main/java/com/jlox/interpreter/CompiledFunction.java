@@ -0,0 +1,57 @@
+package com.jlox.interpreter;
+
+import java.util.List;
+
+/**
+ * A function declared in a program run by the {@link ClosureCompiler}. The body was compiled once, when the
+ * declaration was compiled; every closure created from the declaration shares it.
+ */
+public class CompiledFunction implements LoxCallable {
+
+    private final String name;
+    private final int arity;
+    private final ClosureCompiler.Exec body;
+    private final Environment closure;
+    private final Interpreter interpreter;
+
+    CompiledFunction(String name, int arity, ClosureCompiler.Exec body, Environment closure, Interpreter interpreter) {
+        this.name = name;
+        this.arity = arity;
+        this.body = body;
+        this.closure = closure;
+        this.interpreter = interpreter;
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    @Override
+    public Object call(Interpreter caller, List<Object> arguments) {
+        return invoke(arguments.toArray());
+    }
+
+    /**
+     * Call the function without going through a list of arguments.
+     */
+    Object invoke(Object[] arguments) {
+        if (arguments.length != arity) {
+            throw new RuntimeError(String.format("Expected %d arguments but got %d.", arity, arguments.length));
+        }
+        // Parameters live in their own scope, enclosed by the scope the function was declared in
+        Environment environment = new Environment(closure, arity);
+        for (int i = 0; i < arity; i++) {
+            environment.defineAt(i, arguments[i]);
+        }
+        if (body.exec(environment) == Completion.RETURN) {
+            return interpreter.takeReturnValue();
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + name + ">";
+    }
+}
@@ -0,0 +1,15 @@
+package com.jlox.interpreter;
+
+/**
+ * How a statement finished running. Statements that break out of a loop or return from a function report it to the
+ * statement around them, which stops and passes the signal on until it reaches the loop or the function call. The
+ * value of a return is kept by the {@link Interpreter} until the call picks it up.
+ */
+public enum Completion {
+    // Carry on with the next statement
+    NORMAL,
+    // Leave the innermost loop
+    BREAK,
+    // Leave the function, see Interpreter.takeReturnValue
+    RETURN
+}
@@ -0,0 +1,19 @@
+package com.jlox.interpreter;
+
+/**
+ * The ways the {@link Interpreter} can execute a program.
+ */
+public enum Engine {
+    // Walk the AST with the statement and expression visitors
+    TREE_WALKER,
+    // Walk the AST, letting binary and unary expressions specialize themselves on the types they see
+    SPECIALIZING,
+    // Walk the AST, compiling functions that are called often to JVM bytecode, see com.jlox.jit
+    JIT,
+    // Compile the AST once into a tree of Java lambdas and run that
+    CLOSURES,
+    // Convert the AST to a flat arena, see com.jlox.arena, and walk that
+    ARENA,
+    // Compile the AST to bytecode and run it on the stack VM in com.jlox.vm
+    BYTECODE
+}
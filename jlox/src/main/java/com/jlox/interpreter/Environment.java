@@ -1,21 +1,46 @@
 package com.jlox.interpreter;
 
+import com.jlox.scanner.Symbol;
 import com.jlox.scanner.Token;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * A scope holding the values of variables. An environment is either map-backed, where variables are looked up by
+ * name, or array-backed, where variables live in fixed slots assigned by the {@link Resolver}. The global scope is
+ * always map-backed since globals can be declared after the code that uses them has been resolved. Names are the
+ * interned {@link Symbol}s of the tokens, which hash to a stored value and compare by identity.
+ */
 public class Environment {
 
-    private final Map<String, Object> mappings = new HashMap<>();
+    private static final Object[] NO_SLOTS = new Object[0];
+
+    private final Map<Symbol, Object> mappings;
+    private final Object[] slots;
     private final Environment parent;
 
     public Environment(Environment parent) {
         this.parent = parent;
+        this.mappings = new HashMap<>();
+        this.slots = NO_SLOTS;
     }
 
     public Environment() {
-        parent = null;
+        this(null);
+    }
+
+    /**
+     * Create an array-backed environment. Variables in it can only be accessed by slot.
+     *
+     * @param parent the enclosing scope
+     * @param size   the number of slots the resolver assigned to this scope
+     */
+    public Environment(Environment parent, int size) {
+        this.parent = parent;
+        this.mappings = Collections.emptyMap();
+        this.slots = new Object[size];
     }
 
     public Environment getHigherScope() {
@@ -32,10 +57,16 @@ public class Environment {
      * @return the value stored for the variable
      */
     public Object getValue(Token name) {
-        return getValue(name.lexeme);
+        return getValue(name.symbol);
     }
 
-    private Object getValue(String key) {
+    /**
+     * Get the value of a variable by its name. Throws an error if the variable doesn't exist.
+     *
+     * @param key the name of the variable
+     * @return the value stored for the variable
+     */
+    public Object getValue(Symbol key) {
         if (this.mappings.containsKey(key)) {
             return mappings.get(key);
         }
@@ -45,6 +76,17 @@ public class Environment {
         throw new RuntimeError(key + " is an undefined variable");
     }
 
+    /**
+     * Get the value stored in a slot of this environment or one of its ancestors.
+     *
+     * @param depth the number of scopes to walk up
+     * @param slot  the slot of the variable in that scope
+     * @return the value stored for the variable
+     */
+    public Object getAt(int depth, int slot) {
+        return ancestor(depth).slots[slot];
+    }
+
     /**
      * Set the value of a variable. If the variable has already been declared, this
      * will throw an error.
@@ -53,10 +95,34 @@ public class Environment {
      * @param value the value of the variable
      */
     public void defineVariable(Token name, Object value) {
-        if (mappings.containsKey(name.lexeme)) {
+        if (mappings.containsKey(name.symbol)) {
             throw new RuntimeError(name + " has already been declared");
         }
-        mappings.put(name.lexeme, value);
+        mappings.put(name.symbol, value);
+    }
+
+    /**
+     * Set the value of a variable given by its name. If the variable has already been declared, this will throw an
+     * error.
+     *
+     * @param name  the name of the variable to define
+     * @param value the value of the variable
+     */
+    public void defineVariable(Symbol name, Object value) {
+        if (mappings.containsKey(name)) {
+            throw new RuntimeError(name + " has already been declared");
+        }
+        mappings.put(name, value);
+    }
+
+    /**
+     * Store the value of a newly declared variable in one of the slots of this environment.
+     *
+     * @param slot  the slot assigned to the variable
+     * @param value the value of the variable
+     */
+    public void defineAt(int slot, Object value) {
+        slots[slot] = value;
     }
 
     /**
@@ -67,16 +133,47 @@ public class Environment {
      * @param value the new value
      */
     public void changeValue(Token name, Object value) {
-        if (!mappings.containsKey(name.lexeme)) {
+        changeValue(name.symbol, value);
+    }
+
+    /**
+     * Change the value of a variable given by its name. Throws an error if the value doesn't already exist in itself
+     * or its parents.
+     *
+     * @param name  the name of the variable to be reassigned
+     * @param value the new value
+     */
+    public void changeValue(Symbol name, Object value) {
+        if (!mappings.containsKey(name)) {
             if (parent == null) {
-                throw new RuntimeError("Undefined variable " + name.lexeme);
+                throw new RuntimeError("Undefined variable " + name);
             }
             parent.changeValue(name, value);
+            return;
         }
-        mappings.put(name.lexeme, value);
+        mappings.put(name, value);
+    }
+
+    /**
+     * Change the value stored in a slot of this environment or one of its ancestors.
+     *
+     * @param depth the number of scopes to walk up
+     * @param slot  the slot of the variable in that scope
+     * @param value the new value
+     */
+    public void changeAt(int depth, int slot, Object value) {
+        ancestor(depth).slots[slot] = value;
     }
 
     protected void defineInterpreterGlobal(String name, Object value) {
-        mappings.put(name, value);
+        mappings.put(Symbol.of(name), value);
+    }
+
+    private Environment ancestor(int depth) {
+        Environment env = this;
+        for (int i = 0; i < depth; i++) {
+            env = env.parent;
+        }
+        return env;
     }
 }
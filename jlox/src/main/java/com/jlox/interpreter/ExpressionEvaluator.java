@@ -1,14 +1,25 @@
 package com.jlox.interpreter;
 
 import com.jlox.expression.*;
-import com.jlox.scanner.Token;
 import com.jlox.scanner.TokenType;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+/**
+ * Evaluates expressions by walking them. Expressions are nested no deeper than {@link #MAX_RECURSION} on the thread's
+ * stack: below that an expression is evaluated with a {@link WorkStack} on the heap, so machine-generated expressions
+ * nested tens of thousands deep don't overflow the stack.
+ */
 public class ExpressionEvaluator implements ExpressionVisitor<Object> {
 
+    // Real expressions are rarely nested more than a few levels, so recursion only gives way to the work stack for
+    // generated ones
+    static final int MAX_RECURSION = 128;
+
     private final Interpreter interpreter;
+    private int depth;
 
     public ExpressionEvaluator(Interpreter interpreter) {
         this.interpreter = interpreter;
@@ -18,20 +29,45 @@ public class ExpressionEvaluator implements ExpressionVisitor<Object> {
         return expression.accept(this);
     }
 
+    /**
+     * Enter an expression with operands. Each visitor method that recurses calls this first and {@link #leave()} once
+     * it is done, so the count is kept without an extra call between an expression and its operands.
+     *
+     * @return true if the expression is nested too deep and must be evaluated with a work stack instead
+     */
+    private boolean tooDeep() {
+        if (depth >= MAX_RECURSION) {
+            return true;
+        }
+        depth++;
+        return false;
+    }
+
+    private void leave() {
+        depth--;
+    }
+
     @Override
     public Object visitUnary(Unary unary) {
+        if (tooDeep()) {
+            return new WorkStack().run(unary);
+        }
+        try {
+            return unary(unary, unary.right.accept(this));
+        } finally {
+            leave();
+        }
+    }
+
+    /**
+     * Apply a unary operator to its operand, once it has been evaluated.
+     */
+    protected Object unary(Unary unary, Object right) {
         switch (unary.operator.type) {
             case BANG:
-                return !isTruthy(unary.right.accept(this));
+                return !isTruthy(right);
             case MINUS:
-                Object right = unary.right.accept(this);
-                if (right instanceof Double) {
-                    return -1 * (Double) right;
-                }
-                if (right instanceof Integer) {
-                    return -1 * (Integer) right;
-                }
-                throw new RuntimeError("Expected a number.");
+                return Operations.negate(right);
             default:
                 throw new RuntimeError(String.format("Unknown operator '%s'", unary.operator.lexeme));
         }
@@ -39,89 +75,121 @@ public class ExpressionEvaluator implements ExpressionVisitor<Object> {
 
     @Override
     public Object visitVariable(Variable variable) {
-        return interpreter.getScope().getValue(variable.name);
+        if (variable.depth < 0) {
+            return interpreter.getScope().getValue(variable.name);
+        }
+        return interpreter.getScope().getAt(variable.depth, variable.slot);
     }
 
     @Override
     public Object visitCall(Call call) {
-        Object callee = evaluate(call.callee);
-        if (!(callee instanceof LoxCallable)) {
-            throw new RuntimeError(callee.toString() + "is not callable");
+        if (tooDeep()) {
+            return new WorkStack().run(call);
+        }
+        try {
+            LoxCallable function = callable(call.callee.accept(this));
+            ArrayList<Object> arguments = new ArrayList<>();
+            for (Expression expr : call.arguments) {
+                arguments.add(expr.accept(this));
+            }
+            return call(function, arguments);
+        } finally {
+            leave();
         }
-        LoxCallable function = (LoxCallable) callee;
+    }
 
-        ArrayList<Object> arguments = new ArrayList<>();
-        for (Expression expr : call.arguments) {
-            arguments.add(evaluate(expr));
+    private LoxCallable callable(Object callee) {
+        if (!(callee instanceof LoxCallable)) {
+            throw new RuntimeError(callee.toString() + "is not callable");
         }
+        return (LoxCallable) callee;
+    }
 
+    private Object call(LoxCallable function, List<Object> arguments) {
         if (arguments.size() != function.arity()) {
             throw new RuntimeError(
                     String.format("Expected %d arguments but got %d.", function.arity(), arguments.size()));
         }
-
-        return function.call(interpreter, arguments);
+        // The function's body starts with a fresh recursion budget, as its expressions aren't nested in this one
+        int callerDepth = depth;
+        depth = 0;
+        try {
+            return function.call(interpreter, arguments);
+        } finally {
+            depth = callerDepth;
+        }
     }
 
     @Override
     public Object visitBinary(Binary binary) {
-        Object left = binary.left.accept(this);
-        Object right = binary.right.accept(this);
-        switch (binary.operator.type) {
-            case COMMA:
-                return right;
-            case EQUAL_EQUAL:
-                return left.equals(right);
-            case BANG_EQUAL:
-                return !left.equals(right);
-            case SLASH:
-            case STAR:
-            case MINUS:
-            case GREATER:
-            case GREATER_EQUAL:
-            case LESS_EQUAL:
-            case LESS:
-                return operate(left, right, binary.operator);
-            case PLUS:
-                if (left instanceof String || right instanceof String) {
-                    return left.toString() + right.toString();
-                }
-                return operate(left, right, binary.operator);
-            default:
-
-                throw new RuntimeError(String.format("%s is not supported for %s and %s", binary.operator.lexeme,
-                        left.getClass(), right.getClass()));
+        if (tooDeep()) {
+            return new WorkStack().run(binary);
+        }
+        try {
+            Object left = binary.left.accept(this);
+            Object right = binary.right.accept(this);
+            return binary(binary, left, right);
+        } finally {
+            leave();
         }
     }
 
+    /**
+     * Apply a binary operator to its operands, once they have been evaluated.
+     */
+    protected Object binary(Binary binary, Object left, Object right) {
+        return Operations.binary(binary.operator.type, binary.operator.lexeme, left, right);
+    }
+
     // Logical operator with short-circuiting
     @Override
     public Object visitLogical(Logical logical) {
-        Object left = evaluate(logical.left);
+        if (tooDeep()) {
+            return new WorkStack().run(logical);
+        }
+        try {
+            Object left = logical.left.accept(this);
+            return shortCircuits(logical, left) ? left : logical.right.accept(this);
+        } finally {
+            leave();
+        }
+    }
+
+    private boolean shortCircuits(Logical logical, Object left) {
         boolean truthy = isTruthy(left);
         if (logical.operator.type == TokenType.OR) {
-            if (truthy) {
-                return left;
-            }
+            return truthy;
         } else if (logical.operator.type == TokenType.AND) {
-            if (!truthy) {
-                return left;
-            }
+            return !truthy;
         }
-        return evaluate(logical.right);
+        return false;
     }
 
     @Override
     public Object visitTernary(Ternary ternary) {
-        if (isTruthy(ternary.condition.accept(this))) {
-            return ternary.left.accept(this);
+        if (tooDeep()) {
+            return new WorkStack().run(ternary);
+        }
+        try {
+            if (isTruthy(ternary.condition.accept(this))) {
+                return ternary.left.accept(this);
+            }
+            return ternary.right.accept(this);
+        } finally {
+            leave();
         }
-        return ternary.right.accept(this);
     }
 
     @Override
     public Object visitGrouping(Grouping grouping) {
-        return grouping.expr.accept(this);
+        if (tooDeep()) {
+            return new WorkStack().run(grouping);
+        }
+        try {
+            return grouping.expr.accept(this);
+        } finally {
+            leave();
+        }
     }
 
     @Override
@@ -130,80 +198,130 @@ public class ExpressionEvaluator implements ExpressionVisitor<Object> {
     }
 
     private boolean isTruthy(Object object) {
-        if (object == null) {
-            return false;
+        return Operations.isTruthy(object);
+    }
+
+    /**
+     * Evaluates an expression without recursion. Each expression is pushed as work, and taken off again to push the
+     * work for its operands and to be resumed once their values are on the value stack, the way the visitor methods
+     * above would carry on after each call to evaluate. Operands are evaluated in the same order and operators applied
+     * with the same methods, so the results and errors are the same as the visitor's.
+     */
+    private final class WorkStack implements ExpressionVisitor<Void> {
+        private final List<Expression> work = new ArrayList<>();
+        // How far each expression on the work stack has got, starting at 0
+        private int[] steps = new int[MAX_RECURSION];
+        private final List<Object> values = new ArrayList<>();
+        private int step;
+
+        Object run(Expression expression) {
+            push(expression, 0);
+            while (!work.isEmpty()) {
+                int last = work.size() - 1;
+                step = steps[last];
+                work.remove(last).accept(this);
+            }
+            return pop();
         }
 
-        if (object instanceof Boolean) {
-            return (Boolean) object;
+        private void push(Expression expression, int at) {
+            if (work.size() == steps.length) {
+                steps = Arrays.copyOf(steps, steps.length * 2);
+            }
+            steps[work.size()] = at;
+            work.add(expression);
         }
-        throw new RuntimeError("Expected a boolean.");
-    }
 
-    private Object operate(Object left, Object right, Token operator) {
-        if (left instanceof Double || right instanceof Double) {
-            Number leftNum = (Number) left;
-            Number rightNum = (Number) right;
-            return operate(leftNum.doubleValue(), rightNum.doubleValue(), operator.type);
+        private Object pop() {
+            return values.remove(values.size() - 1);
         }
-        if (!(left instanceof Integer) || !(right instanceof Integer)) {
-            throw new RuntimeError(String.format("%s is not supported on %s and %s",
-                    operator.lexeme, left.getClass(), right.getClass()));
+
+        @Override
+        public Void visitUnary(Unary unary) {
+            if (step == 0) {
+                push(unary, 1);
+                push(unary.right, 0);
+            } else {
+                values.add(unary(unary, pop()));
+            }
+            return null;
         }
-        return operate((Integer) left, (Integer) right, operator.type);
 
-    }
+        @Override
+        public Void visitVariable(Variable variable) {
+            values.add(ExpressionEvaluator.this.visitVariable(variable));
+            return null;
+        }
 
-    private Object operate(Double left, Double right, TokenType operator) {
-        switch (operator) {
-            case MINUS:
-                return left - right;
-            case STAR:
-                return left * right;
-            case PLUS:
-                return left + right;
-            case SLASH:
-                if (right.equals(0d)) {
-                    throw new RuntimeError("Cannot divide by 0");
+        @Override
+        public Void visitCall(Call call) {
+            if (step == 0) {
+                push(call, 1);
+                push(call.callee, 0);
+            } else if (step == 1) {
+                // Checked before the arguments are evaluated, like the visitor does
+                callable(values.get(values.size() - 1));
+                push(call, 2);
+                for (int i = call.arguments.size() - 1; i >= 0; i--) {
+                    push(call.arguments.get(i), 0);
                 }
-                return left / right;
-            case GREATER:
-                return left > right;
-            case GREATER_EQUAL:
-                return left >= right;
-            case LESS_EQUAL:
-                return left <= right;
-            case LESS:
-                return left < right;
-            default:
-                return null;
+            } else {
+                int first = values.size() - call.arguments.size();
+                ArrayList<Object> arguments = new ArrayList<>(values.subList(first, values.size()));
+                values.subList(first, values.size()).clear();
+                values.add(call(callable(pop()), arguments));
+            }
+            return null;
         }
-    }
 
-    private Object operate(Integer left, Integer right, TokenType operator) {
-        switch (operator) {
-            case MINUS:
-                return left - right;
-            case STAR:
-                return left * right;
-            case PLUS:
-                return left + right;
-            case SLASH:
-                if (right.equals(0)) {
-                    throw new RuntimeError("Cannot divide by 0");
-                }
-                return left / right;
-
-            case GREATER:
-                return left > right;
-            case GREATER_EQUAL:
-                return left >= right;
-            case LESS_EQUAL:
-                return left <= right;
-            case LESS:
-                return left < right;
-            default:
-                return null;
+        // Both operands are always evaluated, so they are pushed together after the work that applies the operator
+        @Override
+        public Void visitBinary(Binary binary) {
+            if (step == 0) {
+                push(binary, 1);
+                push(binary.right, 0);
+                push(binary.left, 0);
+            } else {
+                Object right = pop();
+                values.add(binary(binary, pop(), right));
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitLogical(Logical logical) {
+            if (step == 0) {
+                push(logical, 1);
+                push(logical.left, 0);
+            } else if (!shortCircuits(logical, values.get(values.size() - 1))) {
+                // The value of the right operand is the value of the expression
+                pop();
+                push(logical.right, 0);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitTernary(Ternary ternary) {
+            if (step == 0) {
+                push(ternary, 1);
+                push(ternary.condition, 0);
+            } else {
+                push(isTruthy(pop()) ? ternary.left : ternary.right, 0);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitGrouping(Grouping grouping) {
+            push(grouping.expr, 0);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteral(Literal literal) {
+            values.add(literal.value);
+            return null;
         }
     }
 }
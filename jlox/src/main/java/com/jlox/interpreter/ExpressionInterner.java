@@ -0,0 +1,367 @@
+package com.jlox.interpreter;
+
+import com.jlox.expression.*;
+import com.jlox.scanner.Token;
+import com.jlox.statement.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Optional pass that runs after the {@link Resolver} and merges expressions with the same structure into one shared
+ * instance, so a script that repeats {@code x + 1} or {@code "s"} a thousand times holds each of them once. Sharing
+ * also pools the per-node caches, such as the specializations of {@link Binary#node}, of every copy.
+ *
+ * <p>Expressions are interned bottom-up: two expressions are the same if they are of the same kind, have the same
+ * operator or value and their children are already the same instance. Variables are the same only if they were
+ * resolved to the same address, so the pass must run after the resolver and the shared tree must not be resolved
+ * again. Statements aren't shared, but they are rebuilt around the shared expressions, keeping what the resolver
+ * stored in them.
+ *
+ * <p>A shared expression can't know where each of its copies was in the source, so the tokens of shared expressions
+ * are shared too and have an offset of -1. The offsets are kept in a side table instead, see
+ * {@link #offsetOf(Statement, int)}. An interner can be given several programs and keeps the table for all of them.
+ * Function bodies left unparsed by lazy parsing aren't interned.
+ *
+ * <p>Expressions are interned without recursion, so that deeply nested ones don't overflow the stack: the visitor
+ * methods push the work for the parts of an expression and are resumed once the parts are interned, in the way
+ * {@link ExpressionEvaluator} evaluates deep expressions.
+ */
+public class ExpressionInterner implements StatementVisitor<Statement>, ExpressionVisitor<Void> {
+
+    // Kind of the keys of shared tokens, next to the ExpressionTag kinds of the keys of expressions
+    private static final int TOKEN = 0;
+    private static final int INITIAL_OFFSETS = 16;
+
+    private final Map<Key, Object> shared = new HashMap<>();
+    private final Map<Statement, int[]> offsets = new IdentityHashMap<>();
+    // The offsets of the tokens of the statement being interned
+    private int[] pending = new int[INITIAL_OFFSETS];
+    private int pendingCount;
+    // Expressions waiting to be interned, with how far each has got, and the interned parts
+    private final List<Expression> work = new ArrayList<>();
+    private int[] steps = new int[INITIAL_OFFSETS];
+    private final List<Object> parts = new ArrayList<>();
+    private int step;
+
+    /**
+     * Intern the expressions of a resolved program.
+     *
+     * @param stmts the top-level statements of the program
+     * @return the statements rebuilt around shared expressions
+     */
+    public List<Statement> intern(List<Statement> stmts) {
+        List<Statement> interned = new ArrayList<>(stmts.size());
+        for (Statement stmt : stmts) {
+            interned.add(stmt.accept(this));
+        }
+        return interned;
+    }
+
+    /**
+     * Get where a token of the expressions of a statement was in the source. Only operators and names have tokens,
+     * and they are counted in the order they appeared in the source; tokens of nested statements are counted with
+     * those statements.
+     *
+     * @param statement  a statement returned by {@link #intern(List)}
+     * @param occurrence the index of the token among the tokens of the statement
+     * @return the offset of the token, or -1 if the statement wasn't interned here or has no such token
+     */
+    public int offsetOf(Statement statement, int occurrence) {
+        int[] tokenOffsets = offsets.get(statement);
+        if (tokenOffsets == null || occurrence < 0 || occurrence >= tokenOffsets.length) {
+            return -1;
+        }
+        return tokenOffsets[occurrence];
+    }
+
+    private Expression expression(Expression expr) {
+        if (expr == null) {
+            return null;
+        }
+        push(expr, 0);
+        while (!work.isEmpty()) {
+            int last = work.size() - 1;
+            step = steps[last];
+            work.remove(last).accept(this);
+        }
+        return (Expression) take();
+    }
+
+    private void push(Expression expr, int at) {
+        if (work.size() == steps.length) {
+            steps = Arrays.copyOf(steps, steps.length * 2);
+        }
+        steps[work.size()] = at;
+        work.add(expr);
+    }
+
+    private Object take() {
+        return parts.remove(parts.size() - 1);
+    }
+
+    private Statement statement(Statement stmt) {
+        return stmt == null ? null : stmt.accept(this);
+    }
+
+    private Token token(Token token) {
+        if (pendingCount == pending.length) {
+            pending = Arrays.copyOf(pending, pendingCount * 2);
+        }
+        pending[pendingCount++] = token.offset;
+        return (Token) shared.computeIfAbsent(new Key(TOKEN, token.type, token.lexeme), key -> token.symbol != null
+                ? new Token(token.symbol, -1) : new Token(token.type, token.lexeme, token.literal, -1));
+    }
+
+    /**
+     * Take the offsets of the tokens interned since the last call, to be kept for the statement they belong to.
+     */
+    private int[] takeOffsets() {
+        int[] taken = pendingCount == 0 ? null : Arrays.copyOf(pending, pendingCount);
+        pendingCount = 0;
+        return taken;
+    }
+
+    private <S extends Statement> S record(S statement, int[] tokenOffsets) {
+        if (tokenOffsets != null) {
+            offsets.put(statement, tokenOffsets);
+        }
+        return statement;
+    }
+
+    @Override
+    public Statement visitPrintStatement(PrintStatement printstatement) {
+        Expression expr = expression(printstatement.expr);
+        return record(new PrintStatement(expr), takeOffsets());
+    }
+
+    @Override
+    public Statement visitExprStatement(ExprStatement exprstatement) {
+        Expression expr = expression(exprstatement.expr);
+        return record(new ExprStatement(expr), takeOffsets());
+    }
+
+    @Override
+    public Statement visitVarDeclare(VarDeclare vardeclare) {
+        Expression init = expression(vardeclare.init);
+        VarDeclare interned = record(new VarDeclare(vardeclare.name, init), takeOffsets());
+        interned.slot = vardeclare.slot;
+        return interned;
+    }
+
+    @Override
+    public Statement visitVarAssign(VarAssign varassign) {
+        Expression newVal = expression(varassign.newVal);
+        VarAssign interned = record(new VarAssign(varassign.name, newVal), takeOffsets());
+        interned.depth = varassign.depth;
+        interned.slot = varassign.slot;
+        return interned;
+    }
+
+    @Override
+    public Statement visitBlock(Block block) {
+        Block interned = new Block(intern(block.stmts));
+        interned.scopeSize = block.scopeSize;
+        return interned;
+    }
+
+    @Override
+    public Statement visitIfStatement(IfStatement ifstatement) {
+        Expression condition = expression(ifstatement.condition);
+        int[] tokenOffsets = takeOffsets();
+        return record(new IfStatement(condition, statement(ifstatement.thenBranch),
+                statement(ifstatement.elseBranch)), tokenOffsets);
+    }
+
+    @Override
+    public Statement visitWhileStatement(WhileStatement whilestatement) {
+        Expression condition = expression(whilestatement.condition);
+        int[] tokenOffsets = takeOffsets();
+        return record(new WhileStatement(condition, statement(whilestatement.body)), tokenOffsets);
+    }
+
+    @Override
+    public Statement visitBreakStatement(BreakStatement breakstatement) {
+        return breakstatement;
+    }
+
+    @Override
+    public Statement visitFunDeclare(FunDeclare fundeclare) {
+        if (!fundeclare.isBodyParsed()) {
+            return fundeclare;
+        }
+        FunDeclare interned = new FunDeclare(fundeclare.name, fundeclare.params,
+                (Block) visitBlock(fundeclare.body()));
+        interned.slot = fundeclare.slot;
+        return interned;
+    }
+
+    @Override
+    public Statement visitReturnStatement(ReturnStatement returnstatement) {
+        Expression value = expression(returnstatement.value);
+        return record(new ReturnStatement(value), takeOffsets());
+    }
+
+    // Tokens are interned between the operands they sit between, so that their offsets are kept in source order
+    @Override
+    public Void visitBinary(Binary binary) {
+        if (step == 0) {
+            push(binary, 1);
+            push(binary.left, 0);
+        } else if (step == 1) {
+            parts.add(token(binary.operator));
+            push(binary, 2);
+            push(binary.right, 0);
+        } else {
+            Expression right = (Expression) take();
+            Token operator = (Token) take();
+            Expression left = (Expression) take();
+            share(new Key(ExpressionTag.BINARY, left, operator, right), () -> new Binary(left, operator, right));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogical(Logical logical) {
+        if (step == 0) {
+            push(logical, 1);
+            push(logical.left, 0);
+        } else if (step == 1) {
+            parts.add(token(logical.operator));
+            push(logical, 2);
+            push(logical.right, 0);
+        } else {
+            Expression right = (Expression) take();
+            Token operator = (Token) take();
+            Expression left = (Expression) take();
+            share(new Key(ExpressionTag.LOGICAL, left, operator, right), () -> new Logical(left, operator, right));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGrouping(Grouping grouping) {
+        if (step == 0) {
+            push(grouping, 1);
+            push(grouping.expr, 0);
+        } else {
+            Expression expr = (Expression) take();
+            share(new Key(ExpressionTag.GROUPING, expr), () -> new Grouping(expr));
+        }
+        return null;
+    }
+
+    // The value's class is part of the key, as 1 and 1.0 are different literals
+    @Override
+    public Void visitLiteral(Literal literal) {
+        Object type = literal.value == null ? null : literal.value.getClass();
+        share(new Key(ExpressionTag.LITERAL, type, literal.value), () -> new Literal(literal.value));
+        return null;
+    }
+
+    @Override
+    public Void visitUnary(Unary unary) {
+        if (step == 0) {
+            parts.add(token(unary.operator));
+            push(unary, 1);
+            push(unary.right, 0);
+        } else {
+            Expression right = (Expression) take();
+            Token operator = (Token) take();
+            share(new Key(ExpressionTag.UNARY, operator, right), () -> new Unary(operator, right));
+        }
+        return null;
+    }
+
+    // Parts without tokens between them are pushed together, the first on top
+    @Override
+    public Void visitTernary(Ternary ternary) {
+        if (step == 0) {
+            push(ternary, 1);
+            push(ternary.right, 0);
+            push(ternary.left, 0);
+            push(ternary.condition, 0);
+        } else {
+            Expression right = (Expression) take();
+            Expression left = (Expression) take();
+            Expression condition = (Expression) take();
+            share(new Key(ExpressionTag.TERNARY, condition, left, right), () -> new Ternary(condition, left, right));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariable(Variable variable) {
+        Token name = token(variable.name);
+        share(new Key(ExpressionTag.VARIABLE, name, variable.depth, variable.slot), () -> {
+            Variable interned = new Variable(name);
+            interned.depth = variable.depth;
+            interned.slot = variable.slot;
+            return interned;
+        });
+        return null;
+    }
+
+    @Override
+    public Void visitCall(Call call) {
+        if (step == 0) {
+            push(call, 1);
+            for (int i = call.arguments.size() - 1; i >= 0; i--) {
+                push(call.arguments.get(i), 0);
+            }
+            push(call.callee, 0);
+        } else {
+            int first = parts.size() - call.arguments.size();
+            List<Expression> arguments = new ArrayList<>(call.arguments.size());
+            for (Object argument : parts.subList(first, parts.size())) {
+                arguments.add((Expression) argument);
+            }
+            parts.subList(first, parts.size()).clear();
+            Expression callee = (Expression) take();
+            share(new Key(ExpressionTag.CALL, callee, arguments), () -> new Call(callee, arguments));
+        }
+        return null;
+    }
+
+    /**
+     * Leave the shared instance of an expression whose parts are interned on top of the interned parts.
+     */
+    private void share(Key key, Supplier<Expression> create) {
+        parts.add(shared.computeIfAbsent(key, k -> create.get()));
+    }
+
+    /**
+     * What makes two expressions or tokens the same: their kind and their parts, compared with equals. Parts that are
+     * expressions or tokens have already been interned, so they are equal only if they are the same instance.
+     */
+    private static final class Key {
+        private final int kind;
+        private final Object[] parts;
+        private final int hash;
+
+        Key(int kind, Object... parts) {
+            this.kind = kind;
+            this.parts = parts;
+            this.hash = kind + Arrays.hashCode(parts);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return kind == key.kind && Arrays.equals(parts, key.parts);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -1,18 +1,36 @@
 package com.jlox.interpreter;
 
+import com.jlox.arena.ArenaConverter;
+import com.jlox.arena.AstArena;
 import com.jlox.error.ConsoleHandler;
 import com.jlox.error.IErrorHandler;
 import com.jlox.error.LoxError;
+import com.jlox.statement.Block;
+import com.jlox.statement.FunDeclare;
 import com.jlox.statement.Statement;
+import com.jlox.statement.WhileStatement;
+import com.jlox.vm.VirtualMachine;
 
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class Interpreter {
 
-    private final StatementEvaluator stmtEval;
     private final IErrorHandler handler;
+    private final Environment globals;
+    private final Resolver resolver = new Resolver();
+    // The loops the JIT engine has run, see StatementEvaluator.visitWhileStatement
+    private final Map<WhileStatement, LoopProfile> loops = new IdentityHashMap<>();
 
+    private StatementEvaluator stmtEval;
     private Environment scope;
+    private Engine engine = Engine.TREE_WALKER;
+    private boolean interning;
+    // Made by the first program run with interning on and kept, with the offsets of the tokens it shared
+    private ExpressionInterner interner;
+    private VirtualMachine vm;
+    private Object returnValue;
 
     public Interpreter() {
         this(new ConsoleHandler(), new Environment());
@@ -25,6 +43,7 @@ public class Interpreter {
     public Interpreter(IErrorHandler handler, Environment scope) {
         this.handler = handler;
         this.scope = scope;
+        this.globals = scope;
         this.stmtEval = new StatementEvaluator(this);
         scope.defineInterpreterGlobal("clock", new LoxCallable() {
             @Override
@@ -39,33 +58,148 @@ public class Interpreter {
         });
     }
 
+    /**
+     * Choose how programs given to run are executed. The engines share globals.
+     *
+     * @param engine the engine to use
+     */
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+        if (engine == Engine.SPECIALIZING) {
+            stmtEval = new StatementEvaluator(this, new SpecializingEvaluator(this));
+        } else {
+            stmtEval = new StatementEvaluator(this);
+        }
+    }
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Choose whether programs run by the engines that walk the AST have their identical expressions merged first, see
+     * {@link ExpressionInterner}. Off by default.
+     */
+    public void setInterning(boolean interning) {
+        this.interning = interning;
+    }
+
+    /**
+     * Get where a token of a statement that was interned was in the source, for reporting errors in it. The tokens of
+     * interned expressions are shared and have no offset of their own, see {@link ExpressionInterner}.
+     *
+     * @param statement  a statement run with interning on
+     * @param occurrence the index of the token among the tokens of the statement's expressions, in source order
+     * @return the offset of the token, or -1 if the statement wasn't interned or has no such token
+     */
+    public int offsetOf(Statement statement, int occurrence) {
+        return interner == null ? -1 : interner.offsetOf(statement, occurrence);
+    }
+
+    private ExpressionInterner interner() {
+        if (interner == null) {
+            interner = new ExpressionInterner();
+        }
+        return interner;
+    }
+
     public void nestScope() {
         scope = new Environment(scope);
     }
 
+    /**
+     * Nest a scope whose size was computed by the resolver. Unresolved scopes (size -1) fall back to a map-backed
+     * environment.
+     *
+     * @param size the number of slots in the new scope
+     */
+    public void nestScope(int size) {
+        scope = size < 0 ? new Environment(scope) : new Environment(scope, size);
+    }
+
     public void unnestScope() {
         scope = scope.getHigherScope();
     }
 
+    public Environment getGlobals() {
+        return globals;
+    }
+
     public Environment getScope() {
         return scope;
     }
 
-    public void execute(Statement stmt) {
-        stmtEval.execute(stmt);
+    public void setScope(Environment scope) {
+        this.scope = scope;
+    }
+
+    /**
+     * Get the body of a function, parsing and resolving it first if it was declared with its body left unparsed.
+     */
+    Block bodyOf(FunDeclare declaration) {
+        return resolver.body(declaration);
+    }
+
+    /**
+     * Get what the JIT engine knows about a loop, starting a profile the first time the loop runs.
+     */
+    LoopProfile loopProfile(WhileStatement loop) {
+        return loops.computeIfAbsent(loop, key -> new LoopProfile());
+    }
+
+    public Completion execute(Statement stmt) {
+        return stmtEval.execute(stmt);
     }
 
-    public void execute(List<Statement> stmts) {
+    public Completion execute(List<Statement> stmts) {
         for (Statement stmt : stmts) {
-            stmtEval.execute(stmt);
+            Completion completion = stmtEval.execute(stmt);
+            if (completion != Completion.NORMAL) {
+                return completion;
+            }
         }
+        return Completion.NORMAL;
+    }
+
+    /**
+     * Keep the value of a return statement until the function call it returns from picks it up.
+     */
+    void setReturnValue(Object value) {
+        returnValue = value;
+    }
+
+    /**
+     * Pick up the value of the return statement that just completed with {@link Completion#RETURN}.
+     */
+    Object takeReturnValue() {
+        Object value = returnValue;
+        returnValue = null;
+        return value;
     }
 
     public Void run(List<Statement> stmts) {
         try {
-            for (Statement stmt : stmts) {
-                stmtEval.execute(stmt);
+            if (engine == Engine.BYTECODE) {
+                if (vm == null) {
+                    vm = new VirtualMachine(this);
+                }
+                vm.interpret(stmts);
+                return null;
+            }
+            if (engine == Engine.ARENA) {
+                AstArena arena = ArenaConverter.convert(stmts);
+                new ArenaResolver(arena).resolve();
+                new ArenaEvaluator(this, arena).run();
+                return null;
+            }
+            resolver.resolve(stmts);
+            List<Statement> program = interning ? interner().intern(stmts) : stmts;
+            if (engine == Engine.CLOSURES) {
+                new ClosureCompiler(this).run(program);
+                return null;
             }
+            // A return outside of any function ends the program
+            execute(program);
         } catch (LoxError e) {
             handler.error(e);
         }
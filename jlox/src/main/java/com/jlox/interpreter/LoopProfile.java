@@ -0,0 +1,10 @@
+package com.jlox.interpreter;
+
+/**
+ * What the JIT engine knows about a while loop: how many times it has gone round, and the compiled code that replaced
+ * it once it got hot. Kept by the {@link Interpreter}, so the AST holds nothing that belongs to an engine.
+ */
+final class LoopProfile {
+    int backEdges;
+    ClosureCompiler.Exec compiled;
+}
@@ -2,7 +2,7 @@ package com.jlox.interpreter;
 
 import java.util.List;
 
-interface LoxCallable {
+public interface LoxCallable {
     int arity();
 
     Object call(Interpreter interpreter, List<Object> arguments);
@@ -1,15 +1,27 @@
 package com.jlox.interpreter;
 
+import com.jlox.jit.Deoptimization;
+import com.jlox.jit.JitCode;
+import com.jlox.jit.JitCompiler;
+import com.jlox.statement.Block;
 import com.jlox.statement.FunDeclare;
 
 import java.util.List;
 
 public class LoxFunction implements LoxCallable {
 
+    // Number of calls after which the JIT engine compiles a function
+    static final int JIT_THRESHOLD = 1000;
+
     private final FunDeclare declaration;
+    private final Environment closure;
+    private int calls;
+    private JitCode compiled;
+    private boolean jitFailed;
 
-    public LoxFunction(FunDeclare declaration) {
+    public LoxFunction(FunDeclare declaration, Environment closure) {
         this.declaration = declaration;
+        this.closure = closure;
     }
 
     @Override
@@ -19,16 +31,73 @@ public class LoxFunction implements LoxCallable {
 
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
-        interpreter.nestScope();
-        Environment environment = interpreter.getScope();
-        for (int i = 0; i < declaration.params.size(); i++) {
-            environment.defineVariable(declaration.params.get(i), arguments.get(i));
+        if (interpreter.getEngine() == Engine.JIT && canRunCompiled(arguments)) {
+            try {
+                return compiled.call(arguments.toArray());
+            } catch (Deoptimization e) {
+                // Compiled code has no side effects, so the call can start over in the interpreter
+                compiled = null;
+                jitFailed = true;
+            }
+        }
+        Block body = interpreter.bodyOf(declaration);
+        Environment previous = interpreter.getScope();
+        // Parameters live in their own scope, enclosed by the scope the function was declared in
+        Environment environment;
+        if (body.scopeSize < 0) {
+            environment = new Environment(closure);
+            for (int i = 0; i < declaration.params.size(); i++) {
+                environment.defineVariable(declaration.params.get(i), arguments.get(i));
+            }
+        } else {
+            environment = new Environment(closure, arguments.size());
+            for (int i = 0; i < arguments.size(); i++) {
+                environment.defineAt(i, arguments.get(i));
+            }
         }
+        interpreter.setScope(environment);
         try {
-            interpreter.execute(declaration.body);
-        } catch (ReturnException returnValue) {
-            return returnValue.value;
+            if (interpreter.execute(body) == Completion.RETURN) {
+                return interpreter.takeReturnValue();
+            }
+        } finally {
+            interpreter.setScope(previous);
         }
         return null;
     }
+
+    /**
+     * Count the call and compile the function once it is hot.
+     *
+     * @return true if the compiled code can run with these arguments
+     */
+    private boolean canRunCompiled(List<Object> arguments) {
+        if (compiled == null && !jitFailed && ++calls >= JIT_THRESHOLD) {
+            compiled = JitCompiler.compile(declaration, closure, this);
+            jitFailed = compiled == null;
+        }
+        if (compiled == null) {
+            return false;
+        }
+        // Compiled code only takes ints
+        for (Object argument : arguments) {
+            if (!(argument instanceof Integer)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    FunDeclare getDeclaration() {
+        return declaration;
+    }
+
+    boolean isCompiled() {
+        return compiled != null;
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + declaration.name.lexeme + ">";
+    }
 }
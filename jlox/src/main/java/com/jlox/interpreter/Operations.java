@@ -0,0 +1,142 @@
+package com.jlox.interpreter;
+
+import com.jlox.scanner.TokenType;
+
+/**
+ * The semantics of Lox's operators, shared by every execution engine so that they agree on results and errors.
+ */
+public final class Operations {
+
+    private Operations() {
+    }
+
+    /**
+     * Apply a binary operator to two values that have already been evaluated.
+     *
+     * @param operator the type of the operator
+     * @param lexeme   how the operator is written, used in error messages
+     * @param left     the left operand
+     * @param right    the right operand
+     * @return the result
+     */
+    public static Object binary(TokenType operator, String lexeme, Object left, Object right) {
+        switch (operator) {
+            case COMMA:
+                return right;
+            case EQUAL_EQUAL:
+                return left.equals(right);
+            case BANG_EQUAL:
+                return !left.equals(right);
+            case SLASH:
+            case STAR:
+            case MINUS:
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS_EQUAL:
+            case LESS:
+                return operate(left, right, operator, lexeme);
+            case PLUS:
+                if (left instanceof String || right instanceof String) {
+                    return left.toString() + right.toString();
+                }
+                return operate(left, right, operator, lexeme);
+            default:
+                throw new RuntimeError(String.format("%s is not supported for %s and %s", lexeme,
+                        left.getClass(), right.getClass()));
+        }
+    }
+
+    /**
+     * Negate a number.
+     */
+    public static Object negate(Object right) {
+        if (right instanceof Double) {
+            return -1 * (Double) right;
+        }
+        if (right instanceof Integer) {
+            return -1 * (Integer) right;
+        }
+        throw new RuntimeError("Expected a number.");
+    }
+
+    /**
+     * Check the truthiness of a value. Only booleans and nil have one.
+     */
+    public static boolean isTruthy(Object object) {
+        if (object == null) {
+            return false;
+        }
+
+        if (object instanceof Boolean) {
+            return (Boolean) object;
+        }
+        throw new RuntimeError("Expected a boolean.");
+    }
+
+    private static Object operate(Object left, Object right, TokenType operator, String lexeme) {
+        if (left instanceof Double || right instanceof Double) {
+            Number leftNum = (Number) left;
+            Number rightNum = (Number) right;
+            return operate(leftNum.doubleValue(), rightNum.doubleValue(), operator);
+        }
+        if (!(left instanceof Integer) || !(right instanceof Integer)) {
+            throw new RuntimeError(String.format("%s is not supported on %s and %s",
+                    lexeme, left.getClass(), right.getClass()));
+        }
+        return operate((Integer) left, (Integer) right, operator);
+
+    }
+
+    private static Object operate(Double left, Double right, TokenType operator) {
+        switch (operator) {
+            case MINUS:
+                return left - right;
+            case STAR:
+                return left * right;
+            case PLUS:
+                return left + right;
+            case SLASH:
+                if (right.equals(0d)) {
+                    throw new RuntimeError("Cannot divide by 0");
+                }
+                return left / right;
+            case GREATER:
+                return left > right;
+            case GREATER_EQUAL:
+                return left >= right;
+            case LESS_EQUAL:
+                return left <= right;
+            case LESS:
+                return left < right;
+            default:
+                return null;
+        }
+    }
+
+    private static Object operate(Integer left, Integer right, TokenType operator) {
+        switch (operator) {
+            case MINUS:
+                return left - right;
+            case STAR:
+                return left * right;
+            case PLUS:
+                return left + right;
+            case SLASH:
+                if (right.equals(0)) {
+                    throw new RuntimeError("Cannot divide by 0");
+                }
+                return left / right;
+
+            case GREATER:
+                return left > right;
+            case GREATER_EQUAL:
+                return left >= right;
+            case LESS_EQUAL:
+                return left <= right;
+            case LESS:
+                return left < right;
+            default:
+                return null;
+        }
+    }
+}
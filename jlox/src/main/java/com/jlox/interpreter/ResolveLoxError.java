@@ -0,0 +1,11 @@
+package com.jlox.interpreter;
+
+import com.jlox.error.LoxError;
+
+public class ResolveLoxError extends LoxError {
+
+    public ResolveLoxError(String message, int offset) {
+        super(message, "RESOLVE_ERROR", offset);
+    }
+
+}
@@ -0,0 +1,279 @@
+package com.jlox.interpreter;
+
+import com.jlox.expression.*;
+import com.jlox.scanner.Symbol;
+import com.jlox.scanner.Token;
+import com.jlox.statement.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Static pass that runs between parsing and interpretation. Every local variable is given a (depth, slot) address:
+ * depth is the number of scopes between the use and the declaration and slot is the index of the variable in the
+ * declaring scope. Variables that aren't found in any local scope are globals and are left unresolved, to be looked
+ * up by name at runtime.
+ */
+public class Resolver implements StatementVisitor<Void>, ExpressionVisitor<Void> {
+
+    private final List<Map<Symbol, Integer>> scopes = new ArrayList<>();
+    // Expressions waiting to be resolved, see resolve(Expression)
+    private final List<Expression> pending = new ArrayList<>();
+    // The scopes around each declaration whose body hadn't been parsed when it was resolved, see body(FunDeclare)
+    private final Map<FunDeclare, List<Map<Symbol, Integer>>> deferred = new IdentityHashMap<>();
+
+    /**
+     * Resolve every variable in a program. Resolving the same statements more than once is allowed.
+     *
+     * @param stmts the top-level statements of the program
+     */
+    public void resolve(List<Statement> stmts) {
+        for (Statement stmt : stmts) {
+            resolve(stmt);
+        }
+    }
+
+    public void resolve(Statement stmt) {
+        stmt.accept(this);
+    }
+
+    /**
+     * Resolve the variables of an expression. Expressions don't declare anything, so the order their parts are
+     * resolved in doesn't matter: the visitor methods leave their operands on a work list instead of recursing, so
+     * deeply nested expressions don't overflow the stack.
+     */
+    private void resolve(Expression expr) {
+        int base = pending.size();
+        pending.add(expr);
+        while (pending.size() > base) {
+            pending.remove(pending.size() - 1).accept(this);
+        }
+    }
+
+    /**
+     * Get the body of a function, resolving it first if its declaration was resolved before the body was parsed.
+     *
+     * @param fundeclare the declaration of the function
+     * @return the resolved body
+     */
+    public Block body(FunDeclare fundeclare) {
+        List<Map<Symbol, Integer>> enclosing = deferred.remove(fundeclare);
+        if (enclosing != null) {
+            List<Map<Symbol, Integer>> current = new ArrayList<>(scopes);
+            scopes.clear();
+            scopes.addAll(enclosing);
+            try {
+                resolveFunction(fundeclare);
+            } finally {
+                scopes.clear();
+                scopes.addAll(current);
+            }
+        }
+        return fundeclare.body();
+    }
+
+    private void beginScope() {
+        scopes.add(new HashMap<>());
+    }
+
+    private int endScope() {
+        return scopes.remove(scopes.size() - 1).size();
+    }
+
+    /**
+     * Add a variable to the innermost scope.
+     *
+     * @return the slot given to the variable or -1 if it is a global
+     */
+    private int declare(Token name) {
+        if (scopes.isEmpty()) {
+            return -1;
+        }
+        Map<Symbol, Integer> scope = scopes.get(scopes.size() - 1);
+        if (scope.containsKey(name.symbol)) {
+            throw new ResolveLoxError(name.lexeme + " has already been declared in this scope", name.offset);
+        }
+        int slot = scope.size();
+        scope.put(name.symbol, slot);
+        return slot;
+    }
+
+    /**
+     * Find the innermost scope declaring a variable.
+     *
+     * @return the depth of the scope or -1 if the variable is a global
+     */
+    private int depthOf(Token name) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            if (scopes.get(i).containsKey(name.symbol)) {
+                return scopes.size() - 1 - i;
+            }
+        }
+        return -1;
+    }
+
+    private int slotOf(Token name, int depth) {
+        if (depth < 0) {
+            return -1;
+        }
+        return scopes.get(scopes.size() - 1 - depth).get(name.symbol);
+    }
+
+    @Override
+    public Void visitPrintStatement(PrintStatement printstatement) {
+        resolve(printstatement.expr);
+        return null;
+    }
+
+    @Override
+    public Void visitExprStatement(ExprStatement exprstatement) {
+        resolve(exprstatement.expr);
+        return null;
+    }
+
+    // The initializer is resolved before the name is declared so that it sees the enclosing variable, the same way
+    // the tree-walker evaluates the initializer before defining the variable
+    @Override
+    public Void visitVarDeclare(VarDeclare vardeclare) {
+        resolve(vardeclare.init);
+        vardeclare.slot = declare(vardeclare.name);
+        return null;
+    }
+
+    @Override
+    public Void visitVarAssign(VarAssign varassign) {
+        resolve(varassign.newVal);
+        varassign.depth = depthOf(varassign.name);
+        varassign.slot = slotOf(varassign.name, varassign.depth);
+        return null;
+    }
+
+    @Override
+    public Void visitBlock(Block block) {
+        beginScope();
+        try {
+            resolve(block.stmts);
+        } finally {
+            block.scopeSize = endScope();
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitIfStatement(IfStatement ifstatement) {
+        resolve(ifstatement.condition);
+        resolve(ifstatement.thenBranch);
+        if (ifstatement.elseBranch != null) {
+            resolve(ifstatement.elseBranch);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStatement(WhileStatement whilestatement) {
+        if (whilestatement.condition != null) {
+            resolve(whilestatement.condition);
+        }
+        resolve(whilestatement.body);
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStatement(BreakStatement breakstatement) {
+        return null;
+    }
+
+    // The name is declared before the body is resolved so that the function can call itself. A body that hasn't been
+    // parsed yet is resolved when it is, against a copy of the scopes as they are at the declaration.
+    @Override
+    public Void visitFunDeclare(FunDeclare fundeclare) {
+        fundeclare.slot = declare(fundeclare.name);
+        if (!fundeclare.isBodyParsed()) {
+            List<Map<Symbol, Integer>> enclosing = new ArrayList<>(scopes.size());
+            for (Map<Symbol, Integer> scope : scopes) {
+                enclosing.add(new HashMap<>(scope));
+            }
+            deferred.put(fundeclare, enclosing);
+            return null;
+        }
+        resolveFunction(fundeclare);
+        return null;
+    }
+
+    // The parameters live in their own scope that encloses the scope of the body
+    private void resolveFunction(FunDeclare fundeclare) {
+        beginScope();
+        try {
+            for (Token param : fundeclare.params) {
+                declare(param);
+            }
+            resolve(fundeclare.body());
+        } finally {
+            endScope();
+        }
+    }
+
+    @Override
+    public Void visitReturnStatement(ReturnStatement returnstatement) {
+        resolve(returnstatement.value);
+        return null;
+    }
+
+    @Override
+    public Void visitBinary(Binary binary) {
+        pending.add(binary.left);
+        pending.add(binary.right);
+        return null;
+    }
+
+    @Override
+    public Void visitLogical(Logical logical) {
+        pending.add(logical.left);
+        pending.add(logical.right);
+        return null;
+    }
+
+    @Override
+    public Void visitGrouping(Grouping grouping) {
+        pending.add(grouping.expr);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteral(Literal literal) {
+        return null;
+    }
+
+    @Override
+    public Void visitUnary(Unary unary) {
+        pending.add(unary.right);
+        return null;
+    }
+
+    @Override
+    public Void visitTernary(Ternary ternary) {
+        pending.add(ternary.condition);
+        pending.add(ternary.left);
+        pending.add(ternary.right);
+        return null;
+    }
+
+    @Override
+    public Void visitVariable(Variable variable) {
+        variable.depth = depthOf(variable.name);
+        variable.slot = slotOf(variable.name, variable.depth);
+        return null;
+    }
+
+    @Override
+    public Void visitCall(Call call) {
+        pending.add(call.callee);
+        for (Expression arg : call.arguments) {
+            pending.add(arg);
+        }
+        return null;
+    }
+}
@@ -1,11 +0,0 @@
-package com.jlox.interpreter;
-
-public class ReturnException extends RuntimeException {
-
-    public final Object value;
-
-    public ReturnException(Object value) {
-        super(null, null, false, false);
-        this.value = value;
-    }
-}
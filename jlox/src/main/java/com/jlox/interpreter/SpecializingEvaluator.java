@@ -0,0 +1,36 @@
+package com.jlox.interpreter;
+
+import com.jlox.expression.Binary;
+import com.jlox.expression.Unary;
+
+/**
+ * Expression evaluator whose binary and unary expressions specialize themselves on the operand types they see. See
+ * {@link BinaryNode}. The specializations are kept in the {@code node} slot of the expressions, which the expression
+ * package leaves untyped so that it doesn't depend on the interpreter.
+ */
+public class SpecializingEvaluator extends ExpressionEvaluator {
+
+    public SpecializingEvaluator(Interpreter interpreter) {
+        super(interpreter);
+    }
+
+    @Override
+    protected Object unary(Unary unary, Object right) {
+        UnaryNode node = (UnaryNode) unary.node;
+        if (node == null) {
+            node = UnaryNode.specialize(unary.operator.type, right);
+            unary.node = node;
+        }
+        return node.execute(unary, right);
+    }
+
+    @Override
+    protected Object binary(Binary binary, Object left, Object right) {
+        BinaryNode node = (BinaryNode) binary.node;
+        if (node == null) {
+            node = BinaryNode.specialize(binary.operator.type, left, right);
+            binary.node = node;
+        }
+        return node.execute(binary, left, right);
+    }
+}
@@ -1,97 +1,146 @@
 package com.jlox.interpreter;
 
+import com.jlox.scanner.Token;
 import com.jlox.statement.*;
 
-public class StatementEvaluator implements StatementVisitor<Void> {
+public class StatementEvaluator implements StatementVisitor<Completion> {
+
+    // Number of iterations after which the JIT engine replaces a running loop
+    static final int OSR_THRESHOLD = 10000;
 
     private final ExpressionEvaluator exprEval;
     private final Interpreter interpreter;
+    private ClosureCompiler closureCompiler;
 
     public StatementEvaluator(Interpreter interpreter) {
+        this(interpreter, new ExpressionEvaluator(interpreter));
+    }
+
+    public StatementEvaluator(Interpreter interpreter, ExpressionEvaluator exprEval) {
         this.interpreter = interpreter;
-        this.exprEval = new ExpressionEvaluator(interpreter);
+        this.exprEval = exprEval;
     }
 
-    public Void execute(Statement stmt) {
-        stmt.accept(this);
-        return null;
+    public Completion execute(Statement stmt) {
+        return stmt.accept(this);
     }
 
     @Override
-    public Void visitPrintStatement(PrintStatement printstatement) {
+    public Completion visitPrintStatement(PrintStatement printstatement) {
         System.out.println(exprEval.evaluate(printstatement.expr));
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitExprStatement(ExprStatement exprstatement) {
+    public Completion visitExprStatement(ExprStatement exprstatement) {
         exprEval.evaluate(exprstatement.expr);
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitVarDeclare(VarDeclare varDeclare) {
-        this.interpreter.getScope().defineVariable(varDeclare.name, exprEval.evaluate(varDeclare.init));
-        return null;
+    public Completion visitVarDeclare(VarDeclare varDeclare) {
+        define(varDeclare.name, varDeclare.slot, exprEval.evaluate(varDeclare.init));
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitVarAssign(VarAssign varAssign) {
-        this.interpreter.getScope().changeValue(varAssign.name, exprEval.evaluate(varAssign.newVal));
-        return null;
+    public Completion visitVarAssign(VarAssign varAssign) {
+        Object value = exprEval.evaluate(varAssign.newVal);
+        if (varAssign.depth < 0) {
+            this.interpreter.getScope().changeValue(varAssign.name, value);
+        } else {
+            this.interpreter.getScope().changeAt(varAssign.depth, varAssign.slot, value);
+        }
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitBlock(Block block) {
-        this.interpreter.nestScope();
+    public Completion visitBlock(Block block) {
+        this.interpreter.nestScope(block.scopeSize);
         try {
             for (Statement stmt : block.stmts) {
-                execute(stmt);
+                Completion completion = execute(stmt);
+                if (completion != Completion.NORMAL) {
+                    return completion;
+                }
             }
         } finally {
             this.interpreter.unnestScope();
         }
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitIfStatement(IfStatement ifstatement) {
-        try {
-            if (exprEval.evaluate(ifstatement.condition).equals(true)) {
-                execute(ifstatement.thenBranch);
-            } else if (ifstatement.elseBranch != null) {
-                execute(ifstatement.elseBranch);
-            }
-        } catch (BreakException ignored) {
+    public Completion visitIfStatement(IfStatement ifstatement) {
+        if (Boolean.TRUE.equals(exprEval.evaluate(ifstatement.condition))) {
+            return execute(ifstatement.thenBranch);
+        } else if (ifstatement.elseBranch != null) {
+            return execute(ifstatement.elseBranch);
         }
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitWhileStatement(WhileStatement whilestatement) {
-        while (whilestatement.condition == null || exprEval.evaluate(whilestatement.condition).equals(true)) {
-            try {
-                execute(whilestatement.body);
-            } catch (BreakException ignored) {
+    public Completion visitWhileStatement(WhileStatement whilestatement) {
+        // Only the JIT engine counts iterations, so loops run by the other engines are never replaced
+        LoopProfile profile = interpreter.getEngine() == Engine.JIT ? interpreter.loopProfile(whilestatement) : null;
+        if (profile != null && profile.compiled != null) {
+            return profile.compiled.exec(interpreter.getScope());
+        }
+        while (whilestatement.condition == null
+                || Boolean.TRUE.equals(exprEval.evaluate(whilestatement.condition))) {
+            Completion completion = execute(whilestatement.body);
+            if (completion == Completion.BREAK) {
+                break;
+            } else if (completion == Completion.RETURN) {
+                return completion;
             }
+            if (profile != null && ++profile.backEdges >= OSR_THRESHOLD) {
+                return replaceLoop(whilestatement, profile);
+            }
+        }
+        return Completion.NORMAL;
+    }
+
+    /**
+     * On-stack replacement of a hot loop: the rest of the loop, starting with the next check of the condition, runs as
+     * code compiled by the {@link ClosureCompiler}. The compiled loop reads and writes its variables in the same
+     * environments, so it continues with the state the tree-walker left. Later runs of the loop use it from the start.
+     *
+     * @return how the compiled loop completed
+     */
+    private Completion replaceLoop(WhileStatement whilestatement, LoopProfile profile) {
+        if (closureCompiler == null) {
+            closureCompiler = new ClosureCompiler(interpreter);
         }
-        return null;
+        profile.compiled = whilestatement.accept(closureCompiler);
+        return profile.compiled.exec(interpreter.getScope());
     }
 
     @Override
-    public Void visitBreakStatement(BreakStatement breakstatement) {
-        throw new BreakException();
+    public Completion visitBreakStatement(BreakStatement breakstatement) {
+        return Completion.BREAK;
     }
 
     @Override
-    public Void visitFunDeclare(FunDeclare fundeclare) {
-        this.interpreter.getScope().defineVariable(fundeclare.name, new LoxFunction(fundeclare));
-        return null;
+    public Completion visitFunDeclare(FunDeclare fundeclare) {
+        define(fundeclare.name, fundeclare.slot, new LoxFunction(fundeclare, this.interpreter.getScope()));
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitReturnStatement(ReturnStatement returnstatement) {
-        throw new ReturnException(exprEval.evaluate(returnstatement.value));
+    public Completion visitReturnStatement(ReturnStatement returnstatement) {
+        interpreter.setReturnValue(exprEval.evaluate(returnstatement.value));
+        return Completion.RETURN;
+    }
+
+    // Globals are never resolved and are defined by name
+    private void define(Token name, int slot, Object value) {
+        if (slot < 0) {
+            this.interpreter.getScope().defineVariable(name, value);
+        } else {
+            this.interpreter.getScope().defineAt(slot, value);
+        }
     }
 
 }
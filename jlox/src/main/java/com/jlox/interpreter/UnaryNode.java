@@ -0,0 +1,82 @@
+package com.jlox.interpreter;
+
+import com.jlox.expression.Unary;
+import com.jlox.scanner.TokenType;
+
+/**
+ * The operation a {@link Unary} node performs when run by the {@link SpecializingEvaluator}, kept in the node's
+ * {@link Unary#node} slot. Works the same way as {@link BinaryNode}: specialize on the first operand seen, generalize
+ * for good when a guard fails.
+ */
+abstract class UnaryNode {
+
+    static final UnaryNode GENERIC = new UnaryNode() {
+        @Override
+        Object execute(Unary unary, Object right) {
+            switch (unary.operator.type) {
+                case BANG:
+                    return !Operations.isTruthy(right);
+                case MINUS:
+                    return Operations.negate(right);
+                default:
+                    throw new RuntimeError(String.format("Unknown operator '%s'", unary.operator.lexeme));
+            }
+        }
+    };
+
+    private static final UnaryNode INT_NEGATE = new UnaryNode() {
+        @Override
+        Object execute(Unary unary, Object right) {
+            if (right instanceof Integer) {
+                return -(Integer) right;
+            }
+            return generalize(unary, right);
+        }
+    };
+
+    private static final UnaryNode DOUBLE_NEGATE = new UnaryNode() {
+        @Override
+        Object execute(Unary unary, Object right) {
+            if (right instanceof Double) {
+                return -(Double) right;
+            }
+            return generalize(unary, right);
+        }
+    };
+
+    private static final UnaryNode BOOLEAN_NOT = new UnaryNode() {
+        @Override
+        Object execute(Unary unary, Object right) {
+            if (right instanceof Boolean) {
+                return !(Boolean) right;
+            }
+            return generalize(unary, right);
+        }
+    };
+
+    /**
+     * Apply the operator to an operand that has already been evaluated.
+     */
+    abstract Object execute(Unary unary, Object right);
+
+    /**
+     * Pick the node for the operand a unary expression sees the first time it runs.
+     */
+    static UnaryNode specialize(TokenType operator, Object right) {
+        if (operator == TokenType.MINUS && right instanceof Integer) {
+            return INT_NEGATE;
+        }
+        if (operator == TokenType.MINUS && right instanceof Double) {
+            return DOUBLE_NEGATE;
+        }
+        if (operator == TokenType.BANG && right instanceof Boolean) {
+            return BOOLEAN_NOT;
+        }
+        return GENERIC;
+    }
+
+    private static Object generalize(Unary unary, Object right) {
+        unary.node = GENERIC;
+        return GENERIC.execute(unary, right);
+    }
+}
@@ -0,0 +1,66 @@
+package com.jlox.jit;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A growable array of bytes written big-endian, the byte order of class files.
+ */
+final class ByteVector {
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int BYTE_BITS = 8;
+
+    private byte[] data = new byte[INITIAL_CAPACITY];
+    private int size;
+
+    ByteVector putByte(int value) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, size * 2);
+        }
+        data[size++] = (byte) value;
+        return this;
+    }
+
+    ByteVector putShort(int value) {
+        return putByte(value >> BYTE_BITS).putByte(value);
+    }
+
+    ByteVector putInt(int value) {
+        return putShort(value >> (BYTE_BITS * 2)).putShort(value);
+    }
+
+    ByteVector putBytes(byte[] bytes, int length) {
+        for (int i = 0; i < length; i++) {
+            putByte(bytes[i]);
+        }
+        return this;
+    }
+
+    ByteVector putBytes(ByteVector other) {
+        return putBytes(other.data, other.size);
+    }
+
+    // Every name the compiler writes is ASCII, for which modified UTF-8 and UTF-8 agree
+    ByteVector putUtf8(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putShort(bytes.length);
+        return putBytes(bytes, bytes.length);
+    }
+
+    /**
+     * Overwrite two bytes that were already written.
+     */
+    void setShort(int offset, int value) {
+        data[offset] = (byte) (value >> BYTE_BITS);
+        data[offset + 1] = (byte) value;
+    }
+
+    int size() {
+        return size;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(data, size);
+    }
+}
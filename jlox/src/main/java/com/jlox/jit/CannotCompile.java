@@ -0,0 +1,12 @@
+package com.jlox.jit;
+
+/**
+ * Thrown while compiling when a function uses something the JIT doesn't support. The function then stays in the
+ * interpreter.
+ */
+class CannotCompile extends RuntimeException {
+
+    CannotCompile(String reason) {
+        super(reason, null, false, false);
+    }
+}
@@ -0,0 +1,167 @@
+package com.jlox.jit;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Assembles a class file: the constant pool, fields and methods. Classes are written as version 49 (Java 5), the last
+ * version whose methods don't need a StackMapTable; the JVM still verifies them by type inference.
+ */
+final class ClassFile {
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int VERSION = 49;
+    private static final int ACC_SUPER = 0x0020;
+    // The fixed part of a Code attribute: max_stack, max_locals, code_length and two empty tables
+    private static final int CODE_HEADER_SIZE = 12;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final String name;
+    private final ByteVector pool = new ByteVector();
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+
+    private final ByteVector fields = new ByteVector();
+    private int fieldCount;
+    private final ByteVector methods = new ByteVector();
+    private int methodCount;
+
+    /**
+     * Start a class.
+     *
+     * @param name the internal name of the class, with slashes
+     */
+    ClassFile(String name) {
+        this.name = name;
+    }
+
+    String name() {
+        return name;
+    }
+
+    int utf8(String value) {
+        String key = "U" + value;
+        Integer index = poolIndex.get(key);
+        if (index == null) {
+            pool.putByte(CONSTANT_UTF8).putUtf8(value);
+            index = add(key);
+        }
+        return index;
+    }
+
+    int integer(int value) {
+        String key = "I" + value;
+        Integer index = poolIndex.get(key);
+        if (index == null) {
+            pool.putByte(CONSTANT_INTEGER).putInt(value);
+            index = add(key);
+        }
+        return index;
+    }
+
+    int classRef(String internalName) {
+        String key = "C" + internalName;
+        Integer index = poolIndex.get(key);
+        if (index == null) {
+            int nameIndex = utf8(internalName);
+            pool.putByte(CONSTANT_CLASS).putShort(nameIndex);
+            index = add(key);
+        }
+        return index;
+    }
+
+    int fieldRef(String owner, String fieldName, String descriptor) {
+        return memberRef(CONSTANT_FIELDREF, owner, fieldName, descriptor);
+    }
+
+    int methodRef(String owner, String methodName, String descriptor) {
+        return memberRef(CONSTANT_METHODREF, owner, methodName, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String memberName, String descriptor) {
+        String key = tag + owner + "." + memberName + descriptor;
+        Integer index = poolIndex.get(key);
+        if (index == null) {
+            int ownerIndex = classRef(owner);
+            int nameAndType = nameAndType(memberName, descriptor);
+            pool.putByte(tag).putShort(ownerIndex).putShort(nameAndType);
+            index = add(key);
+        }
+        return index;
+    }
+
+    private int nameAndType(String memberName, String descriptor) {
+        String key = "N" + memberName + ":" + descriptor;
+        Integer index = poolIndex.get(key);
+        if (index == null) {
+            int nameIndex = utf8(memberName);
+            int descriptorIndex = utf8(descriptor);
+            pool.putByte(CONSTANT_NAME_AND_TYPE).putShort(nameIndex).putShort(descriptorIndex);
+            index = add(key);
+        }
+        return index;
+    }
+
+    private int add(String key) {
+        int index = poolCount++;
+        poolIndex.put(key, index);
+        return index;
+    }
+
+    void addField(int access, String fieldName, String descriptor) {
+        fields.putShort(access).putShort(utf8(fieldName)).putShort(utf8(descriptor)).putShort(0);
+        fieldCount++;
+    }
+
+    void addMethod(int access, String methodName, String descriptor, CodeBuilder code) {
+        int codeName = utf8("Code");
+        methods.putShort(access).putShort(utf8(methodName)).putShort(utf8(descriptor));
+        // A single Code attribute with no exception table and no attributes of its own
+        methods.putShort(1).putShort(codeName);
+        byte[] bytes = code.toByteArray();
+        methods.putInt(bytes.length + CODE_HEADER_SIZE);
+        methods.putShort(code.maxStack()).putShort(code.maxLocals());
+        methods.putInt(bytes.length).putBytes(bytes, bytes.length);
+        methods.putShort(0).putShort(0);
+        methodCount++;
+    }
+
+    /**
+     * Write the class out.
+     *
+     * @param superName  the internal name of the super class
+     * @param interfaces the internal names of the implemented interfaces
+     * @return the class file
+     */
+    byte[] toByteArray(String superName, String... interfaces) {
+        int thisIndex = classRef(name);
+        int superIndex = classRef(superName);
+        int[] interfaceIndexes = new int[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaceIndexes[i] = classRef(interfaces[i]);
+        }
+
+        ByteVector out = new ByteVector();
+        out.putInt(MAGIC).putShort(0).putShort(VERSION);
+        out.putShort(poolCount).putBytes(pool);
+        out.putShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER).putShort(thisIndex).putShort(superIndex);
+        out.putShort(interfaceIndexes.length);
+        for (int index : interfaceIndexes) {
+            out.putShort(index);
+        }
+        out.putShort(fieldCount).putBytes(fields);
+        out.putShort(methodCount).putBytes(methods);
+        out.putShort(0);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,144 @@
+package com.jlox.jit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The body of a method being generated. Tracks the operand stack height so that max_stack can be filled in, and
+ * patches the offsets of jumps once their targets are known.
+ */
+final class CodeBuilder {
+
+    // Jump offsets are signed 16-bit integers
+    private static final int MAX_CODE = Short.MAX_VALUE;
+    private static final int MAX_LOCAL = 0xff;
+    // iconst_m1 to iconst_5 push small ints without an operand
+    private static final int MAX_ICONST = 5;
+
+    private final ByteVector code = new ByteVector();
+    private int stack;
+    private int maxStack;
+    private int maxLocals;
+
+    /**
+     * A position in the code that jumps can target before it is known.
+     */
+    static final class Label {
+        private int position = -1;
+        // The stack height at the label, -1 until a jump to it or the label itself is emitted
+        private int stack = -1;
+        private final List<Integer> jumps = new ArrayList<>();
+    }
+
+    /**
+     * Emit an instruction without operands.
+     *
+     * @param opcode     the instruction
+     * @param stackDelta how the instruction changes the height of the stack
+     */
+    void op(int opcode, int stackDelta) {
+        code.putByte(opcode);
+        adjust(stackDelta);
+    }
+
+    void opByte(int opcode, int operand, int stackDelta) {
+        code.putByte(opcode).putByte(operand);
+        adjust(stackDelta);
+    }
+
+    void opShort(int opcode, int operand, int stackDelta) {
+        code.putByte(opcode).putShort(operand);
+        adjust(stackDelta);
+    }
+
+    /**
+     * Push an int constant using the shortest instruction for it.
+     */
+    void pushInt(int value, ClassFile classFile) {
+        if (value >= -1 && value <= MAX_ICONST) {
+            op(Opcodes.ICONST_0 + value, 1);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            opByte(Opcodes.BIPUSH, value, 1);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            opShort(Opcodes.SIPUSH, value, 1);
+        } else {
+            opShort(Opcodes.LDC_W, classFile.integer(value), 1);
+        }
+    }
+
+    void load(int opcode, int local) {
+        useLocal(local);
+        opByte(opcode, local, 1);
+    }
+
+    void store(int opcode, int local) {
+        useLocal(local);
+        opByte(opcode, local, -1);
+    }
+
+    private void useLocal(int local) {
+        if (local > MAX_LOCAL) {
+            throw new CannotCompile("Too many locals");
+        }
+        maxLocals = Math.max(maxLocals, local + 1);
+    }
+
+    /**
+     * Declare how many locals the method uses, for locals that are never loaded or stored explicitly.
+     */
+    void reserveLocals(int count) {
+        maxLocals = Math.max(maxLocals, count);
+    }
+
+    void jump(int opcode, Label target, int stackDelta) {
+        int position = code.size();
+        code.putByte(opcode).putShort(0);
+        adjust(stackDelta);
+        target.stack = stack;
+        if (target.position >= 0) {
+            code.setShort(position + 1, target.position - position);
+        } else {
+            target.jumps.add(position);
+        }
+    }
+
+    /**
+     * Place a label at the current position. Code after an unconditional jump is only reachable through a label, so
+     * the stack height is taken from the jumps to the label.
+     */
+    void bind(Label label) {
+        label.position = code.size();
+        if (label.stack >= 0) {
+            stack = label.stack;
+        } else {
+            label.stack = stack;
+        }
+        for (int jump : label.jumps) {
+            int offset = label.position - jump;
+            if (offset > MAX_CODE) {
+                throw new CannotCompile("Method too large");
+            }
+            code.setShort(jump + 1, offset);
+        }
+    }
+
+    private void adjust(int stackDelta) {
+        stack += stackDelta;
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    int maxStack() {
+        return maxStack;
+    }
+
+    int maxLocals() {
+        return maxLocals;
+    }
+
+    byte[] toByteArray() {
+        if (code.size() > MAX_CODE) {
+            throw new CannotCompile("Method too large");
+        }
+        return code.toByteArray();
+    }
+}
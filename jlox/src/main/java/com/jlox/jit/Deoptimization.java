@@ -0,0 +1,15 @@
+package com.jlox.jit;
+
+/**
+ * Thrown by compiled code when one of its guards fails. Compiled functions have no side effects, so the caller can
+ * throw the compiled code away and run the call again in the interpreter. A single instance without a stack trace is
+ * shared, which keeps throwing it cheap.
+ */
+public final class Deoptimization extends RuntimeException {
+
+    public static final Deoptimization INSTANCE = new Deoptimization();
+
+    private Deoptimization() {
+        super(null, null, false, false);
+    }
+}
@@ -0,0 +1,16 @@
+package com.jlox.jit;
+
+/**
+ * Loads the classes generated by the {@link JitCompiler}. Every class gets a loader of its own so that it can be
+ * unloaded once the function it was compiled from is gone.
+ */
+final class JitClassLoader extends ClassLoader {
+
+    JitClassLoader() {
+        super(JitClassLoader.class.getClassLoader());
+    }
+
+    Class<?> define(String name, byte[] bytes) {
+        return defineClass(name, bytes, 0, bytes.length);
+    }
+}
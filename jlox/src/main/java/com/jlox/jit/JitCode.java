@@ -0,0 +1,16 @@
+package com.jlox.jit;
+
+/**
+ * Entry point of a function compiled to JVM bytecode. Every generated class implements it.
+ */
+public interface JitCode {
+
+    /**
+     * Run the compiled function.
+     *
+     * @param arguments the arguments, all of which must be Integers
+     * @return the boxed result
+     * @throws Deoptimization if a guard failed and the call must be run again in the interpreter
+     */
+    Object call(Object[] arguments);
+}
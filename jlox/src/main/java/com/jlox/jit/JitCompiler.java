@@ -0,0 +1,439 @@
+package com.jlox.jit;
+
+import com.jlox.expression.*;
+import com.jlox.interpreter.Environment;
+import com.jlox.scanner.TokenType;
+import com.jlox.statement.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Compiles the body of a hot function to a JVM class. Only functions without side effects are compiled: their
+ * parameters must be ints and their body may only use locals, int and boolean arithmetic, if, while, break, return
+ * and calls to the function itself. Everything is statically typed as int or boolean while compiling, and anything
+ * that doesn't fit makes the compiler give up, leaving the function to the interpreter.
+ *
+ * <p>Operations whose result doesn't fit the static types, such as division by zero, throw {@link Deoptimization}.
+ * Since compiled functions have no side effects the interpreter can simply run the call again.
+ */
+public final class JitCompiler implements StatementVisitor<Void>, ExpressionVisitor<JitCompiler.Type> {
+
+    /**
+     * The static type of a compiled expression.
+     */
+    enum Type {
+        INT, BOOL
+    }
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String INTEGER = "java/lang/Integer";
+    private static final String BOOLEAN = "java/lang/Boolean";
+    private static final String JIT_CODE = "com/jlox/jit/JitCode";
+    private static final String DEOPTIMIZATION = "com/jlox/jit/Deoptimization";
+    private static final String SELF_GUARD = "com/jlox/jit/SelfGuard";
+    private static final String GUARD_FIELD = "guard";
+    private static final String INVOKE = "invoke";
+    // if_icmp<cond> pops both ints it compares
+    private static final int COMPARED_INTS = 2;
+
+    private final FunDeclare declaration;
+    private final ClassFile classFile;
+    private final CodeBuilder code = new CodeBuilder();
+    private final List<List<Local>> scopes = new ArrayList<>();
+    private final Deque<CodeBuilder.Label> breakTargets = new ArrayDeque<>();
+    private int nextLocal;
+    private Type returnType;
+
+    /**
+     * A Lox local variable, kept in a JVM local.
+     */
+    private static final class Local {
+        private final int index;
+        private final Type type;
+
+        Local(int index, Type type) {
+            this.index = index;
+            this.type = type;
+        }
+    }
+
+    private JitCompiler(FunDeclare declaration) {
+        this.declaration = declaration;
+        this.classFile = new ClassFile("com/jlox/jit/Compiled_" + declaration.name.lexeme);
+    }
+
+    /**
+     * Compile a function declared in the global scope.
+     *
+     * @param declaration the declaration of the function, already resolved
+     * @param globals     the global scope
+     * @param function    the function object the declaration was bound to, used to guard recursive calls
+     * @return the compiled function or null if it can't be compiled
+     */
+    public static JitCode compile(FunDeclare declaration, Environment globals, Object function) {
+        if (declaration.slot >= 0) {
+            return null;
+        }
+        try {
+            JitCompiler compiler = new JitCompiler(declaration);
+            byte[] bytes = compiler.generate();
+            Class<?> compiled = new JitClassLoader().define(compiler.classFile.name().replace('/', '.'), bytes);
+            compiled.getField(GUARD_FIELD).set(null, new SelfGuard(globals, declaration.name, function));
+            return (JitCode) compiled.getDeclaredConstructor().newInstance();
+        } catch (CannotCompile e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not load compiled function " + declaration.name.lexeme, e);
+        }
+    }
+
+    private byte[] generate() {
+        List<Local> params = new ArrayList<>();
+        for (nextLocal = 0; nextLocal < declaration.params.size(); nextLocal++) {
+            params.add(new Local(nextLocal, Type.INT));
+        }
+        code.reserveLocals(nextLocal);
+        scopes.add(params);
+        declaration.body().accept(this);
+        // Falling off the end returns nil, which compiled code can't produce
+        deoptimize();
+        if (returnType == null) {
+            throw new CannotCompile("Never returns a value");
+        }
+
+        classFile.addField(ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC, GUARD_FIELD, "L" + SELF_GUARD + ";");
+        classFile.addMethod(ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC, INVOKE, descriptor(), code);
+        classFile.addMethod(ClassFile.ACC_PUBLIC, "<init>", "()V", constructor());
+        classFile.addMethod(ClassFile.ACC_PUBLIC, "call", "([L" + OBJECT + ";)L" + OBJECT + ";", bridge());
+        return classFile.toByteArray(OBJECT, JIT_CODE);
+    }
+
+    private String descriptor() {
+        StringBuilder descriptor = new StringBuilder("(");
+        for (int i = 0; i < declaration.params.size(); i++) {
+            descriptor.append('I');
+        }
+        return descriptor.append(returnType == Type.INT ? ")I" : ")Z").toString();
+    }
+
+    private CodeBuilder constructor() {
+        CodeBuilder init = new CodeBuilder();
+        init.load(Opcodes.ALOAD, 0);
+        init.opShort(Opcodes.INVOKESPECIAL, classFile.methodRef(OBJECT, "<init>", "()V"), -1);
+        init.op(Opcodes.RETURN, 0);
+        return init;
+    }
+
+    // JitCode.call: unbox the arguments, call the static method and box the result
+    private CodeBuilder bridge() {
+        CodeBuilder bridge = new CodeBuilder();
+        int arity = declaration.params.size();
+        bridge.reserveLocals(2);
+        for (int i = 0; i < arity; i++) {
+            bridge.load(Opcodes.ALOAD, 1);
+            bridge.pushInt(i, classFile);
+            bridge.op(Opcodes.AALOAD, -1);
+            bridge.opShort(Opcodes.CHECKCAST, classFile.classRef(INTEGER), 0);
+            bridge.opShort(Opcodes.INVOKEVIRTUAL, classFile.methodRef(INTEGER, "intValue", "()I"), 0);
+        }
+        bridge.opShort(Opcodes.INVOKESTATIC, classFile.methodRef(classFile.name(), INVOKE, descriptor()), 1 - arity);
+        if (returnType == Type.INT) {
+            bridge.opShort(Opcodes.INVOKESTATIC, classFile.methodRef(INTEGER, "valueOf", "(I)L" + INTEGER + ";"), 0);
+        } else {
+            bridge.opShort(Opcodes.INVOKESTATIC, classFile.methodRef(BOOLEAN, "valueOf", "(Z)L" + BOOLEAN + ";"), 0);
+        }
+        bridge.op(Opcodes.ARETURN, -1);
+        return bridge;
+    }
+
+    private void deoptimize() {
+        code.opShort(Opcodes.GETSTATIC, classFile.fieldRef(DEOPTIMIZATION, "INSTANCE", "L" + DEOPTIMIZATION + ";"), 1);
+        code.op(Opcodes.ATHROW, -1);
+    }
+
+    private Type emit(Expression expr) {
+        return expr.accept(this);
+    }
+
+    private void emit(Expression expr, Type expected) {
+        if (emit(expr) != expected) {
+            throw new CannotCompile("Expected " + expected);
+        }
+    }
+
+    private Local lookup(int depth, int slot) {
+        int scope = scopes.size() - 1 - depth;
+        if (depth < 0 || scope < 0) {
+            throw new CannotCompile("Only locals of the function itself are supported");
+        }
+        return scopes.get(scope).get(slot);
+    }
+
+    @Override
+    public Void visitPrintStatement(PrintStatement printstatement) {
+        throw new CannotCompile("print has side effects");
+    }
+
+    @Override
+    public Void visitExprStatement(ExprStatement exprstatement) {
+        emit(exprstatement.expr);
+        code.op(Opcodes.POP, -1);
+        return null;
+    }
+
+    @Override
+    public Void visitVarDeclare(VarDeclare vardeclare) {
+        Local local = new Local(nextLocal++, emit(vardeclare.init));
+        code.store(Opcodes.ISTORE, local.index);
+        scopes.get(scopes.size() - 1).add(local);
+        return null;
+    }
+
+    @Override
+    public Void visitVarAssign(VarAssign varassign) {
+        Local local = lookup(varassign.depth, varassign.slot);
+        emit(varassign.newVal, local.type);
+        code.store(Opcodes.ISTORE, local.index);
+        return null;
+    }
+
+    @Override
+    public Void visitBlock(Block block) {
+        scopes.add(new ArrayList<>());
+        for (Statement stmt : block.stmts) {
+            stmt.accept(this);
+        }
+        scopes.remove(scopes.size() - 1);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStatement(IfStatement ifstatement) {
+        CodeBuilder.Label elseBranch = new CodeBuilder.Label();
+        emit(ifstatement.condition, Type.BOOL);
+        code.jump(Opcodes.IFEQ, elseBranch, -1);
+        ifstatement.thenBranch.accept(this);
+        if (ifstatement.elseBranch == null) {
+            code.bind(elseBranch);
+            return null;
+        }
+        CodeBuilder.Label end = new CodeBuilder.Label();
+        code.jump(Opcodes.GOTO, end, 0);
+        code.bind(elseBranch);
+        ifstatement.elseBranch.accept(this);
+        code.bind(end);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStatement(WhileStatement whilestatement) {
+        CodeBuilder.Label start = new CodeBuilder.Label();
+        CodeBuilder.Label end = new CodeBuilder.Label();
+        code.bind(start);
+        if (whilestatement.condition != null) {
+            emit(whilestatement.condition, Type.BOOL);
+            code.jump(Opcodes.IFEQ, end, -1);
+        }
+        breakTargets.push(end);
+        whilestatement.body.accept(this);
+        breakTargets.pop();
+        code.jump(Opcodes.GOTO, start, 0);
+        code.bind(end);
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStatement(BreakStatement breakstatement) {
+        code.jump(Opcodes.GOTO, breakTargets.peek(), 0);
+        return null;
+    }
+
+    @Override
+    public Void visitFunDeclare(FunDeclare fundeclare) {
+        throw new CannotCompile("Nested functions are not supported");
+    }
+
+    @Override
+    public Void visitReturnStatement(ReturnStatement returnstatement) {
+        Type type = emit(returnstatement.value);
+        if (returnType == null) {
+            returnType = type;
+        } else if (returnType != type) {
+            throw new CannotCompile("Returns values of different types");
+        }
+        code.op(Opcodes.IRETURN, -1);
+        return null;
+    }
+
+    @Override
+    public Type visitBinary(Binary binary) {
+        switch (binary.operator.type) {
+            case COMMA:
+                emit(binary.left);
+                code.op(Opcodes.POP, -1);
+                return emit(binary.right);
+            case PLUS:
+                return arithmetic(binary, Opcodes.IADD);
+            case MINUS:
+                return arithmetic(binary, Opcodes.ISUB);
+            case STAR:
+                return arithmetic(binary, Opcodes.IMUL);
+            case SLASH:
+                emit(binary.left, Type.INT);
+                emit(binary.right, Type.INT);
+                // Division by zero is a runtime error, which the interpreter reports
+                CodeBuilder.Label nonZero = new CodeBuilder.Label();
+                code.op(Opcodes.DUP, 1);
+                code.jump(Opcodes.IFNE, nonZero, -1);
+                deoptimize();
+                code.bind(nonZero);
+                code.op(Opcodes.IDIV, -1);
+                return Type.INT;
+            // Each comparison jumps to false on the opposite condition
+            case LESS:
+                return comparison(binary, Opcodes.IF_ICMPGE);
+            case LESS_EQUAL:
+                return comparison(binary, Opcodes.IF_ICMPGT);
+            case GREATER:
+                return comparison(binary, Opcodes.IF_ICMPLE);
+            case GREATER_EQUAL:
+                return comparison(binary, Opcodes.IF_ICMPLT);
+            case EQUAL_EQUAL:
+                return equality(binary, Opcodes.IF_ICMPNE);
+            case BANG_EQUAL:
+                return equality(binary, Opcodes.IF_ICMPEQ);
+            default:
+                throw new CannotCompile("Unsupported operator " + binary.operator.lexeme);
+        }
+    }
+
+    private Type arithmetic(Binary binary, int opcode) {
+        emit(binary.left, Type.INT);
+        emit(binary.right, Type.INT);
+        code.op(opcode, -1);
+        return Type.INT;
+    }
+
+    private Type comparison(Binary binary, int jumpIfFalse) {
+        emit(binary.left, Type.INT);
+        emit(binary.right, Type.INT);
+        return booleanValue(jumpIfFalse);
+    }
+
+    private Type equality(Binary binary, int jumpIfFalse) {
+        emit(binary.right, emit(binary.left));
+        return booleanValue(jumpIfFalse);
+    }
+
+    // Turn a comparison of the two ints on the stack into 0 or 1
+    private Type booleanValue(int jumpIfFalse) {
+        CodeBuilder.Label isFalse = new CodeBuilder.Label();
+        CodeBuilder.Label end = new CodeBuilder.Label();
+        code.jump(jumpIfFalse, isFalse, -COMPARED_INTS);
+        code.pushInt(1, classFile);
+        code.jump(Opcodes.GOTO, end, 0);
+        code.bind(isFalse);
+        code.pushInt(0, classFile);
+        code.bind(end);
+        return Type.BOOL;
+    }
+
+    // Logical operator with short-circuiting
+    @Override
+    public Type visitLogical(Logical logical) {
+        boolean isOr = logical.operator.type == TokenType.OR;
+        CodeBuilder.Label shortCircuit = new CodeBuilder.Label();
+        CodeBuilder.Label end = new CodeBuilder.Label();
+        emit(logical.left, Type.BOOL);
+        code.jump(isOr ? Opcodes.IFNE : Opcodes.IFEQ, shortCircuit, -1);
+        emit(logical.right, Type.BOOL);
+        code.jump(Opcodes.GOTO, end, 0);
+        code.bind(shortCircuit);
+        code.pushInt(isOr ? 1 : 0, classFile);
+        code.bind(end);
+        return Type.BOOL;
+    }
+
+    @Override
+    public Type visitGrouping(Grouping grouping) {
+        return emit(grouping.expr);
+    }
+
+    @Override
+    public Type visitLiteral(Literal literal) {
+        if (literal.value instanceof Integer) {
+            code.pushInt((Integer) literal.value, classFile);
+            return Type.INT;
+        }
+        if (literal.value instanceof Boolean) {
+            code.pushInt((Boolean) literal.value ? 1 : 0, classFile);
+            return Type.BOOL;
+        }
+        throw new CannotCompile("Unsupported literal " + literal.value);
+    }
+
+    @Override
+    public Type visitUnary(Unary unary) {
+        switch (unary.operator.type) {
+            case MINUS:
+                emit(unary.right, Type.INT);
+                code.op(Opcodes.INEG, 0);
+                return Type.INT;
+            case BANG:
+                emit(unary.right, Type.BOOL);
+                code.pushInt(1, classFile);
+                code.op(Opcodes.IXOR, -1);
+                return Type.BOOL;
+            default:
+                throw new CannotCompile("Unsupported operator " + unary.operator.lexeme);
+        }
+    }
+
+    @Override
+    public Type visitTernary(Ternary ternary) {
+        CodeBuilder.Label right = new CodeBuilder.Label();
+        CodeBuilder.Label end = new CodeBuilder.Label();
+        emit(ternary.condition, Type.BOOL);
+        code.jump(Opcodes.IFEQ, right, -1);
+        Type type = emit(ternary.left);
+        code.jump(Opcodes.GOTO, end, 0);
+        code.bind(right);
+        emit(ternary.right, type);
+        code.bind(end);
+        return type;
+    }
+
+    @Override
+    public Type visitVariable(Variable variable) {
+        Local local = lookup(variable.depth, variable.slot);
+        code.load(Opcodes.ILOAD, local.index);
+        return local.type;
+    }
+
+    // Only direct recursion is compiled, as a static call guarded by the global still holding this function
+    @Override
+    public Type visitCall(Call call) {
+        if (!(call.callee instanceof Variable)) {
+            throw new CannotCompile("Only calls to the function itself are supported");
+        }
+        Variable callee = (Variable) call.callee;
+        if (callee.depth >= 0 || !callee.name.lexeme.equals(declaration.name.lexeme)
+                || call.arguments.size() != declaration.params.size()) {
+            throw new CannotCompile("Only calls to the function itself are supported");
+        }
+        code.opShort(Opcodes.GETSTATIC, classFile.fieldRef(classFile.name(), GUARD_FIELD, "L" + SELF_GUARD + ";"), 1);
+        code.opShort(Opcodes.INVOKEVIRTUAL, classFile.methodRef(SELF_GUARD, "check", "()V"), -1);
+        for (Expression argument : call.arguments) {
+            emit(argument, Type.INT);
+        }
+        if (returnType == null) {
+            returnType = Type.INT;
+        }
+        code.opShort(Opcodes.INVOKESTATIC, classFile.methodRef(classFile.name(), INVOKE, descriptor()),
+                1 - call.arguments.size());
+        return returnType;
+    }
+}
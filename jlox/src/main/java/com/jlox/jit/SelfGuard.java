@@ -0,0 +1,30 @@
+package com.jlox.jit;
+
+import com.jlox.interpreter.Environment;
+import com.jlox.scanner.Token;
+
+/**
+ * Guards the recursive calls of a compiled function, which are compiled to direct calls. They stay valid as long as
+ * the global the function was declared as still holds the function.
+ */
+public final class SelfGuard {
+
+    private final Environment globals;
+    private final Token name;
+    private final Object function;
+
+    SelfGuard(Environment globals, Token name, Object function) {
+        this.globals = globals;
+        this.name = name;
+        this.function = function;
+    }
+
+    /**
+     * Deoptimize if the global was reassigned.
+     */
+    public void check() {
+        if (globals.getValue(name) != function) {
+            throw Deoptimization.INSTANCE;
+        }
+    }
+}
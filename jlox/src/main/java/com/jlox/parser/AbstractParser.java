@@ -1,6 +1,5 @@
 package com.jlox.parser;
 
-import com.jlox.error.LoxError;
 import com.jlox.scanner.Token;
 import com.jlox.scanner.TokenType;
 
@@ -38,22 +37,23 @@ public abstract class AbstractParser<R> {
      * Check if the next token matches the desired type.
      */
     protected boolean check(TokenType type) {
-        return !tokens.isAtEnd() && tokens.peek().type == type;
+        return !tokens.isAtEnd() && tokens.peekType() == type;
     }
 
     /**
      * Check if the next token is off the expected type and return it if it is or
-     * throw the given error if not.
+     * throw an error with the given message if not. The error is only created
+     * when the check fails.
      *
      * @param type    The desired type
-     * @param message The error to throw if the next token is of a different type
+     * @param message The message of the error to throw if the next token is of a different type
      * @return The token whose token matches the desired type
      */
-    protected Token checkAndAdvance(TokenType type, LoxError message) {
+    protected Token checkAndAdvance(TokenType type, String message) {
         if (check(type)) {
             return tokens.advance();
         }
-        throw message;
+        throw newError(message);
     }
 
     /**
@@ -78,7 +78,7 @@ public abstract class AbstractParser<R> {
                 return;
             }
 
-            switch (tokens.peek().type) {
+            switch (tokens.peekType()) {
                 case CLASS:
                 case FUN:
                 case VAR:
@@ -92,7 +92,7 @@ public abstract class AbstractParser<R> {
                     break;
             }
 
-            tokens.advance();
+            tokens.skip();
         }
     }
 
@@ -0,0 +1,14 @@
+package com.jlox.parser;
+
+/**
+ * When {@link ParseStatement} parses the bodies of functions.
+ */
+public enum BodyParsing {
+    // Parse every body with its declaration
+    EAGER,
+    // Check every body for errors with its declaration, but only keep its tokens and build it when it is first needed
+    LAZY_STRICT,
+    // Skip bodies by matching braces and parse them when they are first needed. Errors in a body are only reported
+    // then, and never if the function isn't called
+    LAZY
+}
@@ -0,0 +1,371 @@
+package com.jlox.parser;
+
+import com.jlox.error.IErrorHandler;
+import com.jlox.error.LoxError;
+import com.jlox.scanner.LoxScanner;
+import com.jlox.scanner.Token;
+import com.jlox.scanner.TokenType;
+import com.jlox.scanner.source.RangeSource;
+import com.jlox.statement.Statement;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Keeps the tokens and top-level statements of a text, such as a file open in an editor, and brings them up to date
+ * after an edit without scanning and parsing the whole text again.
+ *
+ * <p>The text is kept as segments, one per top-level statement, each holding the statement and its tokens. An edit
+ * rescans from the end of the last segment the edit can't have changed. The scanner carries nothing from one token to
+ * the next, so as soon as a rescanned token past the edit ends where an old token ended, the rest of the old tokens are
+ * still right and are used instead of scanning further. Statements are reparsed from the rescanned tokens until one
+ * ends where an old segment did, and the segments after that are kept, statements included.
+ *
+ * <p>Kept segments aren't rewritten when an edit before them changes the length of the text: their tokens keep the
+ * offsets they were scanned with and the segment records how far they have moved since. Statements that have moved
+ * are copied with their offsets brought up to date when they are next asked for, so every statement handed out has
+ * the offsets of the current text. Parse errors are reported to the handler; the tokens from a statement with an
+ * error up to where an old segment ended, or the end of the text, are left unparsed.
+ */
+public class IncrementalParser {
+
+    private final IErrorHandler handler;
+    private final ArrayList<Segment> segments = new ArrayList<>();
+    private String text;
+
+    // The statements, worked out again after each edit when they are asked for
+    private List<Statement> statements;
+
+    /**
+     * Scan and parse a whole text.
+     *
+     * @param text    the text to parse
+     * @param handler the handler scanning and parsing errors are reported to
+     */
+    public IncrementalParser(String text, IErrorHandler handler) {
+        this.handler = handler;
+        this.text = text;
+        segments.addAll(parse(new Splice(text, 0, 0, text.length(), 0)));
+    }
+
+    /**
+     * Replace part of the text and update the tokens and statements.
+     *
+     * @param start       the offset of the first char replaced
+     * @param end         the offset after the last char replaced
+     * @param replacement the text to put in its place
+     */
+    public void edit(int start, int end, String replacement) {
+        if (start < 0 || start > end || end > text.length()) {
+            throw new IndexOutOfBoundsException(String.format("Range %d to %d is not in the text", start, end));
+        }
+        String edited = text.substring(0, start) + replacement + text.substring(end);
+        int delta = replacement.length() - (end - start);
+        int first = firstDamaged(start);
+        Splice splice;
+        if (first == 0) {
+            splice = new Splice(edited, 0, first, start + replacement.length(), delta);
+        } else {
+            Segment before = segments.get(first - 1);
+            splice = new Splice(edited, before.end() + 1, first, start + replacement.length(), delta);
+            splice.prime(shifted(before.last(), before.shift));
+        }
+        List<Segment> parsed = parse(splice);
+
+        for (int i = splice.reuseFrom; i < segments.size(); i++) {
+            segments.get(i).shift += delta;
+        }
+        segments.subList(first, splice.reuseFrom).clear();
+        segments.addAll(first, parsed);
+        text = edited;
+        statements = null;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Get the top-level statements that parsed without errors, in order, with the offsets of the current text. A
+     * statement is the same instance as before an edit if the edit didn't change or move it.
+     */
+    public List<Statement> getStatements() {
+        if (statements == null) {
+            collectStatements();
+        }
+        return statements;
+    }
+
+    /**
+     * Get every token of the text with its offset in the current text, the same as scanning the whole text gives.
+     * Tokens that have moved are copied, so this is as slow as the text is long.
+     */
+    public List<Token> getTokens() {
+        List<Token> tokens = new ArrayList<>();
+        for (Segment segment : segments) {
+            for (Token token : segment.tokens) {
+                tokens.add(shifted(token, segment.shift));
+            }
+        }
+        return tokens;
+    }
+
+    private void collectStatements() {
+        statements = new ArrayList<>(segments.size());
+        for (Segment segment : segments) {
+            if (segment.statement == null) {
+                continue;
+            }
+            if (segment.statementShift != segment.shift) {
+                segment.statement = new OffsetShifter(segment.shift - segment.statementShift).shift(segment.statement);
+                segment.statementShift = segment.shift;
+            }
+            statements.add(segment.statement);
+        }
+    }
+
+    /**
+     * Find the first segment an edit starting at the offset can change: the first one whose last token, or the token
+     * its statement was told apart from the next by, ends at or after the char before the edit.
+     */
+    private int firstDamaged(int start) {
+        int low = 0;
+        int high = segments.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (segments.get(middle).lookahead() < start - 1) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Parse statements from the tokens of a splice until they run out or, once the splice is back to the old tokens, a
+     * statement ends where an old segment did.
+     */
+    private List<Segment> parse(Splice splice) {
+        List<Segment> parsed = new ArrayList<>();
+        List<Token> taken = splice.taken;
+        TokenSource tokens = new TokenSource(() -> splice);
+        ParseStatement parser = new ParseStatement(handler);
+        int from = 0;
+        if (splice.primed) {
+            tokens.skip();
+            from = 1;
+        }
+        while (!tokens.isAtEnd()) {
+            Statement statement;
+            try {
+                statement = parser.parse(tokens);
+            } catch (LoxError error) {
+                handler.error(error);
+                int to = splice.skipToBoundary();
+                parsed.add(new Segment(new ArrayList<>(taken.subList(from, to + 1)), null, taken.get(to).offset));
+                return parsed;
+            }
+            // Tokens the parser looked at past the end of the statement belong to the next segment
+            Token last = tokens.previous();
+            int to = taken.lastIndexOf(last);
+            int lookahead = taken.get(taken.size() - 1).offset;
+            parsed.add(new Segment(new ArrayList<>(taken.subList(from, to + 1)), statement, lookahead));
+            from = to + 1;
+            if (splice.endsOldSegment(last)) {
+                return parsed;
+            }
+            // Only tokens not in a segment yet are needed, and usually there are none
+            if (from == taken.size()) {
+                taken.clear();
+                from = 0;
+            }
+        }
+        // The new lines and EOF after the last statement
+        if (from < taken.size()) {
+            parsed.add(new Segment(new ArrayList<>(taken.subList(from, taken.size())), null,
+                    taken.get(taken.size() - 1).offset));
+        }
+        return parsed;
+    }
+
+    private static Token shifted(Token token, int shift) {
+        if (shift == 0) {
+            return token;
+        }
+        if (token.symbol != null) {
+            return new Token(token.symbol, token.offset + shift);
+        }
+        return new Token(token.type, token.lexeme, token.literal, token.offset + shift);
+    }
+
+    /**
+     * A top-level statement and its tokens, from the end of the statement before it to its last token.
+     */
+    private static final class Segment {
+        private final List<Token> tokens;
+        // Null for the tokens after the last statement and for tokens that didn't parse
+        private Statement statement;
+        // The offset of the furthest token read to parse the statement, before shifting
+        private final int lookahead;
+        private int shift;
+        // How far the offsets of the statement have been moved, which is behind shift until it is copied again
+        private int statementShift;
+
+        Segment(List<Token> tokens, Statement statement, int lookahead) {
+            this.tokens = tokens;
+            this.statement = statement;
+            this.lookahead = lookahead;
+        }
+
+        Token last() {
+            return tokens.get(tokens.size() - 1);
+        }
+
+        int end() {
+            return last().offset + shift;
+        }
+
+        int lookahead() {
+            return lookahead + shift;
+        }
+    }
+
+    /**
+     * The tokens of an edited text from a restart point: rescanned tokens up to the point they line up with the old
+     * tokens again, then the old tokens moved by the change in length. Every token handed out is kept in order.
+     */
+    private final class Splice implements Iterator<Token> {
+        private final String text;
+        private final Iterator<Token> scanned;
+        // The offset after the last char of the edit in the new text, and the change in length
+        private final int editEnd;
+        private final int delta;
+        private final List<Token> taken = new ArrayList<>();
+
+        // The next old token to hand out or compare against
+        private int oldSegment;
+        private int oldToken;
+        private boolean resynced;
+        // The offset of the token the old tokens were picked up after
+        private int resyncedAt;
+        // The first old segment kept, the number of segments if none are
+        private int reuseFrom;
+        private int boundary;
+        // The token before the restart point, handed out first so the parser has a previous token to point errors at
+        private Token primer;
+        private boolean primed;
+
+        Splice(String text, int restart, int firstOld, int editEnd, int delta) {
+            this.text = text;
+            this.scanned = text.isEmpty() ? List.<Token>of().iterator()
+                    : new LoxScanner(new RangeSource(text, restart, text.length()), handler).streamTokens().iterator();
+            this.editEnd = editEnd;
+            this.delta = delta;
+            this.oldSegment = firstOld;
+            this.boundary = firstOld;
+            this.reuseFrom = segments.size();
+        }
+
+        void prime(Token token) {
+            primer = token;
+            primed = true;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (primer != null) {
+                return true;
+            }
+            return resynced ? oldSegment < segments.size() : scanned.hasNext();
+        }
+
+        @Override
+        public Token next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("No tokens remaining");
+            }
+            Token token;
+            if (primer != null) {
+                token = primer;
+                primer = null;
+            } else if (resynced) {
+                Segment segment = segments.get(oldSegment);
+                token = shifted(segment.tokens.get(oldToken), segment.shift + delta);
+                if (token.type == TokenType.EOF) {
+                    // The lexeme of EOF is the last char of the text, which the edit may have changed
+                    token = new Token(TokenType.EOF, text.substring(token.offset), null, token.offset);
+                }
+                nextOld();
+            } else {
+                token = scanned.next();
+                // Past the edit the text is unchanged, so once a token ends where an old one did the rest are the same
+                boolean pastEdit = token.type != TokenType.EOF && token.offset >= editEnd - 1;
+                if (pastEdit && oldTokenEndsAt(token.offset - delta)) {
+                    resynced = true;
+                    resyncedAt = token.offset;
+                    nextOld();
+                }
+            }
+            taken.add(token);
+            return token;
+        }
+
+        /**
+         * Check whether a statement ending with the token ends where an old segment did, so the old segments after it
+         * can be kept.
+         */
+        boolean endsOldSegment(Token last) {
+            // Before the old tokens were picked up, offsets can't be compared with old ones
+            if (!resynced || last.offset < resyncedAt) {
+                return false;
+            }
+            int oldOffset = last.offset - delta;
+            while (boundary < segments.size() && segments.get(boundary).end() < oldOffset) {
+                boundary++;
+            }
+            // EOF has the offset of the last char, so a token and EOF can end at the same offset
+            if (boundary < segments.size() && segments.get(boundary).end() == oldOffset
+                    && segments.get(boundary).last().type == last.type) {
+                reuseFrom = boundary + 1;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Hand out tokens until one ends where an old segment did, or they run out.
+         *
+         * @return the index of the last token handed out
+         */
+        int skipToBoundary() {
+            while (!endsOldSegment(taken.get(taken.size() - 1)) && hasNext()) {
+                next();
+            }
+            return taken.size() - 1;
+        }
+
+        private boolean oldTokenEndsAt(int oldOffset) {
+            while (oldSegment < segments.size() && oldOffset() < oldOffset) {
+                nextOld();
+            }
+            return oldSegment < segments.size() && oldOffset() == oldOffset
+                    && segments.get(oldSegment).tokens.get(oldToken).type != TokenType.EOF;
+        }
+
+        private int oldOffset() {
+            Segment segment = segments.get(oldSegment);
+            return segment.tokens.get(oldToken).offset + segment.shift;
+        }
+
+        private void nextOld() {
+            oldToken++;
+            if (oldToken == segments.get(oldSegment).tokens.size()) {
+                oldSegment++;
+                oldToken = 0;
+            }
+        }
+    }
+}
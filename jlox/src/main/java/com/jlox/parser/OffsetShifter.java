@@ -0,0 +1,238 @@
+package com.jlox.parser;
+
+import com.jlox.expression.*;
+import com.jlox.scanner.Token;
+import com.jlox.statement.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copies a statement with the offset of every token moved by the same amount, for statements whose text has moved
+ * since they were parsed. Everything the resolver and the engines stored in the nodes is copied with them. A function
+ * body that hasn't been parsed yet is moved once it is.
+ *
+ * <p>Expressions are copied without recursion, as the parser lets them be nested far deeper than the stack would
+ * allow: each expression is visited once to push its operands as work, and again to build its copy from the copies of
+ * its operands on the value stack.
+ */
+final class OffsetShifter implements StatementVisitor<Statement>, ExpressionVisitor<Void> {
+
+    private final int shift;
+    private final List<Expression> work = new ArrayList<>();
+    // Whether each expression on the work stack has had its operands copied
+    private final List<Boolean> operandsDone = new ArrayList<>();
+    private final List<Expression> values = new ArrayList<>();
+    private boolean building;
+
+    OffsetShifter(int shift) {
+        this.shift = shift;
+    }
+
+    Statement shift(Statement statement) {
+        return statement == null ? null : statement.accept(this);
+    }
+
+    private Expression shift(Expression expression) {
+        if (expression == null) {
+            return null;
+        }
+        int base = work.size();
+        push(expression, false);
+        while (work.size() > base) {
+            int last = work.size() - 1;
+            building = operandsDone.remove(last);
+            work.remove(last).accept(this);
+        }
+        return pop();
+    }
+
+    private Token shift(Token token) {
+        if (token.symbol != null) {
+            return new Token(token.symbol, token.offset + shift);
+        }
+        return new Token(token.type, token.lexeme, token.literal, token.offset + shift);
+    }
+
+    private void push(Expression expression, boolean done) {
+        work.add(expression);
+        operandsDone.add(done);
+    }
+
+    // Push the work for an expression and its operands, to be visited from the first operand on
+    private void push(Expression expression, Expression... operands) {
+        push(expression, true);
+        for (int i = operands.length - 1; i >= 0; i--) {
+            push(operands[i], false);
+        }
+    }
+
+    private Expression pop() {
+        return values.remove(values.size() - 1);
+    }
+
+    private List<Statement> shiftStatements(List<Statement> statements) {
+        List<Statement> shifted = new ArrayList<>(statements.size());
+        for (Statement statement : statements) {
+            shifted.add(shift(statement));
+        }
+        return shifted;
+    }
+
+    @Override
+    public Statement visitPrintStatement(PrintStatement printstatement) {
+        return new PrintStatement(shift(printstatement.expr));
+    }
+
+    @Override
+    public Statement visitExprStatement(ExprStatement exprstatement) {
+        return new ExprStatement(shift(exprstatement.expr));
+    }
+
+    @Override
+    public Statement visitVarDeclare(VarDeclare vardeclare) {
+        VarDeclare shifted = new VarDeclare(shift(vardeclare.name), shift(vardeclare.init));
+        shifted.slot = vardeclare.slot;
+        return shifted;
+    }
+
+    @Override
+    public Statement visitVarAssign(VarAssign varassign) {
+        VarAssign shifted = new VarAssign(shift(varassign.name), shift(varassign.newVal));
+        shifted.depth = varassign.depth;
+        shifted.slot = varassign.slot;
+        return shifted;
+    }
+
+    @Override
+    public Statement visitBlock(Block block) {
+        Block shifted = new Block(shiftStatements(block.stmts));
+        shifted.scopeSize = block.scopeSize;
+        return shifted;
+    }
+
+    @Override
+    public Statement visitIfStatement(IfStatement ifstatement) {
+        return new IfStatement(shift(ifstatement.condition), shift(ifstatement.thenBranch),
+                shift(ifstatement.elseBranch));
+    }
+
+    @Override
+    public Statement visitWhileStatement(WhileStatement whilestatement) {
+        return new WhileStatement(shift(whilestatement.condition), shift(whilestatement.body));
+    }
+
+    @Override
+    public Statement visitBreakStatement(BreakStatement breakstatement) {
+        return breakstatement;
+    }
+
+    @Override
+    public Statement visitFunDeclare(FunDeclare fundeclare) {
+        List<Token> params = new ArrayList<>(fundeclare.params.size());
+        for (Token param : fundeclare.params) {
+            params.add(shift(param));
+        }
+        FunDeclare shifted = fundeclare.isBodyParsed()
+                ? new FunDeclare(shift(fundeclare.name), params, (Block) shift(fundeclare.body()))
+                : new FunDeclare(shift(fundeclare.name), params, () -> (Block) shift(fundeclare.body()));
+        shifted.slot = fundeclare.slot;
+        return shifted;
+    }
+
+    @Override
+    public Statement visitReturnStatement(ReturnStatement returnstatement) {
+        return new ReturnStatement(shift(returnstatement.value));
+    }
+
+    @Override
+    public Void visitBinary(Binary binary) {
+        if (!building) {
+            push(binary, binary.left, binary.right);
+            return null;
+        }
+        Expression right = pop();
+        Binary shifted = new Binary(pop(), shift(binary.operator), right);
+        shifted.node = binary.node;
+        values.add(shifted);
+        return null;
+    }
+
+    @Override
+    public Void visitLogical(Logical logical) {
+        if (!building) {
+            push(logical, logical.left, logical.right);
+            return null;
+        }
+        Expression right = pop();
+        values.add(new Logical(pop(), shift(logical.operator), right));
+        return null;
+    }
+
+    @Override
+    public Void visitGrouping(Grouping grouping) {
+        if (!building) {
+            push(grouping, grouping.expr);
+            return null;
+        }
+        values.add(new Grouping(pop()));
+        return null;
+    }
+
+    @Override
+    public Void visitLiteral(Literal literal) {
+        values.add(literal);
+        return null;
+    }
+
+    @Override
+    public Void visitUnary(Unary unary) {
+        if (!building) {
+            push(unary, unary.right);
+            return null;
+        }
+        Unary shifted = new Unary(shift(unary.operator), pop());
+        shifted.node = unary.node;
+        values.add(shifted);
+        return null;
+    }
+
+    @Override
+    public Void visitTernary(Ternary ternary) {
+        if (!building) {
+            push(ternary, ternary.condition, ternary.left, ternary.right);
+            return null;
+        }
+        Expression right = pop();
+        Expression left = pop();
+        values.add(new Ternary(pop(), left, right));
+        return null;
+    }
+
+    @Override
+    public Void visitVariable(Variable variable) {
+        Variable shifted = new Variable(shift(variable.name));
+        shifted.depth = variable.depth;
+        shifted.slot = variable.slot;
+        values.add(shifted);
+        return null;
+    }
+
+    @Override
+    public Void visitCall(Call call) {
+        if (!building) {
+            Expression[] operands = new Expression[call.arguments.size() + 1];
+            operands[0] = call.callee;
+            for (int i = 0; i < call.arguments.size(); i++) {
+                operands[i + 1] = call.arguments.get(i);
+            }
+            push(call, operands);
+            return null;
+        }
+        int first = values.size() - call.arguments.size();
+        List<Expression> arguments = new ArrayList<>(values.subList(first, values.size()));
+        values.subList(first, values.size()).clear();
+        values.add(new Call(pop(), arguments));
+        return null;
+    }
+}
@@ -10,11 +10,30 @@ import java.util.ArrayList;
 import java.util.function.Function;
 
 /**
- * Expression parser.
+ * Recursive descent expression parser, with a method per precedence level. Statements are parsed with the faster
+ * {@link PrattParser}; this one is kept as the reference it is tested against.
  */
 public class ParseExpression extends AbstractParser<Expression> {
 
+    // Operators of each binary precedence level, kept in constants so that matching them allocates nothing
+    private static final TokenType[] COMMA = {TokenType.COMMA};
+    private static final TokenType[] EQUALITY = {TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL};
+    private static final TokenType[] COMPARISON = {
+        TokenType.GREATER, TokenType.GREATER_EQUAL, TokenType.LESS, TokenType.LESS_EQUAL,
+    };
+    private static final TokenType[] TERM = {TokenType.MINUS, TokenType.PLUS};
+    private static final TokenType[] FACTOR = {TokenType.SLASH, TokenType.STAR};
+    private static final TokenType[] UNARY = {TokenType.BANG, TokenType.MINUS};
+    private static final TokenType[] LITERAL = {TokenType.INTEGER, TokenType.DOUBLE, TokenType.STRING};
+    private static final TokenType[] KEYWORD_LITERAL = {TokenType.TRUE, TokenType.FALSE, TokenType.NIL};
+
     private final IErrorHandler errorHandler;
+    // Operands of the binary levels, created once per parser instead of on every call
+    private final Function<Void, Expression> ternaryOperand = (Void none) -> ternary();
+    private final Function<Void, Expression> comparisonOperand = (Void none) -> comparison();
+    private final Function<Void, Expression> termOperand = (Void none) -> term();
+    private final Function<Void, Expression> factorOperand = (Void none) -> factor();
+    private final Function<Void, Expression> unaryOperand = (Void none) -> unary();
 
     public ParseExpression(IErrorHandler errorHandler) {
         this.errorHandler = errorHandler;
@@ -59,17 +78,17 @@ public class ParseExpression extends AbstractParser<Expression> {
 
     // comma -> ternary (',' ternary) *
     private Expression comma() {
-        return binaryHelper((Void none) -> ternary(), TokenType.COMMA);
+        return binaryHelper(ternaryOperand, COMMA);
     }
 
     // ternary -> equality ? ternary : ternary | equality
     private Expression ternary() {
         Expression expr = logicalOr();
         if (check(TokenType.QUESTION_MARK)) {
-            tokens.advance();
+            tokens.skip();
             Expression left = ternary();
             if (check(TokenType.COLON)) {
-                tokens.advance();
+                tokens.skip();
                 Expression right = ternary();
                 return new Ternary(expr, left, right);
             }
@@ -102,45 +121,46 @@ public class ParseExpression extends AbstractParser<Expression> {
 
     // equality -> comparison ( ('!=' | '==') comparison) *
     private Expression equality() {
-        return binaryHelper((Void none) -> comparison(), TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL);
+        return binaryHelper(comparisonOperand, EQUALITY);
     }
 
     // comparison -> term ( ('>' | '>=' | '<' | '<=' ) term) *
     private Expression comparison() {
-        return binaryHelper((Void none) -> term(), TokenType.GREATER, TokenType.GREATER_EQUAL, TokenType.LESS,
-                TokenType.LESS_EQUAL);
-
+        return binaryHelper(termOperand, COMPARISON);
     }
 
     // term -> factor ( ('-' | '+') factor ) *
     private Expression term() {
-        return binaryHelper((Void none) -> factor(), TokenType.MINUS, TokenType.PLUS);
+        return binaryHelper(factorOperand, TERM);
     }
 
     // factor -> unary ( ('/' | '*') unary ) *
     private Expression factor() {
-        return binaryHelper((Void none) -> unary(), TokenType.SLASH, TokenType.STAR);
+        return binaryHelper(unaryOperand, FACTOR);
     }
 
     // unary -> ('!' | '-') unary | primary
     private Expression unary() {
-        if (checkMultiple(TokenType.BANG, TokenType.MINUS)) {
+        if (checkMultiple(UNARY)) {
             Token operator = tokens.advance();
             return new Unary(operator, unary());
         }
         return call();
     }
 
+    // call -> primary ( '(' arguments? ')' ) *
     private Expression call() {
         Expression expr = primary();
 
-        if (check(TokenType.LEFT_PAREN)) {
+        while (check(TokenType.LEFT_PAREN)) {
+            tokens.skip();
             ArrayList<Expression> args = new ArrayList<>();
             while (!check(TokenType.RIGHT_PAREN)) {
-                if (args.size() > MAX_ARGS) {
+                if (args.size() >= MAX_ARGS) {
                     throw new ParseLoxError("Cannot have more than 255 arguments", tokens.peek().offset);
                 }
-                args.add(expression());
+                // Arguments are parsed above the comma operator so the comma can separate them
+                args.add(ternary());
                 if (check(TokenType.RIGHT_PAREN)) {
                     break;
                 }
@@ -148,9 +168,11 @@ public class ParseExpression extends AbstractParser<Expression> {
                     throw new ParseLoxError("Expected ',' or ')'", tokens.previous().offset);
                 }
                 // Consume comma
-                tokens.advance();
+                tokens.skip();
             }
-            return new Call(expr, args);
+            // Consume the closing paren
+            tokens.skip();
+            expr = new Call(expr, args);
         }
         return expr;
     }
@@ -158,21 +180,24 @@ public class ParseExpression extends AbstractParser<Expression> {
     // primary -> NUMBER | STRING | 'true | 'false' | 'nil' | IDENTIFIER | '('
     // expression ')'
     private Expression primary() {
-        if (checkMultiple(TokenType.INTEGER, TokenType.DOUBLE, TokenType.STRING, TokenType.TRUE, TokenType.FALSE,
-                TokenType.NIL)) {
+        if (checkMultiple(LITERAL)) {
+            Token token = tokens.advance();
+            return new Literal(token.literal);
+        }
+        if (checkMultiple(KEYWORD_LITERAL)) {
             Token token = tokens.advance();
-            return new Literal(token);
+            return new Literal(token.type == TokenType.NIL ? null : token.type == TokenType.TRUE);
         }
         if (check(TokenType.IDENTIFIER)) {
             Token token = tokens.advance();
             return new Variable(token);
         }
         if (check(TokenType.LEFT_PAREN)) {
-            tokens.advance();
+            tokens.skip();
             Expression expr = expression();
             Expression grouping = new Grouping(expr);
             if (check(TokenType.RIGHT_PAREN)) {
-                tokens.advance();
+                tokens.skip();
                 return grouping;
             }
             throw new ParseLoxError("Expected a ')'", tokens.previous().offset);
@@ -2,10 +2,13 @@ package com.jlox.parser;
 
 import com.jlox.error.LoxError;
 
+/**
+ * A syntax error. Parse errors are reported and the parser carries on after them, so they are stackless.
+ */
 public class ParseLoxError extends LoxError {
 
     public ParseLoxError(String message, int offset) {
-        super(message, "PARSE_ERROR", offset);
+        super(message, "PARSE_ERROR", offset, false);
     }
 
 }
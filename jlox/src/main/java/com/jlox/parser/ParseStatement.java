@@ -1,11 +1,13 @@
 package com.jlox.parser;
 
+import com.jlox.error.CollectorHandler;
 import com.jlox.error.ConsoleHandler;
 import com.jlox.error.IErrorHandler;
 import com.jlox.expression.Expression;
 import com.jlox.expression.Literal;
 import com.jlox.expression.Variable;
 import com.jlox.scanner.Token;
+import com.jlox.scanner.TokenBuffer;
 import com.jlox.scanner.TokenType;
 import com.jlox.statement.*;
 
@@ -15,14 +17,17 @@ import java.util.List;
 public class ParseStatement extends AbstractParser<Statement> {
 
     private final IErrorHandler handler;
-    private final ParseExpression exprParser;
+    private final PrattParser exprParser;
+    // Number of loops enclosing the statement being parsed. break is only valid inside a loop
+    private int loopDepth;
+    private BodyParsing bodyParsing = BodyParsing.EAGER;
 
     /**
      * Default constructor where console handler is used for error handling.
      */
     public ParseStatement() {
         this.handler = new ConsoleHandler();
-        this.exprParser = new ParseExpression(this.handler);
+        this.exprParser = new PrattParser(this.handler);
     }
 
     /**
@@ -32,7 +37,17 @@ public class ParseStatement extends AbstractParser<Statement> {
      */
     public ParseStatement(IErrorHandler handler) {
         this.handler = handler;
-        this.exprParser = new ParseExpression(this.handler);
+        this.exprParser = new PrattParser(this.handler);
+    }
+
+    /**
+     * Choose when the bodies of functions are parsed. Bodies parsed lazily keep the tokens they were skipped over
+     * from, and the handler of this parser for their errors.
+     *
+     * @param bodyParsing when to parse function bodies
+     */
+    public void setBodyParsing(BodyParsing bodyParsing) {
+        this.bodyParsing = bodyParsing;
     }
 
     /**
@@ -46,6 +61,17 @@ public class ParseStatement extends AbstractParser<Statement> {
         return parseAll(tokensSource);
     }
 
+    /**
+     * Parse buffered tokens continuously until the buffer is exhausted. Only the tokens the AST keeps are made into
+     * Token objects.
+     *
+     * @param tokens token buffer
+     * @return List of statements
+     */
+    public ArrayList<Statement> parseAll(TokenBuffer tokens) {
+        return parseAll(new TokenSource(tokens));
+    }
+
     /**
      * Parse tokens continuously until token stream is empty.
      *
@@ -89,20 +115,19 @@ public class ParseStatement extends AbstractParser<Statement> {
 
     private Statement block() {
         if (check(TokenType.LEFT_BRACE)) {
+            tokens.skip();
             List<Statement> stmts = new ArrayList<>();
-            while (!check(TokenType.RIGHT_PAREN) && !tokens.isAtEnd()) {
+            while (!check(TokenType.RIGHT_BRACE) && !tokens.isAtEnd()) {
                 stmts.add(parse());
             }
-            ParseLoxError err = new ParseLoxError("Expected closing '}'", tokens.previous().offset);
-            checkAndAdvance(TokenType.RIGHT_PAREN, err);
+            checkAndAdvance(TokenType.RIGHT_BRACE, "Expected closing '}'");
             return new Block(stmts);
         }
         return declaration();
     }
 
     private Statement declaration() {
-        Token next = tokens.peek();
-        switch (next.type) {
+        switch (tokens.peekType()) {
             case VAR:
                 return varDeclaration();
             case FUN:
@@ -114,54 +139,91 @@ public class ParseStatement extends AbstractParser<Statement> {
 
     private Statement varDeclaration() {
         // Consume var token
-        tokens.advance();
-        Token name = checkAndAdvance(TokenType.IDENTIFIER, newError("Expected Identifier after var keyword"));
+        tokens.skip();
+        Token name = checkAndAdvance(TokenType.IDENTIFIER, "Expected Identifier after var keyword");
         VarDeclare variable;
         // Initialize variable
         if (check(TokenType.EQUAL)) {
             // Consume the equal
-            tokens.advance();
+            tokens.skip();
             Expression init = exprParser.parse(this.tokens);
             variable = new VarDeclare(name, init);
 
         } else {
             // If there's no initializer, create a null variable
-            variable = new VarDeclare(name, new Literal(TokenType.NIL));
+            variable = new VarDeclare(name, new Literal(null));
         }
         // Check for semicolon
-        checkAndAdvance(TokenType.SEMICOLON, newError("Expected ';' after variable declaration"));
+        checkAndAdvance(TokenType.SEMICOLON, "Expected ';' after variable declaration");
         return variable;
     }
 
     private Statement funDeclaration() {
         // Consume fun token
-        tokens.advance();
-        Token name = checkAndAdvance(TokenType.IDENTIFIER, newError("Expected identifier after function keyword"));
-        checkAndAdvance(TokenType.LEFT_PAREN, newError("Expected '(' after function name"));
+        tokens.skip();
+        Token name = checkAndAdvance(TokenType.IDENTIFIER, "Expected identifier after function keyword");
+        checkAndAdvance(TokenType.LEFT_PAREN, "Expected '(' after function name");
         List<Token> params = new ArrayList<>();
         if (!check(TokenType.RIGHT_PAREN)) {
             do {
                 if (params.size() >= MAX_ARGS) {
                     throw new ParseLoxError("Cannot have more than 255 parameters", tokens.previous().offset);
                 }
-                Token param = checkAndAdvance(TokenType.IDENTIFIER,
-                        newError("Expected a valid Identifier after fun keyword"));
+                Token param = checkAndAdvance(TokenType.IDENTIFIER, "Expected a valid Identifier after fun keyword");
                 params.add(param);
                 // Stop iterating if next token is not comma
                 if (!check(TokenType.COMMA)) {
                     break;
                 }
-                tokens.advance();
+                tokens.skip();
             } while (true);
         }
-        checkAndAdvance(TokenType.RIGHT_PAREN, newError("Expected closing ')'"));
-        return new FunDeclare(name, params, (Block) block());
+        checkAndAdvance(TokenType.RIGHT_PAREN, "Expected closing ')'");
+        if (!check(TokenType.LEFT_BRACE)) {
+            throw newError("Expected '{' before function body");
+        }
+        if (bodyParsing != BodyParsing.EAGER) {
+            return lazyFunDeclaration(name, params);
+        }
+        // A break inside the body can't exit a loop the function is declared in
+        int enclosingLoops = loopDepth;
+        loopDepth = 0;
+        try {
+            return new FunDeclare(name, params, (Block) block());
+        } finally {
+            loopDepth = enclosingLoops;
+        }
 
     }
 
+    private Statement lazyFunDeclaration(Token name, List<Token> params) {
+        TokenSource.Range body = tokens.skipBlock();
+        if (body == null) {
+            throw newError("Expected closing '}'");
+        }
+        if (bodyParsing == BodyParsing.LAZY) {
+            return new FunDeclare(name, params, () -> parseBody(body, handler, BodyParsing.LAZY));
+        }
+        // Nested bodies are checked along with this one, so when it is built they are only skipped, and errors
+        // found now aren't reported again
+        parseBody(body, handler, BodyParsing.EAGER);
+        return new FunDeclare(name, params, () -> parseBody(body, new CollectorHandler(), BodyParsing.LAZY));
+    }
+
+    // A body is parsed as the top-level block of a parser of its own, so no loop encloses it
+    private static Block parseBody(TokenSource.Range body, IErrorHandler handler, BodyParsing bodyParsing) {
+        ParseStatement parser = new ParseStatement(handler);
+        parser.setBodyParsing(bodyParsing);
+        return (Block) parser.parse(body.open());
+    }
+
     private Statement statement() {
-        Token next = tokens.peek();
-        switch (next.type) {
+        if (tokens.isAtEnd()) {
+            throw newError("Expected a statement");
+        }
+        switch (tokens.peekType()) {
+            case LEFT_BRACE:
+                return block();
             case PRINT:
                 return printStatement();
             case IF:
@@ -173,36 +235,35 @@ public class ParseStatement extends AbstractParser<Statement> {
             case RETURN:
                 return returnStatement();
             case BREAK:
-                tokens.advance();
-                throw new ParseLoxError("break statements may only appear within a for or while loop", next.offset);
+                return breakStatement();
             default:
                 return expressionStatement();
         }
     }
 
     private Statement returnStatement() {
-        tokens.advance();
-        Expression value = exprParser.parse(this.tokens);
-        checkAndAdvance(TokenType.SEMICOLON, newError("Expected ';' after value"));
+        tokens.skip();
+        Expression value = check(TokenType.SEMICOLON) ? new Literal(null) : exprParser.parse(this.tokens);
+        checkAndAdvance(TokenType.SEMICOLON, "Expected ';' after value");
         return new ReturnStatement(value);
     }
 
     private Statement printStatement() {
-        tokens.advance();
+        tokens.skip();
         Expression value = exprParser.parse(this.tokens);
-        checkAndAdvance(TokenType.SEMICOLON, newError("Expected ';' after value"));
+        checkAndAdvance(TokenType.SEMICOLON, "Expected ';' after value");
         return new PrintStatement(value);
     }
 
     // Grammar IF Expression (Block | '\n'Statement) (ELSE Statement)?
     private Statement ifStatement() {
-        tokens.advance();
+        tokens.skip();
         Expression condition = exprParser.parse(this.tokens);
-        Statement ifBranch = breakStatement();
+        Statement ifBranch = statement();
 
         Statement elseBranch = null;
         if (check(TokenType.ELSE)) {
-            tokens.advance();
+            tokens.skip();
             elseBranch = statement();
         }
         return new IfStatement(condition, ifBranch, elseBranch);
@@ -211,35 +272,38 @@ public class ParseStatement extends AbstractParser<Statement> {
 
     // Grammar WHILE Expression (Block | '\n'Statement)
     private Statement whileStatement() {
-        tokens.advance();
-        checkAndAdvance(TokenType.LEFT_PAREN, newError("Expected '(' after while keyword"));
+        tokens.skip();
+        checkAndAdvance(TokenType.LEFT_PAREN, "Expected '(' after while keyword");
         Expression condition = check(TokenType.RIGHT_PAREN) ? null : exprParser.parse(this.tokens);
-        checkAndAdvance(TokenType.RIGHT_PAREN, newError("Expected ')' after expression"));
-        return new WhileStatement(condition, breakStatement());
+        checkAndAdvance(TokenType.RIGHT_PAREN, "Expected ')' after expression");
+        return new WhileStatement(condition, loopBody());
     }
 
-    // Grammar FOR (Expression)?; (Expression)? ; (Expression)? (Block |
+    // Grammar FOR '(' (Declaration | Statement | ';') (Expression)? ';' (Assignment | Expression)? ')' (Block |
     // '\n'Statement)
     private Statement forStatement() {
-        tokens.advance();
+        tokens.skip();
 
-        checkAndAdvance(TokenType.LEFT_PAREN, newError("Expected '(' after for keyword"));
+        checkAndAdvance(TokenType.LEFT_PAREN, "Expected '(' after for keyword");
 
-        Statement init = check(TokenType.SEMICOLON) ? null : new ExprStatement(exprParser.parse(this.tokens));
-        checkAndAdvance(TokenType.SEMICOLON, newError("Expected ';' after initializer"));
-        tokens.advance();
+        Statement init;
+        if (check(TokenType.SEMICOLON)) {
+            tokens.skip();
+            init = null;
+        } else if (check(TokenType.VAR)) {
+            init = varDeclaration();
+        } else {
+            init = expressionStatement();
+        }
 
         Expression condition = check(TokenType.SEMICOLON) ? null : exprParser.parse(this.tokens);
-        checkAndAdvance(TokenType.SEMICOLON, newError("Expected ';' after condition"));
-        tokens.advance();
+        checkAndAdvance(TokenType.SEMICOLON, "Expected ';' after condition");
 
-        Statement post = check(TokenType.SEMICOLON) ? null : new ExprStatement(exprParser.parse(this.tokens));
-        checkAndAdvance(TokenType.SEMICOLON, newError("Expected ';' after post statement"));
-        tokens.advance();
+        Statement post = check(TokenType.RIGHT_PAREN) ? null : assignOrExpression();
 
-        checkAndAdvance(TokenType.RIGHT_PAREN, newError("Expected ')' after post for statement"));
+        checkAndAdvance(TokenType.RIGHT_PAREN, "Expected ')' after post for statement");
 
-        Statement body = breakStatement();
+        Statement body = loopBody();
 
         // Transform into a while loop
         ArrayList<Statement> whileBody = new ArrayList<>();
@@ -258,44 +322,52 @@ public class ParseStatement extends AbstractParser<Statement> {
     }
 
     /**
-     * Helper function for parsing statements where break is allowed (i.e. for and
-     * while loops)
+     * Helper function for parsing the body of a loop, the only place where break statements are allowed.
      *
      * @return a statement
      */
+    private Statement loopBody() {
+        loopDepth++;
+        try {
+            return statement();
+        } finally {
+            loopDepth--;
+        }
+    }
+
     private Statement breakStatement() {
-        if (check(TokenType.BREAK)) {
-            tokens.advance();
-            checkAndAdvance(TokenType.SEMICOLON, newError("Expected ';' after break statement"));
-            return new BreakStatement();
+        Token breakToken = tokens.advance();
+        if (loopDepth == 0) {
+            throw new ParseLoxError("break statements may only appear within a for or while loop", breakToken.offset);
         }
-        return statement();
+        checkAndAdvance(TokenType.SEMICOLON, "Expected ';' after break statement");
+        return new BreakStatement();
     }
 
     private Statement expressionStatement() {
+        Statement stmt = assignOrExpression();
+        checkAndAdvance(TokenType.SEMICOLON, "Expected ';' after value");
+        return stmt;
+    }
+
+    // An expression or an assignment without the trailing semicolon
+    private Statement assignOrExpression() {
         Expression value = exprParser.parse(this.tokens);
-        Token next = tokens.peek();
-        switch (next.type) {
-            case SEMICOLON:
-                tokens.advance();
-                return new ExprStatement(value);
-            case EQUAL:
-                tokens.advance();
-                return assignStatement(value);
-            default:
-                throw new ParseLoxError("Expected ';' after value", tokens.previous().offset);
+        if (check(TokenType.EQUAL)) {
+            tokens.skip();
+            return assignStatement(value);
         }
+        return new ExprStatement(value);
     }
 
     private Statement assignStatement(Expression lvalue) {
         if (lvalue instanceof Variable) {
             Variable var = (Variable) lvalue;
             Expression rvalue = exprParser.parse(this.tokens);
-            checkAndAdvance(TokenType.SEMICOLON, newError("Expected ';' after value"));
             return new VarAssign(var.name, rvalue);
 
         }
-        throw new ParseLoxError("Cannot assign value to " + lvalue.toString(), tokens.previous().offset);
+        throw new ParseLoxError("Cannot assign value to " + lvalue, tokens.previous().offset);
 
     }
 
@@ -0,0 +1,345 @@
+package com.jlox.parser;
+
+import com.jlox.error.ConsoleHandler;
+import com.jlox.error.IErrorHandler;
+import com.jlox.expression.*;
+import com.jlox.scanner.Token;
+import com.jlox.scanner.TokenType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Expression parser driven by a table of operator precedences. A chain of binary operators is parsed in a single loop
+ * that only descends for the right operand of an operator that binds tighter, so it builds the same tree as
+ * {@link ParseExpression} without going through a method per precedence level. Descending pushes a frame on a stack
+ * kept by the parser instead of calling a method, so deeply nested input doesn't overflow the thread's stack.
+ */
+public class PrattParser extends AbstractParser<Expression> {
+
+    // Precedence of the binary operators, from loosest to tightest. Tokens that don't continue an expression have NONE
+    private static final int NONE = 0;
+    private static final int COMMA = 1;
+    private static final int TERNARY = 2;
+    private static final int OR = 3;
+    private static final int AND = 4;
+    private static final int EQUALITY = 5;
+    private static final int COMPARISON = 6;
+    private static final int TERM = 7;
+    private static final int FACTOR = 8;
+
+    private static final int[] PRECEDENCE = new int[TokenType.values().length];
+
+    static {
+        PRECEDENCE[TokenType.COMMA.ordinal()] = COMMA;
+        PRECEDENCE[TokenType.QUESTION_MARK.ordinal()] = TERNARY;
+        PRECEDENCE[TokenType.OR.ordinal()] = OR;
+        PRECEDENCE[TokenType.AND.ordinal()] = AND;
+        PRECEDENCE[TokenType.BANG_EQUAL.ordinal()] = EQUALITY;
+        PRECEDENCE[TokenType.EQUAL_EQUAL.ordinal()] = EQUALITY;
+        PRECEDENCE[TokenType.GREATER.ordinal()] = COMPARISON;
+        PRECEDENCE[TokenType.GREATER_EQUAL.ordinal()] = COMPARISON;
+        PRECEDENCE[TokenType.LESS.ordinal()] = COMPARISON;
+        PRECEDENCE[TokenType.LESS_EQUAL.ordinal()] = COMPARISON;
+        PRECEDENCE[TokenType.MINUS.ordinal()] = TERM;
+        PRECEDENCE[TokenType.PLUS.ordinal()] = TERM;
+        PRECEDENCE[TokenType.SLASH.ordinal()] = FACTOR;
+        PRECEDENCE[TokenType.STAR.ordinal()] = FACTOR;
+    }
+
+    // Kinds of frames
+    private static final int OPERATOR = 0;
+    private static final int UNARY = 1;
+    private static final int GROUPING = 2;
+    private static final int ARGUMENTS = 3;
+
+    // What an operator frame is waiting for
+    private static final int FIRST_OPERAND = 0;
+    private static final int RIGHT_OPERAND = 1;
+    private static final int TERNARY_LEFT = 2;
+    private static final int TERNARY_RIGHT = 3;
+
+    private final IErrorHandler errorHandler;
+    private final List<Frame> frames = new ArrayList<>();
+    private int depth;
+
+    public PrattParser(IErrorHandler errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    // Use the console error handler if none is provided
+    public PrattParser() {
+        this.errorHandler = new ConsoleHandler();
+    }
+
+    /**
+     * Parses and arbitrarily nested expression and returns it. In the case of a syntactically incorrect sequence of
+     * tokens, null is returned and the error is reported to the error handler
+     *
+     * @param tokens the sequence of tokens to parse
+     */
+    @Override
+    public Expression parse(Iterable<Token> tokens) {
+        this.tokens = new TokenSource(tokens);
+        return parse();
+    }
+
+    public Expression parse(TokenSource tokens) {
+        this.tokens = tokens;
+        return parse();
+    }
+
+    private Expression parse() {
+        try {
+            return expression(COMMA);
+        } catch (ParseLoxError error) {
+            while (depth > 0) {
+                pop();
+            }
+            errorHandler.error(error);
+            return null;
+        }
+    }
+
+    /**
+     * Parse an expression made of operators that bind at least as tight as the given precedence.
+     *
+     * <p>The parser doesn't recurse: where a recursive descent parser would call itself for an operand, a grouping or
+     * an argument, this one pushes a frame recording what it was doing and carries on with the operand, and when the
+     * operand is done it pops the frame and finishes what it recorded. The frames live on the heap, so nesting is only
+     * limited by memory and not by the size of the thread's stack.
+     *
+     * @param minPrecedence the precedence of the loosest operator to include
+     * @return the expression
+     */
+    private Expression expression(int minPrecedence) {
+        int base = depth;
+        pushOperator(minPrecedence);
+        Expression value = operand();
+        while (true) {
+            Frame frame = frames.get(depth - 1);
+            switch (frame.kind) {
+                case UNARY:
+                    value = new Unary(frame.operator, value);
+                    pop();
+                    continue;
+                case GROUPING:
+                    if (!check(TokenType.RIGHT_PAREN)) {
+                        throw new ParseLoxError("Expected a ')'", tokens.previous().offset);
+                    }
+                    tokens.skip();
+                    pop();
+                    value = afterPrimary(new Grouping(value));
+                    continue;
+                case ARGUMENTS:
+                    frame.arguments.add(value);
+                    if (!check(TokenType.RIGHT_PAREN)) {
+                        if (!check(TokenType.COMMA)) {
+                            throw new ParseLoxError("Expected ',' or ')'", tokens.previous().offset);
+                        }
+                        // Consume comma
+                        tokens.skip();
+                    }
+                    if (!check(TokenType.RIGHT_PAREN)) {
+                        value = nextArgument(frame);
+                        continue;
+                    }
+                    // Consume the closing paren
+                    tokens.skip();
+                    Call call = new Call(frame.callee, frame.arguments);
+                    pop();
+                    value = afterPrimary(call);
+                    continue;
+                default:
+                    break;
+            }
+
+            // An operator frame: combine its left operand with the operand that was just parsed
+            switch (frame.state) {
+                case FIRST_OPERAND:
+                    frame.left = value;
+                    break;
+                case RIGHT_OPERAND:
+                    if (frame.precedence == OR || frame.precedence == AND) {
+                        frame.left = new Logical(frame.left, frame.operator, value);
+                        // 'or' and 'and' don't chain: once one is parsed, only looser operators may follow it
+                        frame.maxPrecedence = frame.precedence - 1;
+                    } else {
+                        // Binary operators are left associative
+                        frame.left = new Binary(frame.left, frame.operator, value);
+                    }
+                    break;
+                case TERNARY_LEFT:
+                    if (!check(TokenType.COLON)) {
+                        throw new ParseLoxError("Expected ':' to match '?'", tokens.previous().offset);
+                    }
+                    tokens.skip();
+                    frame.middle = value;
+                    frame.state = TERNARY_RIGHT;
+                    pushOperator(TERNARY);
+                    value = operand();
+                    continue;
+                default:
+                    frame.left = new Ternary(frame.left, frame.middle, value);
+                    frame.maxPrecedence = COMMA;
+                    break;
+            }
+
+            int precedence = tokens.isAtEnd() ? NONE : PRECEDENCE[tokens.peekType().ordinal()];
+            if (precedence == NONE || precedence < frame.minPrecedence || precedence > frame.maxPrecedence) {
+                value = frame.left;
+                pop();
+                if (depth == base) {
+                    return value;
+                }
+                continue;
+            }
+            frame.operator = tokens.advance();
+            frame.precedence = precedence;
+            if (precedence == TERNARY) {
+                frame.state = TERNARY_LEFT;
+                pushOperator(TERNARY);
+            } else {
+                frame.state = RIGHT_OPERAND;
+                pushOperator(precedence + 1);
+            }
+            value = operand();
+        }
+    }
+
+    /**
+     * Parse as much of an operand as can be parsed without an operand of its own: push a frame for each prefix operator
+     * and opening paren, then parse the primary and any calls after it. When a call has arguments, the frames for its
+     * first argument are pushed and parsing goes on with that.
+     *
+     * @return the innermost operand that could be completed
+     */
+    private Expression operand() {
+        while (true) {
+            // unary -> ('!' | '-') unary | call
+            if (check(TokenType.BANG) || check(TokenType.MINUS)) {
+                push(UNARY).operator = tokens.advance();
+            } else if (check(TokenType.LEFT_PAREN)) {
+                tokens.skip();
+                push(GROUPING);
+                pushOperator(COMMA);
+            } else {
+                Expression expr = calls(primary());
+                if (expr != null) {
+                    return expr;
+                }
+            }
+        }
+    }
+
+    /**
+     * Parse the calls after a primary: call -> primary ( '(' arguments? ')' ) *
+     *
+     * @return the calls, or null if one has arguments and the frames for the first of them were pushed
+     */
+    private Expression calls(Expression callee) {
+        Expression expr = callee;
+        while (check(TokenType.LEFT_PAREN)) {
+            tokens.skip();
+            if (!check(TokenType.RIGHT_PAREN)) {
+                Frame frame = push(ARGUMENTS);
+                frame.callee = expr;
+                frame.arguments = new ArrayList<>();
+                pushOperator(TERNARY);
+                return null;
+            }
+            tokens.skip();
+            expr = new Call(expr, new ArrayList<>());
+        }
+        return expr;
+    }
+
+    /**
+     * Carry on after a primary completed by a closing paren, with the calls after it.
+     */
+    private Expression afterPrimary(Expression primary) {
+        Expression expr = calls(primary);
+        return expr != null ? expr : operand();
+    }
+
+    private Expression nextArgument(Frame frame) {
+        if (frame.arguments.size() >= MAX_ARGS) {
+            throw new ParseLoxError("Cannot have more than 255 arguments", tokens.peek().offset);
+        }
+        // Arguments are parsed above the comma operator so the comma can separate them
+        pushOperator(TERNARY);
+        return operand();
+    }
+
+    // primary -> NUMBER | STRING | 'true | 'false' | 'nil' | IDENTIFIER, groupings are handled by operand
+    private Expression primary() {
+        if (tokens.isAtEnd()) {
+            throw new ParseLoxError("Expected an expression", tokens.previous().offset);
+        }
+        // Only a variable keeps its token, the others are read without making one
+        TokenType type = tokens.peekType();
+        switch (type) {
+            case INTEGER:
+            case DOUBLE:
+            case STRING:
+                tokens.skip();
+                return new Literal(tokens.previousLiteral());
+            case TRUE:
+            case FALSE:
+                tokens.skip();
+                return new Literal(type == TokenType.TRUE);
+            case NIL:
+                tokens.skip();
+                return new Literal(null);
+            case IDENTIFIER:
+                return new Variable(tokens.advance());
+            default:
+                throw new ParseLoxError("Expected an expression", tokens.previous().offset);
+        }
+    }
+
+    private Frame push(int kind) {
+        if (depth == frames.size()) {
+            frames.add(new Frame());
+        }
+        Frame frame = frames.get(depth++);
+        frame.kind = kind;
+        return frame;
+    }
+
+    // Frames are kept for reuse, but not the expressions they point to
+    private void pop() {
+        Frame frame = frames.get(--depth);
+        frame.left = null;
+        frame.middle = null;
+        frame.callee = null;
+        frame.arguments = null;
+    }
+
+    private void pushOperator(int minPrecedence) {
+        Frame frame = push(OPERATOR);
+        frame.state = FIRST_OPERAND;
+        frame.minPrecedence = minPrecedence;
+        frame.maxPrecedence = FACTOR;
+    }
+
+    /**
+     * What the parser was doing when it went on to parse an operand. Frames are reused, so every field a kind reads is
+     * set when a frame of that kind is pushed.
+     */
+    private static final class Frame {
+        private int kind;
+        // Operator frames: the operators they take and the operator whose operand is being parsed
+        private int state;
+        private int minPrecedence;
+        private int maxPrecedence;
+        private int precedence;
+        private Expression left;
+        private Expression middle;
+        // Also the operator of unary frames
+        private Token operator;
+        // Argument frames: the call being parsed
+        private Expression callee;
+        private ArrayList<Expression> arguments;
+    }
+}
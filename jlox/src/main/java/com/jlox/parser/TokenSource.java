@@ -1,51 +1,199 @@
 package com.jlox.parser;
 
 import com.jlox.scanner.Token;
+import com.jlox.scanner.TokenBuffer;
+import com.jlox.scanner.TokenType;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
+/**
+ * Wraps a stream of tokens with a single token of lookahead. New lines and the EOF token have no meaning to the
+ * parser and are skipped.
+ *
+ * <p>The tokens either come from an iterator of {@link Token} objects or are read in place from a {@link TokenBuffer}
+ * with a cursor. With a buffer, a Token object is only made when the parser asks for one with {@link #advance()},
+ * {@link #peek()} or {@link #previous()}; checking types with {@link #peekType()} and consuming with {@link #skip()}
+ * don't allocate.
+ */
 class TokenSource {
     private final Iterator<Token> tokenIterator;
+    private final TokenBuffer buffer;
 
     private Token previous;
     private Token next;
 
+    // Cursor into the buffer: the index of the next meaningful token, or end at the end
+    private int cursor;
+    private int previousIndex = -1;
+    private final int end;
+
     TokenSource(Iterable<Token> tokens) {
         this.tokenIterator = tokens.iterator();
+        this.buffer = null;
+        this.end = 0;
+    }
+
+    TokenSource(TokenBuffer buffer) {
+        this(buffer, 0, buffer.size());
+    }
+
+    // Only the tokens of the buffer from start up to end
+    private TokenSource(TokenBuffer buffer, int start, int end) {
+        this.tokenIterator = null;
+        this.buffer = buffer;
+        this.end = end;
+        this.cursor = seek(start);
     }
 
     public boolean isAtEnd() {
-        return next == null && !tokenIterator.hasNext();
+        if (buffer != null) {
+            return cursor == end;
+        }
+        return fill() == null;
     }
 
     public Token advance() {
-        // If next != null, then we have consumed a token from the iterator that hasn't been returned yet
-        if (next != null) {
-            previous = next;
-            next = null;
-            return previous;
-        }
+        skip();
+        return previous();
+    }
+
+    /**
+     * Consume the next token without returning it.
+     */
+    public void skip() {
         if (isAtEnd()) {
             throw new IllegalStateException("Cannot advance: no tokens remaining");
         }
-        previous = tokenIterator.next();
-        return previous;
+        if (buffer != null) {
+            previousIndex = cursor;
+            cursor = seek(cursor + 1);
+            return;
+        }
+        // next holds a token we have consumed from the iterator that hasn't been returned yet
+        previous = next;
+        next = null;
     }
 
     public Token previous() {
+        if (buffer != null) {
+            if (previousIndex < 0) {
+                throw new IllegalStateException("previous() can't be used on first call");
+            }
+            return buffer.token(previousIndex);
+        }
         if (previous == null) {
             throw new IllegalStateException("previous() can't be used on first call");
         }
         return previous;
     }
 
+    /**
+     * The literal value of the previous token, without making a Token for it.
+     */
+    public Object previousLiteral() {
+        if (buffer != null && previousIndex >= 0) {
+            return buffer.literal(previousIndex);
+        }
+        return previous().literal;
+    }
+
     public Token peek() {
         if (isAtEnd()) {
             throw new IllegalStateException("Cannot peek: no tokens remaining");
         }
-        if (next == null) {
-            next = tokenIterator.next();
+        return buffer != null ? buffer.token(cursor) : next;
+    }
+
+    /**
+     * The type of the next token, without making a Token for it.
+     */
+    public TokenType peekType() {
+        if (isAtEnd()) {
+            throw new IllegalStateException("Cannot peek: no tokens remaining");
+        }
+        return buffer != null ? buffer.type(cursor) : next.type;
+    }
+
+    /**
+     * Consume a block, from the next token, a '{', up to the '}' that closes it, without parsing it. Tokens read
+     * from a buffer are left there; tokens from an iterator are kept in a list.
+     *
+     * @return the tokens of the block, or null if the tokens run out before the block is closed
+     */
+    public Range skipBlock() {
+        int start = cursor;
+        List<Token> block = buffer != null ? null : new ArrayList<>();
+        int depth = 0;
+        do {
+            TokenType type = peekType();
+            if (type == TokenType.LEFT_BRACE) {
+                depth++;
+            } else if (type == TokenType.RIGHT_BRACE) {
+                depth--;
+            }
+            if (block != null) {
+                block.add(advance());
+            } else {
+                skip();
+            }
+        } while (depth > 0 && !isAtEnd());
+        if (depth > 0) {
+            return null;
+        }
+        return block != null ? new Range(block) : new Range(buffer, start, previousIndex + 1);
+    }
+
+    /**
+     * Tokens set aside by {@link #skipBlock()}, which can be read as many times as needed.
+     */
+    static final class Range {
+        private final List<Token> tokens;
+        private final TokenBuffer buffer;
+        private final int start;
+        private final int end;
+
+        private Range(List<Token> tokens) {
+            this.tokens = tokens;
+            this.buffer = null;
+            this.start = 0;
+            this.end = tokens.size();
+        }
+
+        private Range(TokenBuffer buffer, int start, int end) {
+            this.tokens = null;
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+        }
+
+        TokenSource open() {
+            return buffer != null ? new TokenSource(buffer, start, end) : new TokenSource(tokens);
+        }
+    }
+
+    // Pull the next meaningful token from the iterator if we don't already have one
+    private Token fill() {
+        while (next == null && tokenIterator.hasNext()) {
+            Token token = tokenIterator.next();
+            if (isMeaningful(token.type)) {
+                next = token;
+            }
         }
         return next;
     }
+
+    // Find the first meaningful token in the buffer at or after index
+    private int seek(int index) {
+        int position = index;
+        while (position < end && !isMeaningful(buffer.type(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static boolean isMeaningful(TokenType type) {
+        return type != TokenType.NEW_LINE && type != TokenType.EOF;
+    }
 }
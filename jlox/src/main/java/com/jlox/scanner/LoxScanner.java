@@ -5,9 +5,10 @@ import com.jlox.scanner.source.ISource;
 import com.jlox.scanner.source.ISourceInfo;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.NoSuchElementException;
 
 public class LoxScanner {
 
@@ -15,52 +16,106 @@ public class LoxScanner {
     public static final String ERROR_UNTERMSTRING = "ERR_UNTERMINATED_STRING";
     public static final String ERROR_UNKOWNCHAR = "ERR_UNKNOWN_CHAR";
 
-    private static final Map<Character, TokenType> SINGLE_CHAR_TOKENS;
-    private static final Map<String, TokenType> KEYWORDS;
+    // Classes of ASCII chars, which pick the way a token starting with the char is scanned
+    private static final int ASCII = 128;
+    private static final byte OTHER = 0;
+    private static final byte SPACE = 1;
+    private static final byte SINGLE = 2;
+    private static final byte OPERATOR = 3;
+    private static final byte SLASH = 4;
+    private static final byte QUOTE = 5;
+    private static final byte DIGIT = 6;
+    private static final byte LETTER = 7;
+    private static final int DECIMAL = 10;
+    private static final int NAME_CAPACITY = 64;
+
+    private static final byte[] CHAR_CLASSES = new byte[ASCII];
+    // The token of each single char token
+    private static final TokenType[] SINGLE_CHAR_TOKENS = new TokenType[ASCII];
+
+    private static final String[] KEYWORDS = {
+        "and", "class", "else", "false", "for", "fun", "if", "nil", "or", "print", "return", "super", "this", "true",
+        "var", "while", "break",
+    };
+    private static final TokenType[] KEYWORD_TOKENS = {
+        TokenType.AND, TokenType.CLASS, TokenType.ELSE, TokenType.FALSE, TokenType.FOR, TokenType.FUN, TokenType.IF,
+        TokenType.NIL, TokenType.OR, TokenType.PRINT, TokenType.RETURN, TokenType.SUPER, TokenType.THIS,
+        TokenType.TRUE, TokenType.VAR, TokenType.WHILE, TokenType.BREAK,
+    };
+    // The keywords as a trie that is walked while an identifier is scanned. KEYWORD_TRIE[node * ASCII + c] is the node
+    // reached from node by the char c, or 0 (the root) if no keyword continues that way
+    private static final int[] KEYWORD_TRIE;
+    // The keyword that ends at each node of the trie, if any
+    private static final TokenType[] KEYWORD_ENDS;
 
     static {
-        // Single Char List
-        SINGLE_CHAR_TOKENS = new HashMap<>();
-        SINGLE_CHAR_TOKENS.put('(', TokenType.LEFT_PAREN);
-        SINGLE_CHAR_TOKENS.put(')', TokenType.RIGHT_PAREN);
-        SINGLE_CHAR_TOKENS.put('{', TokenType.LEFT_BRACE);
-        SINGLE_CHAR_TOKENS.put('}', TokenType.RIGHT_BRACE);
-        SINGLE_CHAR_TOKENS.put('.', TokenType.DOT);
-        SINGLE_CHAR_TOKENS.put(',', TokenType.COMMA);
-        SINGLE_CHAR_TOKENS.put('-', TokenType.MINUS);
-        SINGLE_CHAR_TOKENS.put('+', TokenType.PLUS);
-        SINGLE_CHAR_TOKENS.put('*', TokenType.STAR);
-        SINGLE_CHAR_TOKENS.put(';', TokenType.SEMICOLON);
-        SINGLE_CHAR_TOKENS.put('\n', TokenType.NEW_LINE);
-        SINGLE_CHAR_TOKENS.put('?', TokenType.QUESTION_MARK);
-        SINGLE_CHAR_TOKENS.put(':', TokenType.COLON);
-        // Keyword list
-        KEYWORDS = new HashMap<>();
-        KEYWORDS.put("and", TokenType.AND);
-        KEYWORDS.put("class", TokenType.CLASS);
-        KEYWORDS.put("else", TokenType.ELSE);
-        KEYWORDS.put("false", TokenType.FALSE);
-        KEYWORDS.put("for", TokenType.FOR);
-        KEYWORDS.put("fun", TokenType.FUN);
-        KEYWORDS.put("if", TokenType.IF);
-        KEYWORDS.put("nil", TokenType.NIL);
-        KEYWORDS.put("or", TokenType.OR);
-        KEYWORDS.put("print", TokenType.PRINT);
-        KEYWORDS.put("return", TokenType.RETURN);
-        KEYWORDS.put("super", TokenType.SUPER);
-        KEYWORDS.put("this", TokenType.THIS);
-        KEYWORDS.put("true", TokenType.TRUE);
-        KEYWORDS.put("var", TokenType.VAR);
-        KEYWORDS.put("while", TokenType.WHILE);
-        KEYWORDS.put("break", TokenType.BREAK);
+        CHAR_CLASSES[' '] = SPACE;
+        CHAR_CLASSES['\r'] = SPACE;
+        CHAR_CLASSES['\t'] = SPACE;
+        SINGLE_CHAR_TOKENS['('] = TokenType.LEFT_PAREN;
+        SINGLE_CHAR_TOKENS[')'] = TokenType.RIGHT_PAREN;
+        SINGLE_CHAR_TOKENS['{'] = TokenType.LEFT_BRACE;
+        SINGLE_CHAR_TOKENS['}'] = TokenType.RIGHT_BRACE;
+        SINGLE_CHAR_TOKENS['.'] = TokenType.DOT;
+        SINGLE_CHAR_TOKENS[','] = TokenType.COMMA;
+        SINGLE_CHAR_TOKENS['-'] = TokenType.MINUS;
+        SINGLE_CHAR_TOKENS['+'] = TokenType.PLUS;
+        SINGLE_CHAR_TOKENS['*'] = TokenType.STAR;
+        SINGLE_CHAR_TOKENS[';'] = TokenType.SEMICOLON;
+        SINGLE_CHAR_TOKENS['\n'] = TokenType.NEW_LINE;
+        SINGLE_CHAR_TOKENS['?'] = TokenType.QUESTION_MARK;
+        SINGLE_CHAR_TOKENS[':'] = TokenType.COLON;
+        for (int c = 0; c < ASCII; c++) {
+            if (SINGLE_CHAR_TOKENS[c] != null) {
+                CHAR_CLASSES[c] = SINGLE;
+            }
+        }
+        CHAR_CLASSES['!'] = OPERATOR;
+        CHAR_CLASSES['='] = OPERATOR;
+        CHAR_CLASSES['>'] = OPERATOR;
+        CHAR_CLASSES['<'] = OPERATOR;
+        CHAR_CLASSES['/'] = SLASH;
+        CHAR_CLASSES['"'] = QUOTE;
+        for (char c = '0'; c <= '9'; c++) {
+            CHAR_CLASSES[c] = DIGIT;
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            CHAR_CLASSES[c] = LETTER;
+            CHAR_CLASSES[Character.toUpperCase(c)] = LETTER;
+        }
+
+        int nodes = 1;
+        for (String keyword : KEYWORDS) {
+            nodes += keyword.length();
+        }
+        KEYWORD_TRIE = new int[nodes * ASCII];
+        KEYWORD_ENDS = new TokenType[nodes];
+        int used = 1;
+        for (int i = 0; i < KEYWORDS.length; i++) {
+            int node = 0;
+            for (char c : KEYWORDS[i].toCharArray()) {
+                if (KEYWORD_TRIE[node * ASCII + c] == 0) {
+                    KEYWORD_TRIE[node * ASCII + c] = used;
+                    used++;
+                }
+                node = KEYWORD_TRIE[node * ASCII + c];
+            }
+            KEYWORD_ENDS[node] = KEYWORD_TOKENS[i];
+        }
     }
 
     private final ISource source;
     private final IErrorHandler reporter;
-    private final List<Token> tokens;
     // A source with extra information for error reporting
     private final ISourceInfo sourceI;
     private final boolean hasInfo;
+    // The token made by the last call to scanToken, if it made one
+    private Token scanned;
+    private boolean reachedEnd;
+    // Where tokens go instead when scanning into a buffer
+    private TokenBuffer buffer;
+    // The chars of the identifier being scanned, so its symbol can be found without cutting it out of the source
+    private char[] name = new char[NAME_CAPACITY];
 
     public LoxScanner(ISource source, IErrorHandler reporter) {
         this.source = source;
@@ -73,121 +128,158 @@ public class LoxScanner {
         }
 
         this.reporter = reporter;
-        tokens = new ArrayList<>();
     }
 
     public List<Token> scanTokens() {
+        List<Token> tokens = new ArrayList<>();
+        for (Token token : streamTokens()) {
+            tokens.add(token);
+        }
+        return tokens;
+    }
+
+    /**
+     * Scan the whole source into a compact {@link TokenBuffer}, without making a Token object or a lexeme string per
+     * token. The buffer holds the same tokens as {@link #scanTokens()} returns. It reads lexemes from the source when
+     * they are asked for, so the source must keep all of its text.
+     *
+     * @return the tokens of the source, ending with EOF
+     */
+    public TokenBuffer scanToBuffer() {
+        buffer = new TokenBuffer(source);
         while (!source.isAtEnd()) {
             scanToken();
         }
         addToken(TokenType.EOF);
-        return tokens;
+        return buffer;
     }
 
-    private void scanToken() {
-        char c = source.advance();
-        // Use the handleMethods to deal with the char
-        // The order of the handlers matter (the first three must remain as-is and handle unkown should always
-        // come last. The rest can be switched around).
-        boolean handeled = handleWhiteSpace(c);
-        if (handeled) {
-            return;
-        }
-        handeled = handleSingleChar(c);
-        if (handeled) {
-            return;
+    /**
+     * Scan the source lazily: each token is scanned when the parser asks for it, so scanning and parsing run together
+     * and no list of the whole file's tokens is kept. The tokens are the same as the ones {@link #scanTokens()}
+     * returns. The source can only be scanned once, so the iterable can only be iterated once.
+     *
+     * @return the tokens of the source, ending with EOF
+     */
+    public Iterable<Token> streamTokens() {
+        return () -> new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return fill() != null;
+            }
+
+            @Override
+            public Token next() {
+                Token token = fill();
+                if (token == null) {
+                    throw new NoSuchElementException("No tokens remaining");
+                }
+                scanned = null;
+                return token;
+            }
+        };
+    }
+
+    // Scan characters until the next token is made, ending with EOF. Returns null once EOF has been returned
+    private Token fill() {
+        while (scanned == null && !source.isAtEnd()) {
+            scanToken();
         }
-        handeled = handleTwoChar(c);
-        if (handeled) {
-            return;
+        if (scanned == null && !reachedEnd) {
+            reachedEnd = true;
+            addToken(TokenType.EOF);
         }
-        handeled = handleSlash(c);
-        if (handeled) {
-            return;
-        }
-        handeled = handleString(c);
-        if (handeled) {
-            return;
+        return scanned;
+    }
+
+    private void scanToken() {
+        // Nothing before the token about to be scanned is needed any more, unless a buffer cuts lexemes out later
+        if (buffer == null) {
+            source.release(source.getOffset() + 1);
         }
-        handeled = handleNumbers(c);
-        if (handeled) {
-            return;
+        char c = source.advance();
+        switch (charClass(c)) {
+            case SPACE:
+                break;
+            case SINGLE:
+                addToken(SINGLE_CHAR_TOKENS[c]);
+                break;
+            case OPERATOR:
+                handleTwoChar(c);
+                break;
+            case SLASH:
+                handleSlash();
+                break;
+            case QUOTE:
+                handleString();
+                break;
+            case DIGIT:
+                handleNumbers(c);
+                break;
+            case LETTER:
+                handleIdentifiers(c);
+                break;
+            default:
+                // Report any char no token can start with as an error
+                handleUnknown(c);
+                break;
         }
+    }
 
-        handeled = handleIdentifiers(c);
-        if (handeled) {
-            return;
+    // ASCII chars are classified by table. Others can only be digits or letters, which need the full Unicode checks
+    private static byte charClass(char c) {
+        if (c < ASCII) {
+            return CHAR_CLASSES[c];
+        }
+        if (Character.isDigit(c)) {
+            return DIGIT;
         }
-        // If all other handleres don't know what to do, report the char as an error
-        handleUnknown(c);
+        return Character.isAlphabetic(c) ? LETTER : OTHER;
     }
 
-    // Check if it is a white space character (excluding '\n')
-    private boolean handleWhiteSpace(char c) {
-        switch (c) {
-            case ' ':
-            case '\r':
-            case '\t':
-                return true;
-            default:
-                return false;
-        }
+    private static boolean isDigit(char c) {
+        return c < ASCII ? CHAR_CLASSES[c] == DIGIT : Character.isDigit(c);
     }
 
-    private boolean handleSingleChar(char c) {
-        TokenType type = SINGLE_CHAR_TOKENS.getOrDefault(c, null);
-        if (type == null) {
-            return false;
-        }
-        addToken(type);
-        return true;
+    private static boolean isLetter(char c) {
+        return c < ASCII ? CHAR_CLASSES[c] == LETTER : Character.isAlphabetic(c);
     }
 
-    // Handle two character tokens
-    private boolean handleTwoChar(char c) {
+    // Handle two character tokens: the char alone, or followed by '='
+    private void handleTwoChar(char c) {
+        boolean withEqual = nextMatch('=');
         switch (c) {
             case '!':
-                addToken(nextMatch('=') ? TokenType.BANG_EQUAL : TokenType.BANG);
+                addToken(withEqual ? TokenType.BANG_EQUAL : TokenType.BANG, withEqual);
                 break;
             case '=':
-                addToken(nextMatch('=') ? TokenType.EQUAL_EQUAL : TokenType.EQUAL);
+                addToken(withEqual ? TokenType.EQUAL_EQUAL : TokenType.EQUAL, withEqual);
                 break;
             case '>':
-                addToken(nextMatch('=') ? TokenType.GREATER_EQUAL : TokenType.GREATER);
-                break;
-            case '<':
-                addToken(nextMatch('=') ? TokenType.LESS_EQUAL : TokenType.LESS);
+                addToken(withEqual ? TokenType.GREATER_EQUAL : TokenType.GREATER, withEqual);
                 break;
             default:
-                return false;
+                addToken(withEqual ? TokenType.LESS_EQUAL : TokenType.LESS, withEqual);
+                break;
         }
-        return true;
     }
 
-    private boolean handleSlash(char c) {
-        if (c == '/') {
-            if (nextMatch('/')) {
-                // Two '//' indicate a comment. Move forward till we hit the end of the line or
-                // the file is over
-                while (source.peek() != '\n' && source.isAtEnd()) {
-                    source.advance();
-                }
-                return true;
+    private void handleSlash() {
+        if (nextMatch('/')) {
+            // Two '//' indicate a comment. Move forward till we hit the end of the line or
+            // the file is over
+            while (source.peek() != '\n' && !source.isAtEnd()) {
+                source.advance();
             }
-            addToken(TokenType.SLASH);
-            return true;
+            return;
         }
-        return false;
+        addToken(TokenType.SLASH);
     }
 
-    private boolean handleString(char c) {
-        // 2 since we have consumed the initial ' " ' to get here and we just advanced
-        // in the previous line
-        if (c != '"') {
-            return false;
-        }
+    private void handleString() {
+        // We have consumed the initial ' " ' to get here
         int length = 1;
-        char last = c;
+        char last = '"';
         while (!source.isAtEnd() && source.peek() != '"') {
             length++;
             last = source.advance();
@@ -205,32 +297,35 @@ public class LoxScanner {
         String literal = source.get((offset - length) + 2, offset);
 
         addToken(TokenType.STRING, literal, length);
-        return true;
     }
 
-    private boolean handleNumbers(char c) {
-
-        if (!Character.isDigit(c)) {
-            return  false;
-        }
-
+    private void handleNumbers(char c) {
         boolean isFloat = false;
         int length = 1;
+        // The value of an int made of ASCII digits is worked out while scanning, -1 once that isn't possible
+        long value = c < ASCII ? c - '0' : -1;
         // Avoid repeated calls to source.peek()
         char next = source.peek();
-        while (!source.isAtEnd() && (Character.isDigit(next) || next == '.')) {
+        while (!source.isAtEnd() && (isDigit(next) || next == '.')) {
             if (next == '.') {
                 isFloat = true;
             }
+            value = value >= 0 && next < ASCII && value <= Integer.MAX_VALUE ? value * DECIMAL + next - '0' : -1;
             length++;
             source.advance();
             next = source.peek();
         }
+        if (source.peek() == 'd') {
+            isFloat = true;
+        }
+        if (!isFloat && value >= 0 && value <= Integer.MAX_VALUE) {
+            addToken(TokenType.INTEGER, (int) value, length);
+            return;
+        }
         int offsetPlusOne = source.getOffset() + 1;
         // offsetPlusOne because offset returns a 0-indexed position
         String literal = source.get(offsetPlusOne - length, offsetPlusOne);
         if (source.peek() == 'd') {
-            isFloat = true;
             source.advance();
             length++;
         }
@@ -239,25 +334,39 @@ public class LoxScanner {
         } else {
             addToken(TokenType.INTEGER, Integer.parseInt(literal), length);
         }
-
-        return true;
     }
 
-    // Handle keywords and identifiers
-    private boolean handleIdentifiers(char c) {
-        if (!Character.isAlphabetic(c)) {
-            return false;
-        }
-
+    // Handle keywords and identifiers. Keywords are recognised by walking the trie along with the scan
+    private void handleIdentifiers(char c) {
+        int node = c < ASCII ? KEYWORD_TRIE[c] : 0;
         int length = 1;
-        while (Character.isAlphabetic(source.peek()) || Character.isDigit(source.peek())) {
+        boolean ascii = c < ASCII;
+        name[0] = c;
+        char next = source.peek();
+        while (isLetter(next) || isDigit(next)) {
             source.advance();
+            if (length == name.length) {
+                name = Arrays.copyOf(name, length * 2);
+            }
+            name[length] = next;
             length++;
+            ascii &= next < ASCII;
+            node = node != 0 && next < ASCII ? KEYWORD_TRIE[node * ASCII + next] : 0;
+            next = source.peek();
+        }
+        if (node != 0 && KEYWORD_ENDS[node] != null) {
+            addToken(KEYWORD_ENDS[node], null, length);
+            return;
         }
-        String identifier = source.get((source.getOffset()  - length) + 1, source.getOffset() + 1);
-        TokenType type = KEYWORDS.getOrDefault(identifier, TokenType.IDENTIFIER);
-        addToken(type, null, length);
-        return true;
+        // A source may hand over encoded text a char at a time, so only ASCII names are interned from the scanned chars
+        int offsetPlusOne = source.getOffset() + 1;
+        Symbol symbol = ascii ? SymbolTable.intern(name, length)
+                : Symbol.of(source.get(offsetPlusOne - length, offsetPlusOne));
+        if (buffer != null) {
+            buffer.addIdentifier(source.getOffset(), length, symbol);
+            return;
+        }
+        scanned = new Token(symbol, source.getOffset());
     }
 
     // Handle tokens that don't fit anywhere else
@@ -271,27 +380,23 @@ public class LoxScanner {
         }
     }
 
-    // Add a single/double-length token
+    // Add a single-length token
     private void addToken(TokenType type) {
-        int length;
-        switch (type) {
-            case BANG_EQUAL:
-            case GREATER_EQUAL:
-            case LESS_EQUAL:
-            case EQUAL_EQUAL:
-                length = 2;
-                break;
-            default:
-                length = 1;
-        }
-        addToken(type, null, length);
+        addToken(type, null, 1);
+    }
 
+    // Add a single/double-length token
+    private void addToken(TokenType type, boolean twoChars) {
+        addToken(type, null, twoChars ? 2 : 1);
     }
 
     private void addToken(TokenType type, Object literal, int length) {
         int offset = source.getOffset();
-        Token token = new Token(type, source.get((offset - length) + 1, offset + 1), literal, offset);
-        tokens.add(token);
+        if (buffer != null) {
+            buffer.add(type, offset, length, literal);
+            return;
+        }
+        scanned = new Token(type, source.get((offset - length) + 1, offset + 1), literal, offset);
     }
 
     /**
@@ -0,0 +1,147 @@
+package com.jlox.scanner;
+
+import com.jlox.error.IErrorHandler;
+import com.jlox.error.LoxError;
+import com.jlox.scanner.source.RangeSource;
+import com.jlox.scanner.source.StringSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * Scans a whole source held in memory on several threads. The text is cut into chunks at new lines, each chunk is
+ * scanned by its own {@link LoxScanner} on a {@link ForkJoinPool} and the tokens are joined back in order. The result,
+ * errors included, is exactly what {@link LoxScanner#scanTokens()} returns for the whole text.
+ *
+ * <p>A chunk can only end where a token can: a pre-pass walks the text tracking whether it is inside a string or a
+ * comment, so a quote in a comment or a "//" in a string doesn't move the split points, and a string spanning several
+ * lines is never cut. Chunks are scanned as {@link RangeSource}s with the offsets and line numbers of the whole text,
+ * so their tokens need no fixing up; only the EOF token of every chunk but the last is dropped.
+ */
+public class ParallelScanner {
+
+    private static final int MIN_CHUNK_SIZE = 65536;
+    // More chunks than threads, so a thread that finishes early can take another
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final String text;
+    private final IErrorHandler reporter;
+    private final ForkJoinPool pool;
+    private final int minChunkSize;
+
+    public ParallelScanner(String text, IErrorHandler reporter) {
+        this(text, reporter, ForkJoinPool.commonPool());
+    }
+
+    public ParallelScanner(String text, IErrorHandler reporter, ForkJoinPool pool) {
+        this(text, reporter, pool, MIN_CHUNK_SIZE);
+    }
+
+    // Lets tests split small texts
+    ParallelScanner(String text, IErrorHandler reporter, ForkJoinPool pool, int minChunkSize) {
+        this.text = text;
+        this.reporter = reporter;
+        this.pool = pool;
+        this.minChunkSize = minChunkSize;
+    }
+
+    /**
+     * Scan the text.
+     *
+     * @return the tokens of the text, ending with EOF
+     */
+    public List<Token> scanTokens() {
+        int chunkCount = Math.min(text.length() / minChunkSize, pool.getParallelism() * CHUNKS_PER_THREAD);
+        List<int[]> chunks = chunkCount < 2 ? List.of() : split(text.length() / chunkCount);
+        if (chunks.size() < 2) {
+            return new LoxScanner(new StringSource(text), reporter).scanTokens();
+        }
+
+        List<ForkJoinTask<ScannedChunk>> tasks = new ArrayList<>(chunks.size());
+        for (int[] chunk : chunks) {
+            tasks.add(pool.submit(() -> scan(chunk)));
+        }
+        List<ScannedChunk> scanned = new ArrayList<>(tasks.size());
+        int count = 0;
+        for (ForkJoinTask<ScannedChunk> task : tasks) {
+            scanned.add(task.join());
+            count += scanned.get(scanned.size() - 1).tokens.size();
+        }
+        List<Token> tokens = new ArrayList<>(count);
+        for (int i = 0; i < scanned.size(); i++) {
+            List<Token> chunkTokens = scanned.get(i).tokens;
+            // Every chunk ends with an EOF token, but only the one at the end of the text belongs in the result
+            boolean last = i == scanned.size() - 1;
+            tokens.addAll(last ? chunkTokens : chunkTokens.subList(0, chunkTokens.size() - 1));
+            for (Consumer<IErrorHandler> error : scanned.get(i).errors) {
+                error.accept(reporter);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Find where chunks of about the given size can start.
+     *
+     * @return the start, end and first line of each chunk
+     */
+    private List<int[]> split(int targetSize) {
+        List<int[]> chunks = new ArrayList<>();
+        int start = 0;
+        int startLine = 1;
+        int line = 1;
+        boolean inString = false;
+        boolean inComment = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                line++;
+                inComment = false;
+                if (!inString && i + 1 - start >= targetSize && i + 1 < text.length()) {
+                    chunks.add(new int[]{start, i + 1, startLine});
+                    start = i + 1;
+                    startLine = line;
+                }
+            } else if (inString) {
+                inString = c != '"';
+            } else if (!inComment) {
+                inString = c == '"';
+                inComment = c == '/' && i + 1 < text.length() && text.charAt(i + 1) == '/';
+            }
+        }
+        chunks.add(new int[]{start, text.length(), startLine});
+        return chunks;
+    }
+
+    private ScannedChunk scan(int[] chunk) {
+        ScannedChunk scanned = new ScannedChunk();
+        scanned.tokens = new LoxScanner(new RangeSource(text, chunk[0], chunk[1], chunk[2]), scanned).scanTokens();
+        return scanned;
+    }
+
+    /**
+     * The tokens of a chunk, and the errors found in it to be reported once the chunks before it have been.
+     */
+    private static final class ScannedChunk implements IErrorHandler {
+        private List<Token> tokens;
+        private final List<Consumer<IErrorHandler>> errors = new ArrayList<>();
+
+        @Override
+        public void error(String message, String code) {
+            errors.add(handler -> handler.error(message, code));
+        }
+
+        @Override
+        public void error(LoxError loxError) {
+            errors.add(handler -> handler.error(loxError));
+        }
+
+        @Override
+        public boolean hasError() {
+            return !errors.isEmpty();
+        }
+    }
+}
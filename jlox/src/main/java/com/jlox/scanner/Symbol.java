@@ -0,0 +1,38 @@
+package com.jlox.scanner;
+
+/**
+ * The canonical name of an identifier. Every occurrence of the same name, in any source scanned by the process, shares
+ * one symbol, so symbols are compared by identity and hash to a value worked out once. Symbols that nothing refers to
+ * any more are dropped, see {@link SymbolTable}.
+ */
+public final class Symbol {
+
+    private final String name;
+    private final int hash;
+
+    Symbol(String name, int hash) {
+        this.name = name;
+        this.hash = hash;
+    }
+
+    /**
+     * Get the symbol of a name, making it if the name hasn't been seen before.
+     */
+    public static Symbol of(String name) {
+        return SymbolTable.intern(name);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,150 @@
+package com.jlox.scanner;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * The table every {@link Symbol} is interned in. It is an open-addressed hash table that can be probed with the chars
+ * of a name, so the scanner only makes a String the first time it sees a name. Lookups don't lock: entries are
+ * immutable and a rebuilt table is only published once it is filled in, so a reader either finds the symbol or goes
+ * on to add it under the lock, where the probe is done again.
+ *
+ * <p>The table only holds its symbols weakly, so a long running process such as an editor doesn't keep every name it
+ * has ever scanned: a symbol is dropped once no token, environment or other table refers to it. Its entry stays in
+ * place until the table is rebuilt, which happens when it fills up and sizes it for the symbols still alive.
+ */
+final class SymbolTable {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    // The same hash as String's, so a symbol hashes like its name
+    private static final int HASH_MULTIPLIER = 31;
+    // A rebuilt table is at most a quarter full, so it takes as many adds again before the next rebuild
+    private static final int SPARSENESS = 4;
+    private static final Object LOCK = new Object();
+
+    // A power of two in size and never more than half full, so probes are short and always reach an empty slot
+    private static volatile Entry[] table = new Entry[INITIAL_CAPACITY];
+    // Slots in use, including the entries of dropped symbols
+    private static int used;
+
+    private SymbolTable() {
+    }
+
+    static Symbol intern(String name) {
+        return intern(name.toCharArray(), name.length());
+    }
+
+    /**
+     * Get the symbol of the name made of the first length chars of the array.
+     */
+    static Symbol intern(char[] chars, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = HASH_MULTIPLIER * hash + chars[i];
+        }
+        Entry[] entries = table;
+        int slot = find(entries, chars, length, hash);
+        Symbol found = entries[slot] == null ? null : entries[slot].get();
+        if (found != null) {
+            return found;
+        }
+        synchronized (LOCK) {
+            entries = table;
+            slot = find(entries, chars, length, hash);
+            found = entries[slot] == null ? null : entries[slot].get();
+            if (found != null) {
+                return found;
+            }
+            Symbol symbol = new Symbol(new String(chars, 0, length), hash);
+            if (entries[slot] != null) {
+                // The name was seen before but its symbol has been dropped
+                entries[slot] = new Entry(symbol);
+                return symbol;
+            }
+            add(symbol);
+            return symbol;
+        }
+    }
+
+    /**
+     * Find the slot of the entry of a name, or the empty slot where it would go.
+     */
+    private static int find(Entry[] entries, char[] chars, int length, int hash) {
+        int mask = entries.length - 1;
+        int i = hash & mask;
+        for (Entry entry = entries[i]; entry != null; entry = entries[i]) {
+            if (entry.hash == hash && matches(entry.name, chars, length)) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private static boolean matches(String name, char[] chars, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Called holding the lock
+    private static void add(Symbol symbol) {
+        if ((used + 1) * 2 > table.length) {
+            rebuild();
+        }
+        place(table, new Entry(symbol));
+        used++;
+    }
+
+    // Move the entries of the symbols still alive to a new table, larger or smaller as they need
+    private static void rebuild() {
+        int alive = 0;
+        for (Entry entry : table) {
+            if (entry != null && entry.get() != null) {
+                alive++;
+            }
+        }
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < (alive + 1) * SPARSENESS) {
+            capacity *= 2;
+        }
+        Entry[] rebuilt = new Entry[capacity];
+        used = 0;
+        for (Entry entry : table) {
+            if (entry != null && entry.get() != null) {
+                place(rebuilt, entry);
+                used++;
+            }
+        }
+        table = rebuilt;
+    }
+
+    private static void place(Entry[] entries, Entry entry) {
+        int mask = entries.length - 1;
+        int i = entry.hash & mask;
+        while (entries[i] != null) {
+            i = (i + 1) & mask;
+        }
+        entries[i] = entry;
+    }
+
+    /**
+     * A slot of the table. It keeps the name and hash of its symbol, so a probe can tell whether the slot is for a
+     * name without the symbol.
+     */
+    private static final class Entry extends WeakReference<Symbol> {
+        final String name;
+        final int hash;
+
+        Entry(Symbol symbol) {
+            super(symbol);
+            this.name = symbol.name();
+            this.hash = symbol.hashCode();
+        }
+    }
+}
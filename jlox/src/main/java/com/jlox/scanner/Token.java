@@ -8,12 +8,26 @@ public class Token {
     public final Object literal;
     public final TokenType type;
     public final int offset;
+    // The interned name of an identifier, null for every other type of token
+    public final Symbol symbol;
 
     public Token(TokenType type, String lexeme, Object literal, int offset) {
         this.type = type;
         this.lexeme = lexeme;
         this.literal = literal;
         this.offset = offset;
+        this.symbol = type == TokenType.IDENTIFIER && lexeme != null ? Symbol.of(lexeme) : null;
+    }
+
+    /**
+     * Create an identifier token whose lexeme is the name of its symbol.
+     */
+    public Token(Symbol symbol, int offset) {
+        this.type = TokenType.IDENTIFIER;
+        this.lexeme = symbol.name();
+        this.literal = null;
+        this.offset = offset;
+        this.symbol = symbol;
     }
 
     public String toString() {
@@ -0,0 +1,172 @@
+package com.jlox.scanner;
+
+import com.jlox.scanner.source.ISource;
+
+import java.util.Arrays;
+
+/**
+ * The tokens of a source file, stored column-wise in primitive arrays instead of as {@link Token} objects. A token is
+ * its type, the offset of its last character and its length; the few tokens with a literal value keep it in a side
+ * table, and identifiers their {@link Symbol}. Lexemes are cut out of the source only when a {@link Token} is asked
+ * for, so a buffered token takes 13 bytes instead of a Token, a String and its characters.
+ */
+public final class TokenBuffer {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final TokenType[] TYPES = TokenType.values();
+    // Set in the type of a token that has a literal, so tokens without one skip the side table
+    private static final int HAS_LITERAL = 0x80;
+    private static final int TYPE_MASK = 0x7f;
+
+    private final ISource source;
+    // Lexemes of operators and keywords, which are the same for every token of their type
+    private final String[] fixedLexemes = new String[TYPES.length];
+
+    private byte[] types = new byte[INITIAL_CAPACITY];
+    private int[] offsets = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    // The symbols of identifiers, null for other tokens
+    private Symbol[] symbols = new Symbol[INITIAL_CAPACITY];
+    private int size;
+
+    // Literal values, and the indices of their tokens in increasing order
+    private Object[] literals = new Object[INITIAL_CAPACITY];
+    private int[] literalTokens = new int[INITIAL_CAPACITY];
+    private int literalCount;
+
+    TokenBuffer(ISource source) {
+        this.source = source;
+    }
+
+    /**
+     * Append a token.
+     *
+     * @param type    the type of the token
+     * @param offset  the offset of the last character of the token
+     * @param length  the number of characters in the token
+     * @param literal the value of the token, or null if it has none
+     */
+    void add(TokenType type, int offset, int length, Object literal) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            symbols = Arrays.copyOf(symbols, capacity);
+        }
+        types[size] = (byte) (literal == null ? type.ordinal() : type.ordinal() | HAS_LITERAL);
+        offsets[size] = offset;
+        lengths[size] = length;
+        if (literal != null) {
+            if (literalCount == literals.length) {
+                literals = Arrays.copyOf(literals, literalCount * 2);
+                literalTokens = Arrays.copyOf(literalTokens, literalCount * 2);
+            }
+            literals[literalCount] = literal;
+            literalTokens[literalCount] = size;
+            literalCount++;
+        }
+        size++;
+    }
+
+    /**
+     * Append an identifier.
+     *
+     * @param offset the offset of the last character of the identifier
+     * @param length the number of characters in the identifier
+     * @param symbol the name of the identifier
+     */
+    void addIdentifier(int offset, int length, Symbol symbol) {
+        add(TokenType.IDENTIFIER, offset, length, null);
+        symbols[size - 1] = symbol;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public TokenType type(int index) {
+        return TYPES[types[checkIndex(index)] & TYPE_MASK];
+    }
+
+    public int offset(int index) {
+        return offsets[checkIndex(index)];
+    }
+
+    public int length(int index) {
+        return lengths[checkIndex(index)];
+    }
+
+    public Object literal(int index) {
+        if ((types[checkIndex(index)] & HAS_LITERAL) == 0) {
+            return null;
+        }
+        int found = Arrays.binarySearch(literalTokens, 0, literalCount, checkIndex(index));
+        return found < 0 ? null : literals[found];
+    }
+
+    /**
+     * Get the symbol of an identifier.
+     *
+     * @return the name of the identifier, or null if the token isn't one
+     */
+    public Symbol symbol(int index) {
+        if (type(index) != TokenType.IDENTIFIER) {
+            return null;
+        }
+        return symbols[index];
+    }
+
+    /**
+     * Cut the text of a token out of the source. The lexeme of an identifier is the name of its symbol.
+     */
+    public String lexeme(int index) {
+        TokenType type = type(index);
+        if (type == TokenType.IDENTIFIER) {
+            return symbols[index].name();
+        }
+        if (!hasFixedLexeme(type)) {
+            return cut(index);
+        }
+        String lexeme = fixedLexemes[type.ordinal()];
+        if (lexeme == null) {
+            lexeme = cut(index);
+            fixedLexemes[type.ordinal()] = lexeme;
+        }
+        return lexeme;
+    }
+
+    private String cut(int index) {
+        int end = offsets[index] + 1;
+        return source.get(end - lengths[index], end);
+    }
+
+    private static boolean hasFixedLexeme(TokenType type) {
+        switch (type) {
+            case STRING:
+            case INTEGER:
+            case DOUBLE:
+            case EOF:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Make a {@link Token} object for a buffered token. It is equal to the one the scanner would have returned.
+     */
+    public Token token(int index) {
+        if (type(index) == TokenType.IDENTIFIER) {
+            return new Token(symbols[index], offsets[index]);
+        }
+        return new Token(type(index), lexeme(index), literal(index), offsets[index]);
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("No token at index " + index);
+        }
+        return index;
+    }
+}
@@ -40,4 +40,13 @@ public interface ISource {
      * @return the offset of the current char
      */
     int getOffset();
+
+    /**
+     * Tell the source that chars before the offset won't be asked for with get again, so that a source that streams
+     * its text can drop them. Sources that hold the whole text ignore this.
+     *
+     * @param offset the offset of the first char still needed
+     */
+    default void release(int offset) {
+    }
 }
@@ -0,0 +1,81 @@
+package com.jlox.scanner.source;
+
+import java.util.Arrays;
+
+/**
+ * The offsets the lines of a text start at, for the sources to find the line and column of a char by binary search. A
+ * new line belongs to the line it ends. Lines are added in order as their new lines are found, and a source that
+ * doesn't keep its whole text can drop the lines before the part it still holds.
+ */
+final class LineIndex {
+
+    private static final int INITIAL_LINES = 16;
+
+    private int[] starts = new int[INITIAL_LINES];
+    // starts[first] to starts[count - 1] are in use, and starts[first] is the start of line firstLine
+    private int first;
+    private int count = 1;
+    private int firstLine = 1;
+
+    /**
+     * Index every line of a text.
+     */
+    static LineIndex of(String text) {
+        LineIndex index = new LineIndex();
+        for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1)) {
+            index.addNewLine(i);
+        }
+        return index;
+    }
+
+    /**
+     * Start a new line after the new line char at the offset, which must be after every new line added before.
+     */
+    void addNewLine(int offset) {
+        if (count == starts.length) {
+            if (first > 0) {
+                System.arraycopy(starts, first, starts, 0, count - first);
+                count -= first;
+                first = 0;
+            } else {
+                starts = Arrays.copyOf(starts, count * 2);
+            }
+        }
+        starts[count++] = offset + 1;
+    }
+
+    /**
+     * Forget the lines that end before the offset. The line the offset is on is kept.
+     */
+    void dropBefore(int offset) {
+        while (count - first > 1 && starts[first + 1] <= offset) {
+            first++;
+            firstLine++;
+        }
+    }
+
+    /**
+     * Get the line number of a char, from 1.
+     */
+    int lineNumber(int offset) {
+        return firstLine + find(offset) - first;
+    }
+
+    /**
+     * Get the column of a char, from 1.
+     */
+    int colNumber(int offset) {
+        return offset - starts[find(offset)] + 1;
+    }
+
+    // The index in starts of the line of a char
+    private int find(int offset) {
+        int found = Arrays.binarySearch(starts, first, count, offset);
+        // When the offset isn't a line start, it is on the line before the insertion point
+        int line = found >= 0 ? found : -found - 2;
+        if (line < first) {
+            throw new IllegalStateException("The line of char " + offset + " is not indexed");
+        }
+        return line;
+    }
+}
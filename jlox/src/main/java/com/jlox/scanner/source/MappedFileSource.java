@@ -0,0 +1,133 @@
+package com.jlox.scanner.source;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A source file mapped into memory and scanned in place, without reading it into a String first. The file is read as
+ * UTF-8: every byte is handed to the scanner as one char, which is exact for ASCII, and text is only decoded when a
+ * lexeme is cut out with {@link #get(int, int)}. Offsets and columns count bytes.
+ *
+ * <p>Every byte of a multi-byte sequence is handed over as the same letter, {@link #NON_ASCII}, so non-ASCII text can
+ * be part of identifiers and strings and is decoded whole by {@link #get(int, int)}. Unlike with a
+ * {@link StringSource}, a non-ASCII char that isn't a letter is let into an identifier rather than reported.
+ */
+public class MappedFileSource implements ISourceInfo {
+
+    // A letter, so the scanner keeps the bytes of a multi-byte sequence together in the token they are part of
+    static final char NON_ASCII = '\u00aa';
+    private static final int ASCII = 0x80;
+
+    private final MappedByteBuffer buffer;
+    private final int length;
+
+    private int current = -1;
+    private int line = 1;
+    private int col = 1;
+
+    // Built the first time a position is looked up by offset
+    private LineIndex lines;
+
+    /**
+     * Map a file. The mapping stays valid after the file is closed.
+     *
+     * @param path the file to scan
+     * @throws IOException if the file can't be read or is too large to be addressed with int offsets
+     */
+    public MappedFileSource(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to scan: " + path);
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            this.length = (int) channel.size();
+        }
+    }
+
+    @Override
+    public char peek() {
+        if (isAtEnd()) {
+            return '\0';
+        }
+        return charAt(current + 1);
+    }
+
+    @Override
+    public char advance() {
+        if (isAtEnd()) {
+            return '\0';
+        }
+        current++;
+        char c = charAt(current);
+        if (c == '\n') {
+            line += 1;
+            col = 1;
+        } else {
+            col += 1;
+        }
+        return c;
+    }
+
+    @Override
+    public String get(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean isAtEnd() {
+        return current == length - 1;
+    }
+
+    @Override
+    public int getOffset() {
+        return current;
+    }
+
+    @Override
+    public int getLineNumber() {
+        return line;
+    }
+
+    @Override
+    public int getLineNumber(int offset) {
+        return lines(offset).lineNumber(offset);
+    }
+
+    @Override
+    public int getColNumber() {
+        return col;
+    }
+
+    @Override
+    public int getColNumber(int offset) {
+        return lines(offset).colNumber(offset);
+    }
+
+    private char charAt(int offset) {
+        int b = Byte.toUnsignedInt(buffer.get(offset));
+        return b < ASCII ? (char) b : NON_ASCII;
+    }
+
+    private LineIndex lines(int offset) {
+        if (offset < 0 || offset >= length) {
+            throw new RuntimeException("Offset is invalid");
+        }
+        if (lines == null) {
+            lines = new LineIndex();
+            for (int i = 0; i < length; i++) {
+                if (buffer.get(i) == '\n') {
+                    lines.addNewLine(i);
+                }
+            }
+        }
+        return lines;
+    }
+}
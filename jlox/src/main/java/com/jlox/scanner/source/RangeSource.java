@@ -0,0 +1,118 @@
+package com.jlox.scanner.source;
+
+/**
+ * The chars of a text between two offsets, for scanning part of a text on its own. Offsets, line numbers and columns
+ * are those of the whole text, so tokens scanned from a range are the same as if the whole text had been scanned.
+ * Scanning has to start between two tokens for that to hold.
+ */
+public class RangeSource implements ISourceInfo {
+
+    private final String text;
+    private final int start;
+    private final int end;
+    private int current;
+    // The line of the char at start, 0 until it is worked out
+    private int startLine;
+    private int newLines;
+    // Lines of the whole text, built the first time a position is looked up by offset
+    private LineIndex lines;
+
+    /**
+     * Create a source for a range whose line is worked out if an error needs it.
+     *
+     * @param text  the whole text
+     * @param start the offset of the first char of the range
+     * @param end   the offset after the last char of the range
+     */
+    public RangeSource(String text, int start, int end) {
+        this(text, start, end, 0);
+    }
+
+    /**
+     * Create a source for a range that starts at the beginning of a known line.
+     *
+     * @param line the line number of the char at start
+     */
+    public RangeSource(String text, int start, int end, int line) {
+        if (start < 0 || start > end || end > text.length()) {
+            throw new IndexOutOfBoundsException(String.format("Range %d to %d is not in the text", start, end));
+        }
+        this.text = text;
+        this.start = start;
+        this.end = end;
+        this.current = start - 1;
+        this.startLine = line;
+    }
+
+    @Override
+    public char peek() {
+        if (isAtEnd()) {
+            return '\0';
+        }
+        return text.charAt(current + 1);
+    }
+
+    @Override
+    public char advance() {
+        if (isAtEnd()) {
+            return '\0';
+        }
+        current++;
+        char c = text.charAt(current);
+        if (c == '\n') {
+            newLines++;
+        }
+        return c;
+    }
+
+    @Override
+    public String get(int from, int to) {
+        return text.substring(from, to);
+    }
+
+    @Override
+    public boolean isAtEnd() {
+        return current == end - 1;
+    }
+
+    @Override
+    public int getOffset() {
+        return current;
+    }
+
+    @Override
+    public int getLineNumber() {
+        if (startLine == 0) {
+            startLine = lines().lineNumber(start);
+        }
+        return startLine + newLines;
+    }
+
+    @Override
+    public int getLineNumber(int offset) {
+        return lines().lineNumber(offset);
+    }
+
+    /**
+     * Get the column after the current char, which is 1 after a new line.
+     */
+    @Override
+    public int getColNumber() {
+        if (current < 0 || text.charAt(current) == '\n') {
+            return 1;
+        }
+        return getColNumber(current) + 1;
+    }
+
+    @Override
+    public int getColNumber(int offset) {
+        return lines().colNumber(offset);
+    }
+
+    private LineIndex lines() {
+        if (lines == null) {
+            lines = LineIndex.of(text);
+        }
+        return lines;
+    }
+}
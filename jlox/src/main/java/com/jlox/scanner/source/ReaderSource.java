@@ -0,0 +1,185 @@
+package com.jlox.scanner.source;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+
+/**
+ * A source read from a {@link Reader} as it is scanned, such as a script piped in on stdin. Only a window of the text
+ * is kept, in a ring buffer: chars are read ahead as the scanner asks for them and dropped once the scanner releases
+ * them with {@link #release(int)}, which it does at the start of every token. Memory stays flat however long the input
+ * is; the window only grows if a single token is longer than it. A channel can be read with
+ * {@link java.nio.channels.Channels#newReader}.
+ *
+ * <p>{@link #get(int, int)} and the lookups by offset only work for chars that are still in the window.
+ */
+public class ReaderSource implements ISourceInfo {
+
+    private static final int DEFAULT_CAPACITY = 65536;
+
+    private final Reader reader;
+
+    // The char at offset o is at window[o & mask] while released <= o < filled
+    private char[] window;
+    private int mask;
+    private int released;
+    private int filled;
+    private boolean drained;
+
+    private int current = -1;
+    private int line = 1;
+    private int col = 1;
+    // The lines of the scanned chars that haven't been released
+    private final LineIndex lines = new LineIndex();
+
+    public ReaderSource(Reader reader) {
+        this(reader, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a source with a window of at least the given size.
+     *
+     * @param reader   the text to scan
+     * @param capacity the initial size of the window, rounded up to a power of two
+     */
+    public ReaderSource(Reader reader, int capacity) {
+        this.reader = reader;
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.window = new char[size];
+        this.mask = size - 1;
+    }
+
+    @Override
+    public char peek() {
+        if (isAtEnd()) {
+            return '\0';
+        }
+        return window[(current + 1) & mask];
+    }
+
+    @Override
+    public char advance() {
+        if (isAtEnd()) {
+            return '\0';
+        }
+        current++;
+        char c = window[current & mask];
+        if (c == '\n') {
+            lines.addNewLine(current);
+            line += 1;
+            col = 1;
+        } else {
+            col += 1;
+        }
+        return c;
+    }
+
+    @Override
+    public String get(int start, int end) {
+        if (start < released || end > filled) {
+            throw new IllegalStateException(String.format("Chars %d to %d are not buffered", start, end));
+        }
+        int from = start & mask;
+        int count = end - start;
+        if (from + count <= window.length) {
+            return new String(window, from, count);
+        }
+        // The text wraps around the end of the ring
+        int head = window.length - from;
+        return new String(window, from, head) + new String(window, 0, count - head);
+    }
+
+    @Override
+    public boolean isAtEnd() {
+        return !fill(current + 1);
+    }
+
+    @Override
+    public int getOffset() {
+        return current;
+    }
+
+    @Override
+    public void release(int offset) {
+        released = Math.max(released, Math.min(offset, filled));
+        lines.dropBefore(released);
+    }
+
+    @Override
+    public int getLineNumber() {
+        return line;
+    }
+
+    /**
+     * Get the line number of a char that has been scanned and not released.
+     */
+    @Override
+    public int getLineNumber(int offset) {
+        checkScanned(offset);
+        return lines.lineNumber(offset);
+    }
+
+    @Override
+    public int getColNumber() {
+        return col;
+    }
+
+    /**
+     * Get the column of a char that has been scanned and not released. The start of its line may have been released.
+     */
+    @Override
+    public int getColNumber(int offset) {
+        checkScanned(offset);
+        return lines.colNumber(offset);
+    }
+
+    // The size of the window, which only grows for tokens longer than it
+    int capacity() {
+        return window.length;
+    }
+
+    private void checkScanned(int offset) {
+        if (offset < released || offset > current) {
+            throw new IllegalStateException("Char " + offset + " is not buffered");
+        }
+    }
+
+    /**
+     * Read ahead until the char at the offset is in the window.
+     *
+     * @return false if the input ends before the offset
+     */
+    private boolean fill(int offset) {
+        while (offset >= filled && !drained) {
+            if (filled - released == window.length) {
+                grow();
+            }
+            int from = filled & mask;
+            // Read up to the released chars or the end of the array, whichever comes first
+            int count = Math.min(window.length - (filled - released), window.length - from);
+            int read;
+            try {
+                read = reader.read(window, from, count);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (read < 0) {
+                drained = true;
+            } else {
+                filled += read;
+            }
+        }
+        return offset < filled;
+    }
+
+    // Double the window, keeping the buffered chars at the positions of their offsets in the larger ring
+    private void grow() {
+        char[] larger = new char[window.length * 2];
+        int largerMask = larger.length - 1;
+        for (int i = released; i < filled; i++) {
+            larger[i & largerMask] = window[i & mask];
+        }
+        window = larger;
+        mask = largerMask;
+    }
+}
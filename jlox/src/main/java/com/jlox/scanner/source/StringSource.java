@@ -7,6 +7,9 @@ public class StringSource implements ISourceInfo {
     private int col = 1;
 
     private final String source;
+    // Built the first time a position is looked up by offset, and again if the string changes
+    private LineIndex lines;
+    private String indexed;
 
     public StringSource(String source) {
         this.source = source;
@@ -57,19 +60,7 @@ public class StringSource implements ISourceInfo {
 
     @Override
     public int getLineNumber(int offset) {
-        String myString = getString();
-        int l = myString.length();
-        if (offset >= l) {
-            throw new RuntimeException("Offset is invalid");
-        }
-
-        int acc = 1;
-        // Count the number of times we see a new line
-        for (int i = 0; i <= offset; i++) {
-            acc++;
-        }
-        return acc;
-
+        return lines(offset).lineNumber(offset);
     }
 
     @Override
@@ -79,17 +70,19 @@ public class StringSource implements ISourceInfo {
 
     @Override
     public int getColNumber(int offset) {
+        return lines(offset).colNumber(offset);
+    }
+
+    private LineIndex lines(int offset) {
         String myString = getString();
-        int l = myString.length();
-        if (offset >= l) {
+        if (offset < 0 || offset >= myString.length()) {
             throw new RuntimeException("Offset is invalid");
         }
-
-        myString = myString.substring(0, offset);
-        // Get the position of the last new line
-        int fin = myString.lastIndexOf('\n');
-        // return the distance between that new line and our offset character
-        return offset - fin;
+        if (indexed != myString) {
+            lines = LineIndex.of(myString);
+            indexed = myString;
+        }
+        return lines;
     }
 
     protected String getString() {
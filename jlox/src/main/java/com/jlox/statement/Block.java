@@ -6,6 +6,7 @@ import java.util.List;
 
 public class Block extends Statement {
     public final List<Statement> stmts;
+    public int scopeSize = -1;
 
     public Block(List<Statement> stmts) {
         this.stmts = stmts;
@@ -4,12 +4,16 @@ package com.jlox.statement;
 import com.jlox.scanner.Token;
 
 import java.util.List;
+import java.util.function.Supplier;
 
 
 public class FunDeclare extends Statement {
     public final Token name;
     public final List<Token> params;
-    public final Block body;
+    public int slot = -1;
+    private Block body;
+    // Works out the body the first time it is needed, null once it has
+    private Supplier<Block> deferredBody;
 
     public FunDeclare(Token name, List<Token> params, Block body) {
         this.name = name;
@@ -17,6 +21,30 @@ public class FunDeclare extends Statement {
         this.body = body;
     }
 
+    /**
+     * Create a FunDeclare whose body is worked out the first time it is needed.
+     */
+    public FunDeclare(Token name, List<Token> params, Supplier<Block> deferredBody) {
+        this.name = name;
+        this.params = params;
+        this.deferredBody = deferredBody;
+    }
+
+    /**
+     * Get the body, working it out first if it hasn't been.
+     */
+    public Block body() {
+        if (deferredBody != null) {
+            body = deferredBody.get();
+            deferredBody = null;
+        }
+        return body;
+    }
+
+    public boolean isBodyParsed() {
+        return deferredBody == null;
+    }
+
     public <R> R accept(StatementVisitor<R> visitor) {
         return visitor.visitFunDeclare(this);
     }
@@ -0,0 +1,18 @@
+package com.jlox.statement;
+
+
+public final class StatementTag {
+    public static final int PRINT_STATEMENT = 1;
+    public static final int EXPR_STATEMENT = 2;
+    public static final int VAR_DECLARE = 3;
+    public static final int VAR_ASSIGN = 4;
+    public static final int BLOCK = 5;
+    public static final int IF_STATEMENT = 6;
+    public static final int WHILE_STATEMENT = 7;
+    public static final int BREAK_STATEMENT = 8;
+    public static final int FUN_DECLARE = 9;
+    public static final int RETURN_STATEMENT = 10;
+
+    private StatementTag() {
+    }
+}
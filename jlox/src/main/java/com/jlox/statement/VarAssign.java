@@ -8,6 +8,8 @@ import com.jlox.scanner.Token;
 public class VarAssign extends Statement {
     public final Token name;
     public final Expression newVal;
+    public int depth = -1;
+    public int slot = -1;
 
     public VarAssign(Token name, Expression newVal) {
         this.name = name;
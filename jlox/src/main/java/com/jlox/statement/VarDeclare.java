@@ -8,6 +8,7 @@ import com.jlox.scanner.Token;
 public class VarDeclare extends Statement {
     public final Token name;
     public final Expression init;
+    public int slot = -1;
 
     public VarDeclare(Token name, Expression init) {
         this.name = name;
@@ -0,0 +1,91 @@
+package com.jlox.vm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A sequence of bytecode together with the constants it refers to.
+ */
+final class Chunk {
+
+    static final int MAX_OPERAND = 0xffff;
+    private static final int BYTE_MASK = 0xff;
+    private static final int BYTE_BITS = 8;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private byte[] code = new byte[INITIAL_CAPACITY];
+    private int count;
+    private final List<Object> constants = new ArrayList<>();
+    // Literal values are deduplicated so a loop body referring to the same number doesn't grow the pool
+    private final Map<Object, Integer> literalIndex = new HashMap<>();
+    private Object[] constantArray;
+
+    void write(byte value) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, code.length * 2);
+        }
+        code[count++] = value;
+    }
+
+    void writeShort(int value) {
+        if (value > MAX_OPERAND) {
+            throw new CompileLoxError("Operand " + value + " doesn't fit in an instruction");
+        }
+        write((byte) (value >> BYTE_BITS));
+        write((byte) value);
+    }
+
+    void patchShort(int offset, int value) {
+        if (value > MAX_OPERAND) {
+            throw new CompileLoxError("Too much code to jump over");
+        }
+        code[offset] = (byte) (value >> BYTE_BITS);
+        code[offset + 1] = (byte) value;
+    }
+
+    /**
+     * Add a constant to the pool.
+     *
+     * @return the index of the constant
+     */
+    int addConstant(Object value) {
+        constants.add(value);
+        return constants.size() - 1;
+    }
+
+    /**
+     * Add a literal value to the pool, reusing an existing entry if the value is already there.
+     *
+     * @return the index of the constant
+     */
+    int addLiteral(Object value) {
+        Integer index = literalIndex.get(value);
+        if (index == null) {
+            index = addConstant(value);
+            literalIndex.put(value, index);
+        }
+        return index;
+    }
+
+    int size() {
+        return count;
+    }
+
+    byte[] code() {
+        return code;
+    }
+
+    Object[] constants() {
+        if (constantArray == null || constantArray.length != constants.size()) {
+            constantArray = constants.toArray();
+        }
+        return constantArray;
+    }
+
+    static int readShort(byte[] code, int offset) {
+        return ((code[offset] & BYTE_MASK) << BYTE_BITS) | (code[offset + 1] & BYTE_MASK);
+    }
+}
@@ -0,0 +1,11 @@
+package com.jlox.vm;
+
+import com.jlox.error.LoxError;
+
+public class CompileLoxError extends LoxError {
+
+    public CompileLoxError(String message) {
+        super(message, "COMPILE_ERROR", -1);
+    }
+
+}
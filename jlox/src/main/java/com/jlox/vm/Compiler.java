@@ -0,0 +1,535 @@
+package com.jlox.vm;
+
+import com.jlox.expression.*;
+import com.jlox.interpreter.ResolveLoxError;
+import com.jlox.scanner.Token;
+import com.jlox.scanner.TokenType;
+import com.jlox.statement.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles a parsed program to bytecode for the {@link VirtualMachine}. The compiler resolves variables itself, with
+ * the same scoping rules as the {@link com.jlox.interpreter.Resolver}: locals live in stack slots of the enclosing
+ * function, variables of enclosing functions are captured as upvalues and everything else is a global.
+ */
+public class Compiler implements StatementVisitor<Void>, ExpressionVisitor<Void> {
+
+    private static final int MAX_ARGS = 255;
+
+    private FunctionState current;
+
+    /**
+     * Compile the top-level statements of a program into a function taking no arguments.
+     *
+     * @param stmts the statements to compile
+     * @return the compiled script
+     */
+    VmFunction compile(List<Statement> stmts) {
+        current = new FunctionState(null, new VmFunction("script", 0));
+        try {
+            for (Statement stmt : stmts) {
+                compile(stmt);
+            }
+            emitReturn();
+            return current.function;
+        } finally {
+            current = null;
+        }
+    }
+
+    private void compile(Statement stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expression expr) {
+        expr.accept(this);
+    }
+
+    private Chunk chunk() {
+        return current.function.chunk;
+    }
+
+    private void emit(byte op) {
+        chunk().write(op);
+    }
+
+    private void emit(byte op, int operand) {
+        chunk().write(op);
+        chunk().writeShort(operand);
+    }
+
+    private void emitReturn() {
+        emit(OpCode.CONSTANT, chunk().addLiteral(null));
+        emit(OpCode.RETURN);
+    }
+
+    /**
+     * Emit a jump with a placeholder offset.
+     *
+     * @return the position of the offset, to be given to patchJump
+     */
+    private int emitJump(byte op) {
+        emit(op, 0);
+        return chunk().size() - 2;
+    }
+
+    /**
+     * Compile the condition of an if or a loop and a jump taken unless it is true. An ordering comparison is compiled
+     * into one instruction that compares and jumps, so the loop doesn't make a boolean only to test it.
+     *
+     * @return the position of the offset of the jump, to be given to patchJump
+     */
+    private int emitConditionJump(Expression condition) {
+        if (condition instanceof Binary) {
+            Binary binary = (Binary) condition;
+            byte jump = jumpUnless(binaryOp(binary.operator.type));
+            if (jump != OpCode.JUMP_IF_NOT_TRUE) {
+                compile(binary.left);
+                compile(binary.right);
+                return emitJump(jump);
+            }
+        }
+        compile(condition);
+        return emitJump(OpCode.JUMP_IF_NOT_TRUE);
+    }
+
+    private static byte jumpUnless(byte comparison) {
+        switch (comparison) {
+            case OpCode.GREATER:
+                return OpCode.JUMP_UNLESS_GREATER;
+            case OpCode.GREATER_EQUAL:
+                return OpCode.JUMP_UNLESS_GREATER_EQUAL;
+            case OpCode.LESS:
+                return OpCode.JUMP_UNLESS_LESS;
+            case OpCode.LESS_EQUAL:
+                return OpCode.JUMP_UNLESS_LESS_EQUAL;
+            default:
+                return OpCode.JUMP_IF_NOT_TRUE;
+        }
+    }
+
+    private void patchJump(int offset) {
+        chunk().patchShort(offset, chunk().size() - offset - 2);
+    }
+
+    private void emitLoop(int loopStart) {
+        emit(OpCode.LOOP, 0);
+        chunk().patchShort(chunk().size() - 2, chunk().size() - loopStart);
+    }
+
+    // Scopes
+
+    private void beginScope() {
+        current.scopeDepth++;
+    }
+
+    private void endScope() {
+        current.scopeDepth--;
+        List<Local> locals = current.locals;
+        while (!locals.isEmpty() && locals.get(locals.size() - 1).depth > current.scopeDepth) {
+            emit(locals.remove(locals.size() - 1).captured ? OpCode.CLOSE_UPVALUE : OpCode.POP);
+        }
+    }
+
+    private boolean isGlobalScope() {
+        return current.enclosing == null && current.scopeDepth == 0;
+    }
+
+    private void declareLocal(Token name) {
+        for (int i = current.locals.size() - 1; i >= 0; i--) {
+            Local local = current.locals.get(i);
+            if (local.depth < current.scopeDepth) {
+                break;
+            }
+            if (local.name.equals(name.lexeme)) {
+                throw new ResolveLoxError(name.lexeme + " has already been declared in this scope", name.offset);
+            }
+        }
+        if (current.locals.size() > Chunk.MAX_OPERAND) {
+            throw new CompileLoxError("Too many local variables in function");
+        }
+        current.locals.add(new Local(name.lexeme, current.scopeDepth));
+    }
+
+    private static int resolveLocal(FunctionState state, String name) {
+        for (int i = state.locals.size() - 1; i >= 0; i--) {
+            if (state.locals.get(i).name.equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int resolveUpvalue(FunctionState state, String name) {
+        if (state.enclosing == null) {
+            return -1;
+        }
+        int local = resolveLocal(state.enclosing, name);
+        if (local >= 0) {
+            state.enclosing.locals.get(local).captured = true;
+            return state.addUpvalue(local, true);
+        }
+        int upvalue = resolveUpvalue(state.enclosing, name);
+        if (upvalue >= 0) {
+            return state.addUpvalue(upvalue, false);
+        }
+        return -1;
+    }
+
+    private void emitGet(Token name) {
+        int slot = resolveLocal(current, name.lexeme);
+        if (slot >= 0) {
+            emit(OpCode.GET_LOCAL, slot);
+            return;
+        }
+        int upvalue = resolveUpvalue(current, name.lexeme);
+        if (upvalue >= 0) {
+            emit(OpCode.GET_UPVALUE, upvalue);
+            return;
+        }
+        emit(OpCode.GET_GLOBAL, chunk().addConstant(name));
+    }
+
+    private void emitSet(Token name) {
+        int slot = resolveLocal(current, name.lexeme);
+        if (slot >= 0) {
+            emit(OpCode.SET_LOCAL, slot);
+            return;
+        }
+        int upvalue = resolveUpvalue(current, name.lexeme);
+        if (upvalue >= 0) {
+            emit(OpCode.SET_UPVALUE, upvalue);
+            return;
+        }
+        emit(OpCode.SET_GLOBAL, chunk().addConstant(name));
+    }
+
+    /**
+     * Bind the value on top of the stack to a newly declared variable.
+     */
+    private void define(Token name) {
+        if (isGlobalScope()) {
+            emit(OpCode.DEFINE_GLOBAL, chunk().addConstant(name));
+        } else {
+            declareLocal(name);
+        }
+    }
+
+    // Statements
+
+    @Override
+    public Void visitPrintStatement(PrintStatement printstatement) {
+        compile(printstatement.expr);
+        emit(OpCode.PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitExprStatement(ExprStatement exprstatement) {
+        compile(exprstatement.expr);
+        emit(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitVarDeclare(VarDeclare vardeclare) {
+        compile(vardeclare.init);
+        define(vardeclare.name);
+        return null;
+    }
+
+    @Override
+    public Void visitVarAssign(VarAssign varassign) {
+        compile(varassign.newVal);
+        emitSet(varassign.name);
+        return null;
+    }
+
+    @Override
+    public Void visitBlock(Block block) {
+        beginScope();
+        for (Statement stmt : block.stmts) {
+            compile(stmt);
+        }
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitIfStatement(IfStatement ifstatement) {
+        int elseJump = emitConditionJump(ifstatement.condition);
+        compile(ifstatement.thenBranch);
+        if (ifstatement.elseBranch == null) {
+            patchJump(elseJump);
+            return null;
+        }
+        int endJump = emitJump(OpCode.JUMP);
+        patchJump(elseJump);
+        compile(ifstatement.elseBranch);
+        patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStatement(WhileStatement whilestatement) {
+        Loop loop = new Loop(current.locals.size());
+        current.loops.add(loop);
+        int loopStart = chunk().size();
+        int exitJump = -1;
+        if (whilestatement.condition != null) {
+            exitJump = emitConditionJump(whilestatement.condition);
+        }
+        compile(whilestatement.body);
+        emitLoop(loopStart);
+        if (exitJump >= 0) {
+            patchJump(exitJump);
+        }
+        for (int breakJump : loop.breakJumps) {
+            patchJump(breakJump);
+        }
+        current.loops.remove(current.loops.size() - 1);
+        return null;
+    }
+
+    // Discard the locals declared inside the loop, without forgetting them since the code after the break still
+    // belongs to their scope, then jump past the end of the loop
+    @Override
+    public Void visitBreakStatement(BreakStatement breakstatement) {
+        if (current.loops.isEmpty()) {
+            throw new CompileLoxError("break statements may only appear within a for or while loop");
+        }
+        Loop loop = current.loops.get(current.loops.size() - 1);
+        for (int i = current.locals.size() - 1; i >= loop.localCount; i--) {
+            emit(current.locals.get(i).captured ? OpCode.CLOSE_UPVALUE : OpCode.POP);
+        }
+        loop.breakJumps.add(emitJump(OpCode.JUMP));
+        return null;
+    }
+
+    @Override
+    public Void visitFunDeclare(FunDeclare fundeclare) {
+        // Declare the name first so the function can refer to itself
+        boolean global = isGlobalScope();
+        if (!global) {
+            declareLocal(fundeclare.name);
+        }
+        if (fundeclare.params.size() > MAX_ARGS) {
+            throw new CompileLoxError("Cannot have more than 255 parameters");
+        }
+        FunctionState state = new FunctionState(current,
+                new VmFunction(fundeclare.name.lexeme, fundeclare.params.size()));
+        current = state;
+        try {
+            // Parameters have their own scope, enclosing the scope of the body
+            beginScope();
+            for (Token param : fundeclare.params) {
+                declareLocal(param);
+            }
+            compile(fundeclare.body());
+            emitReturn();
+        } finally {
+            current = state.enclosing;
+        }
+        state.function.upvalueCount = state.upvalueIsLocal.size();
+        emit(OpCode.CLOSURE, chunk().addConstant(state.function));
+        for (int i = 0; i < state.upvalueIsLocal.size(); i++) {
+            chunk().write((byte) (state.upvalueIsLocal.get(i) ? 1 : 0));
+            chunk().writeShort(state.upvalueIndex.get(i));
+        }
+        if (global) {
+            emit(OpCode.DEFINE_GLOBAL, chunk().addConstant(fundeclare.name));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStatement(ReturnStatement returnstatement) {
+        compile(returnstatement.value);
+        emit(OpCode.RETURN);
+        return null;
+    }
+
+    // Expressions
+
+    @Override
+    public Void visitBinary(Binary binary) {
+        compile(binary.left);
+        if (binary.operator.type == TokenType.COMMA) {
+            emit(OpCode.POP);
+            compile(binary.right);
+            return null;
+        }
+        compile(binary.right);
+        byte op = binaryOp(binary.operator.type);
+        if (op == OpCode.BINARY) {
+            emit(op, chunk().addConstant(binary.operator));
+        } else {
+            emit(op);
+        }
+        return null;
+    }
+
+    private static byte binaryOp(TokenType type) {
+        switch (type) {
+            case EQUAL_EQUAL:
+                return OpCode.EQUAL;
+            case BANG_EQUAL:
+                return OpCode.NOT_EQUAL;
+            case GREATER:
+                return OpCode.GREATER;
+            case GREATER_EQUAL:
+                return OpCode.GREATER_EQUAL;
+            case LESS:
+                return OpCode.LESS;
+            case LESS_EQUAL:
+                return OpCode.LESS_EQUAL;
+            case PLUS:
+                return OpCode.ADD;
+            case MINUS:
+                return OpCode.SUBTRACT;
+            case STAR:
+                return OpCode.MULTIPLY;
+            case SLASH:
+                return OpCode.DIVIDE;
+            default:
+                return OpCode.BINARY;
+        }
+    }
+
+    @Override
+    public Void visitLogical(Logical logical) {
+        compile(logical.left);
+        byte op;
+        if (logical.operator.type == TokenType.OR) {
+            op = OpCode.JUMP_IF_TRUTHY_OR_POP;
+        } else if (logical.operator.type == TokenType.AND) {
+            op = OpCode.JUMP_IF_FALSY_OR_POP;
+        } else {
+            emit(OpCode.POP);
+            compile(logical.right);
+            return null;
+        }
+        int endJump = emitJump(op);
+        compile(logical.right);
+        patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Void visitGrouping(Grouping grouping) {
+        compile(grouping.expr);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteral(Literal literal) {
+        emit(OpCode.CONSTANT, chunk().addLiteral(literal.value));
+        return null;
+    }
+
+    @Override
+    public Void visitUnary(Unary unary) {
+        switch (unary.operator.type) {
+            case BANG:
+                compile(unary.right);
+                emit(OpCode.NOT);
+                break;
+            case MINUS:
+                compile(unary.right);
+                emit(OpCode.NEGATE);
+                break;
+            default:
+                // The tree-walker rejects the operator before evaluating the operand
+                emit(OpCode.ERROR, chunk().addConstant(String.format("Unknown operator '%s'", unary.operator.lexeme)));
+                break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitTernary(Ternary ternary) {
+        compile(ternary.condition);
+        int elseJump = emitJump(OpCode.JUMP_IF_FALSY);
+        compile(ternary.left);
+        int endJump = emitJump(OpCode.JUMP);
+        patchJump(elseJump);
+        compile(ternary.right);
+        patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Void visitVariable(Variable variable) {
+        emitGet(variable.name);
+        return null;
+    }
+
+    @Override
+    public Void visitCall(Call call) {
+        compile(call.callee);
+        emit(OpCode.CHECK_CALLABLE);
+        for (Expression arg : call.arguments) {
+            compile(arg);
+        }
+        if (call.arguments.size() > MAX_ARGS) {
+            throw new CompileLoxError("Cannot have more than 255 arguments");
+        }
+        emit(OpCode.CALL);
+        chunk().write((byte) call.arguments.size());
+        return null;
+    }
+
+    /**
+     * Compilation state of a single function.
+     */
+    private static final class FunctionState {
+        final FunctionState enclosing;
+        final VmFunction function;
+        final List<Local> locals = new ArrayList<>();
+        final List<Boolean> upvalueIsLocal = new ArrayList<>();
+        final List<Integer> upvalueIndex = new ArrayList<>();
+        final List<Loop> loops = new ArrayList<>();
+        int scopeDepth;
+
+        FunctionState(FunctionState enclosing, VmFunction function) {
+            this.enclosing = enclosing;
+            this.function = function;
+            // Slot zero holds the function being called
+            locals.add(new Local("", 0));
+        }
+
+        int addUpvalue(int index, boolean isLocal) {
+            for (int i = 0; i < upvalueIndex.size(); i++) {
+                if (upvalueIndex.get(i) == index && upvalueIsLocal.get(i) == isLocal) {
+                    return i;
+                }
+            }
+            upvalueIsLocal.add(isLocal);
+            upvalueIndex.add(index);
+            return upvalueIndex.size() - 1;
+        }
+    }
+
+    private static final class Local {
+        final String name;
+        final int depth;
+        boolean captured;
+
+        Local(String name, int depth) {
+            this.name = name;
+            this.depth = depth;
+        }
+    }
+
+    private static final class Loop {
+        // Number of locals in scope when the loop starts
+        final int localCount;
+        final List<Integer> breakJumps = new ArrayList<>();
+
+        Loop(int localCount) {
+            this.localCount = localCount;
+        }
+    }
+}
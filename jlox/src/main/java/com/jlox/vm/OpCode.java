@@ -0,0 +1,66 @@
+package com.jlox.vm;
+
+/**
+ * The instructions understood by the {@link VirtualMachine}. Every instruction is a single byte, optionally followed
+ * by operands. Unless stated otherwise operands are unsigned 16-bit big-endian integers.
+ */
+final class OpCode {
+    // Push constants[operand]. nil, true and false are constants as well
+    static final byte CONSTANT = 0;
+    static final byte POP = 1;
+    // Locals are addressed relative to the base of the current frame
+    static final byte GET_LOCAL = 2;
+    static final byte SET_LOCAL = 3;
+    // Globals are addressed by the constant index of their name token
+    static final byte GET_GLOBAL = 4;
+    static final byte DEFINE_GLOBAL = 5;
+    static final byte SET_GLOBAL = 6;
+    static final byte GET_UPVALUE = 7;
+    static final byte SET_UPVALUE = 8;
+    static final byte EQUAL = 9;
+    static final byte NOT_EQUAL = 10;
+    static final byte GREATER = 11;
+    static final byte GREATER_EQUAL = 12;
+    static final byte LESS = 13;
+    static final byte LESS_EQUAL = 14;
+    static final byte ADD = 15;
+    static final byte SUBTRACT = 16;
+    static final byte MULTIPLY = 17;
+    static final byte DIVIDE = 18;
+    // Any other binary operator. The operand is the constant index of the operator token
+    static final byte BINARY = 19;
+    static final byte NOT = 20;
+    static final byte NEGATE = 21;
+    // Throw a runtime error whose message is constants[operand]
+    static final byte ERROR = 22;
+    static final byte PRINT = 23;
+    // Jumps take a forward offset from the end of the instruction, LOOP a backward one
+    static final byte JUMP = 24;
+    // Pop the condition of an if or while and jump unless it is true
+    static final byte JUMP_IF_NOT_TRUE = 25;
+    // Pop the condition of a ternary and jump if it is falsy
+    static final byte JUMP_IF_FALSY = 26;
+    // Short-circuit for 'or': jump if the top of the stack is truthy, otherwise pop it
+    static final byte JUMP_IF_TRUTHY_OR_POP = 27;
+    // Short-circuit for 'and': jump if the top of the stack is falsy, otherwise pop it
+    static final byte JUMP_IF_FALSY_OR_POP = 28;
+    static final byte LOOP = 29;
+    // One byte operand: the number of arguments
+    static final byte CALL = 30;
+    // The constant index of a VmFunction followed by (isLocal byte, index) for each of its upvalues
+    static final byte CLOSURE = 31;
+    static final byte CLOSE_UPVALUE = 32;
+    static final byte RETURN = 33;
+    // Throw a runtime error unless the top of the stack can be called. Emitted after the callee of a call, so that
+    // nothing is called and no argument is evaluated for a value that isn't a function, as in the tree-walker
+    static final byte CHECK_CALLABLE = 34;
+    // Pop two operands, compare them as the comparison instruction of the same name would and jump unless the
+    // result is true. Emitted for comparisons that are the condition of an if or a loop
+    static final byte JUMP_UNLESS_GREATER = 35;
+    static final byte JUMP_UNLESS_GREATER_EQUAL = 36;
+    static final byte JUMP_UNLESS_LESS = 37;
+    static final byte JUMP_UNLESS_LESS_EQUAL = 38;
+
+    private OpCode() {
+    }
+}
@@ -0,0 +1,18 @@
+package com.jlox.vm;
+
+/**
+ * A variable captured by a closure. While the variable is still on the stack the upvalue points at its slot. Once
+ * the variable goes out of scope its value is moved into the upvalue.
+ */
+final class Upvalue {
+    // The stack slot of the variable, or -1 once it has been closed
+    int slot;
+    Object closed;
+    // Open upvalues form a list sorted by slot, top of the stack first
+    Upvalue next;
+
+    Upvalue(int slot, Upvalue next) {
+        this.slot = slot;
+        this.next = next;
+    }
+}
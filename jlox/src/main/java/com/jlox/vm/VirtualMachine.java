@@ -0,0 +1,518 @@
+package com.jlox.vm;
+
+import com.jlox.interpreter.Environment;
+import com.jlox.interpreter.Interpreter;
+import com.jlox.interpreter.LoxCallable;
+import com.jlox.interpreter.Operations;
+import com.jlox.interpreter.RuntimeError;
+import com.jlox.scanner.Token;
+import com.jlox.scanner.TokenType;
+import com.jlox.statement.Statement;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stack based virtual machine running the bytecode produced by the {@link Compiler}. Globals are shared with the
+ * interpreter, so natives such as clock are available and globals survive between runs.
+ *
+ * <p>The instructions that run in loops each have their own case in the dispatch loop, and the arithmetic and
+ * comparison instructions handle two integers without leaving it. Everything else goes through the operator
+ * semantics shared with the interpreter.
+ */
+public class VirtualMachine {
+
+    private static final int FRAMES_MAX = 65536;
+    private static final int INITIAL_FRAMES = 64;
+    private static final int INITIAL_STACK = 1024;
+    private static final int BYTE_MASK = 0xff;
+
+    private final Interpreter interpreter;
+    private final Compiler compiler = new Compiler();
+    private Environment globals;
+
+    private Object[] stack = new Object[INITIAL_STACK];
+    private int sp;
+
+    // Call frames, stored as parallel arrays to avoid allocating a frame object per call
+    private VmClosure[] frameClosures = new VmClosure[INITIAL_FRAMES];
+    private int[] frameIps = new int[INITIAL_FRAMES];
+    private int[] frameBases = new int[INITIAL_FRAMES];
+    private int frameCount;
+
+    private Upvalue openUpvalues;
+
+    public VirtualMachine(Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    /**
+     * Compile and run a program. Errors are thrown to the caller.
+     *
+     * @param stmts the statements to run
+     */
+    public void interpret(List<Statement> stmts) {
+        VmClosure script = new VmClosure(compiler.compile(stmts), this);
+        globals = interpreter.getScope();
+        int entryFrames = frameCount;
+        int entrySp = sp;
+        try {
+            push(script);
+            callClosure(script, 0);
+            execute(entryFrames);
+        } finally {
+            reset(entryFrames, entrySp);
+        }
+    }
+
+    /**
+     * Call a closure from outside the VM, i.e. from a native function.
+     */
+    Object invoke(VmClosure closure, List<Object> arguments) {
+        int entryFrames = frameCount;
+        int entrySp = sp;
+        try {
+            push(closure);
+            for (Object argument : arguments) {
+                push(argument);
+            }
+            callClosure(closure, arguments.size());
+            return execute(entryFrames);
+        } finally {
+            reset(entryFrames, entrySp);
+        }
+    }
+
+    private void reset(int entryFrames, int entrySp) {
+        closeUpvalues(entrySp);
+        Arrays.fill(stack, entrySp, sp, null);
+        sp = entrySp;
+        frameCount = entryFrames;
+    }
+
+    private void push(Object value) {
+        if (sp == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[sp++] = value;
+    }
+
+    /**
+     * Run until the frame that was on top when execution started returns. The stack and the stack pointer are kept in
+     * locals while running and written back before calling anything that uses them.
+     *
+     * @param entryFrames the number of frames below the frame to run
+     * @return the value returned by that frame
+     */
+    private Object execute(int entryFrames) {
+        Object[] values = stack;
+        int top = sp;
+        int argCount;
+        Object value;
+        try {
+            frames:
+            while (true) {
+                // Load the frame on top of the call stack, after entering the VM or after a call or a return
+                VmClosure closure = frameClosures[frameCount - 1];
+                byte[] code = closure.function.chunk.code();
+                Object[] constants = closure.function.chunk.constants();
+                int ip = frameIps[frameCount - 1];
+                int base = frameBases[frameCount - 1];
+                // callClosure made room for everything the frame can push, so instructions don't check
+                while (true) {
+                    byte op = code[ip++];
+                    switch (op) {
+                        case OpCode.CONSTANT:
+                            values[top++] = constants[Chunk.readShort(code, ip)];
+                            ip += 2;
+                            break;
+                        case OpCode.POP:
+                            values[--top] = null;
+                            break;
+                        case OpCode.GET_LOCAL:
+                            values[top++] = values[base + Chunk.readShort(code, ip)];
+                            ip += 2;
+                            break;
+                        case OpCode.SET_LOCAL:
+                            values[base + Chunk.readShort(code, ip)] = values[--top];
+                            ip += 2;
+                            break;
+                        case OpCode.GET_GLOBAL:
+                            values[top++] = globals.getValue((Token) constants[Chunk.readShort(code, ip)]);
+                            ip += 2;
+                            break;
+                        case OpCode.SET_GLOBAL:
+                            globals.changeValue((Token) constants[Chunk.readShort(code, ip)], values[--top]);
+                            ip += 2;
+                            break;
+                        case OpCode.GET_UPVALUE:
+                            values[top++] = getUpvalue(closure.upvalues[Chunk.readShort(code, ip)]);
+                            ip += 2;
+                            break;
+                        // Each operator has its own case, so integers are handled without a second switch
+                        case OpCode.EQUAL:
+                            values[top - 2] = equal(values[top - 2], values[--top]);
+                            break;
+                        case OpCode.NOT_EQUAL:
+                            values[top - 2] = notEqual(values[top - 2], values[--top]);
+                            break;
+                        case OpCode.GREATER:
+                            values[top - 2] = greater(values[top - 2], values[--top]);
+                            break;
+                        case OpCode.GREATER_EQUAL:
+                            values[top - 2] = greaterEqual(values[top - 2], values[--top]);
+                            break;
+                        case OpCode.LESS:
+                            values[top - 2] = less(values[top - 2], values[--top]);
+                            break;
+                        case OpCode.LESS_EQUAL:
+                            values[top - 2] = lessEqual(values[top - 2], values[--top]);
+                            break;
+                        case OpCode.ADD:
+                            values[top - 2] = add(values[top - 2], values[--top]);
+                            break;
+                        case OpCode.SUBTRACT:
+                            values[top - 2] = subtract(values[top - 2], values[--top]);
+                            break;
+                        case OpCode.MULTIPLY:
+                            values[top - 2] = multiply(values[top - 2], values[--top]);
+                            break;
+                        case OpCode.DIVIDE:
+                            values[top - 2] = slowBinary(op, values[top - 2], values[--top]);
+                            break;
+                        case OpCode.JUMP:
+                            ip += Chunk.readShort(code, ip) + 2;
+                            break;
+                        case OpCode.JUMP_IF_NOT_TRUE:
+                            ip += Boolean.TRUE.equals(values[--top]) ? 2 : Chunk.readShort(code, ip) + 2;
+                            break;
+                        // A comparison and the jump on its result, for the conditions of ifs and loops
+                        case OpCode.JUMP_UNLESS_GREATER:
+                            top -= 2;
+                            ip = jumpUnless(greater(values[top], values[top + 1]), code, ip);
+                            break;
+                        case OpCode.JUMP_UNLESS_GREATER_EQUAL:
+                            top -= 2;
+                            ip = jumpUnless(greaterEqual(values[top], values[top + 1]), code, ip);
+                            break;
+                        case OpCode.JUMP_UNLESS_LESS:
+                            top -= 2;
+                            ip = jumpUnless(less(values[top], values[top + 1]), code, ip);
+                            break;
+                        case OpCode.JUMP_UNLESS_LESS_EQUAL:
+                            top -= 2;
+                            ip = jumpUnless(lessEqual(values[top], values[top + 1]), code, ip);
+                            break;
+                        case OpCode.JUMP_IF_TRUTHY_OR_POP:
+                        case OpCode.JUMP_IF_FALSY_OR_POP:
+                            // Jump keeping the operand as the result of the expression, or discard it and go on
+                            boolean jump = Operations.isTruthy(values[top - 1]) == (op == OpCode.JUMP_IF_TRUTHY_OR_POP);
+                            top -= jump ? 0 : 1;
+                            ip += jump ? Chunk.readShort(code, ip) + 2 : 2;
+                            break;
+                        case OpCode.LOOP:
+                            ip -= Chunk.readShort(code, ip) - 2;
+                            break;
+                        case OpCode.CHECK_CALLABLE:
+                            checkCallable(values[top - 1]);
+                            break;
+                        case OpCode.CALL:
+                            argCount = code[ip++] & BYTE_MASK;
+                            frameIps[frameCount - 1] = ip;
+                            sp = top;
+                            boolean pushed = callValue(values[top - 1 - argCount], argCount);
+                            values = stack;
+                            top = sp;
+                            if (pushed) {
+                                continue frames;
+                            }
+                            break;
+                        case OpCode.RETURN:
+                            value = values[--top];
+                            closeUpvalues(base);
+                            top = base;
+                            frameCount--;
+                            if (frameCount == entryFrames) {
+                                return value;
+                            }
+                            values[top++] = value;
+                            continue frames;
+                        default:
+                            sp = top;
+                            ip = executeRare(op, closure, code, constants, ip, base);
+                            values = stack;
+                            top = sp;
+                            break;
+                    }
+                }
+            }
+        } finally {
+            sp = top;
+        }
+    }
+
+    /**
+     * Execute an instruction that isn't run often enough to be worth a case of its own in {@link #execute(int)}, which
+     * stays small enough to be compiled well. The stack pointer is in sp.
+     *
+     * @return the position of the next instruction
+     */
+    private int executeRare(byte op, VmClosure closure, byte[] code, Object[] constants, int ip, int base) {
+        switch (op) {
+            case OpCode.DEFINE_GLOBAL:
+                globals.defineVariable((Token) constants[Chunk.readShort(code, ip)], stack[--sp]);
+                stack[sp] = null;
+                return ip + 2;
+            case OpCode.SET_UPVALUE:
+                setUpvalue(closure.upvalues[Chunk.readShort(code, ip)], stack[--sp]);
+                return ip + 2;
+            case OpCode.BINARY:
+                Object right = stack[--sp];
+                stack[sp - 1] = binary((Token) constants[Chunk.readShort(code, ip)], stack[sp - 1], right);
+                return ip + 2;
+            case OpCode.NOT:
+                stack[sp - 1] = !Operations.isTruthy(stack[sp - 1]);
+                return ip;
+            case OpCode.JUMP_IF_FALSY:
+                return Operations.isTruthy(stack[--sp]) ? ip + 2 : ip + Chunk.readShort(code, ip) + 2;
+            case OpCode.NEGATE:
+                stack[sp - 1] = negate(stack[sp - 1]);
+                return ip;
+            case OpCode.ERROR:
+                throw new RuntimeError((String) constants[Chunk.readShort(code, ip)]);
+            case OpCode.PRINT:
+                System.out.println(stack[--sp]);
+                stack[sp] = null;
+                return ip;
+            case OpCode.CLOSURE:
+                return makeClosure(closure, code, constants, ip, base);
+            case OpCode.CLOSE_UPVALUE:
+                closeUpvalues(sp - 1);
+                stack[--sp] = null;
+                return ip;
+            default:
+                throw new IllegalStateException("Unknown opcode " + op);
+        }
+    }
+
+    private static int jumpUnless(Object condition, byte[] code, int ip) {
+        return Boolean.TRUE.equals(condition) ? ip + 2 : ip + Chunk.readShort(code, ip) + 2;
+    }
+
+    private static Object binary(Token operator, Object left, Object right) {
+        return Operations.binary(operator.type, operator.lexeme, left, right);
+    }
+
+    // The operators with an integer fast path. They are small enough to be inlined into execute, so an integer
+    // operation costs a type check and no call
+    private static Object equal(Object left, Object right) {
+        if (left instanceof Integer && right instanceof Integer) {
+            return ((Integer) left).intValue() == (Integer) right;
+        }
+        return slowBinary(OpCode.EQUAL, left, right);
+    }
+
+    private static Object notEqual(Object left, Object right) {
+        if (left instanceof Integer && right instanceof Integer) {
+            return ((Integer) left).intValue() != (Integer) right;
+        }
+        return slowBinary(OpCode.NOT_EQUAL, left, right);
+    }
+
+    private static Object greater(Object left, Object right) {
+        if (left instanceof Integer && right instanceof Integer) {
+            return (Integer) left > (Integer) right;
+        }
+        return slowBinary(OpCode.GREATER, left, right);
+    }
+
+    private static Object greaterEqual(Object left, Object right) {
+        if (left instanceof Integer && right instanceof Integer) {
+            return (Integer) left >= (Integer) right;
+        }
+        return slowBinary(OpCode.GREATER_EQUAL, left, right);
+    }
+
+    private static Object less(Object left, Object right) {
+        if (left instanceof Integer && right instanceof Integer) {
+            return (Integer) left < (Integer) right;
+        }
+        return slowBinary(OpCode.LESS, left, right);
+    }
+
+    private static Object lessEqual(Object left, Object right) {
+        if (left instanceof Integer && right instanceof Integer) {
+            return (Integer) left <= (Integer) right;
+        }
+        return slowBinary(OpCode.LESS_EQUAL, left, right);
+    }
+
+    private static Object add(Object left, Object right) {
+        if (left instanceof Integer && right instanceof Integer) {
+            return (Integer) left + (Integer) right;
+        }
+        return slowBinary(OpCode.ADD, left, right);
+    }
+
+    private static Object subtract(Object left, Object right) {
+        if (left instanceof Integer && right instanceof Integer) {
+            return (Integer) left - (Integer) right;
+        }
+        return slowBinary(OpCode.SUBTRACT, left, right);
+    }
+
+    private static Object multiply(Object left, Object right) {
+        if (left instanceof Integer && right instanceof Integer) {
+            return (Integer) left * (Integer) right;
+        }
+        return slowBinary(OpCode.MULTIPLY, left, right);
+    }
+
+    private static Object slowBinary(byte op, Object left, Object right) {
+        switch (op) {
+            case OpCode.EQUAL:
+                return Operations.binary(TokenType.EQUAL_EQUAL, "==", left, right);
+            case OpCode.NOT_EQUAL:
+                return Operations.binary(TokenType.BANG_EQUAL, "!=", left, right);
+            case OpCode.GREATER:
+                return Operations.binary(TokenType.GREATER, ">", left, right);
+            case OpCode.GREATER_EQUAL:
+                return Operations.binary(TokenType.GREATER_EQUAL, ">=", left, right);
+            case OpCode.LESS:
+                return Operations.binary(TokenType.LESS, "<", left, right);
+            case OpCode.LESS_EQUAL:
+                return Operations.binary(TokenType.LESS_EQUAL, "<=", left, right);
+            case OpCode.ADD:
+                return Operations.binary(TokenType.PLUS, "+", left, right);
+            case OpCode.SUBTRACT:
+                return Operations.binary(TokenType.MINUS, "-", left, right);
+            case OpCode.MULTIPLY:
+                return Operations.binary(TokenType.STAR, "*", left, right);
+            case OpCode.DIVIDE:
+                return Operations.binary(TokenType.SLASH, "/", left, right);
+            default:
+                throw new IllegalStateException("Unknown opcode " + op);
+        }
+    }
+
+    private static Object negate(Object value) {
+        if (value instanceof Integer) {
+            return -(Integer) value;
+        }
+        return Operations.negate(value);
+    }
+
+    /**
+     * Call the value sitting below the arguments on the stack. The compiler checked it is callable with
+     * CHECK_CALLABLE before the arguments were evaluated.
+     *
+     * @return true if a new frame was pushed, false if the call already completed
+     */
+    private boolean callValue(Object callee, int argCount) {
+        if (callee instanceof VmClosure) {
+            callClosure((VmClosure) callee, argCount);
+            return true;
+        }
+        LoxCallable function = (LoxCallable) callee;
+        checkArity(function.arity(), argCount);
+        List<Object> arguments = Arrays.asList(Arrays.copyOfRange(stack, sp - argCount, sp));
+        Object result = function.call(interpreter, arguments);
+        sp -= argCount + 1;
+        push(result);
+        return false;
+    }
+
+    private void callClosure(VmClosure closure, int argCount) {
+        checkArity(closure.function.arity, argCount);
+        if (frameCount == frameClosures.length) {
+            if (frameCount == FRAMES_MAX) {
+                throw new RuntimeError("Stack overflow");
+            }
+            frameClosures = Arrays.copyOf(frameClosures, frameCount * 2);
+            frameIps = Arrays.copyOf(frameIps, frameCount * 2);
+            frameBases = Arrays.copyOf(frameBases, frameCount * 2);
+        }
+        // No instruction pushes more than one value and the stack is as high every time an instruction runs, so a
+        // frame never holds more values than its code has bytes
+        int needed = sp + closure.function.chunk.size();
+        if (needed > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(stack.length * 2, needed));
+        }
+        frameClosures[frameCount] = closure;
+        frameIps[frameCount] = 0;
+        frameBases[frameCount] = sp - argCount - 1;
+        frameCount++;
+    }
+
+    private static void checkCallable(Object callee) {
+        if (!(callee instanceof LoxCallable)) {
+            throw new RuntimeError(callee.toString() + "is not callable");
+        }
+    }
+
+    private static void checkArity(int arity, int argCount) {
+        if (argCount != arity) {
+            throw new RuntimeError(String.format("Expected %d arguments but got %d.", arity, argCount));
+        }
+    }
+
+    /**
+     * Execute the CLOSURE instruction starting at ip.
+     *
+     * @return the position of the next instruction
+     */
+    private int makeClosure(VmClosure enclosing, byte[] code, Object[] constants, int ip, int base) {
+        int next = ip;
+        VmClosure closure = new VmClosure((VmFunction) constants[Chunk.readShort(code, next)], this);
+        next += 2;
+        for (int i = 0; i < closure.upvalues.length; i++) {
+            boolean isLocal = code[next++] == 1;
+            int index = Chunk.readShort(code, next);
+            next += 2;
+            closure.upvalues[i] = isLocal ? captureUpvalue(base + index) : enclosing.upvalues[index];
+        }
+        push(closure);
+        return next;
+    }
+
+    private Upvalue captureUpvalue(int slot) {
+        Upvalue previous = null;
+        Upvalue upvalue = openUpvalues;
+        while (upvalue != null && upvalue.slot > slot) {
+            previous = upvalue;
+            upvalue = upvalue.next;
+        }
+        if (upvalue != null && upvalue.slot == slot) {
+            return upvalue;
+        }
+        Upvalue created = new Upvalue(slot, upvalue);
+        if (previous == null) {
+            openUpvalues = created;
+        } else {
+            previous.next = created;
+        }
+        return created;
+    }
+
+    private void closeUpvalues(int lastSlot) {
+        while (openUpvalues != null && openUpvalues.slot >= lastSlot) {
+            Upvalue upvalue = openUpvalues;
+            upvalue.closed = stack[upvalue.slot];
+            upvalue.slot = -1;
+            openUpvalues = upvalue.next;
+            upvalue.next = null;
+        }
+    }
+
+    private Object getUpvalue(Upvalue upvalue) {
+        return upvalue.slot < 0 ? upvalue.closed : stack[upvalue.slot];
+    }
+
+    private void setUpvalue(Upvalue upvalue, Object value) {
+        if (upvalue.slot < 0) {
+            upvalue.closed = value;
+        } else {
+            stack[upvalue.slot] = value;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.jlox.vm;
+
+import com.jlox.interpreter.Interpreter;
+import com.jlox.interpreter.LoxCallable;
+
+import java.util.List;
+
+/**
+ * A function value created at runtime: the compiled function and the variables it captured.
+ */
+final class VmClosure implements LoxCallable {
+    final VmFunction function;
+    final Upvalue[] upvalues;
+    private final VirtualMachine vm;
+
+    VmClosure(VmFunction function, VirtualMachine vm) {
+        this.function = function;
+        this.upvalues = new Upvalue[function.upvalueCount];
+        this.vm = vm;
+    }
+
+    @Override
+    public int arity() {
+        return function.arity;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return vm.invoke(this, arguments);
+    }
+
+    @Override
+    public String toString() {
+        return function.toString();
+    }
+}
@@ -0,0 +1,21 @@
+package com.jlox.vm;
+
+/**
+ * A compiled function. It becomes callable once the VM wraps it in a {@link VmClosure}.
+ */
+final class VmFunction {
+    final String name;
+    final int arity;
+    final Chunk chunk = new Chunk();
+    int upvalueCount;
+
+    VmFunction(String name, int arity) {
+        this.name = name;
+        this.arity = arity;
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + name + ">";
+    }
+}
@@ -0,0 +1,98 @@
+package com.jlox.arena;
+
+import com.jlox.expression.ExpressionTag;
+import com.jlox.interpreter.ArenaResolver;
+import com.jlox.interpreter.Engine;
+import com.jlox.interpreter.LoxRunner;
+import com.jlox.interpreter.ResolveLoxError;
+import com.jlox.scanner.TokenType;
+import com.jlox.statement.StatementTag;
+import org.junit.jupiter.api.Test;
+
+import static com.jlox.interpreter.LoxRunner.parse;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestAstArena {
+
+    private void assertOutput(String expected, String source) {
+        LoxRunner.assertOutput(expected, source, Engine.ARENA);
+    }
+
+    @Test
+    void testLayout() {
+        AstArena arena = ArenaConverter.convert(parse("var a = 1 + x;\nfun f(p, q) { print p; }\nf(a, 2);"));
+        int roots = arena.roots();
+        assertEquals(3, arena.count(roots));
+
+        int declare = arena.item(roots, 0);
+        assertEquals(StatementTag.VAR_DECLARE, arena.kind(declare));
+        assertEquals("a", arena.tokenLexeme(arena.token(declare)));
+        int sum = arena.first(declare);
+        assertTrue(arena.isExpression(sum));
+        assertEquals(AstArena.EXPRESSION + ExpressionTag.BINARY, arena.kind(sum));
+        assertEquals(TokenType.PLUS, arena.tokenType(arena.token(sum)));
+        assertEquals(1, arena.literal(arena.first(sum)));
+        assertEquals("x", arena.tokenSymbol(arena.token(arena.second(sum))).name());
+        // Parents come before their children
+        assertTrue(declare < sum && sum < arena.first(sum) && arena.first(sum) < arena.second(sum));
+
+        int function = arena.item(roots, 1);
+        assertEquals(StatementTag.FUN_DECLARE, arena.kind(function));
+        int params = arena.second(function);
+        assertEquals(2, arena.count(params));
+        assertEquals("q", arena.tokenLexeme(arena.item(params, 1)));
+        assertEquals(StatementTag.BLOCK, arena.kind(arena.first(function)));
+        assertEquals(AstArena.NONE, arena.third(function));
+
+        int call = arena.first(arena.item(roots, 2));
+        assertEquals(AstArena.EXPRESSION + ExpressionTag.CALL, arena.kind(call));
+        assertEquals(2, arena.count(arena.second(call)));
+        // Tokens keep the offset of their last char
+        assertEquals("var a = 1 + x;\nfun f".length() - 1, arena.tokenOffset(arena.token(function)));
+    }
+
+    @Test
+    void testResolver() {
+        AstArena arena = ArenaConverter.convert(parse("var g = 1;\n{ var a = g; { var b = a; a = b; } }"));
+        new ArenaResolver(arena).resolve();
+        int roots = arena.roots();
+        assertEquals(-1, arena.slot(arena.item(roots, 0)));
+
+        int outer = arena.item(roots, 1);
+        assertEquals(1, arena.slot(outer));
+        int declareA = arena.item(arena.first(outer), 0);
+        assertEquals(0, arena.slot(declareA));
+        // g is a global and is looked up by name
+        assertEquals(-1, arena.depth(arena.first(declareA)));
+
+        int inner = arena.item(arena.first(outer), 1);
+        int declareB = arena.item(arena.first(inner), 0);
+        assertEquals(1, arena.depth(arena.first(declareB)));
+        assertEquals(0, arena.slot(arena.first(declareB)));
+        int assign = arena.item(arena.first(inner), 1);
+        assertEquals(1, arena.depth(assign));
+        assertEquals(0, arena.depth(arena.first(assign)));
+
+        AstArena duplicate = ArenaConverter.convert(parse("{ var a = 1; var a = 2; }"));
+        assertThrows(ResolveLoxError.class, () -> new ArenaResolver(duplicate).resolve());
+    }
+
+    @Test
+    void testPrograms() {
+        LoxRunner.assertExpressions(Engine.ARENA);
+        assertOutput("55\n3\n<fn fib>\n",
+                "fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }\n"
+                        + "print fib(10);\n"
+                        + "var i = 0;\n"
+                        + "while (true) { i = i + 1; if (i == 3) break; }\n"
+                        + "print i;\n"
+                        + "print fib;\n");
+        assertOutput("1\n2\nglobal\n",
+                "var a = \"global\";\n"
+                        + "fun counter() { var n = 0; fun next() { n = n + 1; return n; } return next; }\n"
+                        + "var c = counter();\n"
+                        + "print c();\n"
+                        + "print c();\n"
+                        + "{ fun show() { print a; } var a = \"local\"; show(); }\n");
+    }
+}
@@ -0,0 +1,78 @@
+package com.jlox.build;
+
+import com.jlox.error.CollectorHandler;
+import com.jlox.error.LoxError;
+import com.jlox.statement.PrintStatement;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestBuildPipeline {
+
+    @TempDir
+    Path dir;
+
+    private Path write(String name, String text) throws IOException {
+        Path file = dir.resolve(name);
+        Files.writeString(file, text);
+        return file;
+    }
+
+    @Test
+    void testUnitsInPathOrder() throws Exception {
+        List<Path> paths = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            paths.add(write(String.format("file%02d.lox", i), ("var a = " + i + ";\nprint a;\n").repeat(i + 1)));
+        }
+        List<Path> shuffled = new ArrayList<>(paths);
+        Collections.shuffle(shuffled);
+        shuffled.add(paths.get(3));
+
+        List<CompilationUnit> units = new BuildPipeline(4).build(shuffled);
+        assertEquals(40, units.size());
+        for (int i = 0; i < units.size(); i++) {
+            CompilationUnit unit = units.get(i);
+            assertEquals(paths.get(i), unit.getPath());
+            assertFalse(unit.hasErrors());
+            assertEquals(2 * (i + 1), unit.getStatements().size());
+            assertInstanceOf(PrintStatement.class, unit.getStatements().get(1));
+        }
+    }
+
+    @Test
+    void testErrorsStayWithTheirFile() throws Exception {
+        Path good = write("a.lox", "print 1;");
+        Path bad = write("b.lox", "print 1 +;\nvar = 2;");
+        Path missing = dir.resolve("c.lox");
+
+        CollectorHandler reporter = new CollectorHandler();
+        List<CompilationUnit> units = new BuildPipeline(2).build(List.of(missing, bad, good), reporter);
+        assertFalse(units.get(0).hasErrors());
+        assertTrue(units.get(1).hasErrors());
+        assertTrue(units.get(1).getStatements().isEmpty());
+        assertEquals(1, units.get(2).getErrors().size());
+        assertEquals(BuildPipeline.ERROR_READ, units.get(2).getErrors().get(0).getCode());
+        assertTrue(units.get(2).getStatements().isEmpty());
+
+        List<LoxError> expected = new ArrayList<>(units.get(1).getErrors());
+        expected.addAll(units.get(2).getErrors());
+        assertEquals(expected, reporter.getErrors());
+    }
+
+    @Test
+    void testSameAsCompilingOneByOne() throws Exception {
+        Path file = write("a.lox", "fun f(x) { return x * 2; }\nprint f(3) ? 1 : 2;");
+        CompilationUnit unit = new BuildPipeline(1).build(List.of(file)).get(0);
+        assertEquals(BuildPipeline.compile(file).getStatements().size(), unit.getStatements().size());
+        assertTrue(new BuildPipeline().build(List.of()).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> new BuildPipeline(0));
+    }
+}
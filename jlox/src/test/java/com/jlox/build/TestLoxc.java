@@ -0,0 +1,140 @@
+package com.jlox.build;
+
+import com.jlox.error.CollectorHandler;
+import com.jlox.expression.ExpressionTag;
+import com.jlox.expression.Literal;
+import com.jlox.expression.Variable;
+import com.jlox.parser.ParseStatement;
+import com.jlox.scanner.LoxScanner;
+import com.jlox.scanner.source.StringSource;
+import com.jlox.statement.FunDeclare;
+import com.jlox.statement.PrintStatement;
+import com.jlox.statement.Statement;
+import com.jlox.statement.StatementTag;
+import com.jlox.statement.VarDeclare;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLoxc {
+
+    private List<Statement> parse(String text) {
+        CollectorHandler handler = new CollectorHandler();
+        List<Statement> statements = new ParseStatement(handler)
+                .parseAll(new LoxScanner(new StringSource(text), handler).scanToBuffer());
+        assertFalse(handler.hasError());
+        return statements;
+    }
+
+    private byte[] encode(List<Statement> statements) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        LoxcWriter writer = new LoxcWriter(bytes);
+        writer.writeAll(statements);
+        writer.finish();
+        return bytes.toByteArray();
+    }
+
+    private List<Statement> decode(byte[] bytes) throws IOException {
+        return new LoxcReader(new ByteArrayInputStream(bytes)).readAll();
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        String text = "var big = 2147483647; var small = -5; var pi = 3.25; var s = \"naïve\";\n"
+                + "fun f(a, b) { if (a > b or !true) return a; else { while (b < a) b = b + 1; } return nil; }\n"
+                + "print f(1, 2) == 2 ? \"yes\" : (f(3, 4));\n"
+                + "for (;;) { break; }\n";
+        List<Statement> statements = parse(text);
+        byte[] bytes = encode(statements);
+        List<Statement> decoded = decode(bytes);
+        assertEquals(statements.size(), decoded.size());
+        assertArrayEquals(bytes, encode(decoded));
+
+        assertEquals(Integer.MAX_VALUE, ((Literal) ((VarDeclare) decoded.get(0)).init).value);
+        assertEquals("naïve", ((Literal) ((VarDeclare) decoded.get(3)).init).value);
+        FunDeclare f = (FunDeclare) decoded.get(4);
+        assertEquals(text.indexOf("f("), f.name.offset);
+        assertEquals(text.indexOf("b)"), f.params.get(1).offset);
+    }
+
+    @Test
+    void testStringsAreShared() throws IOException {
+        String text = "var counter = 0;\n" + "counter = counter + 1;\n".repeat(100) + "print counter;";
+        byte[] bytes = encode(parse(text));
+        // After the first time, a statement is a few bytes of tags, string indices and offset differences
+        assertTrue(bytes.length < 100 * 16, "Encoded to " + bytes.length + " bytes");
+
+        List<Statement> decoded = decode(bytes);
+        Variable printed = (Variable) ((PrintStatement) decoded.get(decoded.size() - 1)).expr;
+        assertSame(((VarDeclare) decoded.get(0)).name.symbol, printed.name.symbol);
+        assertSame(((VarDeclare) decoded.get(0)).name.lexeme, printed.name.lexeme);
+    }
+
+    @Test
+    void testStreaming() throws IOException {
+        // A string longer than the buffers of the writer and reader
+        String long1 = "x".repeat(20000);
+        List<Statement> statements = parse("print \"" + long1 + "\";\nprint 1;\nprint \"" + long1 + "\";");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        LoxcWriter writer = new LoxcWriter(bytes);
+        for (Statement statement : statements) {
+            writer.write(statement);
+        }
+        writer.finish();
+
+        LoxcReader reader = new LoxcReader(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(long1, ((Literal) ((PrintStatement) reader.read()).expr).value);
+        assertEquals(1, ((Literal) ((PrintStatement) reader.read()).expr).value);
+        assertEquals(long1, ((Literal) ((PrintStatement) reader.read()).expr).value);
+        assertNull(reader.read());
+        assertNull(reader.read());
+    }
+
+    @Test
+    void testBadStreams() throws IOException {
+        byte[] bytes = encode(parse("var a = 1; print a + 2;"));
+        assertThrows(IOException.class, () -> decode("LOXB".getBytes()));
+
+        byte[] version = bytes.clone();
+        version[LoxcWriter.MAGIC.length] = LoxcWriter.VERSION + 1;
+        assertThrows(IOException.class, () -> decode(version));
+
+        for (int length = 0; length < bytes.length; length++) {
+            byte[] truncated = Arrays.copyOf(bytes, length);
+            assertThrows(IOException.class, () -> decode(truncated));
+        }
+
+        byte[] badTag = bytes.clone();
+        badTag[LoxcWriter.MAGIC.length + 1] = 100;
+        assertThrows(IOException.class, () -> decode(badTag));
+    }
+
+    @Test
+    void testTooDeep() throws IOException {
+        // The print statement and the literal are two levels of their own
+        int fits = LoxcWriter.MAX_DEPTH - 2;
+        String deepest = "print " + "(".repeat(fits) + "1" + ")".repeat(fits) + ";";
+        assertArrayEquals(encode(parse(deepest)), encode(decode(encode(parse(deepest)))));
+        String tooDeep = "print " + "(".repeat(fits + 1) + "1" + ")".repeat(fits + 1) + ";";
+        assertThrows(IOException.class, () -> encode(parse(tooDeep)));
+
+        // A stream that nests deeper than a writer would is refused by the reader too
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(LoxcWriter.MAGIC);
+        bytes.write(LoxcWriter.VERSION);
+        bytes.write(StatementTag.PRINT_STATEMENT);
+        for (int i = 0; i <= fits; i++) {
+            bytes.write(ExpressionTag.GROUPING);
+        }
+        bytes.write(ExpressionTag.LITERAL);
+        bytes.write(LoxcWriter.NIL);
+        bytes.write(LoxcWriter.NONE);
+        assertThrows(IOException.class, () -> decode(bytes.toByteArray()));
+    }
+}
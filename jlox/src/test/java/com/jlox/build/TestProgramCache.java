@@ -0,0 +1,173 @@
+package com.jlox.build;
+
+import com.jlox.error.CollectorHandler;
+import com.jlox.interpreter.Interpreter;
+import com.jlox.parser.BodyParsing;
+import com.jlox.parser.ParseStatement;
+import com.jlox.scanner.LoxScanner;
+import com.jlox.scanner.source.StringSource;
+import com.jlox.statement.Statement;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestProgramCache {
+
+    private static final String PROGRAM = "var s = \"café\";\n"
+            + "fun fib(n) { if (n < 2) return n; else return fib(n - 1) + fib(n - 2); }\n"
+            + "var i = 0;\n"
+            + "while (true) { i = i + 1; if (i > 3 and !false) break; }\n"
+            + "for (var j = 0; j < 2; j = j + 1) print j;\n"
+            + "print -i > 0 ? nil : 2.5;\n"
+            + "{ var t = (1 + 2) * 3; print t; }\n"
+            + "print fib(10);\n"
+            + "print s;\n";
+
+    @TempDir
+    Path dir;
+
+    private List<Statement> parse(String text) {
+        CollectorHandler handler = new CollectorHandler();
+        ParseStatement parser = new ParseStatement(handler);
+        // Bodies that haven't been parsed are parsed to be stored
+        parser.setBodyParsing(BodyParsing.LAZY);
+        List<Statement> statements = parser.parseAll(new LoxScanner(new StringSource(text), handler).scanToBuffer());
+        assertFalse(handler.hasError());
+        return statements;
+    }
+
+    private byte[] encode(List<Statement> statements) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        LoxcWriter writer = new LoxcWriter(bytes);
+        writer.writeAll(statements);
+        writer.finish();
+        return bytes.toByteArray();
+    }
+
+    private String run(List<Statement> statements) {
+        PrintStream out = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured));
+        try {
+            new Interpreter().run(statements);
+        } finally {
+            System.setOut(out);
+        }
+        return captured.toString().replace(System.lineSeparator(), "\n");
+    }
+
+    private Path onlyFile() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> all = files.collect(Collectors.toList());
+            assertEquals(1, all.size());
+            return all.get(0);
+        }
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        ProgramCache cache = new ProgramCache(dir.resolve("cache"));
+        assertNull(cache.load(PROGRAM));
+        List<Statement> parsed = parse(PROGRAM);
+        cache.store(PROGRAM, parsed);
+
+        List<Statement> loaded = cache.load(PROGRAM);
+        assertNotNull(loaded);
+        assertArrayEquals(encode(parsed), encode(loaded));
+        assertEquals(run(parse(PROGRAM)), run(loaded));
+        assertNull(cache.load(PROGRAM + " "));
+    }
+
+    @Test
+    void testDamagedFilesMiss() throws IOException {
+        ProgramCache cache = new ProgramCache(dir);
+        cache.store(PROGRAM, parse(PROGRAM));
+        Path file = onlyFile();
+        byte[] bytes = Files.readAllBytes(file);
+
+        byte[] flipped = bytes.clone();
+        flipped[bytes.length / 2] ^= 1;
+        Files.write(file, flipped);
+        assertNull(cache.load(PROGRAM));
+
+        byte[] truncated = new byte[bytes.length - 3];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        Files.write(file, truncated);
+        assertNull(cache.load(PROGRAM));
+
+        // Storing again repairs the file
+        cache.store(PROGRAM, parse(PROGRAM));
+        assertNotNull(cache.load(PROGRAM));
+        assertEquals(file, onlyFile());
+    }
+
+    @Test
+    void testOtherBuildsMiss() {
+        ProgramCache cache = new ProgramCache(dir);
+        cache.store(PROGRAM, parse(PROGRAM));
+        assertNotNull(new ProgramCache(dir).load(PROGRAM));
+        assertNull(new ProgramCache(dir, new byte[] {1}).load(PROGRAM));
+
+        ProgramCache other = new ProgramCache(dir, new byte[] {1});
+        other.store(PROGRAM, parse(PROGRAM));
+        assertNotNull(other.load(PROGRAM));
+        assertNotNull(cache.load(PROGRAM));
+    }
+
+    @Test
+    void testBuildCoversEveryClass() throws IOException {
+        Path classes = dir.resolve("classes");
+        Path parser = classes.resolve("com/jlox/parser/ParseStatement.class");
+        Files.createDirectories(parser.getParent());
+        Files.write(parser, new byte[] {1, 2, 3});
+        Files.write(classes.resolve("Main.class"), new byte[] {4});
+        byte[] before = ProgramCache.hashBuild(classes);
+        assertArrayEquals(before, ProgramCache.hashBuild(classes));
+
+        // A change to the front end is a new build, not only a change to the classes that write .loxc
+        Files.write(parser, new byte[] {1, 2, 4});
+        assertFalse(Arrays.equals(before, ProgramCache.hashBuild(classes)));
+    }
+
+    @Test
+    void testPipelineUsesCache() throws Exception {
+        Path source = dir.resolve("main.lox");
+        Files.writeString(source, PROGRAM);
+        Path bad = dir.resolve("bad.lox");
+        Files.writeString(bad, "print 1 +;");
+        ProgramCache cache = new ProgramCache(dir.resolve("cache"));
+
+        List<CompilationUnit> cold = new BuildPipeline(2, cache).build(List.of(source, bad));
+        assertNotNull(cache.load(PROGRAM));
+        // Files with errors are never stored, so their errors are reported every time
+        assertNull(cache.load("print 1 +;"));
+
+        List<CompilationUnit> warm = new BuildPipeline(2, cache).build(List.of(source, bad));
+        assertArrayEquals(encode(cold.get(1).getStatements()), encode(warm.get(1).getStatements()));
+        assertTrue(warm.get(0).hasErrors());
+    }
+
+    @Test
+    void testTooDeepIsNotStored() throws Exception {
+        String text = "print " + "(".repeat(50000) + "1" + ")".repeat(50000) + ";";
+        Path source = dir.resolve("deep.lox");
+        Files.writeString(source, text);
+        ProgramCache cache = new ProgramCache(dir.resolve("cache"));
+
+        List<CompilationUnit> units = new BuildPipeline(1, cache).build(List.of(source));
+        assertFalse(units.get(0).hasErrors());
+        assertEquals(1, units.get(0).getStatements().size());
+        assertNull(cache.load(text));
+    }
+}
@@ -0,0 +1,81 @@
+package com.jlox.interpreter;
+
+import com.jlox.error.CollectorHandler;
+import com.jlox.parser.ParseStatement;
+import com.jlox.scanner.LoxScanner;
+import com.jlox.scanner.source.StringSource;
+import com.jlox.statement.Statement;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Parses and runs programs for the tests of the engines, capturing what they print.
+ */
+public final class LoxRunner {
+
+    private LoxRunner() {
+    }
+
+    public static List<Statement> parse(String source) {
+        CollectorHandler handler = new CollectorHandler();
+        LoxScanner scanner = new LoxScanner(new StringSource(source), handler);
+        List<Statement> stmts = new ParseStatement(handler).parseAll(scanner.scanTokens());
+        assertFalse(handler.hasError());
+        return stmts;
+    }
+
+    public static String run(String source, Engine engine) {
+        return run(parse(source), engine);
+    }
+
+    public static String run(List<Statement> stmts, Engine engine) {
+        Interpreter interpreter = new Interpreter();
+        interpreter.setEngine(engine);
+        return run(stmts, interpreter);
+    }
+
+    /**
+     * Run the statements and return what they printed, with Unix line endings.
+     */
+    public static String run(List<Statement> stmts, Interpreter interpreter) {
+        PrintStream out = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured));
+        try {
+            interpreter.run(stmts);
+        } finally {
+            System.setOut(out);
+        }
+        return captured.toString().replace(System.lineSeparator(), "\n");
+    }
+
+    /**
+     * Run the source on the tree-walker and on the engine and check that both print the expected output.
+     */
+    public static void assertOutput(String expected, String source, Engine engine) {
+        assertEquals(expected, run(source, Engine.TREE_WALKER), "tree-walker output");
+        assertEquals(expected, run(source, engine), engine + " output");
+    }
+
+    /**
+     * Check that the engine evaluates every kind of expression as the tree-walker does.
+     */
+    public static void assertExpressions(Engine engine) {
+        assertOutput("7\n2.5\nab1\ntrue\nfalse\n-3\n2\nyes\ntrue\n",
+                "print 1 + 2 * 3;\n"
+                        + "print 5 / 2d;\n"
+                        + "print \"a\" + \"b\" + 1;\n"
+                        + "print 1 < 2 and 2 <= 2;\n"
+                        + "print !(3 == 3) or 1 != 1;\n"
+                        + "print -3;\n"
+                        + "print (1, 2);\n"
+                        + "print 1 > 2 ? \"no\" : \"yes\";\n"
+                        + "print nil or true;\n",
+                engine);
+    }
+}
@@ -0,0 +1,68 @@
+package com.jlox.interpreter;
+
+import org.junit.jupiter.api.Test;
+
+public class TestClosureCompiler {
+
+    private void assertOutput(String expected, String source) {
+        LoxRunner.assertOutput(expected, source, Engine.CLOSURES);
+    }
+
+    @Test
+    void testExpressions() {
+        LoxRunner.assertExpressions(Engine.CLOSURES);
+    }
+
+    @Test
+    void testScopesAndClosures() {
+        assertOutput("inner\nouter\nglobal\n1\n2\n11\n",
+                "var a = \"global\";\n"
+                        + "{ var a = \"outer\"; { var a = \"inner\"; print a; } print a; }\n"
+                        + "print a;\n"
+                        + "fun makeCounter() { var i = 0; fun count() { i = i + 1; return i; } return count; }\n"
+                        + "var counter = makeCounter();\n"
+                        + "print counter();\n"
+                        + "print counter();\n"
+                        + "fun adder(x) { fun add(y) { return x + y; } return add; }\n"
+                        + "print adder(5)(6);\n");
+    }
+
+    @Test
+    void testFunctionsAndLoops() {
+        assertOutput("55\n<fn fib>\n0\n1\n2\n10\n",
+                "fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }\n"
+                        + "print fib(10);\n"
+                        + "print fib;\n"
+                        + "for (var i = 0; i < 3; i = i + 1) { print i; }\n"
+                        + "var sum = 0;\n"
+                        + "while (true) { sum = sum + 1; if (sum == 10) break; }\n"
+                        + "print sum;\n");
+    }
+
+    @Test
+    void testRuntimeErrors() {
+        assertOutput("1\nCannot divide by 0\n", "print 1; print 1 / 0; print 2;");
+        assertOutput("Expected 1 arguments but got 2.\n", "fun f(a) { return a; } f(1, 2);");
+        assertOutput("missing is an undefined variable\n", "print missing;");
+        assertOutput("Expected a boolean.\n", "print !1;");
+    }
+
+    @Test
+    void testBreakAndReturn() {
+        // The signals pass through blocks and ifs up to the innermost loop or the function call
+        assertOutput("0\n1\n2\n10\n",
+                "for (var i = 0; i < 5; i = i + 1) { { if (i == 3) { break; } } print i; }\n"
+                        + "fun first(n) {\n"
+                        + "  for (var i = 0; i < n; i = i + 1) {\n"
+                        + "    for (var j = 0; j < n; j = j + 1) { if (i * j == 9) return i + j; }\n"
+                        + "  }\n"
+                        + "  return nil;\n"
+                        + "}\n"
+                        + "print first(10);\n");
+        assertOutput("55\n", "fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); } print fib(10);");
+        // A function without a return statement returns nil
+        assertOutput("null\n", "fun f() { while (true) break; } print f();");
+        // A return outside of any function ends the program
+        assertOutput("1\n", "print 1; return 0; print 2;");
+    }
+}
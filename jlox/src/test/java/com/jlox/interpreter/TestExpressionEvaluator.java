@@ -5,6 +5,8 @@ import com.jlox.scanner.Token;
 import com.jlox.scanner.TokenType;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -132,6 +134,66 @@ public class TestExpressionEvaluator {
         assertEquals(true, e.evaluate(test1));
     }
 
+    @Test
+    void testDeepNesting() throws InterruptedException {
+        // Left associative chain: 1 + 1 + ... + 1
+        Expression chain = new Literal(1);
+        for (int i = 1; i < 100000; i++) {
+            chain = new Binary(chain, typeOnlyToken(TokenType.PLUS), new Literal(1));
+        }
+        assertEquals(100000, evaluateOnSmallStack(getEvaluator(), chain));
+
+        // Every kind of expression, nested far deeper than the evaluator recurses
+        Environment scope = new Environment();
+        scope.defineVariable(getIdentifier("id"), new LoxCallable() {
+            @Override
+            public int arity() {
+                return 1;
+            }
+
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                return arguments.get(0);
+            }
+        });
+        Expression nested = new Literal(0);
+        for (int i = 0; i < 20000; i++) {
+            Expression call = new Call(new Variable(getIdentifier("id")), List.of(new Grouping(nested)));
+            Expression negated = new Unary(typeOnlyToken(TokenType.MINUS), new Unary(typeOnlyToken(TokenType.MINUS),
+                    new Binary(call, typeOnlyToken(TokenType.PLUS), new Literal(1))));
+            Expression logical = new Logical(new Literal(false), typeOnlyToken(TokenType.OR), negated);
+            nested = new Ternary(new Literal(true), logical, new Literal("never"));
+        }
+        assertEquals(20000, evaluateOnSmallStack(getEvaluator(scope), nested));
+        assertEquals(20000, evaluateOnSmallStack(new SpecializingEvaluator(new Interpreter(scope)), nested));
+
+        Expression bad = new Binary(new Literal(true), typeOnlyToken(TokenType.SLASH), new Literal(10));
+        for (int i = 0; i < 20000; i++) {
+            bad = new Grouping(bad);
+        }
+        Expression failing = bad;
+        assertThrows(RuntimeError.class, () -> evaluateOnSmallStack(getEvaluator(), failing));
+    }
+
+    // Evaluate on a thread with a stack far smaller than deep expressions would need if evaluated recursively
+    private Object evaluateOnSmallStack(ExpressionEvaluator evaluator, Expression expr) throws InterruptedException {
+        Object[] result = new Object[1];
+        RuntimeError[] error = new RuntimeError[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                result[0] = evaluator.evaluate(expr);
+            } catch (RuntimeError e) {
+                error[0] = e;
+            }
+        }, "small stack", 256 * 1024);
+        thread.start();
+        thread.join();
+        if (error[0] != null) {
+            throw error[0];
+        }
+        return result[0];
+    }
+
     Object evaluate(Expression expr) {
         ExpressionEvaluator e = getEvaluator();
         return e.evaluate(expr);
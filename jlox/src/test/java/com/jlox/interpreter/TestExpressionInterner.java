@@ -0,0 +1,152 @@
+package com.jlox.interpreter;
+
+import com.jlox.expression.Binary;
+import com.jlox.expression.Expression;
+import com.jlox.expression.Grouping;
+import com.jlox.expression.Variable;
+import com.jlox.scanner.Symbol;
+import com.jlox.statement.Block;
+import com.jlox.statement.IfStatement;
+import com.jlox.statement.PrintStatement;
+import com.jlox.statement.Statement;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.jlox.interpreter.LoxRunner.parse;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestExpressionInterner {
+
+    private List<Statement> intern(ExpressionInterner interner, String source) {
+        List<Statement> stmts = parse(source);
+        new Resolver().resolve(stmts);
+        return interner.intern(stmts);
+    }
+
+    private Expression printed(Statement stmt) {
+        return ((PrintStatement) stmt).expr;
+    }
+
+    private String run(String source, Engine engine, boolean interning) {
+        Interpreter interpreter = new Interpreter();
+        interpreter.setEngine(engine);
+        interpreter.setInterning(interning);
+        return LoxRunner.run(parse(source), interpreter);
+    }
+
+    @Test
+    void testSharesIdenticalSubtrees() {
+        List<Statement> stmts = intern(new ExpressionInterner(),
+                "var x = 1;\nprint x + 1;\nprint x + 1;\nprint (x + 1) * 2;\nprint x + 1.0;\nprint \"1\";");
+        Binary sum = (Binary) printed(stmts.get(1));
+        assertSame(sum, printed(stmts.get(2)));
+        Binary product = (Binary) printed(stmts.get(3));
+        assertSame(sum, ((Grouping) product.left).expr);
+        // 1, 1.0 and "1" are different values
+        Binary doubleSum = (Binary) printed(stmts.get(4));
+        assertNotSame(sum, doubleSum);
+        assertSame(sum.left, doubleSum.left);
+        assertSame(sum.operator, doubleSum.operator);
+        assertNotSame(sum.right, printed(stmts.get(5)));
+        // Statements are rebuilt, never shared
+        assertNotSame(stmts.get(1), stmts.get(2));
+    }
+
+    @Test
+    void testKeepsVariablesApart() {
+        List<Statement> stmts = intern(new ExpressionInterner(),
+                "var a = 1;\n{ var b = 2; var a = 3; print a; }\nprint a;");
+        Variable local = (Variable) printed(((Block) stmts.get(1)).stmts.get(2));
+        Variable global = (Variable) printed(stmts.get(2));
+        assertNotSame(local, global);
+        assertEquals(0, local.depth);
+        assertEquals(1, local.slot);
+        assertEquals(-1, global.depth);
+        // Shared tokens don't point into the source
+        assertSame(local.name, global.name);
+        assertEquals(-1, global.name.offset);
+    }
+
+    @Test
+    void testOffsets() {
+        ExpressionInterner interner = new ExpressionInterner();
+        String source = "var a = 1;\nprint a + a;\nif (a < 2) print -a;";
+        List<Statement> stmts = intern(interner, source);
+        int second = source.indexOf("print") + "print ".length();
+        assertEquals(second, interner.offsetOf(stmts.get(1), 0));
+        assertEquals(second + 2, interner.offsetOf(stmts.get(1), 1));
+        assertEquals(second + 4, interner.offsetOf(stmts.get(1), 2));
+        assertEquals(-1, interner.offsetOf(stmts.get(1), 3));
+        assertEquals(-1, interner.offsetOf(stmts.get(0), 0));
+
+        int condition = source.indexOf("a <");
+        assertEquals(condition, interner.offsetOf(stmts.get(2), 0));
+        assertEquals(condition + 2, interner.offsetOf(stmts.get(2), 1));
+        Statement branch = ((IfStatement) stmts.get(2)).thenBranch;
+        int negate = source.indexOf("-a");
+        assertEquals(negate, interner.offsetOf(branch, 0));
+        assertEquals(negate + 1, interner.offsetOf(branch, 1));
+        // Statements that weren't interned here aren't in the table
+        assertEquals(-1, interner.offsetOf(parse(source).get(1), 0));
+    }
+
+    @Test
+    void testInterpreterKeepsOffsets() {
+        String source = "fun f(x) { return x * 2; }\nprint f(1);\n";
+        Interpreter interpreter = new Interpreter();
+        interpreter.setInterning(true);
+        LoxRunner.run(parse(source), interpreter);
+        LoxFunction f = (LoxFunction) interpreter.getGlobals().getValue(Symbol.of("f"));
+        Statement returned = interpreter.bodyOf(f.getDeclaration()).stmts.get(0);
+        assertEquals(source.indexOf("x *"), interpreter.offsetOf(returned, 0));
+        assertEquals(source.indexOf("* 2"), interpreter.offsetOf(returned, 1));
+        assertEquals(-1, interpreter.offsetOf(returned, 2));
+        assertEquals(-1, new Interpreter().offsetOf(returned, 0));
+    }
+
+    @Test
+    void testDeepExpressions() throws InterruptedException {
+        int depth = 20000;
+        String chain = "print 1" + " + 1".repeat(depth - 1) + ";";
+        String nested = "print " + "(".repeat(depth) + "1" + ")".repeat(depth) + ";";
+        for (Engine engine : new Engine[]{Engine.TREE_WALKER, Engine.SPECIALIZING, Engine.JIT}) {
+            assertEquals(depth + "\n", runOnSmallStack(chain, engine));
+            assertEquals("1\n", runOnSmallStack(nested, engine));
+        }
+    }
+
+    // Intern and run on a thread with a stack far smaller than deep expressions would need if interned recursively
+    private String runOnSmallStack(String source, Engine engine) throws InterruptedException {
+        List<Statement> stmts = parse(source);
+        String[] output = new String[1];
+        Thread thread = new Thread(null, () -> {
+            Interpreter interpreter = new Interpreter();
+            interpreter.setEngine(engine);
+            interpreter.setInterning(true);
+            output[0] = LoxRunner.run(stmts, interpreter);
+        }, "small stack", 512 * 1024);
+        thread.start();
+        thread.join();
+        return output[0];
+    }
+
+    @Test
+    void testRunsTheSame() {
+        String source = "fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }\n"
+                + "var total = 0;\n"
+                + "var i = 0;\n"
+                + "while (i < 10) { total = total + fib(i); i = i + 1; }\n"
+                + "print total;\n"
+                + "fun counter() { var n = 0; fun next() { n = n + 1; return n; } return next; }\n"
+                + "var c = counter();\n"
+                + "c();\n"
+                + "print c() + 0.5;\n"
+                + "print 1 > 2 ? \"no\" : \"yes\";\n";
+        String expected = run(source, Engine.TREE_WALKER, false);
+        assertEquals("88\n2.5\nyes\n", expected);
+        for (Engine engine : new Engine[]{Engine.TREE_WALKER, Engine.SPECIALIZING, Engine.CLOSURES, Engine.JIT}) {
+            assertEquals(expected, run(source, engine, true));
+        }
+    }
+}
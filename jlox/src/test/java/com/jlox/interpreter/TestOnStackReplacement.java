@@ -0,0 +1,87 @@
+package com.jlox.interpreter;
+
+import com.jlox.statement.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.jlox.interpreter.LoxRunner.parse;
+import static com.jlox.interpreter.LoxRunner.run;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestOnStackReplacement {
+
+    private void assertOutput(String expected, String source) {
+        LoxRunner.assertOutput(expected, source, Engine.JIT);
+    }
+
+    @Test
+    void testReplacesHotLoop() {
+        List<Statement> stmts = parse("var total = 0; var i = 0;\n"
+                + "while (i < 25000) { total = total + i; i = i + 1; }\n"
+                + "print total; print i;");
+        Interpreter interpreter = new Interpreter();
+        interpreter.setEngine(Engine.JIT);
+        assertEquals("312487500\n25000\n", run(stmts, interpreter));
+        LoopProfile profile = interpreter.loopProfile((WhileStatement) stmts.get(2));
+        assertNotNull(profile.compiled);
+        assertEquals(StatementEvaluator.OSR_THRESHOLD, profile.backEdges);
+    }
+
+    @Test
+    void testColdLoopNotReplaced() {
+        Interpreter interpreter = new Interpreter();
+        interpreter.setEngine(Engine.JIT);
+        List<Statement> stmts = parse("var i = 0; while (i < 10) i = i + 1; print i;");
+        assertEquals("10\n", run(stmts, interpreter));
+        assertNull(interpreter.loopProfile((WhileStatement) stmts.get(1)).compiled);
+        assertEquals(10, interpreter.loopProfile((WhileStatement) stmts.get(1)).backEdges);
+    }
+
+    @Test
+    void testOnlyJitCounts() {
+        // Iterations run by the tree-walker don't count, and the loop is replaced after a switch to the JIT engine
+        Interpreter interpreter = new Interpreter();
+        List<Statement> stmts = parse("{ var i = 0; while (i < 20000) i = i + 1; print i; }");
+        WhileStatement loop = (WhileStatement) ((Block) stmts.get(0)).stmts.get(1);
+        assertEquals("20000\n", run(stmts, interpreter));
+        assertEquals(0, interpreter.loopProfile(loop).backEdges);
+        interpreter.setEngine(Engine.JIT);
+        assertEquals("20000\n", run(stmts, interpreter));
+        assertNotNull(interpreter.loopProfile(loop).compiled);
+        assertEquals(StatementEvaluator.OSR_THRESHOLD, interpreter.loopProfile(loop).backEdges);
+    }
+
+    @Test
+    void testForLoopLocals() {
+        // The desugared for loop keeps its variable in a block scope that the compiled loop keeps using
+        assertOutput("199990000\n",
+                "{ var s = 0; for (var i = 0; i < 20000; i = i + 1) { var d = i; s = s + d; } print s; }");
+    }
+
+    @Test
+    void testBreakAndReturnAfterReplacement() {
+        assertOutput("15000\n", "var i = 0; while (true) { i = i + 1; if (i == 15000) break; } print i;");
+        assertOutput("12345\n",
+                "fun find(n) { for (var i = 0; ; i = i + 1) { if (i == n) return i; } } print find(12345);");
+    }
+
+    @Test
+    void testReplacedLoopRunsAgain() {
+        // The inner loop is replaced during the first outer iteration and runs compiled from the start afterwards
+        assertOutput("36000\n",
+                "var count = 0;\n"
+                        + "for (var j = 0; j < 3; j = j + 1) {\n"
+                        + "  for (var k = 0; k < 12000; k = k + 1) { count = count + 1; }\n"
+                        + "}\n"
+                        + "print count;");
+    }
+
+    @Test
+    void testCallsFromReplacedLoop() {
+        assertOutput("30000\n",
+                "fun two() { return 2; } var s = 0; var i = 0;\n"
+                        + "while (i < 15000) { s = s + two(); i = i + 1; }\n"
+                        + "print s;");
+    }
+}
@@ -0,0 +1,148 @@
+package com.jlox.interpreter;
+
+import com.jlox.error.CollectorHandler;
+import com.jlox.expression.Binary;
+import com.jlox.expression.Variable;
+import com.jlox.parser.BodyParsing;
+import com.jlox.parser.ParseStatement;
+import com.jlox.scanner.LoxScanner;
+import com.jlox.scanner.source.StringSource;
+import com.jlox.statement.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestResolver {
+
+    private List<Statement> parse(String source) {
+        CollectorHandler handler = new CollectorHandler();
+        LoxScanner scanner = new LoxScanner(new StringSource(source), handler);
+        List<Statement> stmts = new ParseStatement(handler).parseAll(scanner.scanTokens());
+        assertFalse(handler.hasError());
+        return stmts;
+    }
+
+    private List<Statement> resolve(String source) {
+        List<Statement> stmts = parse(source);
+        new Resolver().resolve(stmts);
+        return stmts;
+    }
+
+    private String run(String source) {
+        return run(parse(source));
+    }
+
+    private String run(List<Statement> stmts) {
+        PrintStream out = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured));
+        try {
+            new Interpreter().run(stmts);
+        } finally {
+            System.setOut(out);
+        }
+        return captured.toString().replace(System.lineSeparator(), "\n");
+    }
+
+    @Test
+    void testGlobalsAreUnresolved() {
+        List<Statement> stmts = resolve("var a = 1;\nprint a;\na = 2;");
+        assertEquals(-1, ((VarDeclare) stmts.get(0)).slot);
+        Variable a = (Variable) ((PrintStatement) stmts.get(1)).expr;
+        assertEquals(-1, a.depth);
+        assertEquals(-1, ((VarAssign) stmts.get(2)).depth);
+    }
+
+    @Test
+    void testNestedBlocks() {
+        List<Statement> stmts = resolve("{ var a = 1; var b = 2; { var c = 3; print a; c = b; } }");
+        Block outer = (Block) stmts.get(0);
+        assertEquals(2, outer.scopeSize);
+        assertEquals(0, ((VarDeclare) outer.stmts.get(0)).slot);
+        assertEquals(1, ((VarDeclare) outer.stmts.get(1)).slot);
+
+        Block inner = (Block) outer.stmts.get(2);
+        assertEquals(1, inner.scopeSize);
+        Variable a = (Variable) ((PrintStatement) inner.stmts.get(1)).expr;
+        assertEquals(1, a.depth);
+        assertEquals(0, a.slot);
+
+        VarAssign assign = (VarAssign) inner.stmts.get(2);
+        assertEquals(0, assign.depth);
+        assertEquals(0, assign.slot);
+        Variable b = (Variable) assign.newVal;
+        assertEquals(1, b.depth);
+        assertEquals(1, b.slot);
+    }
+
+    @Test
+    void testFunctionParameters() {
+        List<Statement> stmts = resolve("{ fun add(a, b) { return a + b; } }");
+        FunDeclare add = (FunDeclare) ((Block) stmts.get(0)).stmts.get(0);
+        assertEquals(0, add.slot);
+        Binary sum = (Binary) ((ReturnStatement) add.body().stmts.get(0)).value;
+        // The parameters are one scope above the body
+        assertEquals(1, ((Variable) sum.left).depth);
+        assertEquals(0, ((Variable) sum.left).slot);
+        assertEquals(1, ((Variable) sum.right).depth);
+        assertEquals(1, ((Variable) sum.right).slot);
+    }
+
+    @Test
+    void testInitializerSeesEnclosingVariable() {
+        List<Statement> stmts = resolve("{ var a = 1; { var a = a; } }");
+        Block inner = (Block) ((Block) stmts.get(0)).stmts.get(1);
+        Variable init = (Variable) ((VarDeclare) inner.stmts.get(0)).init;
+        assertEquals(1, init.depth);
+    }
+
+    @Test
+    void testDuplicateLocal() {
+        List<Statement> stmts = parse("{ var a = 1; var a = 2; }");
+        assertThrows(ResolveLoxError.class, () -> new Resolver().resolve(stmts));
+    }
+
+    @Test
+    void testRun() {
+        String source = "var a = \"global\";\n"
+                + "{ var a = \"outer\"; { var a = \"inner\"; print a; } print a; }\n"
+                + "print a;\n"
+                + "fun makeCounter() { var i = 0; fun count() { i = i + 1; return i; } return count; }\n"
+                + "var counter = makeCounter();\n"
+                + "print counter();\n"
+                + "print counter();\n"
+                + "for (var j = 0; j < 3; j = j + 1) { var k = j * 2; print k; }\n";
+        assertEquals("inner\nouter\nglobal\n1\n2\n0\n2\n4\n", run(source));
+    }
+
+    @Test
+    void testLazyBodies() {
+        String source = "{ var a = 1; fun f(b) { fun g() { return a + b; } return g(); } var c = 5; print f(2); }\n"
+                + "fun never() { return ; }\n"
+                + "var a = 10;\n"
+                + "fun h() { return a; }\n"
+                + "print h();\n";
+        CollectorHandler handler = new CollectorHandler();
+        ParseStatement parser = new ParseStatement(handler);
+        parser.setBodyParsing(BodyParsing.LAZY);
+        List<Statement> stmts = parser.parseAll(new LoxScanner(new StringSource(source), handler).scanToBuffer());
+
+        // Bodies are resolved in the scopes they are declared in when they are first called
+        assertEquals("3\n10\n", run(stmts));
+        FunDeclare f = (FunDeclare) ((Block) stmts.get(0)).stmts.get(1);
+        assertTrue(f.isBodyParsed());
+        FunDeclare g = (FunDeclare) f.body().stmts.get(0);
+        Binary sum = (Binary) ((ReturnStatement) g.body().stmts.get(0)).value;
+        assertEquals(4, ((Variable) sum.left).depth);
+        assertEquals(3, ((Variable) sum.right).depth);
+        assertFalse(((FunDeclare) stmts.get(1)).isBodyParsed());
+        assertFalse(handler.hasError());
+    }
+}
@@ -0,0 +1,64 @@
+package com.jlox.interpreter;
+
+import com.jlox.expression.Binary;
+import com.jlox.expression.Unary;
+import com.jlox.statement.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.jlox.interpreter.LoxRunner.parse;
+import static com.jlox.interpreter.LoxRunner.run;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSpecializingEvaluator {
+
+    private void assertOutput(String expected, String source) {
+        LoxRunner.assertOutput(expected, source, Engine.SPECIALIZING);
+    }
+
+    @Test
+    void testSpecializes() {
+        List<Statement> stmts = parse("print 1 + 2; print -3; print !true;");
+        assertEquals("3\n-3\nfalse\n", run(stmts, Engine.SPECIALIZING));
+        Binary sum = (Binary) ((PrintStatement) stmts.get(0)).expr;
+        Unary negate = (Unary) ((PrintStatement) stmts.get(1)).expr;
+        Unary not = (Unary) ((PrintStatement) stmts.get(2)).expr;
+        assertNotNull(sum.node);
+        assertNotSame(BinaryNode.GENERIC, sum.node);
+        assertNotSame(UnaryNode.GENERIC, negate.node);
+        assertNotSame(UnaryNode.GENERIC, not.node);
+    }
+
+    @Test
+    void testGuardFailure() {
+        List<Statement> stmts = parse("fun add(a, b) { return a + b; }\n"
+                + "print add(1, 2);\n"
+                + "print add(1.5, 2);\n"
+                + "print add(\"a\", 2);\n"
+                + "print add(3, 4);\n");
+        assertEquals("3\n3.5\na2\n7\n", run(stmts, Engine.SPECIALIZING));
+        FunDeclare add = (FunDeclare) stmts.get(0);
+        Binary sum = (Binary) ((ReturnStatement) add.body().stmts.get(0)).value;
+        assertSame(BinaryNode.GENERIC, sum.node);
+    }
+
+    @Test
+    void testMatchesTreeWalker() {
+        LoxRunner.assertExpressions(Engine.SPECIALIZING);
+        // Doubles and integer division, which int nodes leave to the generic operation
+        assertOutput("true\n-2.5\n3.5\n2\n", "print 2.5 <= 2.5; print -2.5; print 1.5 * 2 + 0.5; print 7 / 3;");
+        assertOutput("55\n", "fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }\nprint fib(10);");
+        assertOutput("4950\n", "var s = 0; for (var i = 0; i < 100; i = i + 1) { s = s + i; } print s;");
+        // Outside of the Integer cache, so only equal by value
+        assertOutput("true\nfalse\n", "var a = 1000; var b = 1000; print a == b; print a != b;");
+    }
+
+    @Test
+    void testErrorsAfterSpecializing() {
+        assertOutput("1\nCannot divide by 0\n",
+                "fun div(a, b) { return a / b; } print div(1, 1); print div(1, 0);");
+        assertOutput("-1\nExpected a number.\n", "fun neg(a) { return -a; } print neg(1); print neg(\"a\");");
+        assertOutput("false\nExpected a boolean.\n", "fun not(a) { return !a; } print not(true); print not(1);");
+    }
+}
@@ -0,0 +1,102 @@
+package com.jlox.jit;
+
+import com.jlox.interpreter.Engine;
+import com.jlox.interpreter.Environment;
+import com.jlox.interpreter.LoxRunner;
+import com.jlox.interpreter.Resolver;
+import com.jlox.statement.FunDeclare;
+import com.jlox.statement.Statement;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static com.jlox.interpreter.LoxRunner.parse;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestJitCompiler {
+
+    private JitCode compile(String source) {
+        List<Statement> stmts = parse(source);
+        new Resolver().resolve(stmts);
+        return JitCompiler.compile((FunDeclare) stmts.get(0), new Environment(), null);
+    }
+
+    private void assertOutput(String expected, String source) {
+        LoxRunner.assertOutput(expected, source, Engine.JIT);
+    }
+
+    @Test
+    void testArithmeticAndControlFlow() {
+        JitCode collatz = compile("fun steps(n) {\n"
+                + "  var count = 0;\n"
+                + "  while (n != 1) {\n"
+                + "    if (n / 2 * 2 == n) n = n / 2; else n = 3 * n + 1;\n"
+                + "    count = count + 1;\n"
+                + "  }\n"
+                + "  return count;\n"
+                + "}");
+        assertNotNull(collatz);
+        assertEquals(111, collatz.call(new Object[]{27}));
+
+        JitCode between = compile("fun between(a, lo, hi) { return !(a < lo) and a <= hi or false; }");
+        assertEquals(true, between.call(new Object[]{3, 1, 5}));
+        assertEquals(false, between.call(new Object[]{6, 1, 5}));
+    }
+
+    @Test
+    void testUnsupported() {
+        assertNull(compile("fun f(a) { print a; return a; }"));
+        assertNull(compile("fun f(a) { return a + 1.5; }"));
+        assertNull(compile("fun f(a) { return \"a\"; }"));
+        assertNull(compile("fun f(a) { if (a > 0) return 1; return true; }"));
+        assertNull(compile("fun f(a) { var x = 1; x = true; return x; }"));
+        assertNull(compile("fun f(a) { return clock(); }"));
+        assertNull(compile("fun f(a) { a; }"));
+    }
+
+    @Test
+    void testDeoptimization() {
+        JitCode divide = compile("fun divide(a, b) { return a / b; }");
+        assertEquals(3, divide.call(new Object[]{7, 2}));
+        assertThrows(Deoptimization.class, () -> divide.call(new Object[]{7, 0}));
+
+        JitCode noReturn = compile("fun f(a) { if (a > 0) return a; }");
+        assertEquals(1, noReturn.call(new Object[]{1}));
+        assertThrows(Deoptimization.class, () -> noReturn.call(new Object[]{0}));
+    }
+
+    @Test
+    void testHotFunctions() {
+        assertOutput("832040\n",
+                "fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }\n"
+                        + "print fib(30);\n");
+        // Reassigning the global invalidates the recursive calls compiled into count
+        assertOutput("2000\n3\n",
+                "fun count(n) { if (n == 0) return 0; return 1 + count(n - 1); }\n"
+                        + "var total = 0;\n"
+                        + "for (var i = 0; i < 2000; i = i + 1) { total = total + count(1); }\n"
+                        + "print total;\n"
+                        + "fun other(n) { return 2; }\n"
+                        + "var original = count;\n"
+                        + "count = other;\n"
+                        + "print original(5);\n");
+    }
+
+    @Test
+    void testDeoptimizesToInterpreter() {
+        // Once hot, the guards fail on a double argument, division by zero and falling off the end
+        assertOutput("2000\n3.0\nCannot divide by 0\n",
+                "fun half(n) { return n / 2; }\n"
+                        + "var total = 0;\n"
+                        + "for (var i = 0; i < 2000; i = i + 1) { total = total + half(3); }\n"
+                        + "print total;\n"
+                        + "print half(6d);\n"
+                        + "fun divide(a, b) { return a / b; }\n"
+                        + "for (var i = 0; i < 2000; i = i + 1) { divide(1, 1); }\n"
+                        + "print divide(1, 0);\n");
+        assertOutput("null\n",
+                "fun positive(n) { if (n > 0) return n; }\n"
+                        + "for (var i = 0; i < 2000; i = i + 1) { positive(1); }\n"
+                        + "print positive(0);\n");
+    }
+}
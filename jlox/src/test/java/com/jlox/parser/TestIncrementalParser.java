@@ -0,0 +1,153 @@
+package com.jlox.parser;
+
+import com.jlox.error.CollectorHandler;
+import com.jlox.expression.Literal;
+import com.jlox.expression.Variable;
+import com.jlox.interpreter.ResolveLoxError;
+import com.jlox.interpreter.Resolver;
+import com.jlox.scanner.LoxScanner;
+import com.jlox.scanner.Token;
+import com.jlox.scanner.source.StringSource;
+import com.jlox.statement.IfStatement;
+import com.jlox.statement.PrintStatement;
+import com.jlox.statement.Statement;
+import com.jlox.statement.VarDeclare;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestIncrementalParser {
+
+    private static final String SCRIPT = "var a = 1;\n"
+            + "// a comment\n"
+            + "fun f(x) { return x + a; }\n"
+            + "print f(2);\n"
+            + "var b = \"text\";\n"
+            + "print b;\n";
+
+    private List<Token> assertLikeFullScan(IncrementalParser parser) {
+        List<Token> tokens = new LoxScanner(new StringSource(parser.getText()), new CollectorHandler()).scanTokens();
+        assertEquals(tokens, parser.getTokens());
+        return tokens;
+    }
+
+    private void assertLikeFullParse(IncrementalParser parser) {
+        List<Token> tokens = assertLikeFullScan(parser);
+        List<Statement> statements = new ParseStatement(new CollectorHandler()).parseAll(tokens);
+        assertEquals(statements.size(), parser.getStatements().size());
+        for (int i = 0; i < statements.size(); i++) {
+            assertEquals(statements.get(i).getClass(), parser.getStatements().get(i).getClass());
+        }
+    }
+
+    private int offset(String text) {
+        return SCRIPT.indexOf(text);
+    }
+
+    @Test
+    void testKeepsStatementsAroundEdit() {
+        IncrementalParser parser = new IncrementalParser(SCRIPT, new CollectorHandler());
+        List<Statement> before = parser.getStatements();
+        assertEquals(5, before.size());
+
+        // Make the call longer: only its statement is parsed again
+        int at = offset("2)");
+        parser.edit(at, at + 1, "200");
+        assertLikeFullParse(parser);
+        List<Statement> after = parser.getStatements();
+        assertSame(before.get(0), after.get(0));
+        assertSame(before.get(1), after.get(1));
+        assertNotSame(before.get(2), after.get(2));
+
+        // Statements after the edit weren't parsed again, but are handed out with the offsets of the edited text
+        VarDeclare declare = (VarDeclare) after.get(3);
+        assertEquals(offset("b =") + 2, declare.name.offset);
+        assertEquals("text", ((Literal) declare.init).value);
+        PrintStatement print = (PrintStatement) after.get(4);
+        assertEquals(offset("b;") + 2, ((Variable) print.expr).name.offset);
+        assertSame(after.get(4), parser.getStatements().get(4));
+
+        // An edit after them doesn't move them again
+        int end = parser.getText().length();
+        parser.edit(end, end, "\nprint 3;");
+        assertSame(after.get(3), parser.getStatements().get(3));
+    }
+
+    @Test
+    void testErrorsPointAtEditedText() {
+        String script = "var a = 1;\n{ var c; var c; }\n";
+        IncrementalParser parser = new IncrementalParser(script, new CollectorHandler());
+        parser.edit(0, 0, "print 0;\n");
+        // The block wasn't parsed again, but the resolver reports the position of the name in the edited text
+        ResolveLoxError error = assertThrows(ResolveLoxError.class,
+                () -> new Resolver().resolve(parser.getStatements()));
+        assertEquals(parser.getText().lastIndexOf("c;"), error.getOffset());
+    }
+
+    @Test
+    void testRescansStringsAndComments() {
+        IncrementalParser parser = new IncrementalParser(SCRIPT, new CollectorHandler());
+        // Open a string that swallows the rest of the script, then close it again
+        int at = offset("print f");
+        parser.edit(at, at, "\"");
+        assertLikeFullScan(parser);
+        parser.edit(at, at + 1, "");
+        assertLikeFullParse(parser);
+        assertEquals(SCRIPT, parser.getText());
+
+        // Comment out a declaration
+        parser.edit(0, 0, "// ");
+        assertLikeFullParse(parser);
+        assertEquals(4, parser.getStatements().size());
+    }
+
+    @Test
+    void testLookaheadPastStatement() {
+        IncrementalParser parser = new IncrementalParser("if (true) print 1;\nprint 2;", new CollectorHandler());
+        assertEquals(2, parser.getStatements().size());
+        // The if statement was told apart from the print by looking at the token after it, so it is parsed again
+        int at = "if (true) print 1;".length();
+        parser.edit(at, at, " else print 3;");
+        assertLikeFullParse(parser);
+        IfStatement statement = (IfStatement) parser.getStatements().get(0);
+        assertNotNull(statement.elseBranch);
+    }
+
+    @Test
+    void testRecoversFromErrors() {
+        CollectorHandler errors = new CollectorHandler();
+        IncrementalParser parser = new IncrementalParser(SCRIPT, errors);
+        List<Statement> before = parser.getStatements();
+
+        int at = offset("(2)");
+        parser.edit(at, at + 1, "");
+        assertTrue(errors.hasError());
+        // The statements after the one that doesn't parse are kept, moved back by the deleted char
+        assertEquals(4, parser.getStatements().size());
+        VarDeclare kept = (VarDeclare) parser.getStatements().get(2);
+        assertSame(((VarDeclare) before.get(3)).init, kept.init);
+        assertEquals(offset("b =") - 1, kept.name.offset);
+
+        parser.edit(at, at, "(");
+        assertLikeFullParse(parser);
+        assertEquals(5, parser.getStatements().size());
+    }
+
+    @Test
+    void testEditAtEnds() {
+        IncrementalParser parser = new IncrementalParser("print 1;", new CollectorHandler());
+        parser.edit(8, 8, "\nprint 2.5;");
+        assertLikeFullParse(parser);
+        PrintStatement print = (PrintStatement) parser.getStatements().get(1);
+        assertEquals(2.5, ((Literal) print.expr).value);
+
+        parser.edit(0, parser.getText().length(), "");
+        assertTrue(parser.getStatements().isEmpty());
+        assertTrue(parser.getTokens().isEmpty());
+        parser.edit(0, 0, "var c;");
+        assertLikeFullParse(parser);
+        assertThrows(IndexOutOfBoundsException.class, () -> parser.edit(3, 100, ""));
+    }
+}
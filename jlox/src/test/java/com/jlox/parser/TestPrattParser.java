@@ -0,0 +1,134 @@
+package com.jlox.parser;
+
+import com.jlox.error.CollectorHandler;
+import com.jlox.expression.Expression;
+import com.jlox.interpreter.AstPrinter;
+import com.jlox.scanner.LoxScanner;
+import com.jlox.scanner.Token;
+import com.jlox.scanner.source.StringSource;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestPrattParser {
+
+    private List<Token> scan(String source) {
+        CollectorHandler handler = new CollectorHandler();
+        List<Token> tokens = new LoxScanner(new StringSource(source), handler).scanTokens();
+        assertFalse(handler.hasError());
+        return tokens;
+    }
+
+    // Parse with both parsers and check they build the same tree, or fail alike, and stop at the same token
+    private void assertSameAst(String source) {
+        List<Token> tokens = scan(source);
+        CollectorHandler referenceHandler = new CollectorHandler();
+        CollectorHandler prattHandler = new CollectorHandler();
+        TokenSource referenceTokens = new TokenSource(tokens);
+        TokenSource prattTokens = new TokenSource(tokens);
+        Expression reference = new ParseExpression(referenceHandler).parse(referenceTokens);
+        Expression pratt = new PrattParser(prattHandler).parse(prattTokens);
+
+        assertEquals(referenceHandler.hasError(), prattHandler.hasError(), source);
+        if (reference == null) {
+            assertNull(pratt, source);
+        } else {
+            AstPrinter printer = new AstPrinter();
+            assertEquals(printer.print(reference), printer.print(pratt), source);
+        }
+        assertEquals(referenceTokens.isAtEnd(), prattTokens.isAtEnd(), source);
+        if (!referenceTokens.isAtEnd()) {
+            assertEquals(referenceTokens.peek(), prattTokens.peek(), source);
+        }
+    }
+
+    @Test
+    void testPrecedence() {
+        assertSameAst("1 + 2 * 3 - 4 / 5");
+        assertSameAst("1 - 2 - 3 - 4");
+        assertSameAst("a < b == c >= d != e");
+        assertSameAst("-a * !b + -(c - d)");
+        assertSameAst("(1, 2), 3, 4");
+        assertSameAst("\"a\" + 1 <= 2.5 * x");
+    }
+
+    @Test
+    void testLogicalAndTernary() {
+        assertSameAst("a and b or c");
+        assertSameAst("a or b and c");
+        assertSameAst("a == 1 and b < 2 or !c");
+        assertSameAst("a ? b : c ? d : e");
+        assertSameAst("a ? b ? c : d : e");
+        assertSameAst("a or b ? c, d : e, f");
+        assertSameAst("x = a ? 1 : 2");
+        // Neither 'or' nor 'and' chain, so these stop early
+        assertSameAst("a or b or c");
+        assertSameAst("a and b and c");
+        assertSameAst("a or b and c and d");
+        assertSameAst("a and b or c or d");
+    }
+
+    @Test
+    void testCalls() {
+        assertSameAst("f()");
+        assertSameAst("f(1, a + b, g(c)(d))");
+        assertSameAst("f(a ? b : c, (d, e))");
+        assertSameAst("-f(1) * 2");
+        assertSameAst("(f)(g(1))(2)()");
+        assertSameAst("f(g(h(1, -2)), (3), i()(4))");
+        assertSameAst("f(1,)");
+    }
+
+    @Test
+    void testErrors() {
+        assertSameAst("1 +");
+        assertSameAst("(1 + 2");
+        assertSameAst("a ? b");
+        assertSameAst("f(1 2)");
+        assertSameAst("1 + * 2");
+        assertSameAst("f(1");
+        assertSameAst("f(g(1)");
+        assertSameAst("((1)");
+        assertSameAst("-");
+        assertSameAst("a ? (b : c");
+    }
+
+    @Test
+    void testLongChain() {
+        // Left associative chains are parsed in a loop rather than by recursion
+        StringBuilder source = new StringBuilder("0");
+        for (int i = 1; i < 100000; i++) {
+            source.append(i % 2 == 0 ? " + " : " * ").append(i);
+        }
+        List<Token> tokens = scan(source.toString());
+        CollectorHandler handler = new CollectorHandler();
+        assertNotNull(new PrattParser(handler).parse(tokens));
+        assertFalse(handler.hasError());
+    }
+
+    @Test
+    void testDeepNesting() throws InterruptedException {
+        // Nested groupings, prefix operators, calls and right operands, on a stack far too small to parse them by
+        // recursion
+        int depth = 50000;
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            source.append(i % 4 == 0 ? "(" : i % 4 == 1 ? "- !" : i % 4 == 2 ? "f(1, " : "1 + (");
+        }
+        source.append("x");
+        for (int i = depth - 1; i >= 0; i--) {
+            source.append(i % 4 == 1 ? "" : ")");
+        }
+        List<Token> tokens = scan(source.toString());
+        CollectorHandler handler = new CollectorHandler();
+        Expression[] parsed = new Expression[1];
+        Thread thread = new Thread(null, () -> parsed[0] = new PrattParser(handler).parse(tokens), "small stack",
+                256 * 1024);
+        thread.start();
+        thread.join();
+        assertNotNull(parsed[0]);
+        assertFalse(handler.hasError());
+    }
+}
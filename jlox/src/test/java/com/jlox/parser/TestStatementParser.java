@@ -1,16 +1,29 @@
 package com.jlox.parser;
 
+import com.jlox.error.CollectorHandler;
+import com.jlox.expression.Call;
+import com.jlox.expression.Literal;
+import com.jlox.scanner.LoxScanner;
 import com.jlox.scanner.Token;
 import com.jlox.scanner.TokenType;
+import com.jlox.scanner.source.StringSource;
+import com.jlox.statement.Block;
+import com.jlox.statement.FunDeclare;
 import com.jlox.statement.PrintStatement;
+import com.jlox.statement.Statement;
 import com.jlox.statement.VarAssign;
 import com.jlox.statement.VarDeclare;
+import com.jlox.statement.WhileStatement;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TestStatementParser {
 
@@ -40,6 +53,124 @@ public class TestStatementParser {
                 "Expected variable declaration statement");
     }
 
+    @Test
+    void testErrorIsStackless() {
+        ParseStatement parser = new ParseStatement();
+        final Token[] badTokens = new Token[] { emptyToken(TokenType.PRINT), emptyToken(TokenType.INTEGER) };
+        ParseLoxError error = assertThrows(ParseLoxError.class, () -> parser.parse(List.of(badTokens)));
+        assertEquals("Expected ';' after value", error.getMessage());
+        assertEquals(0, error.getStackTrace().length);
+    }
+
+    private List<Statement> parseSource(String source) {
+        CollectorHandler handler = new CollectorHandler();
+        LoxScanner scanner = new LoxScanner(new StringSource(source), handler);
+        List<Statement> stmts = new ParseStatement(handler).parseAll(scanner.scanTokens());
+        assertFalse(handler.hasError());
+        return stmts;
+    }
+
+    private Object printedValue(Statement stmt) {
+        return ((Literal) ((PrintStatement) stmt).expr).value;
+    }
+
+    @Test
+    void testLiteralValues() {
+        // Literals hold the value of their token, not the token
+        List<Statement> stmts = parseSource("print 12; print 1.5; print \"s\"; print true; print false; print nil;");
+        assertEquals(12, printedValue(stmts.get(0)));
+        assertEquals(1.5, printedValue(stmts.get(1)));
+        assertEquals("s", printedValue(stmts.get(2)));
+        assertEquals(true, printedValue(stmts.get(3)));
+        assertEquals(false, printedValue(stmts.get(4)));
+        assertNull(printedValue(stmts.get(5)));
+        VarDeclare declare = (VarDeclare) parseSource("var a;").get(0);
+        assertNull(((Literal) declare.init).value);
+    }
+
+    @Test
+    void testNewLinesAndEofSkipped() {
+        // The scanner's list has new lines and a closing EOF, which aren't statements
+        List<Statement> stmts = parseSource("\nprint 1;\n\nprint\n2;\n");
+        assertEquals(2, stmts.size());
+        assertEquals(2, printedValue(stmts.get(1)));
+    }
+
+    @Test
+    void testForDeclaresVariable() {
+        // The loop becomes a block that declares the variable and runs a while loop
+        Block loop = (Block) parseSource("for (var i = 0; i < 3; i = i + 1) print i;").get(0);
+        assertEquals(2, loop.stmts.size());
+        assertEquals("i", ((VarDeclare) loop.stmts.get(0)).name.symbol.name());
+        WhileStatement body = (WhileStatement) loop.stmts.get(1);
+        List<Statement> iteration = ((Block) body.body).stmts;
+        assertInstanceOf(PrintStatement.class, iteration.get(0));
+        assertInstanceOf(VarAssign.class, iteration.get(1));
+    }
+
+    @Test
+    void testBracesAndParensConsumed() {
+        // Each block and argument list ends at its own closing token, so what follows parses on its own
+        List<Statement> stmts = parseSource("{ print 1; { print 2; } } print f(1, 2)(3); print 4;");
+        assertEquals(3, stmts.size());
+        Block outer = (Block) stmts.get(0);
+        assertEquals(2, outer.stmts.size());
+        assertEquals(1, ((Block) outer.stmts.get(1)).stmts.size());
+        Call call = (Call) ((PrintStatement) stmts.get(1)).expr;
+        assertEquals(1, call.arguments.size());
+        assertEquals(2, ((Call) call.callee).arguments.size());
+        assertEquals(4, printedValue(stmts.get(2)));
+    }
+
+    private List<Statement> parseLazily(String source, BodyParsing bodyParsing, CollectorHandler handler) {
+        LoxScanner scanner = new LoxScanner(new StringSource(source), handler);
+        ParseStatement parser = new ParseStatement(handler);
+        parser.setBodyParsing(bodyParsing);
+        return parser.parseAll(scanner.scanToBuffer());
+    }
+
+    @Test
+    void testLazyBodies() {
+        String source = "fun f(a) { fun g() { { return a; } } return g; }\nprint f;";
+        CollectorHandler handler = new CollectorHandler();
+        List<Statement> stmts = parseLazily(source, BodyParsing.LAZY, handler);
+        assertEquals(2, stmts.size());
+        FunDeclare f = (FunDeclare) stmts.get(0);
+        assertFalse(f.isBodyParsed());
+
+        // Nested functions are skipped too when the body is parsed
+        assertEquals(2, f.body().stmts.size());
+        assertTrue(f.isBodyParsed());
+        FunDeclare g = (FunDeclare) f.body().stmts.get(0);
+        assertFalse(g.isBodyParsed());
+        assertEquals(1, g.body().stmts.size());
+        assertFalse(handler.hasError());
+
+        assertThrows(ParseLoxError.class, () -> parseLazily("fun f() { { }\nprint 1;", BodyParsing.LAZY, handler));
+    }
+
+    @Test
+    void testLazyBodyErrors() {
+        String source = "fun f() { print 1 }\nfun g() { print (; }\nprint 2;";
+        // Errors are found when the body is parsed
+        CollectorHandler handler = new CollectorHandler();
+        List<Statement> stmts = parseLazily(source, BodyParsing.LAZY, handler);
+        assertEquals(3, stmts.size());
+        assertThrows(ParseLoxError.class, () -> ((FunDeclare) stmts.get(0)).body());
+        ((FunDeclare) stmts.get(1)).body();
+        assertEquals(1, handler.getErrors().size());
+
+        // Unless they are checked up front, and then they are only reported once
+        CollectorHandler strict = new CollectorHandler();
+        assertThrows(ParseLoxError.class, () -> parseLazily(source, BodyParsing.LAZY_STRICT, strict));
+        List<Statement> checked = parseLazily(source.substring(source.indexOf('\n') + 1), BodyParsing.LAZY_STRICT,
+                strict);
+        assertEquals(1, strict.getErrors().size());
+        assertFalse(((FunDeclare) checked.get(0)).isBodyParsed());
+        ((FunDeclare) checked.get(0)).body();
+        assertEquals(1, strict.getErrors().size());
+    }
+
     // Initialize a list of emptyTokens of type identifier, equal, integer
     // Call parser on tokens
     // assertThrows
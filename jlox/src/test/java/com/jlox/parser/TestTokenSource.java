@@ -1,13 +1,19 @@
 package com.jlox.parser;
 
+import com.jlox.error.CollectorHandler;
+import com.jlox.scanner.LoxScanner;
 import com.jlox.scanner.Token;
+import com.jlox.scanner.TokenBuffer;
 import com.jlox.scanner.TokenType;
+import com.jlox.scanner.source.StringSource;
 import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TestTokenSource {
 
@@ -55,4 +61,25 @@ public class TestTokenSource {
         assertThrows(IllegalStateException.class, source::advance);
     }
 
+    @Test
+    void testBufferCursor() {
+        TokenBuffer buffer = new LoxScanner(new StringSource("\nprint 12;\nx"), new CollectorHandler()).scanToBuffer();
+        TokenSource source = new TokenSource(buffer);
+
+        // The leading new line is skipped
+        assertEquals(TokenType.PRINT, source.peekType());
+        assertThrows(IllegalStateException.class, source::previous);
+        source.skip();
+        assertEquals(new Token(TokenType.PRINT, "print", null, 5), source.previous());
+        assertEquals(TokenType.INTEGER, source.peekType());
+        source.skip();
+        assertEquals(12, source.previousLiteral());
+        assertEquals(new Token(TokenType.SEMICOLON, ";", null, 9), source.advance());
+        // The new line and EOF around the last token are skipped too
+        assertEquals(new Token(TokenType.IDENTIFIER, "x", null, 11), source.peek());
+        assertFalse(source.isAtEnd());
+        source.skip();
+        assertTrue(source.isAtEnd());
+        assertThrows(IllegalStateException.class, source::peekType);
+    }
 }
@@ -0,0 +1,88 @@
+package com.jlox.scanner;
+
+import com.jlox.error.IErrorHandler;
+import com.jlox.error.LoxError;
+import com.jlox.scanner.source.StringSource;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestParallelScanner {
+
+    private static class Recorder implements IErrorHandler {
+        private final List<String> errors = new ArrayList<>();
+
+        @Override
+        public void error(String message, String code) {
+            errors.add(code + ": " + message);
+        }
+
+        @Override
+        public void error(LoxError loxError) {
+            errors.add(loxError.getMessage());
+        }
+
+        @Override
+        public boolean hasError() {
+            return !errors.isEmpty();
+        }
+    }
+
+    private void assertScansLikeSequential(String text) {
+        Recorder expectedErrors = new Recorder();
+        List<Token> expected = new LoxScanner(new StringSource(text), expectedErrors).scanTokens();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            // Chunks of a few lines each, so most new lines are split points
+            Recorder errors = new Recorder();
+            List<Token> tokens = new ParallelScanner(text, errors, pool, 16).scanTokens();
+            assertEquals(expected, tokens);
+            assertEquals(expectedErrors.errors, errors.errors);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testSplitsBetweenLines() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("var a").append(i).append(" = ").append(i).append(" + 2.5d; // comment ").append(i)
+                    .append('\n');
+        }
+        text.append("print a1;");
+        assertScansLikeSequential(text.toString());
+    }
+
+    @Test
+    void testStringsAndComments() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            // A string over several lines, a quote in a comment and a comment marker in a string
+            text.append("print \"first\nsecond // not a comment\nthird\";\n");
+            text.append("// \"not a string\n");
+            text.append("var s = \"//\"; var t = 1 / 2;\n");
+        }
+        assertScansLikeSequential(text.toString());
+    }
+
+    @Test
+    void testErrorsInOrder() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append("var a = 1 # 2;\n  @ print a;\n");
+        }
+        text.append("print \"never closed\n;\n");
+        assertScansLikeSequential(text.toString());
+    }
+
+    @Test
+    void testSmallText() {
+        assertScansLikeSequential("print 1;");
+        assertScansLikeSequential("print 1;\nprint 2;\n");
+    }
+}
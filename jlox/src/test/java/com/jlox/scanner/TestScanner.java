@@ -6,9 +6,16 @@ import com.jlox.scanner.source.ISource;
 import com.jlox.scanner.source.LineSource;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TestScanner {
 
@@ -130,4 +137,72 @@ public class TestScanner {
         assertEquals(token7, tokens.get(6));
 
     }
+
+    @Test
+    void testCommentsSkipped() {
+        // A comment runs to the end of its line, or of the input
+        List<Token> tokens = runScanner("1 // 2 \"three\"\n4 // 5");
+        assertEquals(4, tokens.size());
+        assertEquals(1, tokens.get(0).literal);
+        assertEquals(TokenType.NEW_LINE, tokens.get(1).type);
+        assertEquals(4, tokens.get(2).literal);
+        assertEquals(TokenType.EOF, tokens.get(3).type);
+    }
+
+    @Test
+    void testStreamMatchesList() {
+        String input = "var a = 12.3; // comment\nfun f(x) { return x >= 1 and \"s\"; }\n";
+        List<Token> streamed = new ArrayList<>();
+        new LoxScanner(new LineSource(input), new ConsoleHandler()).streamTokens().forEach(streamed::add);
+        assertEquals(runScanner(input), streamed);
+        // The EOF token closes both
+        assertEquals(TokenType.EOF, streamed.get(streamed.size() - 1).type);
+    }
+
+    @Test
+    void testStreamIsLazy() {
+        ISource source = new LineSource("print 1;\nprint 2;");
+        Iterator<Token> tokens = new LoxScanner(source, new ConsoleHandler()).streamTokens().iterator();
+        assertEquals(TokenType.PRINT, tokens.next().type);
+        // Only the first token has been scanned
+        assertEquals(4, source.getOffset());
+        int count = 1;
+        while (tokens.hasNext()) {
+            tokens.next();
+            count++;
+        }
+        assertEquals(8, count);
+        assertTrue(source.isAtEnd());
+        assertFalse(tokens.hasNext());
+    }
+
+    @Test
+    void testBufferMatchesList() {
+        String input = "var a = 12.3; // comment\nfun f(x) { return x >= 1 and \"s\"; }\nprint 2d;";
+        List<Token> tokens = runScanner(input);
+        TokenBuffer buffer = new LoxScanner(new LineSource(input), new ConsoleHandler()).scanToBuffer();
+        assertEquals(tokens.size(), buffer.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            assertEquals(tokens.get(i), buffer.token(i));
+        }
+    }
+
+    @Test
+    void testIdentifiersShareSymbols() {
+        List<Token> tokens = runScanner("var count = count + counter; vár");
+        Symbol count = tokens.get(1).symbol;
+        assertSame(count, tokens.get(3).symbol);
+        assertSame(count.name(), tokens.get(3).lexeme);
+        assertSame(count, Symbol.of("count"));
+        assertEquals("count".hashCode(), count.hashCode());
+        assertNotSame(count, tokens.get(5).symbol);
+        assertNull(tokens.get(0).symbol);
+        assertSame(Symbol.of("vár"), tokens.get(7).symbol);
+
+        TokenBuffer buffer = new LoxScanner(new LineSource("count + counter"), new ConsoleHandler()).scanToBuffer();
+        assertSame(count, buffer.symbol(0));
+        assertSame(count, buffer.token(0).symbol);
+        assertEquals("counter", buffer.lexeme(2));
+        assertNull(buffer.symbol(1));
+    }
 }
@@ -0,0 +1,78 @@
+package com.jlox.scanner.source;
+
+import com.jlox.error.CollectorHandler;
+import com.jlox.scanner.LoxScanner;
+import com.jlox.scanner.Token;
+import com.jlox.scanner.TokenType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestMappedFileSource {
+
+    @TempDir
+    Path dir;
+
+    private MappedFileSource map(String text) throws IOException {
+        Path file = dir.resolve("script.lox");
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        return new MappedFileSource(file);
+    }
+
+    @Test
+    void testScansLikeStringSource() throws IOException {
+        String text = "var a = 12.5;\n// comment\nfun f(x) { return x >= 1 and \"s\"; }\nprint f(a);";
+        List<Token> expected = new LoxScanner(new StringSource(text), new CollectorHandler()).scanTokens();
+        List<Token> tokens = new LoxScanner(map(text), new CollectorHandler()).scanTokens();
+        assertEquals(expected, tokens);
+    }
+
+    @Test
+    void testDecodesLexemes() throws IOException {
+        MappedFileSource source = map("print \"héllo\";");
+        List<Token> tokens = new LoxScanner(source, new CollectorHandler()).scanTokens();
+        // The two bytes of the accented letter are one char of the literal
+        assertEquals("héllo", tokens.get(1).literal);
+        assertEquals(14, tokens.get(2).offset);
+    }
+
+    @Test
+    void testNonAsciiIdentifiers() throws IOException {
+        String text = "var café = 1;\nprint café + naïve€;";
+        CollectorHandler handler = new CollectorHandler();
+        List<Token> tokens = new LoxScanner(map(text), handler).scanTokens();
+        assertFalse(handler.hasError());
+        assertEquals("café", tokens.get(1).symbol.name());
+        assertSame(tokens.get(1).symbol, tokens.get(7).symbol);
+        // Offsets count bytes, and é is two of them
+        assertEquals(8, tokens.get(1).offset);
+        assertEquals("naïve€", tokens.get(9).symbol.name());
+        assertEquals(TokenType.SEMICOLON, tokens.get(10).type);
+    }
+
+    @Test
+    void testPositions() throws IOException {
+        MappedFileSource source = map("ab\ncde\n\nf");
+        assertEquals(1, source.getLineNumber(2));
+        assertEquals(3, source.getColNumber(2));
+        assertEquals(2, source.getLineNumber(5));
+        assertEquals(3, source.getColNumber(5));
+        assertEquals(4, source.getLineNumber(8));
+        assertEquals(1, source.getColNumber(8));
+        assertThrows(RuntimeException.class, () -> source.getLineNumber(9));
+    }
+
+    @Test
+    void testEmptyFile() throws IOException {
+        MappedFileSource source = map("");
+        assertTrue(source.isAtEnd());
+        assertEquals('\0', source.peek());
+    }
+}
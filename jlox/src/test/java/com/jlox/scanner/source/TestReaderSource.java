@@ -0,0 +1,93 @@
+package com.jlox.scanner.source;
+
+import com.jlox.error.CollectorHandler;
+import com.jlox.scanner.LoxScanner;
+import com.jlox.scanner.Token;
+import com.jlox.scanner.TokenType;
+import org.junit.jupiter.api.Test;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestReaderSource {
+
+    private static final String SCRIPT = "var a = 12.5;\n// a comment that is longer than the window\n"
+            + "fun f(x) { return x >= 1 and \"a string that is longer than the window\"; }\nprint f(a);";
+
+    @Test
+    void testScansLikeStringSource() {
+        List<Token> expected = new LoxScanner(new StringSource(SCRIPT), new CollectorHandler()).scanTokens();
+        // A tiny window wraps around many times and has to grow for the long string
+        ReaderSource source = new ReaderSource(new StringReader(SCRIPT), 8);
+        assertEquals(expected, new LoxScanner(source, new CollectorHandler()).scanTokens());
+        assertTrue(source.capacity() > 8);
+        assertEquals(expected, new LoxScanner(new ReaderSource(new StringReader(SCRIPT)), new CollectorHandler())
+                .scanTokens());
+    }
+
+    @Test
+    void testReleasedText() {
+        ReaderSource source = new ReaderSource(new StringReader("abc\ndef\nghi"), 4);
+        for (int i = 0; i < 6; i++) {
+            source.advance();
+        }
+        assertEquals("abc\nde", source.get(0, 6));
+        assertEquals(2, source.getLineNumber(5));
+        assertEquals(2, source.getColNumber(5));
+        assertEquals(1, source.getLineNumber(3));
+        source.release(4);
+        assertEquals("de", source.get(4, 6));
+        assertThrows(IllegalStateException.class, () -> source.get(3, 6));
+        assertThrows(IllegalStateException.class, () -> source.getLineNumber(2));
+        // The start of the line of a released char is kept, so its position can still be worked out
+        assertEquals(2, source.getLineNumber(5));
+        assertEquals(2, source.getColNumber(5));
+        for (int i = 0; i < 4; i++) {
+            source.advance();
+        }
+        source.release(9);
+        assertEquals(3, source.getLineNumber(9));
+        assertEquals(2, source.getColNumber(9));
+        assertThrows(IllegalStateException.class, () -> source.getLineNumber(6));
+    }
+
+    @Test
+    void testMemoryStaysFlat() {
+        // About 8MB of statements, generated as they are read
+        int statements = 400000;
+        Reader input = new Reader() {
+            private final String statement = "print 12 + x;\n";
+            private int position;
+
+            @Override
+            public int read(char[] buffer, int offset, int length) {
+                int total = statement.length() * statements;
+                if (position == total) {
+                    return -1;
+                }
+                int count = Math.min(length, total - position);
+                for (int i = 0; i < count; i++) {
+                    buffer[offset + i] = statement.charAt((position + i) % statement.length());
+                }
+                position += count;
+                return count;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        ReaderSource source = new ReaderSource(input, 64);
+        int prints = 0;
+        for (Token token : new LoxScanner(source, new CollectorHandler()).streamTokens()) {
+            if (token.type == TokenType.PRINT) {
+                prints++;
+            }
+        }
+        assertEquals(statements, prints);
+        assertEquals(64, source.capacity());
+    }
+}
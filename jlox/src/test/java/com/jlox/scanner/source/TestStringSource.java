@@ -0,0 +1,53 @@
+package com.jlox.scanner.source;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TestStringSource {
+
+    @Test
+    void testPositionOfOffset() {
+        StringSource source = new StringSource("ab\ncde\n\nf");
+        assertEquals(1, source.getLineNumber(0));
+        assertEquals(1, source.getColNumber(0));
+        assertEquals(1, source.getLineNumber(1));
+        assertEquals(2, source.getColNumber(1));
+        // A new line belongs to the line it ends
+        assertEquals(1, source.getLineNumber(2));
+        assertEquals(3, source.getColNumber(2));
+        assertEquals(2, source.getLineNumber(3));
+        assertEquals(1, source.getColNumber(3));
+        assertEquals(2, source.getLineNumber(5));
+        assertEquals(3, source.getColNumber(5));
+        assertEquals(3, source.getLineNumber(7));
+        assertEquals(1, source.getColNumber(7));
+        assertEquals(4, source.getLineNumber(8));
+        assertEquals(1, source.getColNumber(8));
+    }
+
+    @Test
+    void testMatchesScanning() {
+        String text = "var a = 1;\n\nprint a;\n  print \"x\";\n";
+        StringSource source = new StringSource(text);
+        StringSource lookup = new StringSource(text);
+        while (!source.isAtEnd()) {
+            char c = source.advance();
+            if (c == '\n') {
+                continue;
+            }
+            int offset = source.getOffset();
+            assertEquals(source.getLineNumber(), lookup.getLineNumber(offset));
+            // The running column counts the char just read
+            assertEquals(source.getColNumber() - 1, lookup.getColNumber(offset));
+        }
+    }
+
+    @Test
+    void testInvalidOffset() {
+        StringSource source = new StringSource("a\nb");
+        assertThrows(RuntimeException.class, () -> source.getLineNumber(3));
+        assertThrows(RuntimeException.class, () -> source.getColNumber(-1));
+    }
+}
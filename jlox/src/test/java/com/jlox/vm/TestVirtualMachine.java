@@ -0,0 +1,84 @@
+package com.jlox.vm;
+
+import com.jlox.interpreter.Engine;
+import com.jlox.interpreter.LoxRunner;
+import org.junit.jupiter.api.Test;
+
+public class TestVirtualMachine {
+
+    private void assertOutput(String expected, String source) {
+        LoxRunner.assertOutput(expected, source, Engine.BYTECODE);
+    }
+
+    @Test
+    void testExpressions() {
+        LoxRunner.assertExpressions(Engine.BYTECODE);
+        // A variable declared without a value
+        assertOutput("null\n", "var a; print a;");
+    }
+
+    @Test
+    void testScopes() {
+        assertOutput("inner\nouter\nglobal\n3\n",
+                "var a = \"global\";\n"
+                        + "{ var a = \"outer\"; { var a = \"inner\"; print a; } print a; }\n"
+                        + "print a;\n"
+                        + "{ var b = 1; { var c = 2; b = b + c; } print b; }\n");
+    }
+
+    @Test
+    void testFunctions() {
+        assertOutput("55\n<fn fib>\n1\n2\n11\n",
+                "fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }\n"
+                        + "print fib(10);\n"
+                        + "print fib;\n"
+                        + "fun makeCounter() { var i = 0; fun count() { i = i + 1; return i; } return count; }\n"
+                        + "var counter = makeCounter();\n"
+                        + "print counter();\n"
+                        + "print counter();\n"
+                        + "fun adder(x) { fun add(y) { return x + y; } return add; }\n"
+                        + "print adder(5)(6);\n");
+    }
+
+    @Test
+    void testLoops() {
+        assertOutput("0\n1\n2\n10\nx0\nx1\nx2\n",
+                "for (var i = 0; i < 3; i = i + 1) { print i; }\n"
+                        + "var sum = 0;\n"
+                        + "while (true) { var step = 1; sum = sum + step; if (sum == 10) break; }\n"
+                        + "print sum;\n"
+                        + "var first; var second; var third;\n"
+                        + "for (var j = 0; j < 5; j = j + 1) {\n"
+                        + "  var k = j;\n"
+                        + "  fun show() { print \"x\" + k; }\n"
+                        + "  if (j == 0) first = show; else if (j == 1) second = show; else third = show;\n"
+                        + "  if (j == 2) break;\n"
+                        + "}\n"
+                        + "first(); second(); third();\n");
+    }
+
+    @Test
+    void testComparisonConditions() {
+        // Conditions that compare are compiled into one instruction, which must agree with the operators
+        assertOutput("lt\nle\ngt\nge\n3\n2.5\n"
+                        + "< is not supported on class java.lang.Integer and class java.lang.String\n",
+                "if (1 < 2) print \"lt\"; else print \"no\";\n"
+                        + "if (2 <= 2d) print \"le\";\n"
+                        + "if (2.5 > 2) print \"gt\";\n"
+                        + "if (1 >= 2) print \"no\"; else print \"ge\";\n"
+                        + "var i = 0; while (i < 3) i = i + 1; print i;\n"
+                        + "var d = 0.5; while (d <= 2) d = d + 1; print d;\n"
+                        + "if (1 < \"a\") print \"no\";\n");
+    }
+
+    @Test
+    void testRuntimeErrors() {
+        assertOutput("1\nCannot divide by 0\n", "print 1; print 1 / 0; print 2;");
+        assertOutput("Expected 1 arguments but got 2.\n", "fun f(a) { return a; } f(1, 2);");
+        assertOutput("missing is an undefined variable\n", "print missing;");
+        assertOutput("Expected a boolean.\n", "print !1;");
+        assertOutput("Expected a number.\n", "print -\"a\";");
+        // The callee is checked before any argument is evaluated
+        assertOutput("1is not callable\n", "var n = 1; fun f() { print \"called\"; return 1; } n(f());");
+    }
+}
@@ -45,6 +45,30 @@ def visitor_interface(package: str, vistor_name: str,
     return v_str
 
 
+def camel_to_constant(name: str) -> str:
+    """Turn a class name like VarDeclare into a constant name like VAR_DECLARE"""
+    constant = ""
+    for i, char in enumerate(name):
+        if char.isupper() and i > 0:
+            constant += "_"
+        constant += char.upper()
+    return constant
+
+
+def tags_class(package: str, tags_name: str, class_names: List[str]) -> str:
+    """
+    Number each class in the order it is defined, from 1 so 0 can stand for a
+    missing node. Stored ASTs use the numbers, so new classes go at the end
+    """
+    t_str = f"{package}\n\npublic final class {tags_name} "
+    t_str += "{\n"
+    for i, name in enumerate(class_names):
+        t_str += f"\tpublic static final int {camel_to_constant(name)} = {i + 1};\n"
+    t_str += f"\n\tprivate {tags_name}() "
+    t_str += "{\n\t}\n}"
+    return t_str
+
+
 def generate_output(output_dir: str, package: str, imports: str, base: str,
                     visitor: str, rem_lines: List[str]):
     makedirs(output_dir, exist_ok=True)
@@ -55,28 +79,44 @@ def generate_output(output_dir: str, package: str, imports: str, base: str,
     for key in class_dict.keys():
         out_path = path.join(output_dir, f"{key}.java")
         expression = DerivedClass(base, key,  package, imports, vistor_name)
-        expression.add_fields(class_dict[key])
+        fields, annotations = class_dict[key]
+        expression.add_fields(fields)
+        expression.add_annotations(annotations)
         with open(out_path, "w") as out_file:
             out_file.write(expression.to_string())
     class_names = [key for key in class_dict.keys()]
     visitor_path = path.join(output_dir, f"{vistor_name}.java")
     with open(visitor_path, "w") as visitor_file:
         visitor_file.write(visitor_interface(package, vistor_name, class_names))
+    tags_name = f"{base}Tag"
+    with open(path.join(output_dir, f"{tags_name}.java"), "w") as tags_file:
+        tags_file.write(tags_class(package, tags_name, class_names))
 
 
-def parse_output(lines: List[str]) -> Dict[str, List[Pair]]:
+def parse_output(lines: List[str]) -> Dict[str, Tuple[List[Pair], List[Pair]]]:
     parsed_lines = []
     for line in lines:
         parsed_lines.append(parse_line(line))
-    return {line[0]: line[1] for line in parsed_lines}
-
-
-def parse_line(line: str) -> Tuple[str, List[Pair]]:
-    words = line.split(" ")
-    assert len(words) % 2 != 0
-    pairs = [(words[i + 1].strip(), words[i].strip()) for i in
-             range(1, len(words), 2)]
-    return words[0].strip(), pairs
+    return {line[0]: (line[1], line[2]) for line in parsed_lines}
+
+
+def parse_pairs(words: List[str]) -> List[Pair]:
+    assert len(words) % 2 == 0
+    return [(words[i + 1].strip(), words[i].strip()) for i in
+            range(0, len(words), 2)]
+
+
+def parse_line(line: str) -> Tuple[str, List[Pair], List[Pair]]:
+    """
+    Parse a class definition. Fields after a '|' are annotations: mutable
+    fields that are left out of the constructor and filled in by later passes.
+    A field whose type starts with '~' is lazy: it can be given as a supplier
+    that is called the first time the field is needed
+    """
+    fields, _, annotations = line.partition("|")
+    words = fields.split()
+    return words[0].strip(), parse_pairs(words[1:]), \
+        parse_pairs(annotations.split())
 
 
 if __name__ == "__main__":
@@ -15,10 +15,38 @@ def get_field_str(name: str, type_str: str) -> str:
     return f"\tpublic final {type_str} {name};\n"
 
 
+def get_lazy_field_str(name: str, type_str: str) -> str:
+    """
+    Get a string output for a lazy field: the value, once it is known, and
+    the supplier that works it out the first time it is asked for
+    """
+    field_str = f"\tprivate {type_str} {name};\n"
+    field_str += f"\t// Works out the {name} the first time it is needed, null once it has\n"
+    field_str += f"\tprivate Supplier<{type_str}> {deferred_name(name)};\n"
+    return field_str
+
+
+def deferred_name(name: str) -> str:
+    """The name of the supplier of a lazy field, e.g. deferredBody for body"""
+    return f"deferred{name[0].upper()}{name[1:]}"
+
+
+def get_annotation_str(name: str, type_str: str) -> str:
+    """
+    Get a string output for an annotation. Annotations start unresolved: -1
+    for ints and null for everything else
+    """
+    if type_str == "int":
+        return f"\tpublic {type_str} {name} = -1;\n"
+    return f"\tpublic {type_str} {name};\n"
+
+
 class DerivedClass:
     def __init__(self, base: str, name: str, package: str, imports: str,
                  visitor: Optional[str] = None) -> None:
         self.fields: Dict[str, str] = {}
+        self.lazy: List[str] = []
+        self.annotations: Dict[str, str] = {}
         self.__name: str = name.strip()
         self.__base = base.strip()
         self.__visitor = visitor
@@ -56,10 +84,22 @@ class DerivedClass:
          Add a field to the generated class
          Each fields name is determined by the first value in the pair and the
          type is determined by the second value
-         Each field will be set to private
-         Getters will be generated for each field
+         Each field is public and final, unless its type starts with '~':
+         then it is lazy, see lazy_members
          """
-        self.fields[pair[0]] = pair[1]
+        name, type_str = pair
+        if type_str.startswith("~"):
+            type_str = type_str[1:]
+            self.lazy.append(name)
+        self.fields[name] = type_str
+
+    def add_annotations(self, pairs: List[Pair]):
+        """
+        Add mutable fields that are not set by the constructor. They are used
+        by passes that run after parsing (i.e. the resolver) to annotate nodes
+        """
+        for pair in pairs:
+            self.annotations[pair[0]] = pair[1]
 
     def to_string(self) -> str:
         """Generate the class as a string"""
@@ -70,8 +110,16 @@ class DerivedClass:
         class_str += "{\n"
         # Add the fields to the class
         for key in self.fields.keys():
-            class_str += get_field_str(key, self.fields[key])
+            if key not in self.lazy:
+                class_str += get_field_str(key, self.fields[key])
+        for key in self.annotations.keys():
+            class_str += get_annotation_str(key, self.annotations[key])
+        for key in self.lazy:
+            class_str += get_lazy_field_str(key, self.fields[key])
         class_str = DerivedClass.add_line(class_str, self.constructor())
+        if self.lazy:
+            class_str = DerivedClass.add_line(class_str, self.lazy_constructor())
+            class_str = DerivedClass.add_line(class_str, self.lazy_members())
         if self.has_visitor:
             class_str = DerivedClass.add_line(
                 class_str, self.visitor(f"{self.visitor_name}")
@@ -94,6 +142,55 @@ class DerivedClass:
         my_str += "\t}\n"
         return my_str
 
+    def lazy_constructor(self) -> str:
+        """
+        Get the constructor that takes a supplier for each lazy field instead
+        of its value
+        """
+        args = []
+        for key in self.fields.keys():
+            if key in self.lazy:
+                args.append(f"Supplier<{self.fields[key]}> {deferred_name(key)}")
+            else:
+                args.append(f"{self.fields[key]} {key}")
+        lazy_names = " and ".join(self.lazy)
+        my_str = "\t/**\n"
+        my_str += f"\t * Create a {self.name} whose {lazy_names} is worked out the first time it is needed.\n"
+        my_str += "\t */\n"
+        my_str += f"\tpublic {self.name} ({', '.join(args)}) " + "{\n"
+        for key in self.fields.keys():
+            value = deferred_name(key) if key in self.lazy else key
+            my_str += f"\t\tthis.{value} = {value};\n"
+        my_str += "\t}\n"
+        return my_str
+
+    def lazy_members(self) -> str:
+        """
+        Get the accessor of each lazy field, which works the value out the
+        first time it is called, and a check of whether it has been
+        """
+        my_str = ""
+        for key in self.lazy:
+            type_str = self.fields[key]
+            deferred = deferred_name(key)
+            capitalized = key[0].upper() + key[1:]
+            if my_str:
+                my_str += "\n"
+            my_str += "\t/**\n"
+            my_str += f"\t * Get the {key}, working it out first if it hasn't been.\n"
+            my_str += "\t */\n"
+            my_str += f"\tpublic {type_str} {key}() " + "{\n"
+            my_str += f"\t\tif ({deferred} != null) " + "{\n"
+            my_str += f"\t\t\t{key} = {deferred}.get();\n"
+            my_str += f"\t\t\t{deferred} = null;\n"
+            my_str += "\t\t}\n"
+            my_str += f"\t\treturn {key};\n"
+            my_str += "\t}\n\n"
+            my_str += f"\tpublic boolean is{capitalized}Parsed() " + "{\n"
+            my_str += f"\t\treturn {deferred} == null;\n"
+            my_str += "\t}\n"
+        return my_str
+
     def visitor(self, visitor_name: str) -> str:
         """Implement the visitor in the generated class"""
         header = "\tpublic <R> R accept(" + visitor_name + "<R> visitor) {\n"